@@ -89,6 +89,9 @@ public final class Constants {
      */
     public static final double SHOOTER_RPM_OUTERWORKS = 5400;
 
+    /** Range to the target, in inches, to the RPM that shoots from there, as range:rpm pairs */
+    public static final String SHOOTER_RANGE_TABLE = "141:6250,150:6375";
+
     /** The RPM that best shoots the ball into the tower from the batter */
     public static final double SHOOTER_RPM_BATTER = 3000;
 
@@ -97,6 +100,18 @@ public final class Constants {
      */
     public static final double PID_SHOOTER_RPM_TOLERANCE = 50;
 
+    /** How far back the shooter RPM estimate looks at the banner sensor, in seconds */
+    public static final double SHOOTER_SPEED_WINDOW = 0.05;
+
+    /** Banner sensor pulses closer together than this RPM would need are glitches */
+    public static final double SHOOTER_MAX_RPM = 8000.0;
+
+    /** The standard deviation of when the banner sensor sees the tape, in seconds */
+    public static final double SHOOTER_BANNER_JITTER = 20.0e-6;
+
+    /** The shooter is not on target unless its RPM estimate is at least this confident */
+    public static final double SHOOTER_MIN_RPM_CONFIDENCE = 0.5;
+
     /**
      * The acceptable deviation from the setpoint on the Drive Distance PID
      */
@@ -132,10 +147,50 @@ public final class Constants {
      * the <code>Drive</code> class.
      */
     public static final double DRIVE_DISTANCE_PER_PULSE = (Math.PI * 6) / 255;
+
+    /**
+     * The effective distance, in inches, between the left and right wheels. This is a little wider
+     * than the measured width because the wheels scrub when the robot turns.
+     */
+    public static final double DRIVE_TRACK_WIDTH = 26.0;
+
+    /**
+     * The limits for drive trajectories. A drive speed of 1.0 asks for DRIVE_MAX_VELOCITY, in
+     * inches per second, which is a little under the free speed of the drive so there is output
+     * left over to correct with.
+     */
+    public static final double DRIVE_MAX_VELOCITY = 130.0;
+    public static final double DRIVE_MAX_ACCELERATION = 150.0; // in/s^2
+    public static final double DRIVE_MAX_JERK = 1500.0; // in/s^3
+
+    /**
+     * How far, in inches, the drive can get from its trajectory before a new one is planned from
+     * where it is, or 0 to never replan. Replanning is off until it is shown to help on the robot.
+     */
+    public static final double DRIVE_REPLAN_ERROR = 0.0;
+
+    /**
+     * How much memory the generated trajectories may take up before the least recently used are
+     * dropped, in bytes. A 10 second profile at 100 Hz takes about 40 kB.
+     */
+    public static final long TRAJECTORY_CACHE_BYTES = 1024L * 1024L;
+
+    /**
+     * Where trajectories generated offline by TrajectoryFileGenerator are put on the roboRIO
+     */
+    public static final String TRAJECTORY_FILE_PATH = "/home/lvuser/autonomous/";
+
+    /**
+     * The cutoff frequency, in Hz, of the low pass filter on the pitch. The navX picks up a lot
+     * of vibration when the robot bangs over a defense, and the defense controllers only care
+     * about the slow tilt of the chassis.
+     */
+    public static final double NAVIGATION_PITCH_FILTER_CUTOFF = 5.0;
     /**
-     * The length, in milliseconds, of each loop for the fast loop timer (which executes input and
-     * output filters and the subsystem's current controllers
+     * The length, in milliseconds, of the base period of the fast loop timer (which executes input
+     * and output filters and the subsystem's current controllers). Each subsystem runs every
+     * getLoopDivisor() base periods.
      */
-    public static final long FAST_LOOP_TIMER_PERIOD = 10L;
+    public static final long FAST_LOOP_TIMER_PERIOD = 5L;
   }
 }
@@ -7,12 +7,15 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.IterativeRobot;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj.vision.USBCamera;
+import missdaisy.autonomous.AutonomousMode;
 import missdaisy.autonomous.AutonomousParser;
 import missdaisy.autonomous.StateMachine;
 import missdaisy.fileio.PropertyReader;
 import missdaisy.loops.FastLoopTimer;
+import missdaisy.loops.LoopProfiler;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.controllers.DriveDistanceController;
+import missdaisy.loops.controllers.DrivePathController;
 import missdaisy.loops.controllers.DriveTurnController;
 import missdaisy.loops.controllers.ShooterSpeedController;
 import missdaisy.subsystems.Drive;
@@ -21,6 +24,7 @@ import missdaisy.subsystems.Intake;
 import missdaisy.subsystems.Shooter;
 // import missdaisy.utilities.DaisyUSBCamera;
 import missdaisy.utilities.RobotVisionDualUSB;
+import missdaisy.utilities.TrajectoryCache;
 
 /**
  * The robot. This is the entry point for all functions and threads that are spawned. This class has
@@ -36,6 +40,9 @@ public class Daisy2016 extends IterativeRobot {
   private FastLoopTimer mFastLoopTimer;
   // This is the operator's controller.
   private OperatorInput mOperatorInput;
+  // This keeps track of how long each part of the control loops takes.
+  private LoopProfiler mLoopProfiler;
+  private int mOperatorInputStage;
   // This is the class which directs autonomous flow during
   // the autonomous period.
   private StateMachine mStateMachine;
@@ -67,7 +74,16 @@ public class Daisy2016 extends IterativeRobot {
   private boolean mAutoStealBall = false;
   private int mAutoDefense = 1;
   private int mAutoPos = 2;
-  String mAutoMode;
+  private static final String[] kAutoDefenseFiles =
+      {"RoughTerrain.txt", "RockWall.txt", "Rampparts.txt", "Moat.txt"};
+  private static final String[] kAutoDefenseNames =
+      {"Rough Terrain", "Rock Wall", "Rampparts", "Moat"};
+  // every autonomous mode, parsed once in robotInit, by defense, position and whether to steal a
+  // ball (1) or not (0)
+  private AutonomousMode[][][] mAutoModes;
+  // what runs if nobody picks a mode
+  private AutonomousMode mDefaultAutoMode;
+  private AutonomousMode mAutoMode;
 
   /**
    * This function is run when the robot is first started up and should be used for any
@@ -81,12 +97,18 @@ public class Daisy2016 extends IterativeRobot {
     mPropertyReader.parseFile(kPropertiesFilePath);
     loadAllProperties();
     mOperatorInput = OperatorInput.getInstance();
+    mLoopProfiler = LoopProfiler.getInstance();
+    mOperatorInputStage = mLoopProfiler.addStage("OperatorInput.processInputs");
     mFastLoopTimer = FastLoopTimer.getInstance();
     // starts the fast loop timer executing input & output filters and controllers
     mFastLoopTimer.start();
+    // parse every autonomous mode once, so that picking one before the match, or starting it,
+    // never reads a file
+    loadAutoModes();
     // this is the default autonomous mode that will execute if the drive/operator
     // do not choose to use another one.
-    chooseAutoMode(mAutoDefense, 9, false);
+    mAutoMode = mDefaultAutoMode;
+    SmartDashboard.putString("Autonomous Mode:", mAutoMode.getName());
 
     /*
      * This is where we tried to instantiate the USB camera's that the driver used to have better
@@ -102,6 +124,14 @@ public class Daisy2016 extends IterativeRobot {
 
   }
 
+  public void disabledInit() {
+    /*
+     * Dump the timing of the last enabled period to the console, then start fresh for the next one
+     */
+    mLoopProfiler.printTable();
+    mLoopProfiler.reset();
+  }
+
   public void disabledPeriodic() {
     /*
      * Just insure that nothing is trying to control the robot going into the start of autonomous
@@ -120,11 +150,10 @@ public class Daisy2016 extends IterativeRobot {
     // mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "RoughTerrain.txt");
     /**
      * Instantiates the StateMachine, which ensure that the robot follows a very defined transition
-     * between each state in autonomous. The AutonomousParser is a class that will read in an
-     * autonomous file from the Roborio's file system, and parses it for the series of states that
-     * the file contains.
+     * between each state in autonomous. The states are made fresh from the chosen autonomous mode,
+     * which was parsed from its autonomous file when the robot started up.
      */
-    mStateMachine = new StateMachine(new AutonomousParser().parseStates(mAutoPos, mAutoStealBall));
+    mStateMachine = new StateMachine(mAutoMode.instantiate());
     logToDashboard();
   }
 
@@ -157,7 +186,9 @@ public class Daisy2016 extends IterativeRobot {
      * This is the meat and potatoes of where decisions are made depending on what buttons are
      * pressed by the Operator and Driver.
      */
+    long start = System.nanoTime();
     mOperatorInput.processInputs();
+    mLoopProfiler.record(mOperatorInputStage, System.nanoTime() - start);
     logToDashboard();
   }
 
@@ -201,68 +232,103 @@ public class Daisy2016 extends IterativeRobot {
   }
 
   /**
-   * Points the Property Reader to which autonomous file to parse, based on the inputs of:
-   * 
-   * @param autoDefense Which defense we want to travel over
-   * @param autoPos Which position we start at (1, 2, 3, 4, 5)
-   * @param mAutoStealBall Whether we want to steal a ball. Steal ball was never used during a
-   *        match.
+   * Parses every autonomous mode that can be chosen, reading each autonomous file only once, and
+   * lets each of them get ready. Anything wrong with an autonomous file is printed here, when the
+   * robot starts up, rather than when the mode runs.
    */
-  private void chooseAutoMode(int autoDefense, int autoPos, boolean mAutoStealBall) {
-    switch (autoDefense) {
-      case 1:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "RoughTerrain.txt");
-        mAutoMode = "Rough Terrain";
-        break;
-      case 2:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "RockWall.txt");
-        mAutoMode = "Rock Wall";
-        break;
-      case 3:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "Rampparts.txt");
-        mAutoMode = "Rampparts";
-        break;
-      case 4:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "Moat.txt");
-        mAutoMode = "Moat";
-        break;
-      default:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "RoughTerrain.txt");
-        mAutoMode = "Default Auto Mode";
-        break;
-    }
+  private void loadAutoModes() {
+    AutonomousParser parser = new AutonomousParser();
+    mAutoModes = new AutonomousMode[mNumAutoDefenses + 1][mNumAutoPos + 1][2];
+    // these don't depend on the defense or on stealing a ball, so they are only parsed once
+    AutonomousMode doNothing = parser.parseMode("Do Nothing", 7, false);
+    AutonomousMode reach = parser.parseMode("Reach", 8, false);
+    mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "Spybot.txt");
+    AutonomousMode spyBot = parser.parseMode("Spy Bot", 9, false);
+    // Choosing Spy Bot at start up used to only read its file and leave the position where it
+    // was, so the default has always been the Spy Bot states inside the position's sequence.
+    mDefaultAutoMode = parser.parseMode("Spy Bot", mAutoPos, mAutoStealBall);
+    mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "CDF.txt");
+    AutonomousMode chevy = parser.parseMode("Chevy --> Levy", 10, false);
+    int numErrors = reportErrors("Spybot.txt", spyBot) + reportErrors("CDF.txt", chevy);
 
-    switch (autoPos) {
-      case 6:
-        mAutoMode = "Cross";
-        break;
-      case 7:
-        mAutoMode = "Do Nothing";
-        break;
-      case 8:
-        mAutoMode = "Reach";
-        break;
-      case 9:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "Spybot.txt");
-        mAutoMode = "Spy Bot";
-        break;
-      case 10:
-        mPropertyReader.parseAutonomousFile(kAutonomousFilePath + "CDF.txt");
-        mAutoMode = "Chevy --> Levy";
-        break;
-      default:
-        mAutoMode += " Pos: " + Integer.toString(autoPos);
-
-        if (mAutoStealBall) {
-          mAutoMode += " StealBall: TRUE";
-        } else {
-          mAutoMode += " StealBall: FALSE";
+    for (int defense = 1; defense <= mNumAutoDefenses; defense++) {
+      String file = kAutoDefenseFiles[defense - 1];
+      mPropertyReader.parseAutonomousFile(kAutonomousFilePath + file);
+      for (int pos = 2; pos <= mNumAutoPos; pos++) {
+        for (int steal = 0; steal < 2; steal++) {
+          AutonomousMode mode;
+          switch (pos) {
+            case 7:
+              mode = doNothing;
+              break;
+            case 8:
+              mode = reach;
+              break;
+            case 9:
+              mode = spyBot;
+              break;
+            case 10:
+              mode = chevy;
+              break;
+            default:
+              mode = parser.parseMode(getAutoModeName(defense, pos, steal == 1), pos, steal == 1);
+              break;
+          }
+          mAutoModes[defense][pos][steal] = mode;
         }
+      }
+      // every mode that crosses this defense has the file's problems, so only print them once
+      numErrors += reportErrors(file, mAutoModes[defense][2][0]);
+    }
+    SmartDashboard.putNumber("Autonomous File Errors:", numErrors);
 
-        break;
+    // get every mode ready once, so that all of their trajectories are generated before the
+    // driver picks one
+    for (int defense = 1; defense <= mNumAutoDefenses; defense++) {
+      for (int pos = 2; pos <= mNumAutoPos; pos++) {
+        mAutoModes[defense][pos][0].prepare();
+        mAutoModes[defense][pos][1].prepare();
+      }
     }
+    mDefaultAutoMode.prepare();
+  }
 
-    SmartDashboard.putString("Autonomous Mode:", mAutoMode);
+  /**
+   * Prints what is wrong with an autonomous file, if anything.
+   *
+   * @return How many problems there were
+   */
+  private int reportErrors(String file, AutonomousMode mode) {
+    String[] errors = mode.getErrors();
+    for (String error : errors) {
+      System.err.println("Autonomous file " + file + ": " + error);
+    }
+    return errors.length;
+  }
+
+  /**
+   * @return The name of a mode that crosses a defense, for the dashboard
+   */
+  private String getAutoModeName(int autoDefense, int autoPos, boolean stealBall) {
+    if (autoPos == 6) {
+      return "Cross";
+    }
+    return kAutoDefenseNames[autoDefense - 1] + " Pos: " + Integer.toString(autoPos)
+        + (stealBall ? " StealBall: TRUE" : " StealBall: FALSE");
+  }
+
+  /**
+   * Picks which of the autonomous modes parsed in robotInit will run, based on the inputs of:
+   * 
+   * @param autoDefense Which defense we want to travel over
+   * @param autoPos Which position we start at (1, 2, 3, 4, 5)
+   * @param stealBall Whether we want to steal a ball. Steal ball was never used during a match.
+   */
+  private void chooseAutoMode(int autoDefense, int autoPos, boolean stealBall) {
+    mAutoMode = mAutoModes[autoDefense][autoPos][stealBall ? 1 : 0];
+    SmartDashboard.putString("Autonomous Mode:", mAutoMode.getName());
+    // in case any of its trajectories have been dropped from the cache since robotInit
+    mAutoMode.prepare();
   }
 
   /**
@@ -270,11 +336,14 @@ public class Daisy2016 extends IterativeRobot {
    * the SmartDashboard for debugging purposes.
    */
   public void logToDashboard() {
+    mFastLoopTimer.logToDashboard();
+    mLoopProfiler.logToDashboard();
     Navigation.getInstance().logToDashboard();
     Shooter.getInstance().logToDashboard();
     Drive.getInstance().logToDashBoard();
     Intake.getInstance().logToDashboard();
     Hanger.getInstance().logToDashboard();
+    TrajectoryCache.getInstance().logToDashboard();
   }
 
   /**
@@ -284,5 +353,7 @@ public class Daisy2016 extends IterativeRobot {
     DriveTurnController.getInstance().loadProperties();
     ShooterSpeedController.getInstance().loadProperties();
     DriveDistanceController.getInstance().loadProperties();
+    DrivePathController.getInstance().loadProperties();
+    Vision.getInstance().loadProperties();
   }
 }
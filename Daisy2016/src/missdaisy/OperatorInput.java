@@ -1,6 +1,7 @@
 package missdaisy;
 
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import missdaisy.hal.Hardware;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.controllers.AutoAimDriveController;
 import missdaisy.loops.controllers.AutoAimShooterController;
@@ -361,10 +362,10 @@ public class OperatorInput {
      */
     if (mReadyToShoot || triedToHang || mShootStartTime > 0) {
       if (mOperatorController.getRightTrigger()) {
-        mShootStartTime = System.currentTimeMillis();
+        mShootStartTime = Hardware.getClock().currentTimeMillis();
       }
 
-      if (System.currentTimeMillis() - mShootStartTime > 1000) {
+      if (Hardware.getClock().currentTimeMillis() - mShootStartTime > 1000) {
         mShootStartTime = 0;
       } else {
         mShooter.shoot();
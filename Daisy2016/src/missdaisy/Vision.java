@@ -1,17 +1,24 @@
 package missdaisy;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import missdaisy.fileio.PropertySet;
+import missdaisy.hal.DashboardInput;
+import missdaisy.hal.Hardware;
+import missdaisy.utilities.InterpolatingTable;
 
 /**
  * Interface to laptop-based computer vision application.
  * 
  * No vision processing is actually done here; rather, this is just a thin interface to
- * SmartDashboard to pull values that are set by an offboard program.
+ * SmartDashboard to pull values that are set by an offboard program. The values are read through
+ * the hardware layer, so a simulation can stand in for the vision program. The shooter RPM for the
+ * range to the target is looked up on the robot, from a table in the properties file.
  * 
  * @author Jared341
  */
 public class Vision {
   private static Vision visionInstance = null;
+  private final DashboardInput mDashboard;
+  private InterpolatingTable mRangeTable;
 
   public static Vision getInstance() {
     if (visionInstance == null)
@@ -19,22 +26,70 @@ public class Vision {
     return visionInstance;
   }
 
-  private Vision() {}
+  private Vision() {
+    mDashboard = Hardware.getFactory().getDashboard();
+    loadProperties();
+  }
+
+  /**
+   * Loads the range to RPM table, written as range:rpm pairs like "141:6250,150:6375", and
+   * whether to interpolate it with straight lines ("linear") or a smooth curve ("cubic").
+   */
+  public synchronized void loadProperties() {
+    PropertySet properties = PropertySet.getInstance();
+    InterpolatingTable.Interpolation interpolation =
+        properties.getStringValue("shooterRangeInterpolation", "linear").equals("cubic")
+            ? InterpolatingTable.Interpolation.MONOTONE_CUBIC
+            : InterpolatingTable.Interpolation.LINEAR;
+    try {
+      mRangeTable = InterpolatingTable.parse(properties.getStringValue("shooterRangeTable",
+          Constants.Properties.SHOOTER_RANGE_TABLE), interpolation);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Bad shooterRangeTable, using the default: " + e.getMessage());
+      mRangeTable =
+          InterpolatingTable.parse(Constants.Properties.SHOOTER_RANGE_TABLE, interpolation);
+    }
+  }
 
   public boolean seesTarget() {
-    return SmartDashboard.getBoolean("found", false);
+    return mDashboard.getBoolean("found", false);
   }
 
-  public double getRPM() {
-    return 5000.0;
-    // SmartDashboard.getNumber("rpms", 0.0);
+  /**
+   * @return The shooter RPM for the range to the target, or the outer works RPM if there is no
+   *         target or the table does not cover its range. The table only changes the shot where
+   *         it has been measured.
+   */
+  public synchronized double getRPM() {
+    double range = getRange();
+    // written so that a range that is not a number fails it too
+    if (!seesTarget()
+        || !(range >= mRangeTable.getMinKey() && range <= mRangeTable.getMaxKey())) {
+      return Constants.Properties.SHOOTER_RPM_OUTERWORKS;
+    }
+    return mRangeTable.get(range);
   }
 
   public double getAzimuth() {
-    return SmartDashboard.getNumber("azimuth", 0.0);
+    return mDashboard.getNumber("azimuth", 0.0);
+  }
+
+  /**
+   * @return The angle to the target relative to the robot's heading when the frame was captured
+   */
+  public double getAzimuthOffset() {
+    return mDashboard.getNumber("azimuthOffset", 0.0);
+  }
+
+  /**
+   * @return When the frame the latest result came from was captured, in seconds on the robot's
+   *         clock, or -1.0 if the vision program did not say
+   */
+  public double getCaptureTimestamp() {
+    return mDashboard.getNumber("captureTimestamp", -1.0);
   }
 
   public double getRange() {
-    return SmartDashboard.getNumber("range", 0.0);
+    return mDashboard.getNumber("range", 0.0);
   }
 }
@@ -4,6 +4,7 @@ import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import missdaisy.Constants;
 import missdaisy.Vision;
+import missdaisy.hal.Hardware;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.controllers.AutoAimDriveController;
 import missdaisy.loops.controllers.ShooterSpeedController;
@@ -66,7 +67,7 @@ public class AutoAimAndShoot extends State {
     mShooter.setCurrentController(mShooterController);
     startTime = -1;
     onTargetCounter = 0;
-    driveStartTime = System.currentTimeMillis();
+    driveStartTime = Hardware.getClock().currentTimeMillis();
   }
 
   @Override
@@ -81,7 +82,7 @@ public class AutoAimAndShoot extends State {
     boolean rangeOnTarget = false;
     // we want to be controlling the drive in this autonomous state, not some other controller
     mDrive.setOpenLoop();
-    if (System.currentTimeMillis() - driveStartTime >= 1000) {
+    if (Hardware.getClock().currentTimeMillis() - driveStartTime >= 1000) {
       // driving back didn't help lets search left/right
       if (Vision.getInstance().seesTarget()) {
         rangeOnTarget = driveDistance();
@@ -94,21 +95,21 @@ public class AutoAimAndShoot extends State {
         if (Math.abs(initialTurnDirection) < 0.1) {
           SmartDashboard.putString("AAS-state:", "Timedout: initialize turn");
           initialTurnDirection = Math.signum(angleDelta);
-          turnStartTime = System.currentTimeMillis();
+          turnStartTime = Hardware.getClock().currentTimeMillis();
         } else if (initialTurnDirection > 0) {
           SmartDashboard.putString("AAS-state:", "Timedout: turn right");
           mDrive.setSpeedTurn(0.0, 0.5);
-          if ((System.currentTimeMillis() - turnStartTime) > waitTime) {
+          if ((Hardware.getClock().currentTimeMillis() - turnStartTime) > waitTime) {
             initialTurnDirection = -1.0;
-            turnStartTime = System.currentTimeMillis();
+            turnStartTime = Hardware.getClock().currentTimeMillis();
             waitTime += 250;
           }
         } else {
           SmartDashboard.putString("AAS-state:", "Timedout: turn left");
           mDrive.setSpeedTurn(0.0, -0.5);
-          if ((System.currentTimeMillis() - turnStartTime) > waitTime) {
+          if ((Hardware.getClock().currentTimeMillis() - turnStartTime) > waitTime) {
             initialTurnDirection = 1.0;
-            turnStartTime = System.currentTimeMillis();
+            turnStartTime = Hardware.getClock().currentTimeMillis();
             waitTime += 250;
           }
         }
@@ -135,7 +136,7 @@ public class AutoAimAndShoot extends State {
       if (onTargetCounter > 10) {
         mIntake.setConveyorSpeed(1.0);
         if (startTime < 0.0)
-          startTime = System.currentTimeMillis();
+          startTime = Hardware.getClock().currentTimeMillis();
       }
     } else {
       mShooter.setStatusLightState(false);
@@ -145,13 +146,14 @@ public class AutoAimAndShoot extends State {
     SmartDashboard.putNumber("AAS_StartTime", startTime);
     
     // This checks to see if we are done shooting in order to end this state
-    if (startTime > 0 && ((System.currentTimeMillis() - startTime) / 1000) >= 2) {
+    if (startTime > 0 && ((Hardware.getClock().currentTimeMillis() - startTime) / 1000) >= 2) {
       SmartDashboard.putNumber("AAS_Counter", onTargetCounter);
       mBallFired = true;
       mIntake.setConveyorSpeed(0.0);
       mShooter.setSpeed(0.0);
     }
-    SmartDashboard.putNumber("AAS_ElapsedTime", System.currentTimeMillis() - startTime);
+    SmartDashboard.putNumber("AAS_ElapsedTime",
+        Hardware.getClock().currentTimeMillis() - startTime);
 
     SmartDashboard.putBoolean("AAS_BallFired", mBallFired);
   }
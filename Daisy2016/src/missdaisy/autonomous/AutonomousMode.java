@@ -0,0 +1,81 @@
+package missdaisy.autonomous;
+
+/**
+ * A parsed autonomous mode: the factory and decoded parameters of each of its states, and any
+ * problems found parsing it.
+ *
+ * States are changed as they run, so the same ones cannot be used twice. A mode is never changed
+ * after it is parsed, so it can be parsed once when the robot starts up and instantiate() makes a
+ * fresh set of states from it each time autonomous starts, without reading anything from a file.
+ *
+ * @author jrussell
+ */
+public final class AutonomousMode {
+  private final String mName;
+  private final StateFactory[] mFactories;
+  private final double[][] mParams;
+  private final String[] mErrors;
+
+  AutonomousMode(String name, StateFactory[] factories, double[][] params, String[] errors) {
+    mName = name;
+    mFactories = factories.clone();
+    mParams = new double[params.length][];
+    for (int i = 0; i < params.length; i++) {
+      mParams[i] = params[i].clone();
+    }
+    mErrors = errors.clone();
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  public int getNumStates() {
+    return mFactories.length;
+  }
+
+  /**
+   * @return What was wrong with the autonomous file, one problem to an element. A state that
+   *         could not be made from its line has been replaced with WaitForTime(0).
+   */
+  public String[] getErrors() {
+    return mErrors.clone();
+  }
+
+  public boolean isValid() {
+    return mErrors.length == 0;
+  }
+
+  /**
+   * Makes a new set of the mode's states, ready to give to a StateMachine. If a state's
+   * constructor fails, WaitForTime(0) takes its place.
+   */
+  public State[] instantiate() {
+    State[] lStates = new State[mFactories.length];
+    for (int i = 0; i < lStates.length; i++) {
+      try {
+        lStates[i] = mFactories[i].create(mParams[i]);
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+        System.out.println("Error instantiating state " + Integer.toString(i + 1) + " of "
+            + mName + ". WaitForTime instantiated instead.");
+        lStates[i] = new WaitForTime(0);
+      }
+    }
+    return lStates;
+  }
+
+  /**
+   * Lets each of the mode's states get ready before the match. See State.prepare().
+   */
+  public void prepare() {
+    for (State state : instantiate()) {
+      state.prepare();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return mName;
+  }
+}
@@ -1,195 +1,226 @@
 package missdaisy.autonomous;
 
+import java.util.ArrayList;
+import java.util.List;
 import missdaisy.fileio.*;
-import java.lang.Class;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Type;
-
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * Parses autonomous modes from an auto mode text file.
  * 
- * Uses reflection to create instances of each auto state based on its name If it cannot be
- * instantiated for various reasons, WaitForTime(0) is instantiated
+ * Creates each auto state with its factory in the StateRegistry, looked up by its name. If it
+ * cannot be created for various reasons, WaitForTime(0) is instantiated
+ * 
+ * parseMode() checks the file and keeps the factories and parameters as an AutonomousMode, which
+ * can make the states again without parsing anything. parseStates() makes the states right away.
  * 
  * @author Joshua Sizer
  */
 public class AutonomousParser {
+  // the property keys for the first few states and their parameters, so they are not built up
+  // from strings every time a mode is parsed
+  private static final int kCachedStates = 32;
+  private static final int kCachedParams = 8;
+  private static final String[] kStateKeys = new String[kCachedStates];
+  private static final String[][] kParamKeys = new String[kCachedStates][kCachedParams];
+
+  static {
+    for (int i = 0; i < kCachedStates; i++) {
+      kStateKeys[i] = "AutonomousState" + Integer.toString(i + 1);
+      for (int k = 0; k < kCachedParams; k++) {
+        kParamKeys[i][k] = kStateKeys[i] + "Param" + Integer.toString(k + 1);
+      }
+    }
+  }
+
   private final PropertySet mProperties;
-  private Class<?> currentState;
-  private Constructor<?> mStateConstructor;
-  private Type[] mParamTypes;
-  int mNumberOfParameters;
 
   public AutonomousParser() {
     mProperties = PropertySet.getInstance();
   }
 
   public State[] parseStates(int pos, boolean stealBall) {
-    State[] fullAuto;
+    return parseMode("", pos, stealBall).instantiate();
+  }
+
+  public State[] parseStates() {
+    return parseMode("").instantiate();
+  }
+
+  /**
+   * Parses a full autonomous mode for a starting position. Positions 9 and 10 are just the states
+   * in the autonomous file. Position 7 does nothing and 8 reaches the defense, and neither uses
+   * the file. Any other position crosses the defense with the states in the file, then turns to
+   * the goal and shoots.
+   *
+   * @param name What to call the mode, like on the dashboard
+   */
+  public AutonomousMode parseMode(String name, int pos, boolean stealBall) {
+    List<StateFactory> lFactories = new ArrayList<StateFactory>();
+    List<double[]> lParams = new ArrayList<double[]>();
+    List<String> lErrors = new ArrayList<String>();
     System.out.println("Searching for selected auto,  ");
     switch (pos) {
       case 7: // Do nothing
         System.out.println("Auto Selected: Do Nothing,  ");
-        fullAuto = new State[] {new WaitForTime(0)};
+        add(lFactories, lParams, "WaitForTime", 0);
         break;
       case 8: // Reach
         System.out.println("Auto Selected: Reach,  ");
-        fullAuto = new State[] {new DriveDistance(75, 0.5)};
+        add(lFactories, lParams, "DriveDistance", 75, 0.5);
         break;
       case 9: // Spy bot
         System.out.println("Auto Selected: Spybot,  ");
-        fullAuto = parseStates();
+        parseFileStates(lFactories, lParams, lErrors);
         break;
       case 10: // Chevy
-        fullAuto = parseStates();
+        parseFileStates(lFactories, lParams, lErrors);
         break;
       default:
         System.out.println("Auto Selected: Default,  ");
-        State[] defense = parseStates();
         // every autonomous will be:
         // drive forward
         // cross defense (with specific parameters parsed from text file)
         // turn to face target
         // autoaim and shoot
-        State angle = null;
-
-        int numStealBallSteps = 0;
-        if (stealBall) {
-          numStealBallSteps = 1;
-        }
-
-
-        fullAuto = new State[defense.length + 4 + numStealBallSteps];
-        fullAuto[0] = new ResetHeading(0.0);
-        int count = 1;
-
+        add(lFactories, lParams, "ResetHeading", 0.0);
         if (stealBall) {
-          fullAuto[count] = new StealBall();
-          count++;
-        }
-
-        for (int i = 0; i < defense.length; i++) {
-          fullAuto[count] = defense[i];
-          count++;
+          add(lFactories, lParams, "StealBall");
         }
-
-        fullAuto[count] = new WaitForTime(750); // 250
-        count++;
+        parseFileStates(lFactories, lParams, lErrors);
+        add(lFactories, lParams, "WaitForTime", 750); // 250
 
         double angleValue = 0.0;
         switch (pos) {
           case 2:
             angleValue = 15.0;
-            angle = new TurnToAngle(15);
+            add(lFactories, lParams, "TurnToAngle", 15);
             break;
           case 3:
             angleValue = 5.0;
-            angle = new TurnToAngle(5);
+            add(lFactories, lParams, "TurnToAngle", 5);
             break;
           case 4:
             angleValue = 5.0;
-            angle = new TurnToAngle(5);
+            add(lFactories, lParams, "TurnToAngle", 5);
             break;
           case 5:
             angleValue = 345.0;
-            angle = new TurnToAngle(345);
+            add(lFactories, lParams, "TurnToAngle", 345);
             break;
           default:
             angleValue = 0.0;
-            angle = new WaitForTime(0);
+            add(lFactories, lParams, "WaitForTime", 0);
         }
 
-        fullAuto[count] = angle;
-        count++;
-
-        fullAuto[count] = new AutoAimAndShoot(angleValue);
+        add(lFactories, lParams, "AutoAimAndShoot", angleValue);
         break;
     }
 
-    for (State curState : fullAuto) {
-      if (curState == null)
-        curState = new WaitForTime(0);
-    }
+    return new AutonomousMode(name, lFactories.toArray(new StateFactory[lFactories.size()]),
+        lParams.toArray(new double[lParams.size()][]), lErrors.toArray(new String[lErrors.size()]));
+  }
 
-    return fullAuto;
+  /**
+   * Parses a mode that is just the states in the autonomous file.
+   *
+   * @param name What to call the mode, like on the dashboard
+   */
+  public AutonomousMode parseMode(String name) {
+    return parseMode(name, 9, false);
   }
 
-  public State[] parseStates() {
-    State[] lStates;
+  /**
+   * Adds the states in the autonomous file to a mode, checking each line as it goes. A line that
+   * names a state that does not exist becomes WaitForTime(0), and a missing or bad parameter
+   * becomes 0, like they always have, but each is also added to the errors.
+   */
+  private void parseFileStates(List<StateFactory> factories, List<double[]> params,
+      List<String> errors) {
     int lNumStates = mProperties.getIntValue("AutonomousNumStates", -1);
     System.out.println("Found " + Integer.toString(lNumStates) + " auto states");
 
     if (lNumStates < 1) {
-      lStates = new State[1];
-      lStates[0] = new WaitForTime(0);
+      add(factories, params, "WaitForTime", 0);
       System.out.println("Insufficent number of states,  ");
-    } else {
-      lStates = new State[lNumStates];
-      for (int i = 0; i < lNumStates; i++) {
-        System.out.println("Parsing State " + Integer.toString(i + 1) + ",  ");
-
-        String lStateName =
-            mProperties.getStringValue("AutonomousState" + Integer.toString(i + 1), "");
-        try {
-          currentState = Class.forName(this.getClass().getPackage().getName() + "." + lStateName);
-          // currentState = Class.forName( "missdaisy.autonomous." + lStateName);
-          // there should only be one constructor
-          mStateConstructor = currentState.getConstructors()[0];
-          mNumberOfParameters = mStateConstructor.getParameterCount();
-
-          Object mParamValues[] = new Object[mNumberOfParameters];
-
-          mParamTypes = mStateConstructor.getParameterTypes();
-
-          // fills parameter array with values
-          System.out.println("Parsing parameters for state,  ");
-          for (int k = 0; k < mStateConstructor.getParameters().length; k++) {
-            // returns 0.0 or 0 if property cannot be found
-            if (mParamTypes[k] == double.class) {
-              mParamValues[k] = mProperties.getDoubleValue(
-                  "AutonomousState" + Integer.toString(i + 1) + "Param" + Integer.toString(k + 1),
-                  0.0);
-            } else if (mParamTypes[k] == int.class) {
-              // truncates value from autonomous file to be an
-              // integer (if a number is entered as a double,
-              // but is meant to be an integer)
-              mParamValues[k] = (int) mProperties.getDoubleValue(
-                  "AutonomousState" + Integer.toString(i + 1) + "Param" + Integer.toString(k + 1),
-                  0.0);
-            }
-          }
-
-          try {
-            lStates[i] = (State) mStateConstructor.newInstance(mParamValues);
-            System.out.println("Instantiated " + lStates[i].toString() + " with parameter(s): "
-                + formatParam(mParamValues));
-          } catch (InstantiationException | IllegalAccessException | InvocationTargetException
-              | IllegalArgumentException e) {
-            e.printStackTrace();
-            System.out.println("Error instantiating " + "AutonomousState" + Integer.toString(i + 1)
-                + ": " + lStateName + ". WaitForTime instantiated instead.");
-          }
-
-        } catch (ClassNotFoundException | SecurityException e) {
-          System.out.println("Could not find specified state: " + lStateName
-              + ". WaitForTime (0) instantiated instead.");
-        }
+      errors.add("The autonomous file is missing, empty or could not be read");
+      return;
+    }
 
-        if (lStates[i] == null) {
-          lStates[i] = new WaitForTime(0);
+    for (int i = 0; i < lNumStates; i++) {
+      System.out.println("Parsing State " + Integer.toString(i + 1) + ",  ");
+
+      String lStateName = mProperties.getStringValue(getStateKey(i), "");
+      StateFactory lFactory = StateRegistry.get(lStateName);
+      if (lFactory == null) {
+        System.out.println("Could not find specified state: " + lStateName
+            + ". WaitForTime (0) instantiated instead.");
+        errors.add("Line " + Integer.toString(i + 1) + ": there is no state called " + lStateName);
+        add(factories, params, "WaitForTime", 0);
+        continue;
+      }
+
+      // fills parameter array with values
+      System.out.println("Parsing parameters for state,  ");
+      double[] lParamValues = new double[lFactory.getParameterCount()];
+      for (int k = 0; k < lParamValues.length; k++) {
+        String lKey = getParamKey(i, k);
+        if (!isNumber(mProperties.getStringValue(lKey, ""))) {
+          errors.add("Line " + Integer.toString(i + 1) + ": parameter " + Integer.toString(k + 1)
+              + " of " + lStateName + " is missing or is not a number");
         }
+        lParamValues[k] = lFactory.getParameter(k).decode(mProperties, lKey);
+      }
+      if (mProperties.hasProperty(getParamKey(i, lParamValues.length))) {
+        errors.add("Line " + Integer.toString(i + 1) + ": " + lStateName + " takes only "
+            + Integer.toString(lParamValues.length) + " parameter(s)");
       }
+
+      factories.add(lFactory);
+      params.add(lParamValues);
+      System.out.println("Parsed " + lStateName + " with parameter(s): "
+          + formatParam(lFactory, lParamValues));
+    }
+  }
+
+  private static void add(List<StateFactory> factories, List<double[]> params, String name,
+      double... values) {
+    factories.add(StateRegistry.get(name));
+    params.add(values);
+  }
+
+  private static boolean isNumber(String value) {
+    try {
+      Double.parseDouble(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return The property that holds the name of a state, counting from 0
+   */
+  private static String getStateKey(int state) {
+    if (state < kCachedStates) {
+      return kStateKeys[state];
+    }
+    return "AutonomousState" + Integer.toString(state + 1);
+  }
+
+  /**
+   * @return The property that holds a parameter of a state, both counting from 0
+   */
+  private static String getParamKey(int state, int param) {
+    if (state < kCachedStates && param < kCachedParams) {
+      return kParamKeys[state][param];
     }
-    return lStates;
+    return "AutonomousState" + Integer.toString(state + 1) + "Param" + Integer.toString(param + 1);
   }
 
-  private String formatParam(Object[] paramValues) {
+  private String formatParam(StateFactory factory, double[] paramValues) {
     String lFormattedString = "";
     for (int k = 0; k < paramValues.length; k++) {
-      lFormattedString += paramValues[k].toString();
+      lFormattedString += factory.getParameter(k).format(paramValues[k]);
       if (k == paramValues.length - 1)
         break;
 
@@ -26,6 +26,14 @@ public class DriveDistance extends State {
     mSpeed = speed;
   }
 
+  /**
+   * Generates the trajectory for the move ahead of time
+   */
+  @Override
+  public void prepare() {
+    mDriveController.prepareGoal(mDistance, mSpeed);
+  }
+
   /**
    * Sets the drive base's current controller to be the drive distance controller
    */
@@ -43,6 +51,7 @@ public class DriveDistance extends State {
   public void exit() {
     mDrive.setOpenLoop();
     mDrive.setSpeedTurn(0.0, 0.0);
+    mDrive.useAlphaFilter(true);
   }
 
   /**
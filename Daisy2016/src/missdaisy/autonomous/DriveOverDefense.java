@@ -1,6 +1,7 @@
 package missdaisy.autonomous;
 
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import missdaisy.hal.Hardware;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.controllers.DriveOverDefenseController;
 import missdaisy.subsystems.Drive;
@@ -46,7 +47,7 @@ public class DriveOverDefense extends State {
     mMinDistance = mNavigation.getAverageEncoderDistance() + mMinDistance;
     mDriveController.setGoal(mDistanceToTarget, mSpeed, mMinDistance);
     mDrive.setCurrentController(mDriveController);
-    System.currentTimeMillis();
+    Hardware.getClock().currentTimeMillis();
   }
 
   @Override
@@ -0,0 +1,78 @@
+package missdaisy.autonomous;
+
+import missdaisy.fileio.PropertySet;
+import missdaisy.loops.controllers.DrivePathController;
+import missdaisy.subsystems.Drive;
+
+/**
+ * Drives along a smooth path through waypoints, turning as it goes instead of stopping to turn.
+ * The waypoints come from the properties file, as comma separated x:y:heading triples relative
+ * to where the robot starts the path, like:
+ *
+ * path1 0:0:0,60:0:0,120:48:45,180:72:0
+ *
+ * @author jrussell
+ */
+public class DrivePath extends State {
+  private Drive mDrive;
+  private DrivePathController mPathController;
+  private String mWaypoints;
+  private double mSpeed;
+  private boolean mFailed = false;
+
+  /**
+   * @param path Which path in the properties file to drive, path1 being 1
+   * @param speed A number between 0.0 and 1.0
+   */
+  public DrivePath(int path, double speed) {
+    super("DrivePath");
+    mDrive = Drive.getInstance();
+    mPathController = DrivePathController.getInstance();
+    mWaypoints = PropertySet.getInstance().getStringValue("path" + path, "");
+    mSpeed = speed;
+  }
+
+  /**
+   * Generates the path ahead of time
+   */
+  @Override
+  public void prepare() {
+    try {
+      mPathController.preparePath(mWaypoints, mSpeed);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Bad path \"" + mWaypoints + "\": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Sets the drive base's current controller to be the drive path controller
+   */
+  public void enter() {
+    try {
+      mPathController.setPath(mWaypoints, mSpeed);
+      mDrive.setCurrentController(mPathController);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Bad path \"" + mWaypoints + "\", skipping it: " + e.getMessage());
+      mFailed = true;
+    }
+  }
+
+  @Override
+  public void running() {}
+
+  /**
+   * Ensures the robot's drive base is in an expected state.
+   */
+  public void exit() {
+    mDrive.setOpenLoop();
+    mDrive.setSpeedTurn(0.0, 0.0);
+  }
+
+  /**
+   * This state is done when the robot has reached the end of the path, or the path was bad
+   */
+  @Override
+  public boolean isDone() {
+    return mFailed || mPathController.onTarget();
+  }
+}
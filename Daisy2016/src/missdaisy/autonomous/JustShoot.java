@@ -1,5 +1,6 @@
 package missdaisy.autonomous;
 
+import missdaisy.hal.Hardware;
 import missdaisy.loops.controllers.ShooterSpeedController;
 import missdaisy.subsystems.Intake;
 import missdaisy.subsystems.Shooter;
@@ -48,7 +49,7 @@ public class JustShoot extends TimeoutState {
       if (mOnTargetCounter > 5) {
         mIntake.setConveyorSpeed(1.0);
         if (mStartTime < 0.0)
-          mStartTime = System.currentTimeMillis();
+          mStartTime = Hardware.getClock().currentTimeMillis();
       }
     } else {
       mShooter.setStatusLightState(false);
@@ -56,7 +57,8 @@ public class JustShoot extends TimeoutState {
       mStartTime = -1;
     }
 
-    if (mStartTime > 0 && Math.abs(System.currentTimeMillis() - mStartTime) / 1000 >= 2) {
+    if (mStartTime > 0
+        && Math.abs(Hardware.getClock().currentTimeMillis() - mStartTime) / 1000 >= 2) {
       mBallFired = true;
       mIntake.setConveyorSpeed(0.0);
       mShooter.setSpeed(0.0);
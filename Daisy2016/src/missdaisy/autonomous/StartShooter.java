@@ -29,7 +29,7 @@ public class StartShooter extends State {
 
   @Override
   public void running() {
-    // the controller gets executed every 5 ms in its own thread
+    // the controller gets executed every 10 ms in its own thread
   }
 
   @Override
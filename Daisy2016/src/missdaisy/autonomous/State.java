@@ -28,6 +28,16 @@ public abstract class State {
     return mName;
   }
 
+  /**
+   * Gets called while the robot is disabled, after the autonomous mode has been chosen.
+   *
+   * Do anything slow that the state will need here, like generating a trajectory, so that it is
+   * ready before the match starts. This may be called any number of times, or not at all.
+   */
+  public void prepare() {
+
+  }
+
   /**
    * Gets called ONCE when we begin this state.
    * 
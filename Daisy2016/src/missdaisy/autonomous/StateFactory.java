@@ -0,0 +1,52 @@
+package missdaisy.autonomous;
+
+import missdaisy.fileio.PropertySet;
+
+/**
+ * Makes one kind of autonomous state from the parameters on its line of an autonomous file.
+ *
+ * Each factory says what type each of its parameters is, so the parser can decode them from the
+ * properties without looking at the state's constructor, and the factory calls the constructor
+ * directly. See StateRegistry for the factory of every state.
+ *
+ * @author jrussell
+ */
+public abstract class StateFactory {
+  /**
+   * The types a state's parameters can have, and how to decode each from the properties. A
+   * parameter that is missing or is not a number decodes as 0.
+   */
+  public enum Parameter {
+    DOUBLE, INT;
+
+    public double decode(PropertySet properties, String key) {
+      double value = properties.getDoubleValue(key, 0.0);
+      // an integer written with a decimal point is truncated, like it always has been
+      return this == INT ? (int) value : value;
+    }
+
+    public String format(double value) {
+      return this == INT ? Integer.toString((int) value) : Double.toString(value);
+    }
+  }
+
+  private final Parameter[] mParameters;
+
+  protected StateFactory(Parameter... parameters) {
+    mParameters = parameters;
+  }
+
+  public int getParameterCount() {
+    return mParameters.length;
+  }
+
+  public Parameter getParameter(int i) {
+    return mParameters[i];
+  }
+
+  /**
+   * @param params The decoded parameters, one for each of getParameterCount(). An INT parameter
+   *        is already a whole number.
+   */
+  public abstract State create(double[] params);
+}
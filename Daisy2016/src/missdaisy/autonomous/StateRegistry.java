@@ -0,0 +1,115 @@
+package missdaisy.autonomous;
+
+import java.util.HashMap;
+import java.util.Map;
+import missdaisy.autonomous.StateFactory.Parameter;
+
+/**
+ * The factory for every state an autonomous file can name, looked up by the state's class name.
+ *
+ * This takes the place of finding the state's class and constructor by reflection, which was slow
+ * enough to notice at the start of autonomous. A new state has to be added here before an
+ * autonomous file can use it.
+ *
+ * @author jrussell
+ */
+public final class StateRegistry {
+  private static final Map<String, StateFactory> mFactories = new HashMap<String, StateFactory>();
+
+  static {
+    register("AltDriveOverDefense", new StateFactory(Parameter.DOUBLE, Parameter.INT) {
+      public State create(double[] params) {
+        return new AltDriveOverDefense(params[0], (int) params[1]);
+      }
+    });
+    register("AutoAimAndShoot", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new AutoAimAndShoot(params[0]);
+      }
+    });
+    register("DeployIntake", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new DeployIntake(params[0]);
+      }
+    });
+    register("DriveDistance", new StateFactory(Parameter.DOUBLE, Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new DriveDistance(params[0], params[1]);
+      }
+    });
+    register("DriveOverDefense",
+        new StateFactory(Parameter.DOUBLE, Parameter.DOUBLE, Parameter.DOUBLE) {
+          public State create(double[] params) {
+            return new DriveOverDefense(params[0], params[1], params[2]);
+          }
+        });
+    register("DrivePath", new StateFactory(Parameter.INT, Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new DrivePath((int) params[0], params[1]);
+      }
+    });
+    register("DriveTime", new StateFactory(Parameter.DOUBLE, Parameter.INT) {
+      public State create(double[] params) {
+        return new DriveTime(params[0], (int) params[1]);
+      }
+    });
+    register("DriveToDefense", new StateFactory(Parameter.DOUBLE, Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new DriveToDefense(params[0], params[1]);
+      }
+    });
+    register("DriveToTarget", new StateFactory(Parameter.DOUBLE, Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new DriveToTarget(params[0], params[1]);
+      }
+    });
+    register("JustShoot", new StateFactory(Parameter.INT) {
+      public State create(double[] params) {
+        return new JustShoot((int) params[0]);
+      }
+    });
+    register("ResetHeading", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new ResetHeading(params[0]);
+      }
+    });
+    register("StartShooter", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new StartShooter(params[0]);
+      }
+    });
+    register("StealBall", new StateFactory() {
+      public State create(double[] params) {
+        return new StealBall();
+      }
+    });
+    register("Turn", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new Turn(params[0]);
+      }
+    });
+    register("TurnToAngle", new StateFactory(Parameter.DOUBLE) {
+      public State create(double[] params) {
+        return new TurnToAngle(params[0]);
+      }
+    });
+    register("WaitForTime", new StateFactory(Parameter.INT) {
+      public State create(double[] params) {
+        return new WaitForTime((int) params[0]);
+      }
+    });
+  }
+
+  private StateRegistry() {}
+
+  private static void register(String name, StateFactory factory) {
+    mFactories.put(name, factory);
+  }
+
+  /**
+   * @return The factory for the state with this class name, or null if there is none
+   */
+  public static StateFactory get(String name) {
+    return mFactories.get(name);
+  }
+}
@@ -1,5 +1,6 @@
 package missdaisy.autonomous;
 
+import missdaisy.hal.Hardware;
 import missdaisy.subsystems.Intake;
 
 /**
@@ -19,7 +20,7 @@ public class StealBall extends State {
 
   public void enter() {
     mIntake.retract();
-    startTime = System.currentTimeMillis();
+    startTime = Hardware.getClock().currentTimeMillis();
   }
 
   @Override
@@ -43,6 +44,6 @@ public class StealBall extends State {
 
   @Override
   public boolean isDone() {
-    return mIntake.seesBall() || (System.currentTimeMillis() - startTime) > 2000;
+    return mIntake.seesBall() || (Hardware.getClock().currentTimeMillis() - startTime) > 2000;
   }
 }
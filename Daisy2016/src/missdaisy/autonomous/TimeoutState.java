@@ -1,5 +1,7 @@
 package missdaisy.autonomous;
 
+import missdaisy.hal.Hardware;
+
 /**
  * Represents a state that should stop running after a certain amount of time. The subclass should
  * call super.enter() if they override the enter() method
@@ -25,7 +27,7 @@ public class TimeoutState extends State {
    */
   @Override
   public void enter() {
-    mStartTime = System.currentTimeMillis();
+    mStartTime = Hardware.getClock().currentTimeMillis();
   }
 
   @Override
@@ -36,7 +38,7 @@ public class TimeoutState extends State {
    */
   @Override
   public boolean isDone() {
-    return System.currentTimeMillis() > mTimeout + mStartTime;
+    return Hardware.getClock().currentTimeMillis() > mTimeout + mStartTime;
   }
 
   public int getTimeout() {
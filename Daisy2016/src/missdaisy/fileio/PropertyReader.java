@@ -48,7 +48,7 @@ public class PropertyReader {
     // We best have at least two tokens ...
     if (lNumTokens < 1) {
       // Error!
-      throw new IOException("Malformed file");
+      throw new IOException("Malformed file at line " + aStateIndex);
     }
 
     // The first token is the autonomous state itself
@@ -64,7 +64,26 @@ public class PropertyReader {
     }
   }
 
-  public void parseAutonomousFile(String aURI) {
+  /**
+   * Removes the states of the last autonomous file parsed, so that none of its lines or
+   * parameters are left behind if this file is missing, shorter or has fewer parameters.
+   */
+  private void clearAutonomousStates() {
+    mPropertySet.removeProperty("AutonomousNumStates");
+    for (int lState = 1; mPropertySet.hasProperty("AutonomousState" + lState); lState++) {
+      mPropertySet.removeProperty("AutonomousState" + lState);
+      for (int paramNum = 1; mPropertySet
+          .hasProperty("AutonomousState" + lState + "Param" + paramNum); paramNum++) {
+        mPropertySet.removeProperty("AutonomousState" + lState + "Param" + paramNum);
+      }
+    }
+  }
+
+  /**
+   * @return Whether the whole file was parsed. If not, AutonomousNumStates is left unset.
+   */
+  public boolean parseAutonomousFile(String aURI) {
+    clearAutonomousStates();
     try {
       // Close any lingering files first
       closeFile();
@@ -74,8 +93,8 @@ public class PropertyReader {
       mFile = new File(aURI);
       if (!mFile.exists()) {
         // fileConnection.create();
-        System.err.println("Could not find specified file!");
-        return;
+        System.err.println("Could not find specified file! " + aURI);
+        return false;
       }
 
       // Make an I/O adapter sandwich to actually get some text out
@@ -95,8 +114,10 @@ public class PropertyReader {
 
       mPropertySet.addProperty("AutonomousNumStates", Integer.toString(lAutonomousState - 1));
       System.out.println("Finished parsing autonomous file.\n");
+      return true;
     } catch (IOException e) {
-      System.err.println("Could not open file connection!");
+      System.err.println("Could not parse " + aURI + ": " + e.getMessage());
+      return false;
     } finally {
       closeFile();
     }
@@ -102,6 +102,15 @@ public class PropertySet {
     }
   }
 
+  /**
+   * Remove a property from the set, if it is there.
+   *
+   * @param aKey the key (name) of the property
+   */
+  public void removeProperty(String aKey) {
+    mNameValueMap.remove(aKey);
+  }
+
   public boolean hasProperty(String aKey) {
     return mNameValueMap.containsKey(aKey);
   }
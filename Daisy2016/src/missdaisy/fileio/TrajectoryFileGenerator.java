@@ -0,0 +1,93 @@
+package missdaisy.fileio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+import missdaisy.loops.controllers.DriveDistanceController;
+import missdaisy.utilities.Trajectory;
+import missdaisy.utilities.TrajectoryFile;
+
+/**
+ * Generates the trajectory files for the moves in autonomous files, to copy to the roboRIO's
+ * autonomous directory with them. Run this on a laptop after changing an autonomous file or the
+ * drive's limits, so the robot never has to generate them itself.
+ *
+ * The trajectories are generated with the limits in the properties file and the drive's time
+ * step, the same ones DriveDistanceController asks the TrajectoryCache for, so they are exactly
+ * the ones the robot would generate, and it will find them by name. Nothing here touches a
+ * subsystem or any hardware, so it runs anywhere Java does.
+ *
+ * Usage: TrajectoryFileGenerator output-directory properties-file
+ *        [autonomous-file | distance:speed]...
+ *
+ * @author jrussell
+ */
+public class TrajectoryFileGenerator {
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: TrajectoryFileGenerator output-directory properties-file "
+          + "[autonomous-file | distance:speed]...");
+      System.exit(1);
+    }
+    File directory = new File(args[0]);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not make " + directory);
+    }
+    new PropertyReader().parseFile(args[1]);
+
+    int written = 0;
+    for (int i = 2; i < args.length; i++) {
+      if (args[i].endsWith(".txt")) {
+        written += writeMoves(new File(args[i]), directory);
+      } else {
+        String[] move = args[i].split(":");
+        writeTrajectory(Double.parseDouble(move[0]), Double.parseDouble(move[1]), directory);
+        written++;
+      }
+    }
+    System.out.println("Wrote " + written + " trajectories to " + directory);
+  }
+
+  /**
+   * Writes the trajectory for each DriveDistance in an autonomous file.
+   *
+   * @return How many were written
+   */
+  private static int writeMoves(File file, File directory) throws IOException {
+    int written = 0;
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        StringTokenizer tokens = new StringTokenizer(line);
+        if (tokens.countTokens() == 3 && tokens.nextToken().equals("DriveDistance")) {
+          writeTrajectory(Double.parseDouble(tokens.nextToken()),
+              Double.parseDouble(tokens.nextToken()), directory);
+          written++;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return written;
+  }
+
+  /**
+   * Saves the trajectory DriveDistanceController would follow for the move to a file in the
+   * directory, named so that the TrajectoryCache will find it there instead of generating it.
+   */
+  private static void writeTrajectory(double distance, double speed, File directory)
+      throws IOException {
+    double maxVelocity = DriveDistanceController.getMaxVelocity(speed);
+    double maxAcceleration = DriveDistanceController.getMaxAcceleration();
+    double maxJerk = DriveDistanceController.getMaxJerk();
+    double dt = DriveDistanceController.getDt();
+    Trajectory trajectory = new Trajectory();
+    trajectory.generate(Math.abs(distance), maxVelocity, maxAcceleration, maxJerk, dt);
+    File file = new File(directory, TrajectoryFile.getFileName(Math.abs(distance), maxVelocity,
+        maxAcceleration, maxJerk, dt));
+    TrajectoryFile.write(trajectory, maxVelocity, maxAcceleration, maxJerk, file);
+  }
+}
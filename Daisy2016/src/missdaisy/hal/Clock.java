@@ -0,0 +1,20 @@
+package missdaisy.hal;
+
+/**
+ * A source of time. Everything that waits for or measures time should read it from here, so that
+ * a simulation can control how fast time passes.
+ * 
+ * @author jrussell
+ */
+public interface Clock {
+  /**
+   * @return A monotonic time, in nanoseconds, with an arbitrary starting point
+   */
+  public long nanoTime();
+
+  /**
+   * @return The current time, in milliseconds. Only differences between two readings are
+   *         meaningful.
+   */
+  public long currentTimeMillis();
+}
@@ -0,0 +1,13 @@
+package missdaisy.hal;
+
+/**
+ * Values published to the robot over the network by another program, like the vision program on
+ * the driver station laptop.
+ * 
+ * @author jrussell
+ */
+public interface DashboardInput {
+  public double getNumber(String key, double defaultValue);
+
+  public boolean getBoolean(String key, boolean defaultValue);
+}
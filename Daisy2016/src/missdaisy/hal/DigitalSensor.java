@@ -0,0 +1,10 @@
+package missdaisy.hal;
+
+/**
+ * An on or off sensor, like a banner sensor or a limit switch.
+ * 
+ * @author jrussell
+ */
+public interface DigitalSensor {
+  public boolean get();
+}
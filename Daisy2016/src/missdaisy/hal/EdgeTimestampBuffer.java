@@ -0,0 +1,46 @@
+package missdaisy.hal;
+
+/**
+ * A ring buffer of edge times. Whatever sees the edges adds them, from any thread, and the robot
+ * code empties it with readEdges(). If it fills up, the oldest edges are dropped.
+ * 
+ * @author jrussell
+ */
+abstract class EdgeTimestampBuffer implements EdgeTimestampInput {
+  private static final int kCapacity = 64;
+
+  private final double[] mEdges = new double[kCapacity];
+  private int mStart = 0;
+  private int mCount = 0;
+
+  /**
+   * @param time When the edge happened, in seconds
+   */
+  public synchronized void addEdge(double time) {
+    mEdges[(mStart + mCount) % kCapacity] = time;
+    if (mCount < kCapacity) {
+      mCount++;
+    } else {
+      mStart = (mStart + 1) % kCapacity;
+    }
+  }
+
+  /**
+   * Forgets any edges that have not been read.
+   */
+  public synchronized void clear() {
+    mStart = 0;
+    mCount = 0;
+  }
+
+  public synchronized int readEdges(double[] timestamps) {
+    int n = Math.min(mCount, timestamps.length);
+    int skip = mCount - n;
+    for (int i = 0; i < n; i++) {
+      timestamps[i] = mEdges[(mStart + skip + i) % kCapacity];
+    }
+    mStart = 0;
+    mCount = 0;
+    return n;
+  }
+}
@@ -0,0 +1,23 @@
+package missdaisy.hal;
+
+/**
+ * A digital input that records the time of every rising edge, so the time between any two pulses
+ * can be measured, not just the last two.
+ * 
+ * @author jrussell
+ */
+public interface EdgeTimestampInput {
+  /**
+   * Copies the times of the edges seen since the last call into the array, oldest first. If more
+   * edges came in than fit, only the newest ones are kept.
+   * 
+   * @param timestamps Where to put the edge times, in seconds
+   * @return How many edge times were copied
+   */
+  public int readEdges(double[] timestamps);
+
+  /**
+   * @return The current time, in seconds, on the same clock as the edge times
+   */
+  public double getTime();
+}
@@ -0,0 +1,20 @@
+package missdaisy.hal;
+
+/**
+ * A quadrature encoder, already scaled to distance.
+ * 
+ * @author jrussell
+ */
+public interface EncoderInput {
+  /**
+   * @return The distance traveled since the last reset
+   */
+  public double getDistance();
+
+  /**
+   * @return The speed, in distance per second
+   */
+  public double getRate();
+
+  public void reset();
+}
@@ -0,0 +1,29 @@
+package missdaisy.hal;
+
+/**
+ * An inertial sensor that measures the robot's orientation, like the navX.
+ * 
+ * @author jrussell
+ */
+public interface GyroInput {
+  /**
+   * @return The heading, in degrees from -180 to 180, increasing clockwise
+   */
+  public double getYaw();
+
+  /**
+   * @return The rotation about the robot's front to back axis, in degrees. The navX is mounted
+   *         sideways on the robot, so this is what we call pitch.
+   */
+  public double getRoll();
+
+  /**
+   * @return How fast the heading is changing, in degrees per second
+   */
+  public double getRate();
+
+  /**
+   * Zeroes the heading.
+   */
+  public void reset();
+}
@@ -0,0 +1,37 @@
+package missdaisy.hal;
+
+/**
+ * Holds the hardware factory that the subsystems build themselves out of. It is the real robot
+ * unless something else is installed before the first subsystem is created.
+ * 
+ * @author jrussell
+ */
+public final class Hardware {
+  private static volatile HardwareFactory factory = null;
+
+  private Hardware() {}
+
+  public static HardwareFactory getFactory() {
+    HardwareFactory current = factory;
+    if (current == null) {
+      synchronized (Hardware.class) {
+        if (factory == null)
+          factory = new RobotHardware();
+        current = factory;
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Replaces the hardware. Subsystems only ask for their hardware once, when they are created, so
+   * this must be called before any of them are.
+   */
+  public static synchronized void setFactory(HardwareFactory newFactory) {
+    factory = newFactory;
+  }
+
+  public static Clock getClock() {
+    return getFactory().getClock();
+  }
+}
@@ -0,0 +1,37 @@
+package missdaisy.hal;
+
+/**
+ * Creates the sensors and actuators that the subsystems and navigation use. There is one
+ * implementation for the real robot, and one that lets a simulation stand in for the robot.
+ * 
+ * Channel numbers are the same ones that are in Constants.
+ * 
+ * @author jrussell
+ */
+public interface HardwareFactory {
+  public MotorOutput getTalon(int channel, boolean inverted);
+
+  public MotorOutput getVictor(int channel, boolean inverted);
+
+  public MotorOutput getCANTalon(int id, boolean inverted);
+
+  public EncoderInput getEncoder(int channelA, int channelB, double distancePerPulse);
+
+  public GyroInput getNavX();
+
+  public PeriodInput getCounter(int channel);
+
+  public EdgeTimestampInput getEdgeTimestamps(int channel);
+
+  public DigitalSensor getDigitalInput(int channel);
+
+  public SolenoidOutput getSolenoid(int channel);
+
+  public SolenoidOutput getDoubleSolenoid(int forwardChannel, int reverseChannel);
+
+  public ServoOutput getServo(int channel);
+
+  public DashboardInput getDashboard();
+
+  public Clock getClock();
+}
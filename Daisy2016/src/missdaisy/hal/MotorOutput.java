@@ -0,0 +1,24 @@
+package missdaisy.hal;
+
+/**
+ * A speed controller driving a motor.
+ * 
+ * @author jrussell
+ */
+public interface MotorOutput {
+  /**
+   * @param speed A value between -1.0 and 1.0, representing full reverse and full forward
+   */
+  public void set(double speed);
+
+  /**
+   * @return The last value given to set()
+   */
+  public double get();
+
+  /**
+   * @return The current through the motor, in amps, or 0.0 if the speed controller can't measure
+   *         it
+   */
+  public double getOutputCurrent();
+}
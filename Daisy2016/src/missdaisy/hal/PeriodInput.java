@@ -0,0 +1,13 @@
+package missdaisy.hal;
+
+/**
+ * A counter that measures the time between pulses on a digital input.
+ * 
+ * @author jrussell
+ */
+public interface PeriodInput {
+  /**
+   * @return The time between the last two pulses, in seconds
+   */
+  public double getPeriod();
+}
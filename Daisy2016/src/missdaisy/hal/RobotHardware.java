@@ -0,0 +1,221 @@
+package missdaisy.hal;
+
+import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.wpilibj.CANTalon;
+import edu.wpi.first.wpilibj.Counter;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.InterruptHandlerFunction;
+import edu.wpi.first.wpilibj.SPI;
+import edu.wpi.first.wpilibj.Servo;
+import edu.wpi.first.wpilibj.Solenoid;
+import edu.wpi.first.wpilibj.SpeedController;
+import edu.wpi.first.wpilibj.Talon;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.Victor;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * The hardware on the real robot, built out of WPILib objects.
+ * 
+ * @author jrussell
+ */
+public class RobotHardware implements HardwareFactory {
+  private final Clock mClock = new SystemClock();
+  private final DashboardInput mDashboard = new DashboardInput() {
+    public double getNumber(String key, double defaultValue) {
+      return SmartDashboard.getNumber(key, defaultValue);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+      return SmartDashboard.getBoolean(key, defaultValue);
+    }
+  };
+
+  public MotorOutput getTalon(int channel, boolean inverted) {
+    return new PWMMotor(new Talon(channel), inverted);
+  }
+
+  public MotorOutput getVictor(int channel, boolean inverted) {
+    return new PWMMotor(new Victor(channel), inverted);
+  }
+
+  public MotorOutput getCANTalon(int id, boolean inverted) {
+    final CANTalon talon = new CANTalon(id);
+    talon.setInverted(inverted);
+    return new MotorOutput() {
+      public void set(double speed) {
+        talon.set(speed);
+      }
+
+      public double get() {
+        return talon.get();
+      }
+
+      public double getOutputCurrent() {
+        return talon.getOutputCurrent();
+      }
+    };
+  }
+
+  public EncoderInput getEncoder(int channelA, int channelB, double distancePerPulse) {
+    final Encoder encoder = new Encoder(channelA, channelB);
+    encoder.setDistancePerPulse(distancePerPulse);
+    return new EncoderInput() {
+      public double getDistance() {
+        return encoder.getDistance();
+      }
+
+      public double getRate() {
+        return encoder.getRate();
+      }
+
+      public void reset() {
+        encoder.reset();
+      }
+    };
+  }
+
+  public GyroInput getNavX() {
+    AHRS navX = null;
+    try {
+      /* Communicate w/navX MXP via the MXP SPI Bus. */
+      /* Alternatively: I2C.Port.kMXP, SerialPort.Port.kMXP or SerialPort.Port.kUSB */
+      /* See http://navx-mxp.kauailabs.com/guidance/selecting-an-interface/ for details. */
+      navX = new AHRS(SPI.Port.kMXP);
+    } catch (RuntimeException ex) {
+      DriverStation.reportError("Error instantiating navX MXP:  " + ex.getMessage(), true);
+    }
+    final AHRS gyro = navX;
+    return new GyroInput() {
+      public double getYaw() {
+        return gyro.getYaw();
+      }
+
+      public double getRoll() {
+        return gyro.getRoll();
+      }
+
+      public double getRate() {
+        return gyro.getRate();
+      }
+
+      public void reset() {
+        gyro.reset();
+      }
+    };
+  }
+
+  public PeriodInput getCounter(int channel) {
+    final Counter counter = new Counter(channel);
+    return new PeriodInput() {
+      public double getPeriod() {
+        return counter.getPeriod();
+      }
+    };
+  }
+
+  /**
+   * The FPGA timestamps each rising edge, and an interrupt handler copies the timestamps into a
+   * ring buffer for the robot code to read. This takes the digital input for itself, so it cannot
+   * share a channel with a counter.
+   */
+  public EdgeTimestampInput getEdgeTimestamps(int channel) {
+    final DigitalInput input = new DigitalInput(channel);
+    final EdgeTimestampBuffer buffer = new EdgeTimestampBuffer() {
+      public double getTime() {
+        return Timer.getFPGATimestamp();
+      }
+    };
+    input.setUpSourceEdge(true, false);
+    input.requestInterrupts(new InterruptHandlerFunction<Object>() {
+      public void interruptFired(int interruptAssertedMask, Object param) {
+        buffer.addEdge(input.readRisingTimestamp());
+      }
+    });
+    input.enableInterrupts();
+    return buffer;
+  }
+
+  public DigitalSensor getDigitalInput(int channel) {
+    final DigitalInput input = new DigitalInput(channel);
+    return new DigitalSensor() {
+      public boolean get() {
+        return input.get();
+      }
+    };
+  }
+
+  public SolenoidOutput getSolenoid(int channel) {
+    final Solenoid solenoid = new Solenoid(channel);
+    return new SolenoidOutput() {
+      public void set(boolean on) {
+        solenoid.set(on);
+      }
+
+      public boolean get() {
+        return solenoid.get();
+      }
+    };
+  }
+
+  public SolenoidOutput getDoubleSolenoid(int forwardChannel, int reverseChannel) {
+    final DoubleSolenoid solenoid = new DoubleSolenoid(forwardChannel, reverseChannel);
+    return new SolenoidOutput() {
+      public void set(boolean on) {
+        solenoid.set(on ? DoubleSolenoid.Value.kForward : DoubleSolenoid.Value.kReverse);
+      }
+
+      public boolean get() {
+        return solenoid.get() == DoubleSolenoid.Value.kForward;
+      }
+    };
+  }
+
+  public ServoOutput getServo(int channel) {
+    final Servo servo = new Servo(channel);
+    return new ServoOutput() {
+      public void setAngle(double degrees) {
+        servo.setAngle(degrees);
+      }
+
+      public double getAngle() {
+        return servo.getAngle();
+      }
+    };
+  }
+
+  public DashboardInput getDashboard() {
+    return mDashboard;
+  }
+
+  public Clock getClock() {
+    return mClock;
+  }
+
+  /**
+   * Any of the PWM speed controllers. None of them can measure current.
+   */
+  private static class PWMMotor implements MotorOutput {
+    private final SpeedController mController;
+
+    private PWMMotor(SpeedController controller, boolean inverted) {
+      mController = controller;
+      mController.setInverted(inverted);
+    }
+
+    public void set(double speed) {
+      mController.set(speed);
+    }
+
+    public double get() {
+      return mController.get();
+    }
+
+    public double getOutputCurrent() {
+      return 0.0;
+    }
+  }
+}
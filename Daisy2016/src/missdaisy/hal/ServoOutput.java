@@ -0,0 +1,15 @@
+package missdaisy.hal;
+
+/**
+ * A hobby servo.
+ * 
+ * @author jrussell
+ */
+public interface ServoOutput {
+  /**
+   * @param degrees The angle to move to
+   */
+  public void setAngle(double degrees);
+
+  public double getAngle();
+}
@@ -0,0 +1,26 @@
+package missdaisy.hal;
+
+/**
+ * A clock that only moves when it is told to, so a simulation can run as fast as the CPU allows
+ * and always get the same result.
+ * 
+ * It starts at one second rather than zero, because some of the autonomous states treat a start
+ * time of zero as "not started yet".
+ * 
+ * @author jrussell
+ */
+public class SimulatedClock implements Clock {
+  private volatile long mNanos = 1000000000L;
+
+  public long nanoTime() {
+    return mNanos;
+  }
+
+  public long currentTimeMillis() {
+    return mNanos / 1000000L;
+  }
+
+  public synchronized void advance(long nanos) {
+    mNanos += nanos;
+  }
+}
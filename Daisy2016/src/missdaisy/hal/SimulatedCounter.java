@@ -0,0 +1,21 @@
+package missdaisy.hal;
+
+/**
+ * A period counter in a simulation.
+ * 
+ * @author jrussell
+ */
+public class SimulatedCounter implements PeriodInput {
+  private volatile double mPeriod = Double.POSITIVE_INFINITY;
+
+  /**
+   * @param seconds The time between the last two pulses
+   */
+  public void setPeriod(double seconds) {
+    mPeriod = seconds;
+  }
+
+  public double getPeriod() {
+    return mPeriod;
+  }
+}
@@ -0,0 +1,38 @@
+package missdaisy.hal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Network values in a simulation, set by whatever is standing in for the program that would
+ * normally publish them.
+ * 
+ * @author jrussell
+ */
+public class SimulatedDashboard implements DashboardInput {
+  private final Map<String, Double> mNumbers = new HashMap<String, Double>();
+  private final Map<String, Boolean> mBooleans = new HashMap<String, Boolean>();
+
+  public synchronized void putNumber(String key, double value) {
+    mNumbers.put(key, value);
+  }
+
+  public synchronized void putBoolean(String key, boolean value) {
+    mBooleans.put(key, value);
+  }
+
+  public synchronized double getNumber(String key, double defaultValue) {
+    Double value = mNumbers.get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  public synchronized boolean getBoolean(String key, boolean defaultValue) {
+    Boolean value = mBooleans.get(key);
+    return value == null ? defaultValue : value;
+  }
+
+  public synchronized void clear() {
+    mNumbers.clear();
+    mBooleans.clear();
+  }
+}
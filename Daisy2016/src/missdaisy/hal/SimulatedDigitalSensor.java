@@ -0,0 +1,18 @@
+package missdaisy.hal;
+
+/**
+ * A digital input in a simulation.
+ * 
+ * @author jrussell
+ */
+public class SimulatedDigitalSensor implements DigitalSensor {
+  private volatile boolean mValue;
+
+  public void set(boolean value) {
+    mValue = value;
+  }
+
+  public boolean get() {
+    return mValue;
+  }
+}
@@ -0,0 +1,19 @@
+package missdaisy.hal;
+
+/**
+ * Edge timestamps in a simulation. The simulation adds each edge as it happens with addEdge(), and
+ * keeps the time up to date.
+ * 
+ * @author jrussell
+ */
+public class SimulatedEdgeTimestamps extends EdgeTimestampBuffer {
+  private volatile double mTime = 0.0;
+
+  public void setTime(double seconds) {
+    mTime = seconds;
+  }
+
+  public double getTime() {
+    return mTime;
+  }
+}
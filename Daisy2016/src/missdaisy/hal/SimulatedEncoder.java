@@ -0,0 +1,40 @@
+package missdaisy.hal;
+
+/**
+ * An encoder in a simulation. The simulation sets the total distance the shaft has turned, and
+ * the robot code sees it relative to the last reset, quantized to whole pulses.
+ * 
+ * @author jrussell
+ */
+public class SimulatedEncoder implements EncoderInput {
+  private final double mDistancePerPulse;
+  private volatile double mDistance;
+  private volatile double mRate;
+  private volatile double mOffset;
+
+  public SimulatedEncoder(double distancePerPulse) {
+    mDistancePerPulse = distancePerPulse;
+  }
+
+  /**
+   * @param distance The total distance the shaft has turned since the simulation started
+   * @param rate The shaft's speed, in distance per second
+   */
+  public void setState(double distance, double rate) {
+    mDistance = distance;
+    mRate = rate;
+  }
+
+  public double getDistance() {
+    double pulses = Math.floor((mDistance - mOffset) / mDistancePerPulse);
+    return pulses * mDistancePerPulse;
+  }
+
+  public double getRate() {
+    return mRate;
+  }
+
+  public void reset() {
+    mOffset = mDistance;
+  }
+}
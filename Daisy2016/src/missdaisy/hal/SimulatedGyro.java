@@ -0,0 +1,43 @@
+package missdaisy.hal;
+
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * A navX in a simulation. The simulation sets the robot's true heading, and the robot code sees it
+ * relative to the last reset.
+ * 
+ * @author jrussell
+ */
+public class SimulatedGyro implements GyroInput {
+  private volatile double mHeading;
+  private volatile double mRoll;
+  private volatile double mRate;
+  private volatile double mOffset;
+
+  /**
+   * @param heading The robot's heading, in degrees increasing clockwise
+   * @param roll The navX's roll (the robot's pitch), in degrees
+   * @param rate The turn rate, in degrees per second
+   */
+  public void setState(double heading, double roll, double rate) {
+    mHeading = heading;
+    mRoll = roll;
+    mRate = rate;
+  }
+
+  public double getYaw() {
+    return DaisyMath.boundAngleNeg180to180Degrees(mHeading - mOffset);
+  }
+
+  public double getRoll() {
+    return mRoll;
+  }
+
+  public double getRate() {
+    return mRate;
+  }
+
+  public void reset() {
+    mOffset = mHeading;
+  }
+}
@@ -0,0 +1,169 @@
+package missdaisy.hal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hardware for running the robot code without a robot. Every device is created the first time it
+ * is asked for, either by a subsystem or by the simulation, and after that both get the same one,
+ * so the simulation can read the motors and drive the sensors that the robot code is using.
+ * 
+ * @author jrussell
+ */
+public class SimulatedHardware implements HardwareFactory {
+  private final Map<Integer, SimulatedMotor> mPWMs = new HashMap<Integer, SimulatedMotor>();
+  private final Map<Integer, SimulatedMotor> mCANs = new HashMap<Integer, SimulatedMotor>();
+  private final Map<Integer, SimulatedEncoder> mEncoders =
+      new HashMap<Integer, SimulatedEncoder>();
+  private final Map<Integer, SimulatedCounter> mCounters =
+      new HashMap<Integer, SimulatedCounter>();
+  private final Map<Integer, SimulatedEdgeTimestamps> mEdgeTimestamps =
+      new HashMap<Integer, SimulatedEdgeTimestamps>();
+  private final Map<Integer, SimulatedDigitalSensor> mDigitalInputs =
+      new HashMap<Integer, SimulatedDigitalSensor>();
+  private final Map<Integer, SimulatedSolenoid> mSolenoids =
+      new HashMap<Integer, SimulatedSolenoid>();
+  private final Map<Integer, SimulatedServo> mServos = new HashMap<Integer, SimulatedServo>();
+  private final SimulatedGyro mGyro = new SimulatedGyro();
+  private final SimulatedClock mClock = new SimulatedClock();
+  private final SimulatedDashboard mDashboard = new SimulatedDashboard();
+
+  public synchronized MotorOutput getTalon(int channel, boolean inverted) {
+    SimulatedMotor motor = getPWM(channel);
+    motor.setInverted(inverted);
+    return motor;
+  }
+
+  public synchronized MotorOutput getVictor(int channel, boolean inverted) {
+    return getTalon(channel, inverted);
+  }
+
+  public synchronized MotorOutput getCANTalon(int id, boolean inverted) {
+    SimulatedMotor motor = getCAN(id);
+    motor.setInverted(inverted);
+    return motor;
+  }
+
+  public synchronized EncoderInput getEncoder(int channelA, int channelB,
+      double distancePerPulse) {
+    SimulatedEncoder encoder = mEncoders.get(channelA);
+    if (encoder == null) {
+      encoder = new SimulatedEncoder(distancePerPulse);
+      mEncoders.put(channelA, encoder);
+    }
+    return encoder;
+  }
+
+  public GyroInput getNavX() {
+    return mGyro;
+  }
+
+  public synchronized PeriodInput getCounter(int channel) {
+    return getSimulatedCounter(channel);
+  }
+
+  public synchronized EdgeTimestampInput getEdgeTimestamps(int channel) {
+    return getSimulatedEdgeTimestamps(channel);
+  }
+
+  public synchronized DigitalSensor getDigitalInput(int channel) {
+    return getSimulatedDigitalInput(channel);
+  }
+
+  public synchronized SolenoidOutput getSolenoid(int channel) {
+    return getSimulatedSolenoid(channel);
+  }
+
+  /**
+   * A double solenoid is looked up by its forward channel.
+   */
+  public synchronized SolenoidOutput getDoubleSolenoid(int forwardChannel, int reverseChannel) {
+    return getSimulatedSolenoid(forwardChannel);
+  }
+
+  public synchronized ServoOutput getServo(int channel) {
+    SimulatedServo servo = mServos.get(channel);
+    if (servo == null) {
+      servo = new SimulatedServo();
+      mServos.put(channel, servo);
+    }
+    return servo;
+  }
+
+  public SimulatedDashboard getDashboard() {
+    return mDashboard;
+  }
+
+  public SimulatedClock getClock() {
+    return mClock;
+  }
+
+  /**
+   * Gets the motor on a PWM channel, so the simulation can see what it is set to.
+   */
+  public synchronized SimulatedMotor getPWM(int channel) {
+    SimulatedMotor motor = mPWMs.get(channel);
+    if (motor == null) {
+      motor = new SimulatedMotor();
+      mPWMs.put(channel, motor);
+    }
+    return motor;
+  }
+
+  public synchronized SimulatedMotor getCAN(int id) {
+    SimulatedMotor motor = mCANs.get(id);
+    if (motor == null) {
+      motor = new SimulatedMotor();
+      mCANs.put(id, motor);
+    }
+    return motor;
+  }
+
+  /**
+   * Gets an encoder by its first channel, so the simulation can set how far it has turned.
+   */
+  public synchronized SimulatedEncoder getSimulatedEncoder(int channelA,
+      double distancePerPulse) {
+    return (SimulatedEncoder) getEncoder(channelA, channelA + 1, distancePerPulse);
+  }
+
+  public SimulatedGyro getSimulatedGyro() {
+    return mGyro;
+  }
+
+  public synchronized SimulatedCounter getSimulatedCounter(int channel) {
+    SimulatedCounter counter = mCounters.get(channel);
+    if (counter == null) {
+      counter = new SimulatedCounter();
+      mCounters.put(channel, counter);
+    }
+    return counter;
+  }
+
+  public synchronized SimulatedEdgeTimestamps getSimulatedEdgeTimestamps(int channel) {
+    SimulatedEdgeTimestamps edges = mEdgeTimestamps.get(channel);
+    if (edges == null) {
+      edges = new SimulatedEdgeTimestamps();
+      mEdgeTimestamps.put(channel, edges);
+    }
+    return edges;
+  }
+
+  public synchronized SimulatedDigitalSensor getSimulatedDigitalInput(int channel) {
+    SimulatedDigitalSensor input = mDigitalInputs.get(channel);
+    if (input == null) {
+      input = new SimulatedDigitalSensor();
+      mDigitalInputs.put(channel, input);
+    }
+    return input;
+  }
+
+  public synchronized SimulatedSolenoid getSimulatedSolenoid(int channel) {
+    SimulatedSolenoid solenoid = mSolenoids.get(channel);
+    if (solenoid == null) {
+      solenoid = new SimulatedSolenoid();
+      mSolenoids.put(channel, solenoid);
+    }
+    return solenoid;
+  }
+}
@@ -0,0 +1,40 @@
+package missdaisy.hal;
+
+/**
+ * A speed controller in a simulation. The robot code sets it, and the simulation reads what it was
+ * set to and tells it how much current the motor is drawing.
+ * 
+ * @author jrussell
+ */
+public class SimulatedMotor implements MotorOutput {
+  private volatile boolean mInverted;
+  private volatile double mSpeed;
+  private volatile double mCurrent;
+
+  public void setInverted(boolean inverted) {
+    mInverted = inverted;
+  }
+
+  public void set(double speed) {
+    mSpeed = Math.max(-1.0, Math.min(1.0, speed));
+  }
+
+  public double get() {
+    return mSpeed;
+  }
+
+  /**
+   * @return What is actually applied to the motor, from -1.0 to 1.0, after inversion
+   */
+  public double getOutput() {
+    return mInverted ? -mSpeed : mSpeed;
+  }
+
+  public double getOutputCurrent() {
+    return mCurrent;
+  }
+
+  public void setOutputCurrent(double amps) {
+    mCurrent = amps;
+  }
+}
@@ -0,0 +1,18 @@
+package missdaisy.hal;
+
+/**
+ * A servo in a simulation, which moves instantly.
+ * 
+ * @author jrussell
+ */
+public class SimulatedServo implements ServoOutput {
+  private volatile double mAngle;
+
+  public void setAngle(double degrees) {
+    mAngle = degrees;
+  }
+
+  public double getAngle() {
+    return mAngle;
+  }
+}
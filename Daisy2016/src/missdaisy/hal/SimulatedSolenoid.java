@@ -0,0 +1,18 @@
+package missdaisy.hal;
+
+/**
+ * A solenoid in a simulation, which just remembers what it was set to.
+ * 
+ * @author jrussell
+ */
+public class SimulatedSolenoid implements SolenoidOutput {
+  private volatile boolean mOn;
+
+  public void set(boolean on) {
+    mOn = on;
+  }
+
+  public boolean get() {
+    return mOn;
+  }
+}
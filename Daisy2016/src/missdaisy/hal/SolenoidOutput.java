@@ -0,0 +1,12 @@
+package missdaisy.hal;
+
+/**
+ * A single or double solenoid. For a double solenoid, true is forward and false is reverse.
+ * 
+ * @author jrussell
+ */
+public interface SolenoidOutput {
+  public void set(boolean on);
+
+  public boolean get();
+}
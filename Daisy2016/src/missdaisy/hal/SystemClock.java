@@ -0,0 +1,16 @@
+package missdaisy.hal;
+
+/**
+ * The real clock.
+ * 
+ * @author jrussell
+ */
+public class SystemClock implements Clock {
+  public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  public long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+}
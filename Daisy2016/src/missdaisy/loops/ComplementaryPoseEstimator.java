@@ -0,0 +1,138 @@
+package missdaisy.loops;
+
+import missdaisy.Constants;
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * Estimates the robot's position by fusing the drive encoders with the navX.
+ * 
+ * The change in heading each cycle is a weighted blend of what the gyro saw and what the
+ * difference between the encoders implies. The gyro gets almost all of the weight, since the
+ * wheels slip when turning, but the encoders keep it honest. While the encoders say the robot is
+ * sitting still, the heading is held and the gyro's drift rate is learned, and that rate is
+ * subtracted from every reading afterwards.
+ * 
+ * Position is integrated along a circular arc rather than a straight line, which is exact when the
+ * robot turns at a constant rate during the cycle, and distance is projected onto the floor using
+ * the pitch so that driving over a defense doesn't count as forward travel.
+ * 
+ * @author jrussell
+ */
+public class ComplementaryPoseEstimator implements PoseEstimator {
+  // How much of each cycle's change in heading comes from the gyro
+  private static final double kGyroWeight = 0.98;
+  // Anything less than this (in inches per cycle) on both sides counts as not moving
+  private static final double kStationaryDistance = 0.005;
+  // How many cycles in a row we must be still before learning the gyro bias
+  private static final int kStationaryCycles = 25;
+  // A gyro rate bigger than this, in degrees per second, means we are turning even if the
+  // wheels aren't (e.g. getting pushed)
+  private static final double kStationaryRate = 10.0;
+  // How long, in seconds, the drift must be measured for before it is trusted
+  private static final double kMinBiasTime = 0.5;
+  // Drift rates bigger than this, in degrees per second, are someone pushing the robot
+  private static final double kMaxBias = 1.0;
+
+  private final double mTrackWidth;
+  private double mX;
+  private double mY;
+  private double mHeading; // radians
+  private double mLastGyroHeading;
+  private double mGyroBias; // degrees per second
+  private int mStationaryCount;
+  private double mDriftSum; // degrees the gyro has drifted since we stopped
+  private double mDriftTime; // seconds
+  private boolean mFirstUpdate = true;
+
+  public ComplementaryPoseEstimator() {
+    this(Constants.Properties.DRIVE_TRACK_WIDTH);
+  }
+
+  /**
+   * @param trackWidth The effective distance between the left and right wheels, in inches
+   */
+  public ComplementaryPoseEstimator(double trackWidth) {
+    mTrackWidth = trackWidth;
+  }
+
+  /**
+   * Resets the position. The learned gyro bias is kept, since the gyro doesn't change.
+   */
+  public void reset(double x, double y, double heading) {
+    mX = x;
+    mY = y;
+    mHeading = Math.toRadians(heading);
+    mStationaryCount = 0;
+    mDriftSum = 0.0;
+    mDriftTime = 0.0;
+    mFirstUpdate = true;
+  }
+
+  public void update(double leftDelta, double rightDelta, double gyroHeading, double gyroRate,
+      double pitch, double dt) {
+    if (mFirstUpdate) {
+      mLastGyroHeading = gyroHeading;
+      mFirstUpdate = false;
+    }
+    double gyroDelta = DaisyMath.getDifferenceInAngleDegrees(mLastGyroHeading, gyroHeading);
+    mLastGyroHeading = gyroHeading;
+
+    double headingDelta;
+    if (Math.abs(leftDelta) < kStationaryDistance && Math.abs(rightDelta) < kStationaryDistance
+        && Math.abs(gyroRate) < kStationaryRate) {
+      // The wheels aren't turning, so anything the gyro sees is drift
+      mStationaryCount++;
+      if (mStationaryCount > kStationaryCycles) {
+        // average over the whole time we've been still, a single reading is mostly noise
+        mDriftSum += gyroDelta;
+        mDriftTime += dt;
+        double drift = mDriftSum / mDriftTime;
+        if (mDriftTime > kMinBiasTime && Math.abs(drift) < kMaxBias) {
+          mGyroBias = drift;
+        }
+      }
+      headingDelta = 0.0;
+    } else {
+      mStationaryCount = 0;
+      mDriftSum = 0.0;
+      mDriftTime = 0.0;
+      // heading increases clockwise, so the left side moving further is a positive turn
+      double encoderDelta = (leftDelta - rightDelta) / mTrackWidth;
+      double gyroDeltaRad = Math.toRadians(gyroDelta - mGyroBias * dt);
+      headingDelta = kGyroWeight * gyroDeltaRad + (1.0 - kGyroWeight) * encoderDelta;
+    }
+
+    double distance = (leftDelta + rightDelta) / 2.0 * Math.cos(Math.toRadians(pitch));
+    double heading = mHeading + headingDelta;
+    if (Math.abs(headingDelta) < 1.0e-6) {
+      // Straight enough that the arc formula would lose precision
+      double midpoint = mHeading + headingDelta / 2.0;
+      mX += distance * Math.cos(midpoint);
+      mY += distance * Math.sin(midpoint);
+    } else {
+      double radius = distance / headingDelta;
+      mX += radius * (Math.sin(heading) - Math.sin(mHeading));
+      mY -= radius * (Math.cos(heading) - Math.cos(mHeading));
+    }
+    mHeading = DaisyMath.boundAngleNegPiToPiRadians(heading);
+  }
+
+  public double getXinInches() {
+    return mX;
+  }
+
+  public double getYinInches() {
+    return mY;
+  }
+
+  public double getHeadingInDegrees() {
+    return DaisyMath.boundAngle0to360Degrees(Math.toDegrees(mHeading));
+  }
+
+  /**
+   * @return The gyro's drift rate, in degrees per second, learned while the robot was still
+   */
+  public double getGyroBias() {
+    return mGyroBias;
+  }
+}
@@ -0,0 +1,51 @@
+package missdaisy.loops;
+
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * The simplest possible pose estimator: each cycle's distance is added in a straight line along
+ * the heading the gyro reports at the end of the cycle. This is how Navigation has always worked,
+ * and it is kept around to compare better estimators against.
+ * 
+ * @author jrussell
+ */
+public class EulerPoseEstimator implements PoseEstimator {
+  private double mX;
+  private double mY;
+  private double mHeading;
+  private double mHeadingOffset;
+  private boolean mFirstUpdate = true;
+
+  public void reset(double x, double y, double heading) {
+    mX = x;
+    mY = y;
+    mHeading = DaisyMath.boundAngle0to360Degrees(heading);
+    mFirstUpdate = true;
+  }
+
+  public void update(double leftDelta, double rightDelta, double gyroHeading, double gyroRate,
+      double pitch, double dt) {
+    if (mFirstUpdate) {
+      // line the gyro up with the heading we were reset to
+      mHeadingOffset = mHeading - gyroHeading;
+      mFirstUpdate = false;
+    }
+    mHeading = DaisyMath.boundAngle0to360Degrees(gyroHeading + mHeadingOffset);
+    double distance = (leftDelta + rightDelta) / 2.0;
+    double headingRad = Math.toRadians(mHeading);
+    mX += distance * Math.cos(headingRad);
+    mY += distance * Math.sin(headingRad);
+  }
+
+  public double getXinInches() {
+    return mX;
+  }
+
+  public double getYinInches() {
+    return mY;
+  }
+
+  public double getHeadingInDegrees() {
+    return mHeading;
+  }
+}
@@ -1,21 +1,22 @@
 package missdaisy.loops;
 
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import missdaisy.Constants;
 import missdaisy.subsystems.DaisySubsystem;
 import missdaisy.subsystems.Drive;
 import missdaisy.subsystems.Intake;
 import missdaisy.subsystems.Shooter;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
+ * Runs navigation and every subsystem's filters and controllers on a dedicated real time thread.
+ * Each of them runs at its own rate, which is a multiple of the fast loop period.
  *
  * @author jrussell
  */
-public class FastLoopTimer extends TimerTask {
+public class FastLoopTimer implements Runnable {
   private static FastLoopTimer instance = null;
-  private Timer timer;
+  private RealTimeLoop loop;
+  private LoopScheduler scheduler;
   private final DaisySubsystem[] subsystems =
       {Drive.getInstance(), Shooter.getInstance(), Intake.getInstance()};
   private final Navigation navigation = Navigation.getInstance();
@@ -27,19 +28,87 @@ public class FastLoopTimer extends TimerTask {
   }
 
   private FastLoopTimer() {
-    timer = new java.util.Timer();
+    long period = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+    scheduler = new LoopScheduler(period);
+    final LoopProfiler profiler = LoopProfiler.getInstance();
+    // navigation goes first, so the controllers see this cycle's position
+    final int navigationStage = profiler.addStage("Navigation.run");
+    scheduler.schedule("Navigation", new Runnable() {
+      public void run() {
+        long start = System.nanoTime();
+        navigation.run();
+        profiler.record(navigationStage, System.nanoTime() - start);
+      }
+    }, navigation.getLoopDivisor(), navigation.getLoopPhase());
+    for (int i = 0; i < subsystems.length; i++) {
+      final DaisySubsystem subsystem = subsystems[i];
+      final String name = subsystem.getClass().getSimpleName();
+      final int inputStage = profiler.addStage(name + ".runInputFilters");
+      final int controllerStage = profiler.addStage(name + ".runCurrentController");
+      final int outputStage = profiler.addStage(name + ".runOutputFilters");
+      scheduler.schedule(name, new Runnable() {
+        public void run() {
+          long start = System.nanoTime();
+          subsystem.runInputFilters();
+          long inputDone = System.nanoTime();
+          subsystem.runCurrentController();
+          long controllerDone = System.nanoTime();
+          subsystem.runOutputFilters();
+          long outputDone = System.nanoTime();
+          profiler.record(inputStage, inputDone - start);
+          profiler.record(controllerStage, controllerDone - inputDone);
+          profiler.record(outputStage, outputDone - controllerDone);
+        }
+      }, subsystem.getLoopDivisor(), subsystem.getLoopPhase());
+    }
+    loop = new RealTimeLoop("FastLoopTimer", this, period, RealTimeLoop.OverrunPolicy.SKIP_MISSED);
   }
 
   public synchronized void start() {
-    timer.scheduleAtFixedRate(this, 0L, Constants.Properties.FAST_LOOP_TIMER_PERIOD);
+    loop.start();
+  }
+
+  public synchronized void stop() {
+    loop.stop();
+  }
+
+  /**
+   * Sets what the loop should do when a cycle runs past the start of the next one.
+   */
+  public void setOverrunPolicy(RealTimeLoop.OverrunPolicy policy) {
+    loop.setOverrunPolicy(policy);
   }
 
+  /**
+   * Runs one base period. Called by the loop thread, or directly to step the robot in a
+   * simulation while the loop is stopped.
+   */
   public void run() {
-    navigation.run();
-    for (int i = 0; i < subsystems.length; i++) {
-      subsystems[i].runInputFilters();
-      subsystems[i].runCurrentController();
-      subsystems[i].runOutputFilters();
+    scheduler.run();
+  }
+
+  /**
+   * Publishes the loop's timing statistics, so we can see if it is actually holding its rate.
+   */
+  public void logToDashboard() {
+    SmartDashboard.putNumber("FastLoopJitterMs", loop.getLastJitterNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopMaxJitterMs", loop.getMaxJitterNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopAvgJitterMs", loop.getAverageJitterNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopExecMs", loop.getLastExecutionNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopMaxExecMs", loop.getMaxExecutionNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopAvgExecMs", loop.getAverageExecutionNanos() / 1.0e6);
+    SmartDashboard.putNumber("FastLoopOverruns", loop.getOverrunCount());
+    SmartDashboard.putNumber("FastLoopMissedDeadlines", loop.getMissedDeadlineCount());
+
+    int[] groups = scheduler.getGroupDivisors();
+    for (int i = 0; i < groups.length; i++) {
+      long periodMs = groups[i] * Constants.Properties.FAST_LOOP_TIMER_PERIOD;
+      SmartDashboard.putNumber("FastLoop" + periodMs + "msGroupCPU",
+          100.0 * scheduler.getGroupBudgetUse(groups[i]));
+    }
+    for (int i = 0; i < scheduler.getNumTasks(); i++) {
+      SmartDashboard.putNumber("FastLoop" + scheduler.getTaskName(i) + "BudgetUse",
+          100.0 * scheduler.getTaskBudgetUse(i));
     }
   }
 }
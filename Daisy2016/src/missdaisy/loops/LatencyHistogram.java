@@ -0,0 +1,111 @@
+package missdaisy.loops;
+
+/**
+ * A histogram of durations, in nanoseconds, with fixed log-linear buckets.
+ *
+ * Each power of two is split into 16 equal buckets, so any recorded value is known to within about
+ * 6%. All storage is allocated up front, and recording a value neither allocates nor locks. A
+ * histogram should only be recorded into from one thread; other threads may read it, and will see
+ * a slightly stale but usable picture.
+ *
+ * @author jrussell
+ */
+public class LatencyHistogram {
+  private static final int kSubBucketBits = 4;
+  private static final int kSubBuckets = 1 << kSubBucketBits;
+  // Values of 2^31 ns (a little over 2 seconds) and up all land in the last bucket
+  private static final int kMaxExponent = 30;
+  private static final int kNumBuckets =
+      kSubBuckets + (kMaxExponent - kSubBucketBits + 1) * kSubBuckets;
+
+  private final long[] mCounts = new long[kNumBuckets];
+  private volatile long mTotalCount = 0;
+  private volatile long mMaxValue = 0;
+
+  /**
+   * Adds one duration to the histogram.
+   *
+   * @param nanos The duration, in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    mCounts[bucketFor(nanos)]++;
+    if (nanos > mMaxValue) {
+      mMaxValue = nanos;
+    }
+    mTotalCount++;
+  }
+
+  public void reset() {
+    for (int i = 0; i < mCounts.length; i++) {
+      mCounts[i] = 0;
+    }
+    mTotalCount = 0;
+    mMaxValue = 0;
+  }
+
+  public long getCount() {
+    return mTotalCount;
+  }
+
+  public long getMax() {
+    return mMaxValue;
+  }
+
+  /**
+   * Finds the value below which the given fraction of the recorded durations fall.
+   *
+   * @param percentile A number between 0.0 and 1.0, e.g. 0.99 for the 99th percentile
+   * @return The upper edge of the bucket holding the percentile, in nanoseconds (never more than
+   *         the largest value recorded)
+   */
+  public long getPercentile(double percentile) {
+    long total = 0;
+    for (int i = 0; i < mCounts.length; i++) {
+      total += mCounts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(percentile * total);
+    if (rank < 1) {
+      rank = 1;
+    }
+    long seen = 0;
+    for (int i = 0; i < mCounts.length; i++) {
+      seen += mCounts[i];
+      if (seen >= rank) {
+        if (i == kNumBuckets - 1) {
+          return mMaxValue;
+        }
+        return Math.min(bucketUpperEdge(i), mMaxValue);
+      }
+    }
+    return mMaxValue;
+  }
+
+  private static int bucketFor(long value) {
+    if (value < kSubBuckets) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    if (exponent > kMaxExponent) {
+      return kNumBuckets - 1;
+    }
+    int subBucket = (int) (value >>> (exponent - kSubBucketBits)) & (kSubBuckets - 1);
+    return kSubBuckets + (exponent - kSubBucketBits) * kSubBuckets + subBucket;
+  }
+
+  private static long bucketUpperEdge(int bucket) {
+    if (bucket < kSubBuckets) {
+      return bucket;
+    }
+    int exponent = (bucket - kSubBuckets) / kSubBuckets + kSubBucketBits;
+    int subBucket = (bucket - kSubBuckets) % kSubBuckets;
+    long width = 1L << (exponent - kSubBucketBits);
+    return (1L << exponent) + (subBucket + 1) * width - 1;
+  }
+}
@@ -0,0 +1,107 @@
+package missdaisy.loops;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * Keeps a latency histogram for each stage of the control loops, so we can see where the loop
+ * budget goes.
+ *
+ * Stages are registered once at startup. After that, recording a duration is just an array
+ * lookup and a histogram update, which neither allocates nor takes a lock, so it is safe to call
+ * from the fast loop. Each stage should only be recorded from one thread.
+ *
+ * @author jrussell
+ */
+public class LoopProfiler {
+  private static LoopProfiler profilerInstance = null;
+  private static final int kMaxStages = 32;
+  // logToDashboard() is called every 20 ms; only publish every half second
+  private static final int kDashboardDecimation = 25;
+
+  private final String[] mStageNames = new String[kMaxStages];
+  private final LatencyHistogram[] mHistograms = new LatencyHistogram[kMaxStages];
+  private int mNumStages = 0;
+  private int mDashboardCounter = 0;
+
+  public static LoopProfiler getInstance() {
+    if (profilerInstance == null)
+      profilerInstance = new LoopProfiler();
+    return profilerInstance;
+  }
+
+  private LoopProfiler() {}
+
+  /**
+   * Registers a stage to be profiled. Must be called before the stage is recorded.
+   *
+   * @param name The name shown on the dashboard and in the table
+   * @return The id to pass to record()
+   */
+  public synchronized int addStage(String name) {
+    if (mNumStages >= kMaxStages) {
+      throw new IllegalStateException("Too many stages in the loop profiler");
+    }
+    mStageNames[mNumStages] = name;
+    mHistograms[mNumStages] = new LatencyHistogram();
+    return mNumStages++;
+  }
+
+  /**
+   * Records how long one run of a stage took.
+   *
+   * @param stage The id returned by addStage()
+   * @param nanos The duration, in nanoseconds
+   */
+  public void record(int stage, long nanos) {
+    mHistograms[stage].record(nanos);
+  }
+
+  /**
+   * Publishes the median, 99th percentile and max of each stage, in microseconds. Only publishes
+   * every few calls to keep the network traffic down.
+   */
+  public void logToDashboard() {
+    if (++mDashboardCounter < kDashboardDecimation) {
+      return;
+    }
+    mDashboardCounter = 0;
+    for (int i = 0; i < mNumStages; i++) {
+      LatencyHistogram histogram = mHistograms[i];
+      SmartDashboard.putNumber(mStageNames[i] + "_p50us", histogram.getPercentile(0.5) / 1000.0);
+      SmartDashboard.putNumber(mStageNames[i] + "_p99us", histogram.getPercentile(0.99) / 1000.0);
+      SmartDashboard.putNumber(mStageNames[i] + "_maxus", histogram.getMax() / 1000.0);
+    }
+  }
+
+  /**
+   * Prints a table of every stage's timing to the console, if anything has been recorded.
+   */
+  public void printTable() {
+    boolean anything = false;
+    for (int i = 0; i < mNumStages; i++) {
+      anything |= mHistograms[i].getCount() > 0;
+    }
+    if (!anything) {
+      return;
+    }
+
+    System.out.println(String.format("%-36s %10s %9s %9s %9s %9s %9s", "Stage (us)", "count", "p50",
+        "p90", "p99", "p99.9", "max"));
+    for (int i = 0; i < mNumStages; i++) {
+      LatencyHistogram histogram = mHistograms[i];
+      System.out.println(String.format("%-36s %10d %9.1f %9.1f %9.1f %9.1f %9.1f", mStageNames[i],
+          histogram.getCount(), histogram.getPercentile(0.5) / 1000.0,
+          histogram.getPercentile(0.9) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+          histogram.getPercentile(0.999) / 1000.0, histogram.getMax() / 1000.0));
+    }
+  }
+
+  /**
+   * Clears every stage's histogram.
+   */
+  public void reset() {
+    for (int i = 0; i < mNumStages; i++) {
+      mHistograms[i].reset();
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package missdaisy.loops;
+
+import java.util.Arrays;
+
+/**
+ * Runs a set of periodic tasks at different rates off of a single base period.
+ *
+ * Every task runs once every <i>divisor</i> base periods, on the ticks where
+ * <code>tick % divisor == phase</code>. Divisors must be powers of two so that all rates are
+ * harmonics of each other: a slow task always lands on the same ticks, and its phase can be used
+ * to keep it off the ticks where the critical loops run. Tasks that run on the same tick run in
+ * the order they were scheduled.
+ *
+ * The time spent in each task is accumulated so that the CPU budget used by each rate group (all
+ * tasks that share a divisor) can be reported.
+ *
+ * @author jrussell
+ */
+public class LoopScheduler implements Runnable {
+  private static final int kMaxTasks = 16;
+
+  private final long mBasePeriodNanos;
+  private final String[] mNames = new String[kMaxTasks];
+  private final Runnable[] mTasks = new Runnable[kMaxTasks];
+  private final int[] mDivisors = new int[kMaxTasks];
+  private final int[] mPhases = new int[kMaxTasks];
+  private final long[] mExecutionNanos = new long[kMaxTasks];
+  private int mNumTasks = 0;
+  private long mTick = 0;
+
+  /**
+   * @param basePeriodNanos The period, in nanoseconds, that run() is called at
+   */
+  public LoopScheduler(long basePeriodNanos) {
+    mBasePeriodNanos = basePeriodNanos;
+  }
+
+  /**
+   * Adds a task to the schedule. Must be called before the loop is started.
+   *
+   * @param name A name for the task, for logging
+   * @param task What to run
+   * @param divisor The number of base periods between runs. Must be a power of two.
+   * @param phase Which tick, from 0 to divisor - 1, the task runs on
+   */
+  public synchronized void schedule(String name, Runnable task, int divisor, int phase) {
+    if (divisor < 1 || (divisor & (divisor - 1)) != 0) {
+      throw new IllegalArgumentException(name + ": loop divisor must be a power of two");
+    }
+    if (phase < 0 || phase >= divisor) {
+      throw new IllegalArgumentException(name + ": loop phase must be between 0 and divisor - 1");
+    }
+    if (mNumTasks >= kMaxTasks) {
+      throw new IllegalStateException("Too many tasks in the loop scheduler");
+    }
+    mNames[mNumTasks] = name;
+    mTasks[mNumTasks] = task;
+    mDivisors[mNumTasks] = divisor;
+    mPhases[mNumTasks] = phase;
+    mNumTasks++;
+  }
+
+  /**
+   * Runs every task that is due on this tick.
+   */
+  @Override
+  public void run() {
+    for (int i = 0; i < mNumTasks; i++) {
+      if ((mTick & (mDivisors[i] - 1)) == mPhases[i]) {
+        long start = System.nanoTime();
+        mTasks[i].run();
+        mExecutionNanos[i] += System.nanoTime() - start;
+      }
+    }
+    mTick++;
+  }
+
+  public int getNumTasks() {
+    return mNumTasks;
+  }
+
+  public String getTaskName(int task) {
+    return mNames[task];
+  }
+
+  /**
+   * @return The period, in milliseconds, that the given task runs at
+   */
+  public double getTaskPeriodMs(int task) {
+    return mDivisors[task] * mBasePeriodNanos / 1.0e6;
+  }
+
+  /**
+   * @return The fraction of each of the task's own periods spent running it, on average
+   */
+  public double getTaskBudgetUse(int task) {
+    long runs = mTick / mDivisors[task];
+    if (runs == 0) {
+      return 0.0;
+    }
+    return (double) mExecutionNanos[task] / (runs * mDivisors[task] * mBasePeriodNanos);
+  }
+
+  /**
+   * The share of the CPU used by every task that runs at the given divisor. A value of 0.1 means
+   * the group's tasks were running for 10% of the time.
+   *
+   * @param divisor The rate group, as a number of base periods
+   * @return The fraction of wall time spent in the rate group
+   */
+  public double getGroupBudgetUse(int divisor) {
+    if (mTick == 0) {
+      return 0.0;
+    }
+    long nanos = 0;
+    for (int i = 0; i < mNumTasks; i++) {
+      if (mDivisors[i] == divisor) {
+        nanos += mExecutionNanos[i];
+      }
+    }
+    return (double) nanos / (mTick * mBasePeriodNanos);
+  }
+
+  /**
+   * @return The distinct divisors that have tasks scheduled, in the order they were first used
+   */
+  public int[] getGroupDivisors() {
+    int[] groups = new int[mNumTasks];
+    int numGroups = 0;
+    for (int i = 0; i < mNumTasks; i++) {
+      boolean seen = false;
+      for (int j = 0; j < numGroups; j++) {
+        if (groups[j] == mDivisors[i]) {
+          seen = true;
+        }
+      }
+      if (!seen) {
+        groups[numGroups++] = mDivisors[i];
+      }
+    }
+    return Arrays.copyOf(groups, numGroups);
+  }
+}
@@ -2,16 +2,22 @@ package missdaisy.loops;
 
 import missdaisy.Constants;
 import missdaisy.Vision;
+import missdaisy.hal.EncoderInput;
+import missdaisy.hal.GyroInput;
+import missdaisy.hal.Hardware;
+import missdaisy.utilities.BiquadFilter;
 import missdaisy.utilities.DaisyMath;
-import com.kauailabs.navx.frc.AHRS;
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Encoder;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-import edu.wpi.first.wpilibj.SPI;
 
 /**
  * The representation of the location, heading (angle), speed, and distance (traveled) of the robot
  * 
+ * Every cycle, run() reads the sensors and publishes a new immutable Pose. The getters all read
+ * from the latest Pose, so they never block on the fast loop, and getPose() can be used to read
+ * several values that are guaranteed to come from the same cycle. The position itself comes from
+ * a PoseEstimator, which can be swapped out with setPoseEstimator(). The published pitch is low
+ * pass filtered to take out vibration.
+ * 
  * @author jrussell
  */
 public class Navigation {
@@ -19,21 +25,25 @@ public class Navigation {
   private Vision mVision;
 
   // Sensors
-  private Encoder mLeftDriveEncoder;
-  private Encoder mRightDriveEncoder;
+  private EncoderInput mLeftDriveEncoder;
+  private EncoderInput mRightDriveEncoder;
   // private ADXL345_I2C mGyro;
-  private AHRS mGyro;
+  private GyroInput mGyro;
 
   // Navigational state
-  private double x = 0.0; // positive from driver facing center of the field
-  private double y = 0.0; // positive from driver looking left
-  private double theta0 = 0.0; // anti-clockwise from center of field to left
-  private double thetaLast = 0.0;
+  private PoseEstimator mEstimator = new ComplementaryPoseEstimator();
   private double leftEncoderLast = 0.0;
   private double rightEncoderLast = 0.0;
   private double mApproxTargetAngle = 0.0;
   private double pitchLast = 0.0;
   private double pitch0 = 0.0;
+  private final BiquadFilter mPitchFilter;
+  private double mLastTimestamp = getTimestamp();
+
+  // The latest snapshot of all of the above, published once per cycle
+  private volatile Pose mPose = new Pose(0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0);
+  // About two seconds of past positions, to line up vision results with where we were
+  private final PoseHistory mHistory = new PoseHistory(200);
 
   public static Navigation getInstance() {
     if (navigationInstance == null)
@@ -42,23 +52,18 @@ public class Navigation {
   }
 
   private Navigation() {
-    mLeftDriveEncoder = new Encoder(Constants.DigitalInputs.DRIVE_LEFT_ENCODER_1,
-        Constants.DigitalInputs.DRIVE_LEFT_ENCODER_2);
-    mRightDriveEncoder = new Encoder(Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_1,
-        Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_2);
-    mLeftDriveEncoder.setDistancePerPulse(Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
-    mRightDriveEncoder.setDistancePerPulse(Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
+    mLeftDriveEncoder = Hardware.getFactory().getEncoder(
+        Constants.DigitalInputs.DRIVE_LEFT_ENCODER_1, Constants.DigitalInputs.DRIVE_LEFT_ENCODER_2,
+        Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
+    mRightDriveEncoder = Hardware.getFactory().getEncoder(
+        Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_1,
+        Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_2,
+        Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
     mVision = Vision.getInstance();
-
-    try {
-      /* Communicate w/navX MXP via the MXP SPI Bus. */
-      /* Alternatively: I2C.Port.kMXP, SerialPort.Port.kMXP or SerialPort.Port.kUSB */
-      /* See http://navx-mxp.kauailabs.com/guidance/selecting-an-interface/ for details. */
-      mGyro = new AHRS(SPI.Port.kMXP);
-
-    } catch (RuntimeException ex) {
-      DriverStation.reportError("Error instantiating navX MXP:  " + ex.getMessage(), true);
-    }
+    mGyro = Hardware.getFactory().getNavX();
+    double sampleRate = 1000.0 / (Constants.Properties.FAST_LOOP_TIMER_PERIOD * getLoopDivisor());
+    mPitchFilter = BiquadFilter.butterworthLowPass(2,
+        Constants.Properties.NAVIGATION_PITCH_FILTER_CUTOFF, sampleRate);
   }
 
   /**
@@ -71,20 +76,75 @@ public class Navigation {
   public synchronized void resetRobotPosition(double x, double y, double theta, double pitch) {
     mApproxTargetAngle =
         DaisyMath.boundAngle0to360Degrees((mApproxTargetAngle - getHeadingInDegrees()) + theta);
-    this.x = x;
-    this.y = y;
-    theta0 = theta;
-    thetaLast = theta;
+    mEstimator.reset(x, y, theta);
     pitchLast = pitch;
     pitch0 = pitch;
+    mPitchFilter.reset(DaisyMath.boundAngleNeg180to180Degrees(pitch));
     mLeftDriveEncoder.reset();
     mRightDriveEncoder.reset();
+    leftEncoderLast = 0.0;
+    rightEncoderLast = 0.0;
     mGyro.reset();
+    mPose = new Pose(x, y, DaisyMath.boundAngle0to360Degrees(theta),
+        DaisyMath.boundAngle0to360Degrees(pitch), 0.0, 0.0, 0.0, 0.0, getTimestamp());
+    mHistory.clear();
   }
 
-  public void resetEncoders() {
+  /**
+   * Zeroes the drive encoders. The new distances are published right away, so anyone that reads
+   * them after this returns will see zero rather than last cycle's values.
+   */
+  public synchronized void resetEncoders() {
     mLeftDriveEncoder.reset();
     mRightDriveEncoder.reset();
+    leftEncoderLast = 0.0;
+    rightEncoderLast = 0.0;
+    Pose pose = mPose;
+    mPose = new Pose(pose.getXinInches(), pose.getYinInches(), pose.getHeadingInDegrees(),
+        pose.getPitchInDegrees(), 0.0, 0.0, pose.getLeftEncoderRate(), pose.getRightEncoderRate(),
+        getTimestamp());
+  }
+
+  /**
+   * Replaces the pose estimator, starting it from the robot's current position.
+   */
+  public synchronized void setPoseEstimator(PoseEstimator estimator) {
+    Pose pose = mPose;
+    estimator.reset(pose.getXinInches(), pose.getYinInches(), pose.getHeadingInDegrees());
+    mEstimator = estimator;
+  }
+
+  /**
+   * @return The latest snapshot of the robot's position and sensors
+   */
+  public Pose getPose() {
+    return mPose;
+  }
+
+  /**
+   * @return The past few seconds of the robot's positions
+   */
+  public PoseHistory getHistory() {
+    return mHistory;
+  }
+
+  /**
+   * Turns the latest vision result into the heading the robot should turn to now.
+   * 
+   * The vision azimuth is relative to where the robot was pointing when the frame was captured,
+   * which can be a long time ago if we were turning fast. If the result is tagged with its capture
+   * time, add it to the heading the robot had at that time. Otherwise, fall back to the absolute
+   * azimuth that was computed off board.
+   * 
+   * @return The heading of the target, in degrees from 0 to 360
+   */
+  public double getVisionTargetHeading() {
+    double captureTime = mVision.getCaptureTimestamp();
+    if (mHistory.contains(captureTime)) {
+      return DaisyMath.boundAngle0to360Degrees(
+          mHistory.getHeadingAt(captureTime) + mVision.getAzimuthOffset());
+    }
+    return mVision.getAzimuth();
   }
 
   public synchronized double getApproxTargetAngle() {
@@ -98,26 +158,26 @@ public class Navigation {
   /**
    * @return the current x coordinate of the robot
    */
-  public synchronized double getXinInches() {
-    return x;
+  public double getXinInches() {
+    return mPose.getXinInches();
   }
 
   /**
    * @return the current y coordinate of the robot
    */
-  public synchronized double getYinInches() {
-    return y;
+  public double getYinInches() {
+    return mPose.getYinInches();
   }
 
   /**
    * @return the current angle of the robot
    */
   public double getHeadingInDegrees() {
-    return DaisyMath.boundAngle0to360Degrees(thetaLast + theta0);
+    return mPose.getHeadingInDegrees();
   }
 
   public double getPitchInDegrees() {
-    return DaisyMath.boundAngle0to360Degrees(pitchLast + pitch0);
+    return mPose.getPitchInDegrees();
   }
 
   public synchronized void resetPitch() {
@@ -126,51 +186,54 @@ public class Navigation {
 
   public synchronized void run() {
     if (mVision.seesTarget()) {
-      setApproxTargetAngle(mVision.getAzimuth());
+      setApproxTargetAngle(getVisionTargetHeading());
     }
     // Read sensors
+    // the right side is mounted backwards, so flip it to make forward positive on both sides
     double left = mLeftDriveEncoder.getDistance();
-    double right = mRightDriveEncoder.getDistance();
+    double right = -1.0 * mRightDriveEncoder.getDistance();
     // getRoll = the robots pitch
     // getPitch = the robots roll
-    double yaw = DaisyMath.boundAngle0to360Degrees(mGyro.getYaw() + theta0);
-    double pitch = DaisyMath.boundAngle0to360Degrees(mGyro.getRoll() + pitch0);
-
-    // the distance the drive has gone since last cycle
-    double distance = ((left + right) - (leftEncoderLast + rightEncoderLast)) / 2.0;
-    /*
-     * if( (left-leftEncoderLast == 0.0) && (right-rightEncoderLast == 0.0) ) { // Fuse encoders
-     * with gyro to prevent drift gyro.resetYaw(); theta0 = DaisyMath.boundAngle0to360Degrees(theta0
-     * + thetaLast); theta = thetaLast = 0.0; }
-     */
-    double thetaRad = Math.toRadians(yaw);
-    // calculate the current x + y coordinates, based on the distance traveled the angle turned
-    x += distance * Math.cos(thetaRad);
-    y += distance * Math.sin(thetaRad);
+    double signedPitch = DaisyMath.boundAngleNeg180to180Degrees(mGyro.getRoll() + pitch0);
+    double pitch = DaisyMath.boundAngle0to360Degrees(mPitchFilter.filter(signedPitch));
+    double timestamp = getTimestamp();
+
+    // the estimator wants the raw pitch, the filtered one lags behind the chassis
+    mEstimator.update(left - leftEncoderLast, right - rightEncoderLast, mGyro.getYaw(),
+        mGyro.getRate(), signedPitch, timestamp - mLastTimestamp);
+    double x = mEstimator.getXinInches();
+    double y = mEstimator.getYinInches();
+    double yaw = mEstimator.getHeadingInDegrees();
 
     leftEncoderLast = left;
     rightEncoderLast = right;
-    thetaLast = yaw;
     pitchLast = pitch;
+    mLastTimestamp = timestamp;
 
+    mPose = new Pose(x, y, yaw, pitch, left, right, mLeftDriveEncoder.getRate(),
+        mRightDriveEncoder.getRate(), timestamp);
+    mHistory.add(timestamp, x, y, yaw);
+
+    // the vision program echoes the timestamp back with its results
+    SmartDashboard.putNumber("headingTimestamp", timestamp);
     SmartDashboard.putNumber("heading", yaw);
     SmartDashboard.putNumber("pitch", pitch);
   }
 
   public double getLeftEncoderDistance() {
-    return mLeftDriveEncoder.getDistance();
+    return mPose.getLeftEncoderDistance();
   }
 
   public double getRightEncoderDistance() {
-    return -1.0 * mRightDriveEncoder.getDistance();
+    return mPose.getRightEncoderDistance();
   }
 
   public double getLeftEncoderRate() {
-    return mLeftDriveEncoder.getRate();
+    return mPose.getLeftEncoderRate();
   }
 
   public double getRightEncoderRate() {
-    return mRightDriveEncoder.getRate();
+    return mPose.getRightEncoderRate();
   }
 
   /**
@@ -179,8 +242,7 @@ public class Navigation {
    * @return the speed in units/sec, defined by the setDistancePerpulse.
    */
   public double getAverageEncoderRate() {
-    double average = (getLeftEncoderRate() + getRightEncoderRate()) / 2;
-    return average;
+    return mPose.getAverageEncoderRate();
   }
 
   /**
@@ -190,8 +252,26 @@ public class Navigation {
    * @return The distance traveled in units, defined by the setDistancePerPulse
    */
   public double getAverageEncoderDistance() {
-    double average = (getLeftEncoderDistance() + getRightEncoderDistance()) / 2;
-    return average;
+    return mPose.getAverageEncoderDistance();
+  }
+
+  /**
+   * @return The robot's monotonic time, in seconds
+   */
+  public static double getTimestamp() {
+    return Hardware.getClock().nanoTime() / 1.0e9;
+  }
+
+  /**
+   * Navigation runs at the same rate as the drive, and is scheduled before it so that the drive
+   * controllers always see a fresh position.
+   */
+  public int getLoopDivisor() {
+    return 2;
+  }
+
+  public int getLoopPhase() {
+    return 0;
   }
 
   public void logToDashboard() {
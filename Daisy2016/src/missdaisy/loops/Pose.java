@@ -0,0 +1,93 @@
+package missdaisy.loops;
+
+/**
+ * An immutable snapshot of everything Navigation knows about the robot at one instant.
+ *
+ * Navigation publishes a new snapshot once per cycle. Because a snapshot never changes after it is
+ * made, any thread can read all of its values without locking and know that they came from the
+ * same cycle.
+ *
+ * @author jrussell
+ */
+public final class Pose {
+  private final double mX;
+  private final double mY;
+  private final double mHeading;
+  private final double mPitch;
+  private final double mLeftDistance;
+  private final double mRightDistance;
+  private final double mLeftRate;
+  private final double mRightRate;
+  private final double mTimestamp;
+
+  /**
+   * @param x The x coordinate, in inches
+   * @param y The y coordinate, in inches
+   * @param heading The heading, in degrees from 0 to 360
+   * @param pitch The pitch, in degrees from 0 to 360
+   * @param leftDistance The distance the left side of the drive has traveled
+   * @param rightDistance The distance the right side of the drive has traveled
+   * @param leftRate The speed of the left side of the drive
+   * @param rightRate The speed of the right side of the drive
+   * @param timestamp When the sensors were read, in seconds
+   */
+  public Pose(double x, double y, double heading, double pitch, double leftDistance,
+      double rightDistance, double leftRate, double rightRate, double timestamp) {
+    mX = x;
+    mY = y;
+    mHeading = heading;
+    mPitch = pitch;
+    mLeftDistance = leftDistance;
+    mRightDistance = rightDistance;
+    mLeftRate = leftRate;
+    mRightRate = rightRate;
+    mTimestamp = timestamp;
+  }
+
+  public double getXinInches() {
+    return mX;
+  }
+
+  public double getYinInches() {
+    return mY;
+  }
+
+  public double getHeadingInDegrees() {
+    return mHeading;
+  }
+
+  public double getPitchInDegrees() {
+    return mPitch;
+  }
+
+  public double getLeftEncoderDistance() {
+    return mLeftDistance;
+  }
+
+  public double getRightEncoderDistance() {
+    return mRightDistance;
+  }
+
+  public double getLeftEncoderRate() {
+    return mLeftRate;
+  }
+
+  public double getRightEncoderRate() {
+    return mRightRate;
+  }
+
+  public double getAverageEncoderDistance() {
+    return (mLeftDistance + mRightDistance) / 2;
+  }
+
+  public double getAverageEncoderRate() {
+    return (mLeftRate + mRightRate) / 2;
+  }
+
+  /**
+   * @return When the sensors were read, in seconds on the robot's monotonic clock
+   */
+  public double getTimestamp() {
+    return mTimestamp;
+  }
+}
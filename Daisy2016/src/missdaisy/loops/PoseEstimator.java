@@ -0,0 +1,46 @@
+package missdaisy.loops;
+
+/**
+ * Interface for something that estimates the robot's position on the field from the drive
+ * encoders and the gyro.
+ * 
+ * Navigation calls update() once per cycle from the fast loop, so implementations must not
+ * allocate or block.
+ * 
+ * Headings are in degrees and increase clockwise, the same way the navX reports them. Distances
+ * are positive when that side of the drive moves forward.
+ * 
+ * @author jrussell
+ */
+public interface PoseEstimator {
+  /**
+   * Sets the robot's position and forgets any history.
+   * 
+   * @param x The x coordinate, in inches
+   * @param y The y coordinate, in inches
+   * @param heading The heading, in degrees
+   */
+  public void reset(double x, double y, double heading);
+
+  /**
+   * Adds one cycle's worth of sensor readings to the estimate.
+   * 
+   * @param leftDelta How far the left side of the drive moved since the last update
+   * @param rightDelta How far the right side of the drive moved since the last update
+   * @param gyroHeading The heading reported by the gyro, in degrees
+   * @param gyroRate The turn rate reported by the gyro, in degrees per second
+   * @param pitch The pitch of the robot, in degrees from -180 to 180
+   * @param dt The time since the last update, in seconds
+   */
+  public void update(double leftDelta, double rightDelta, double gyroHeading, double gyroRate,
+      double pitch, double dt);
+
+  public double getXinInches();
+
+  public double getYinInches();
+
+  /**
+   * @return The estimated heading, in degrees from 0 to 360
+   */
+  public double getHeadingInDegrees();
+}
@@ -0,0 +1,156 @@
+package missdaisy.loops;
+
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * A fixed size ring buffer of timestamped robot positions, used to find out where the robot was
+ * at some point in the recent past.
+ *
+ * Everything is stored in preallocated primitive arrays, so adding a position never allocates.
+ * Looking up a time is a binary search over the buffer followed by a linear interpolation between
+ * the two positions on either side of it.
+ *
+ * @author jrussell
+ */
+public class PoseHistory {
+  private final double[] mTimestamps;
+  private final double[] mX;
+  private final double[] mY;
+  private final double[] mHeading;
+  private int mStart = 0; // index of the oldest entry
+  private int mCount = 0;
+
+  /**
+   * @param capacity The number of positions to remember. At 100 Hz, 200 is two seconds.
+   */
+  public PoseHistory(int capacity) {
+    mTimestamps = new double[capacity];
+    mX = new double[capacity];
+    mY = new double[capacity];
+    mHeading = new double[capacity];
+  }
+
+  /**
+   * Remembers a position, overwriting the oldest one if the buffer is full. Timestamps must be
+   * added in increasing order.
+   *
+   * @param timestamp When the robot was here, in seconds
+   * @param x The x coordinate, in inches
+   * @param y The y coordinate, in inches
+   * @param heading The heading, in degrees
+   */
+  public synchronized void add(double timestamp, double x, double y, double heading) {
+    int index;
+    if (mCount < mTimestamps.length) {
+      index = (mStart + mCount) % mTimestamps.length;
+      mCount++;
+    } else {
+      index = mStart;
+      mStart = (mStart + 1) % mTimestamps.length;
+    }
+    mTimestamps[index] = timestamp;
+    mX[index] = x;
+    mY[index] = y;
+    mHeading[index] = heading;
+  }
+
+  /**
+   * Forgets every position. Should be called whenever the robot's position is reset, so that
+   * lookups never mix coordinates from before and after the reset.
+   */
+  public synchronized void clear() {
+    mStart = 0;
+    mCount = 0;
+  }
+
+  public synchronized int size() {
+    return mCount;
+  }
+
+  /**
+   * @return True if the time is between the oldest and newest remembered positions
+   */
+  public synchronized boolean contains(double timestamp) {
+    return mCount > 0 && timestamp >= mTimestamps[mStart]
+        && timestamp <= mTimestamps[index(mCount - 1)];
+  }
+
+  /**
+   * @param timestamp The time to look up, in seconds
+   * @return The robot's heading, in degrees from 0 to 360, at that time. Times outside the history
+   *         return the oldest or newest heading, and an empty history returns NaN.
+   */
+  public synchronized double getHeadingAt(double timestamp) {
+    if (mCount == 0) {
+      return Double.NaN;
+    }
+    int lower = search(timestamp);
+    int upper = Math.min(lower + 1, mCount - 1);
+    double fraction = fraction(timestamp, lower, upper);
+    double from = mHeading[index(lower)];
+    double change = DaisyMath.getDifferenceInAngleDegrees(from, mHeading[index(upper)]);
+    return DaisyMath.boundAngle0to360Degrees(from + fraction * change);
+  }
+
+  /**
+   * @param timestamp The time to look up, in seconds
+   * @return The robot's x coordinate at that time, or NaN if the history is empty
+   */
+  public synchronized double getXAt(double timestamp) {
+    return interpolate(mX, timestamp);
+  }
+
+  /**
+   * @param timestamp The time to look up, in seconds
+   * @return The robot's y coordinate at that time, or NaN if the history is empty
+   */
+  public synchronized double getYAt(double timestamp) {
+    return interpolate(mY, timestamp);
+  }
+
+  private double interpolate(double[] values, double timestamp) {
+    if (mCount == 0) {
+      return Double.NaN;
+    }
+    int lower = search(timestamp);
+    int upper = Math.min(lower + 1, mCount - 1);
+    double fraction = fraction(timestamp, lower, upper);
+    double from = values[index(lower)];
+    return from + fraction * (values[index(upper)] - from);
+  }
+
+  /**
+   * @return How far the time is from the lower entry to the upper entry, from 0.0 to 1.0
+   */
+  private double fraction(double timestamp, int lower, int upper) {
+    double t0 = mTimestamps[index(lower)];
+    double t1 = mTimestamps[index(upper)];
+    if (t1 <= t0) {
+      return 0.0;
+    }
+    return Math.max(0.0, Math.min(1.0, (timestamp - t0) / (t1 - t0)));
+  }
+
+  /**
+   * Binary search for the newest entry at or before the time.
+   *
+   * @return The age order (0 is oldest) of the entry, or 0 if the time is before every entry
+   */
+  private int search(double timestamp) {
+    int low = 0;
+    int high = mCount - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (mTimestamps[index(mid)] <= timestamp) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  private int index(int age) {
+    return (mStart + age) % mTimestamps.length;
+  }
+}
@@ -0,0 +1,246 @@
+package missdaisy.loops;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a task periodically on its own high priority thread.
+ *
+ * Deadlines are kept against System.nanoTime(), so they are monotonic and do not move if the
+ * wall clock is adjusted. Unlike java.util.Timer, periods that are missed because the task (or the
+ * JVM) stalled are never run back to back to "catch up"; what happens instead is decided by the
+ * overrun policy. Timing statistics are kept for every cycle so that jitter and overruns can be
+ * watched on the dashboard.
+ *
+ * @author jrussell
+ */
+public class RealTimeLoop implements Runnable {
+  /**
+   * What to do when a cycle finishes after the next deadline has already passed.
+   */
+  public enum OverrunPolicy {
+    /** Drop the missed periods and wait for the next deadline on the original schedule. */
+    SKIP_MISSED,
+    /** Start the next cycle right away and re-anchor the schedule to it. */
+    RUN_IMMEDIATELY
+  }
+
+  private final String mName;
+  private final Runnable mTask;
+  private final long mPeriodNanos;
+  private volatile OverrunPolicy mOverrunPolicy;
+  // The thread that should be running the loop, or null when stopped. A loop thread quits as soon
+  // as it sees it is no longer this one, so an old thread can never run alongside a new one.
+  private volatile Thread mThread;
+
+  // Timing statistics. Only ever written by the loop thread.
+  private volatile long mCycles;
+  private volatile long mMissedDeadlines;
+  private volatile long mOverruns;
+  private volatile long mLastJitterNanos;
+  private volatile long mMaxJitterNanos;
+  private volatile long mTotalJitterNanos;
+  private volatile long mLastExecutionNanos;
+  private volatile long mMaxExecutionNanos;
+  private volatile long mTotalExecutionNanos;
+
+  /**
+   * @param name The name given to the loop's thread
+   * @param task What to run every period
+   * @param periodNanos The length of each period, in nanoseconds
+   * @param policy What to do when a cycle runs past the next deadline
+   */
+  public RealTimeLoop(String name, Runnable task, long periodNanos, OverrunPolicy policy) {
+    if (periodNanos <= 0) {
+      throw new IllegalArgumentException("Loop period must be positive");
+    }
+    mName = name;
+    mTask = task;
+    mPeriodNanos = periodNanos;
+    mOverrunPolicy = policy;
+  }
+
+  /**
+   * Starts the loop thread. Calling this while the loop is already running does nothing.
+   */
+  public synchronized void start() {
+    if (mThread != null) {
+      return;
+    }
+    Thread thread = new Thread(this, mName);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.setDaemon(true);
+    mThread = thread;
+    thread.start();
+  }
+
+  /**
+   * Stops the loop, and waits for the cycle it is in the middle of to finish, so the task is not
+   * running anywhere once this returns. Called from the task itself, it stops the loop after the
+   * current cycle without waiting.
+   */
+  public synchronized void stop() {
+    Thread thread = mThread;
+    if (thread == null) {
+      return;
+    }
+    mThread = null;
+    LockSupport.unpark(thread);
+    if (thread == Thread.currentThread()) {
+      return;
+    }
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public boolean isRunning() {
+    return mThread != null;
+  }
+
+  public void setOverrunPolicy(OverrunPolicy policy) {
+    mOverrunPolicy = policy;
+  }
+
+  public OverrunPolicy getOverrunPolicy() {
+    return mOverrunPolicy;
+  }
+
+  public long getPeriodNanos() {
+    return mPeriodNanos;
+  }
+
+  /**
+   * The body of the loop thread. Do not call this directly, use start().
+   */
+  @Override
+  public void run() {
+    Thread self = Thread.currentThread();
+    long deadline = System.nanoTime();
+    while (mThread == self) {
+      long now = System.nanoTime();
+      while (now < deadline && mThread == self) {
+        LockSupport.parkNanos(deadline - now);
+        now = System.nanoTime();
+      }
+      if (mThread != self) {
+        break;
+      }
+
+      long start = now;
+      try {
+        mTask.run();
+      } catch (RuntimeException e) {
+        // Never let one bad cycle kill the control loop
+        e.printStackTrace();
+      }
+      long end = System.nanoTime();
+      recordCycle(start - deadline, end - start);
+
+      deadline += mPeriodNanos;
+      if (end >= deadline) {
+        // We are already late for the next cycle
+        long missed = (end - deadline) / mPeriodNanos + 1;
+        mMissedDeadlines += missed;
+        if (mOverrunPolicy == OverrunPolicy.SKIP_MISSED) {
+          deadline += missed * mPeriodNanos;
+        } else {
+          deadline = end;
+        }
+      }
+    }
+  }
+
+  private void recordCycle(long jitter, long execution) {
+    mCycles++;
+    mLastJitterNanos = jitter;
+    mTotalJitterNanos += jitter;
+    if (jitter > mMaxJitterNanos) {
+      mMaxJitterNanos = jitter;
+    }
+    mLastExecutionNanos = execution;
+    mTotalExecutionNanos += execution;
+    if (execution > mMaxExecutionNanos) {
+      mMaxExecutionNanos = execution;
+    }
+    if (execution > mPeriodNanos) {
+      mOverruns++;
+    }
+  }
+
+  /**
+   * Clears all of the timing statistics. Meant to be called from the loop's task, or while the
+   * loop is stopped.
+   */
+  public void resetStatistics() {
+    mCycles = 0;
+    mMissedDeadlines = 0;
+    mOverruns = 0;
+    mLastJitterNanos = 0;
+    mMaxJitterNanos = 0;
+    mTotalJitterNanos = 0;
+    mLastExecutionNanos = 0;
+    mMaxExecutionNanos = 0;
+    mTotalExecutionNanos = 0;
+  }
+
+  /**
+   * @return The number of cycles run since the statistics were last reset
+   */
+  public long getCycleCount() {
+    return mCycles;
+  }
+
+  /**
+   * @return The number of deadlines that passed without a cycle being started on time
+   */
+  public long getMissedDeadlineCount() {
+    return mMissedDeadlines;
+  }
+
+  /**
+   * @return The number of cycles whose execution took longer than one period
+   */
+  public long getOverrunCount() {
+    return mOverruns;
+  }
+
+  /**
+   * @return How late, in nanoseconds, the last cycle started after its deadline
+   */
+  public long getLastJitterNanos() {
+    return mLastJitterNanos;
+  }
+
+  public long getMaxJitterNanos() {
+    return mMaxJitterNanos;
+  }
+
+  public double getAverageJitterNanos() {
+    long cycles = mCycles;
+    return cycles == 0 ? 0.0 : (double) mTotalJitterNanos / cycles;
+  }
+
+  /**
+   * @return How long, in nanoseconds, the task took to run during the last cycle
+   */
+  public long getLastExecutionNanos() {
+    return mLastExecutionNanos;
+  }
+
+  public long getMaxExecutionNanos() {
+    return mMaxExecutionNanos;
+  }
+
+  public double getAverageExecutionNanos() {
+    long cycles = mCycles;
+    return cycles == 0 ? 0.0 : (double) mTotalExecutionNanos / cycles;
+  }
+}
@@ -43,7 +43,7 @@ public class AutoAimDriveController implements Controller {
     // if we can see the target, then we set the goal to the
     // angle that we want to turn to
     if (mVision.seesTarget()) {
-      mDrive.setGoal(mVision.getAzimuth());
+      mDrive.setGoal(mNavigation.getVisionTargetHeading());
     } else {
       mDrive.setGoal(mNavigation.getApproxTargetAngle());
     }
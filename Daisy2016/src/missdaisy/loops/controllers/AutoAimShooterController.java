@@ -38,7 +38,7 @@ public class AutoAimShooterController implements Controller {
     if (mShooter.isHoodBatterPosition()) {
       mShooterController.setGoal(Constants.Properties.SHOOTER_RPM_BATTER);
     } else if (mShooter.isHoodOuterworksPosition()) {
-      mShooterController.setGoal(Constants.Properties.SHOOTER_RPM_OUTERWORKS);
+      mShooterController.setGoal(Vision.getInstance().getRPM());
     }
   }
 
@@ -7,14 +7,28 @@ import missdaisy.loops.Navigation;
 import missdaisy.loops.SynchronousPID;
 import missdaisy.subsystems.Drive;
 import missdaisy.utilities.DaisyMath;
+import missdaisy.utilities.Trajectory;
+import missdaisy.utilities.TrajectoryCache;
+import missdaisy.utilities.TrajectoryFollower;
 
 /**
  * Uses PID calculations to drive a certain distance in a straight line.
  * 
+ * If the distanceFollowProfile property is true, it follows a smooth trajectory to the goal
+ * instead, with the speed scaling the trajectory's top speed. The trajectories come from the
+ * TrajectoryCache, so prepareGoal() can generate them before the move starts.
+ *
+ * If distanceReplanError is more than 0, and the robot falls further behind or ahead of the
+ * trajectory than that, like when it is bumped or hits something, a new trajectory is planned to
+ * the goal from how fast it is going right then. It is off by default: in the simulator a
+ * replanned move finished later than one that let the PID catch up, and stopped no closer to the
+ * goal. The replan goes into room set aside when the controller is made, so it never allocates.
  */
 // The class's inherited PID is the PID that controls distance.
 public class DriveDistanceController extends SynchronousPID implements Controller {
   private static DriveDistanceController driveDistanceControllerInstance = null;
+  // room for a replanned move as long as autonomous, in segments
+  private static final int kReplanCapacity = (int) Math.ceil(15.0 / getDt()) + 1;
   private Drive mDrive;
   private Navigation mNavigation;
   private SynchronousPID mTurnPID; // This makes sure we drive in a straight line
@@ -25,6 +39,19 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
 
   private boolean mDistanceOnTarget = false;
 
+  private final TrajectoryFollower mFollower = new TrajectoryFollower();
+  private boolean mFollowProfile = false;
+  private double mMaxAcceleration;
+  private double mMaxJerk;
+  private double mStartDistance;
+  private double mDirection = 1.0;
+  private double mGoalDistance;
+  private double mMaxVelocity;
+  private double mReplanError;
+  // replans are generated in place, so they are never shared with the cache
+  private final Trajectory mReplan = new Trajectory(kReplanCapacity);
+  private int mReplans = 0;
+
   /**
    * Gets the instance of the drive straight controller. Used in order to never have more than one
    * drive straight controller object, ever.
@@ -44,6 +71,7 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
     mTurnPID.setOutputRange(-0.2, 0.2);
     mDrive = Drive.getInstance();
     mNavigation = Navigation.getInstance();
+    mFollower.reserve(kReplanCapacity);
     loadProperties();
   }
 
@@ -58,6 +86,7 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
   public synchronized void setGoal(double distance, double speed) {
     super.reset();
     mTurnPID.reset();
+    mDistanceOnTarget = false;
     mNavigation.resetEncoders();
     mGoalAngle = mNavigation.getHeadingInDegrees();
     // makes sure that the maxVelocity is a positive number and not greater than 1.0
@@ -70,6 +99,95 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
     // we want the difference between where we want to be and where we are to be 0
     super.setSetpoint(mNavigation.getAverageEncoderDistance() + distance);
     mTurnPID.setSetpoint(mGoalAngle);
+
+    if (mFollowProfile) {
+      mStartDistance = mNavigation.getAverageEncoderDistance();
+      mDirection = distance < 0.0 ? -1.0 : 1.0;
+      mGoalDistance = Math.abs(distance);
+      mMaxVelocity = getMaxVelocity(speed);
+      mReplans = 0;
+      mFollower.setTrajectory(getTrajectory(distance, speed));
+      mFollower.reset();
+      // the trajectory already limits acceleration, and the filter would only make it lag
+      mDrive.useAlphaFilter(false);
+    }
+  }
+
+  /**
+   * Gets the trajectory that setGoal() will follow ready ahead of time. Does nothing unless the
+   * controller follows trajectories.
+   */
+  public synchronized void prepareGoal(double distance, double speed) {
+    if (mFollowProfile) {
+      getTrajectory(distance, speed);
+    }
+  }
+
+  private Trajectory getTrajectory(double distance, double speed) {
+    return TrajectoryCache.getInstance().get(Math.abs(distance), getMaxVelocity(speed),
+        mMaxAcceleration, mMaxJerk, getDt());
+  }
+
+  /**
+   * @return The top speed, in in/s, of a trajectory driven at the speed, from 0.0 to 1.0
+   */
+  public static double getMaxVelocity(double speed) {
+    return Math.min(Math.abs(speed), 1.0) * Constants.Properties.DRIVE_MAX_VELOCITY;
+  }
+
+  /**
+   * @return The acceleration limit for trajectories, from the properties file
+   */
+  public static double getMaxAcceleration() {
+    return PropertySet.getInstance().getDoubleValue("distanceMaxAcceleration",
+        Constants.Properties.DRIVE_MAX_ACCELERATION);
+  }
+
+  /**
+   * @return The jerk limit for trajectories, from the properties file
+   */
+  public static double getMaxJerk() {
+    return PropertySet.getInstance().getDoubleValue("distanceMaxJerk",
+        Constants.Properties.DRIVE_MAX_JERK);
+  }
+
+  /**
+   * @return The time, in seconds, between the segments of a trajectory, which is how often the
+   *         drive runs
+   */
+  public static double getDt() {
+    return Constants.Properties.FAST_LOOP_TIMER_PERIOD * Drive.LOOP_DIVISOR / 1000.0;
+  }
+
+  /**
+   * Plans a new trajectory to the goal, starting from where the robot is and how fast it is going
+   * right now. Does nothing unless the controller is following a trajectory, or if the new one
+   * would take longer than autonomous, in which case the robot keeps following the old one.
+   */
+  public synchronized void replan() {
+    if (!mFollowProfile) {
+      return;
+    }
+    double position = mNavigation.getAverageEncoderDistance();
+    double traveled = mDirection * (position - mStartDistance);
+    double velocity = mDirection * mNavigation.getAverageEncoderRate();
+    // the encoders do not measure acceleration well enough to start from, and the jerk limit
+    // makes up for it within a few cycles
+    if (!mReplan.generateFrom(mGoalDistance - traveled, velocity, 0.0, mMaxVelocity,
+        mMaxAcceleration, mMaxJerk, getDt())) {
+      return;
+    }
+    mStartDistance = position;
+    mGoalDistance -= traveled;
+    mFollower.setTrajectory(mReplan);
+    mReplans++;
+  }
+
+  /**
+   * @return How many times the trajectory has been replanned since the goal was set
+   */
+  public synchronized int getReplanCount() {
+    return mReplans;
   }
 
   /**
@@ -81,6 +199,11 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
     mCurrentAngle = mNavigation.getHeadingInDegrees();
     // how far you've traveled since you've set your goal
 
+    if (mFollowProfile) {
+      runProfile();
+      return;
+    }
+
     if (!onTarget()) {
       double speed = super.calculate(mNavigation.getAverageEncoderDistance());
       double turn = mCurrentAngle * mTurnPID.getP();
@@ -93,6 +216,26 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
     mDistanceOnTarget = super.onTarget(mDistanceTolerance);
   }
 
+  private void runProfile() {
+    if (mReplanError > 0.0 && !mFollower.isFinishedTrajectory()
+        && Math.abs(mFollower.getError()) > mReplanError) {
+      replan();
+    }
+    // the trajectory always goes forward, so measure backward moves backward
+    double traveled = mDirection * (mNavigation.getAverageEncoderDistance() - mStartDistance);
+    double speed = mDirection * mFollower.calculate(traveled);
+    speed = Math.max(-1.0, Math.min(1.0, speed));
+    double turn = mCurrentAngle * mTurnPID.getP();
+    mDistanceOnTarget =
+        mFollower.isFinishedTrajectory() && mFollower.onTarget(mDistanceTolerance);
+    if (mDistanceOnTarget) {
+      mDrive.setSpeedTurn(0.0, 0.0);
+    } else {
+      mDrive.setSpeedTurn(speed, turn);
+    }
+    SmartDashboard.putNumber("DistanceTrackingError", mFollower.getRMSTrackingError());
+  }
+
   /**
    * Resets all internal variables
    */
@@ -127,6 +270,17 @@ public class DriveDistanceController extends SynchronousPID implements Controlle
     mTurnPID.setPID(kp, 0.0, 0.0);
     mDistanceTolerance = mPropertySet.getDoubleValue("distanceTolerance",
         Constants.Properties.PID_DRIVE_DISTANCE_TOLERANCE);
+
+    mFollowProfile =
+        Boolean.parseBoolean(mPropertySet.getStringValue("distanceFollowProfile", "false"));
+    mMaxAcceleration = getMaxAcceleration();
+    mMaxJerk = getMaxJerk();
+    double kv = mPropertySet.getDoubleValue("distanceProfileKv",
+        1.0 / Constants.Properties.DRIVE_MAX_VELOCITY);
+    double ka = mPropertySet.getDoubleValue("distanceProfileKa", 0.002);
+    mReplanError = mPropertySet.getDoubleValue("distanceReplanError",
+        Constants.Properties.DRIVE_REPLAN_ERROR);
+    mFollower.configure(super.getP(), super.getI(), super.getD(), kv, ka);
   }
 
   @Override
@@ -4,6 +4,7 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import missdaisy.Constants;
 import missdaisy.Vision;
 import missdaisy.fileio.PropertySet;
+import missdaisy.hal.Hardware;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.SynchronousPID;
 import missdaisy.subsystems.Drive;
@@ -66,6 +67,7 @@ public class DriveOverDefenseController extends SynchronousPID implements Contro
   public synchronized void setGoal(double distanceToTarget, double speed, double minDistance) {
     super.reset();
     mTurnPID.reset();
+    mDistanceMet = false;
     mNavigation.resetEncoders();
     mStartingEncoderValue = mNavigation.getAverageEncoderDistance();
     // we'll assume that the angle you wish to drive at is the same
@@ -86,7 +88,7 @@ public class DriveOverDefenseController extends SynchronousPID implements Contro
     super.setSetpoint(mNavigation.getAverageEncoderDistance() + minDistance);
     mTurnPID.setSetpoint(mGoalAngle);
     // same with the angle
-    startTime = System.currentTimeMillis();
+    startTime = Hardware.getClock().currentTimeMillis();
   }
 
   /**
@@ -105,12 +107,13 @@ public class DriveOverDefenseController extends SynchronousPID implements Contro
       mDrive.setSpeedTurn(0.0, 0.0);
     }
 
-    if ((System.currentTimeMillis() - startTime) / 1000 > 2.0) {
+    if ((Hardware.getClock().currentTimeMillis() - startTime) / 1000 > 2.0) {
       mDistanceMet = true;
     } else {
       mDistanceMet = false;
     }
-    SmartDashboard.putNumber("DOD_TimeDelta", (System.currentTimeMillis() - startTime) / 1000);
+    SmartDashboard.putNumber("DOD_TimeDelta",
+        (Hardware.getClock().currentTimeMillis() - startTime) / 1000);
     mDistanceMet = mNavigation.getAverageEncoderDistance() > super.getSetpoint();
   }
 
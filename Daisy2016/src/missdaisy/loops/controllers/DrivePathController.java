@@ -0,0 +1,203 @@
+package missdaisy.loops.controllers;
+
+import java.util.HashMap;
+import java.util.Map;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import missdaisy.Constants;
+import missdaisy.fileio.PropertySet;
+import missdaisy.loops.Navigation;
+import missdaisy.subsystems.Drive;
+import missdaisy.utilities.DaisyMath;
+import missdaisy.utilities.Path;
+import missdaisy.utilities.TrajectoryFollower;
+import missdaisy.utilities.Waypoint;
+
+/**
+ * Drives the robot along a smooth path through a list of waypoints, without stopping to turn.
+ *
+ * Each side of the drive follows its own trajectory from the Path, and the difference between the
+ * heading the path has at that moment and the gyro is fed back as a turn. The wheels slip in the
+ * turns, so the robot slowly slides off to one side of the path even with the heading right, and
+ * how far it is to the side, going by Navigation's position, bends the heading it turns to back
+ * toward the path. The waypoints are relative to where the robot is when the path starts, so the
+ * first should be 0:0:0.
+ *
+ * Generating a path is too slow to do in the first cycle of a move, so preparePath() can generate
+ * it while the robot is disabled. Prepared paths are kept for as long as the robot is on, since
+ * an autonomous mode only has a handful of them.
+ *
+ * @author jrussell
+ */
+public class DrivePathController implements Controller {
+  private static DrivePathController drivePathControllerInstance = null;
+  private Drive mDrive;
+  private Navigation mNavigation;
+  private final TrajectoryFollower mLeftFollower = new TrajectoryFollower();
+  private final TrajectoryFollower mRightFollower = new TrajectoryFollower();
+  private final Map<String, Path> mPaths = new HashMap<String, Path>();
+  private Path mPath;
+  private double mStartHeading;
+  private double mStartX;
+  private double mStartY;
+  private double mHeadingKp;
+  private double mCrossTrackKp;
+  private double mTolerance;
+  private double mMaxAcceleration;
+  private double mMaxJerk;
+  private boolean mOnTarget = false;
+
+  /**
+   * Gets the instance of the drive path controller. Used in order to never have more than one
+   * drive path controller object, ever.
+   *
+   * @return The one and only instance of the drive path controller
+   */
+  public static DrivePathController getInstance() {
+    if (drivePathControllerInstance == null)
+      drivePathControllerInstance = new DrivePathController();
+    return drivePathControllerInstance;
+  }
+
+  private DrivePathController() {
+    mDrive = Drive.getInstance();
+    mNavigation = Navigation.getInstance();
+    loadProperties();
+  }
+
+  /**
+   * Generates the path ahead of time, so setPath() does not have to.
+   *
+   * @param waypoints Comma separated x:y:heading waypoints, see Waypoint.parse()
+   * @param speed A number between 0.0 and 1.0 that scales the path's top speed
+   * @throws IllegalArgumentException If the waypoints can not be parsed or do not make a path
+   */
+  public synchronized void preparePath(String waypoints, double speed) {
+    getPath(waypoints, speed);
+  }
+
+  /**
+   * Starts following a path from where the robot is now.
+   *
+   * @throws IllegalArgumentException If the waypoints can not be parsed or do not make a path
+   */
+  public synchronized void setPath(String waypoints, double speed) {
+    mPath = getPath(waypoints, speed);
+    mNavigation.resetEncoders();
+    mStartHeading = mNavigation.getHeadingInDegrees();
+    mStartX = mNavigation.getXinInches();
+    mStartY = mNavigation.getYinInches();
+    mLeftFollower.setTrajectory(mPath.getLeft());
+    mRightFollower.setTrajectory(mPath.getRight());
+    mOnTarget = false;
+  }
+
+  private Path getPath(String waypoints, double speed) {
+    speed = Math.min(Math.abs(speed), 1.0);
+    String key = waypoints + "@" + speed;
+    Path path = mPaths.get(key);
+    if (path == null) {
+      path = new Path();
+      double dt = Constants.Properties.FAST_LOOP_TIMER_PERIOD * mDrive.getLoopDivisor() / 1000.0;
+      path.generate(Waypoint.parse(waypoints), speed * Constants.Properties.DRIVE_MAX_VELOCITY,
+          mMaxAcceleration, mMaxJerk, dt);
+      mPaths.put(key, path);
+    }
+    return path;
+  }
+
+  /**
+   * @return The path being followed, or null if there is none
+   */
+  public synchronized Path getPath() {
+    return mPath;
+  }
+
+  /**
+   * Drives each side along its trajectory, and turns toward the path's heading
+   */
+  @Override
+  public synchronized void run() {
+    if (mPath == null) {
+      mDrive.setSpeed(0.0, 0.0);
+      return;
+    }
+    double left = mLeftFollower.calculate(mNavigation.getLeftEncoderDistance());
+    double right = mRightFollower.calculate(mNavigation.getRightEncoderDistance());
+    int segment = mLeftFollower.getSegment();
+    double goalHeading = mStartHeading + mPath.getHeading(segment) - mPath.getHeading(0);
+    // where the path should be now, turned and moved to start where the robot started
+    double rotation = Math.toRadians(mStartHeading - mPath.getHeading(0));
+    double pathX = mPath.getX(segment) - mPath.getX(0);
+    double pathY = mPath.getY(segment) - mPath.getY(0);
+    double dx = mStartX + pathX * Math.cos(rotation) - pathY * Math.sin(rotation)
+        - mNavigation.getXinInches();
+    double dy = mStartY + pathX * Math.sin(rotation) + pathY * Math.cos(rotation)
+        - mNavigation.getYinInches();
+    // steer back toward the path when the robot has slid off to one side of it, a couple of
+    // degrees for every inch
+    double heading = Math.toRadians(goalHeading);
+    double crossTrack = dy * Math.cos(heading) - dx * Math.sin(heading);
+    goalHeading += mCrossTrackKp * crossTrack;
+    double headingError =
+        DaisyMath.getDifferenceInAngleDegrees(mNavigation.getHeadingInDegrees(), goalHeading);
+    double turn = mHeadingKp * headingError;
+
+    mOnTarget = mLeftFollower.isFinishedTrajectory() && mRightFollower.isFinishedTrajectory()
+        && mLeftFollower.onTarget(mTolerance) && mRightFollower.onTarget(mTolerance);
+    if (mOnTarget) {
+      mDrive.setSpeed(0.0, 0.0);
+    } else {
+      mDrive.setSpeed(Math.max(-1.0, Math.min(1.0, left + turn)),
+          Math.max(-1.0, Math.min(1.0, right - turn)));
+    }
+    SmartDashboard.putNumber("PathHeadingError", headingError);
+    SmartDashboard.putNumber("PathCrossTrackError", crossTrack);
+    SmartDashboard.putNumber("PathTrackingError",
+        Math.max(mLeftFollower.getRMSTrackingError(), mRightFollower.getRMSTrackingError()));
+  }
+
+  /**
+   * Stops following the path
+   */
+  @Override
+  public synchronized void reset() {
+    mPath = null;
+    mOnTarget = false;
+  }
+
+  /**
+   * Returns true once both sides have finished their trajectories and are at the end of them
+   */
+  @Override
+  public boolean onTarget() {
+    return mOnTarget;
+  }
+
+  /**
+   * Loads the gains for the wheels and the heading, and the limits paths are generated with.
+   * Paths already generated keep the limits they were generated with.
+   */
+  @Override
+  public void loadProperties() {
+    PropertySet mPropertySet = PropertySet.getInstance();
+    double kp = mPropertySet.getDoubleValue("pathKp", 0.05);
+    double kd = mPropertySet.getDoubleValue("pathKd", 0.0);
+    double kv =
+        mPropertySet.getDoubleValue("pathKv", 1.0 / Constants.Properties.DRIVE_MAX_VELOCITY);
+    double ka = mPropertySet.getDoubleValue("pathKa", 0.002);
+    mLeftFollower.configure(kp, 0.0, kd, kv, ka);
+    mRightFollower.configure(kp, 0.0, kd, kv, ka);
+    mHeadingKp = mPropertySet.getDoubleValue("pathHeadingKp", 0.03);
+    mCrossTrackKp = mPropertySet.getDoubleValue("pathCrossTrackKp", 2.0);
+    mTolerance = mPropertySet.getDoubleValue("pathTolerance",
+        Constants.Properties.PID_DRIVE_DISTANCE_TOLERANCE);
+    mMaxAcceleration = mPropertySet.getDoubleValue("pathMaxAcceleration",
+        Constants.Properties.DRIVE_MAX_ACCELERATION);
+    mMaxJerk = mPropertySet.getDoubleValue("pathMaxJerk", Constants.Properties.DRIVE_MAX_JERK);
+  }
+
+  @Override
+  public String toString() {
+    return "DrivePathController";
+  }
+}
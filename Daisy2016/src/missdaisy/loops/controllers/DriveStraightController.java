@@ -34,6 +34,7 @@ public class DriveStraightController extends SynchronousPID implements Controlle
   }
 
   private DriveStraightController() {
+    mDrive = Drive.getInstance();
     mNavigation = Navigation.getInstance();
     loadProperties();
   }
@@ -10,6 +10,12 @@ import missdaisy.utilities.MovingAverageFilter;
 /**
  * Controls the RPM of the shooter by using PID calculations.
  * 
+ * There are two modes. BANG_BANG turns the wheel on full when it drops below the on target band,
+ * and off when it gets above the goal. FEEDFORWARD gives the motor the output that should hold the
+ * goal RPM, plus a PID on the error to make up the difference, and only uses full power to spin up
+ * and to recover after a ball is fired. The output that holds each RPM is learned from the average
+ * output over stretches where the wheel holds steady on target, and kept when the mode changes.
+ * 
  */
 public class ShooterSpeedController extends SynchronousPID implements Controller {
   private static ShooterSpeedController shooterSpeedControllerInstance = null;
@@ -22,6 +28,33 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
   private int onTargetCounter = 0;
   private MovingAverageFilter mAverageOutput;
 
+  public enum Mode {
+    BANG_BANG, FEEDFORWARD
+  }
+
+  private static final int kSteadySamples = 50;
+  // How much older (rpm, output) pairs count for each time a new one is learned
+  private static final double kFeedforwardMemory = 0.9;
+  // Stop full power this long before the wheel is expected to reach the goal, in seconds
+  private static final double kSpinUpLead = 0.02;
+  // Speeds closer together than this, in RPM, are not enough to fit the feedforward's slope
+  private static final double kMinRPMSpread = 200.0;
+
+  private Mode mMode = Mode.BANG_BANG;
+  private boolean mRecovering = false;
+  private MovingAverageFilter mAverageRPM;
+  private int mSteadyCounter = 0;
+  private double mSteadyStartRPM;
+  // The feedforward, output = mFeedforwardStatic + mFeedforwardGain * rpm, and the weighted sums
+  // it is fit from
+  private double mFeedforwardStatic = 0.0;
+  private double mFeedforwardGain = kffv;
+  private double mSumWeights;
+  private double mSumRPM;
+  private double mSumOutput;
+  private double mSumRPMSquared;
+  private double mSumRPMOutput;
+
   /**
    * Gets the instance of the shooter speed controller. Used in order to never have more than one
    * shooter speed controller object, ever.
@@ -35,15 +68,41 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
   }
 
   private ShooterSpeedController() {
-    SmartDashboard.putNumber("ShooterkP", 0.005);
-    SmartDashboard.putNumber("ShooterkI", 0.0);
-    SmartDashboard.putNumber("ShooterkD", 0.001);
+    SmartDashboard.putNumber("ShooterkP", 0.002);
+    SmartDashboard.putNumber("ShooterkI", 0.00002);
+    SmartDashboard.putNumber("ShooterkD", 0.0);
+    SmartDashboard.putBoolean("ShooterFeedforward", mMode == Mode.FEEDFORWARD);
+    mAverageOutput = new MovingAverageFilter(kSteadySamples);
+    mAverageRPM = new MovingAverageFilter(kSteadySamples);
+    setOutputRange(-1.0, 1.0);
     loadProperties();
     reset();
-    mAverageOutput = new MovingAverageFilter(50);
     mShooter = Shooter.getInstance();
   }
 
+  /**
+   * Picks how the shooter is controlled. The learned feedforward carries over between modes.
+   */
+  public synchronized void setMode(Mode mode) {
+    if (mode != mMode) {
+      mMode = mode;
+      mRecovering = false;
+      resetIntegrator();
+    }
+    SmartDashboard.putBoolean("ShooterFeedforward", mMode == Mode.FEEDFORWARD);
+  }
+
+  public synchronized Mode getMode() {
+    return mMode;
+  }
+
+  /**
+   * @return The motor output that should hold the shooter at the given RPM
+   */
+  public synchronized double getFeedforward(double rpm) {
+    return rpm > 0.0 ? mFeedforwardStatic + mFeedforwardGain * rpm : 0.0;
+  }
+
   /**
    * Set the desired shooter RPM
    * 
@@ -59,6 +118,23 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
    */
   @Override
   public synchronized void run() {
+    if (mMode == Mode.FEEDFORWARD) {
+      runFeedforward();
+    } else {
+      runBangBang();
+    }
+    mShooter.setSpeed(mShooterMotorOutput);
+
+    // do not trust an RPM the estimate is unsure of, like with a glitchy banner sensor
+    onTarget = Math
+        .abs(getSetpoint() - mShooter.getRPM()) < Constants.Properties.PID_SHOOTER_RPM_TOLERANCE
+        && mShooter.getRPMConfidence() > Constants.Properties.SHOOTER_MIN_RPM_CONFIDENCE;
+
+    learnFeedforward();
+    SmartDashboard.putNumber("ShooterError", getSetpoint() - mShooter.getRPM());
+  }
+
+  private void runBangBang() {
     /*
      * mShooterMotorOutput = calculate(mShooter.getRPM());
      * SmartDashboard.putNumber("ShooterMotorPIDCommand", mShooterMotorOutput);
@@ -72,15 +148,9 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
         .getRPM() < (super.getSetpoint() - Constants.Properties.PID_SHOOTER_RPM_TOLERANCE)) {
       mShooterMotorOutput = 1.0;
     }
-    mShooter.setSpeed(mShooterMotorOutput);
-
-    onTarget = Math
-        .abs(getSetpoint() - mShooter.getRPM()) < Constants.Properties.PID_SHOOTER_RPM_TOLERANCE;
 
     // if (onTarget) {
     // onTargetCounter++;
-
-    mAverageOutput.setInput(mShooterMotorOutput);
     // }
 
     /*
@@ -88,7 +158,6 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
      * 50){ mShooter.setSpeed(mAverageOutput.run()); //} else { //
      * mShooter.setSpeed(mShooterMotorOutput); //}
      */
-    SmartDashboard.putNumber("ShooterError", getSetpoint() - mShooter.getRPM());
 
     // onTarget = Math.abs(getSetpoint() - mShooter.getRPM()) <
     // Constants.kDefaultShooterRPMTolerance;
@@ -98,6 +167,80 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
      */
   }
 
+  /**
+   * Full power until the wheel is about to reach the goal, then the feedforward plus PID.
+   */
+  private void runFeedforward() {
+    double rpm = mShooter.getRPM();
+    double goal = getSetpoint();
+    if (goal <= 0.0) {
+      mRecovering = false;
+      mShooterMotorOutput = 0.0;
+      return;
+    }
+    if (rpm < goal - Constants.Properties.PID_SHOOTER_RPM_TOLERANCE) {
+      mRecovering = true;
+    }
+    if (mRecovering && rpm + mShooter.getRPMAcceleration() * kSpinUpLead >= goal) {
+      mRecovering = false;
+    }
+    if (mRecovering) {
+      // the PID would only wind up while the motor is maxed out anyway
+      mShooterMotorOutput = 1.0;
+    } else {
+      mShooterMotorOutput =
+          Math.max(0.0, Math.min(1.0, getFeedforward(goal) + calculate(rpm)));
+    }
+  }
+
+  /**
+   * Averages the output and RPM while the wheel stays on target. When it has stayed on target for
+   * long enough without drifting, the average output is what it takes to hold the average RPM,
+   * and the feedforward line is refit with that pair.
+   */
+  private void learnFeedforward() {
+    if (!onTarget || getSetpoint() <= 0.0) {
+      mSteadyCounter = 0;
+      return;
+    }
+    if (mSteadyCounter == 0) {
+      mAverageOutput.reset();
+      mAverageRPM.reset();
+      mSteadyStartRPM = mShooter.getRPM();
+    }
+    mAverageOutput.setInput(mShooterMotorOutput);
+    mAverageRPM.setInput(mShooter.getRPM());
+    if (++mSteadyCounter < kSteadySamples) {
+      return;
+    }
+    mSteadyCounter = 0;
+    double drift = Math.abs(mShooter.getRPM() - mSteadyStartRPM);
+    if (drift > Constants.Properties.PID_SHOOTER_RPM_TOLERANCE / 2.0) {
+      return;
+    }
+    double rpm = mAverageRPM.run();
+    double output = mAverageOutput.run();
+    mSumWeights = kFeedforwardMemory * mSumWeights + 1.0;
+    mSumRPM = kFeedforwardMemory * mSumRPM + rpm;
+    mSumOutput = kFeedforwardMemory * mSumOutput + output;
+    mSumRPMSquared = kFeedforwardMemory * mSumRPMSquared + rpm * rpm;
+    mSumRPMOutput = kFeedforwardMemory * mSumRPMOutput + rpm * output;
+
+    double meanRPM = mSumRPM / mSumWeights;
+    double spread = mSumRPMSquared / mSumWeights - meanRPM * meanRPM;
+    if (spread > kMinRPMSpread * kMinRPMSpread) {
+      // pairs at different speeds, so fit a line
+      double meanOutput = mSumOutput / mSumWeights;
+      mFeedforwardGain = (mSumRPMOutput / mSumWeights - meanRPM * meanOutput) / spread;
+      mFeedforwardStatic = meanOutput - mFeedforwardGain * meanRPM;
+    } else {
+      // all at about one speed, so keep the static part and just fix the slope
+      mFeedforwardGain = (output - mFeedforwardStatic) / rpm;
+    }
+    // the integral was making up for the old feedforward
+    resetIntegrator();
+  }
+
   /**
    * Returns true if the shooter is within the accepted tolerance for the RPM
    */
@@ -115,6 +258,8 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
     onTargetCounter = 0;
     setGoal(0.0);
     onTarget = false;
+    mRecovering = false;
+    mSteadyCounter = 0;
   }
 
   /**
@@ -123,10 +268,12 @@ public class ShooterSpeedController extends SynchronousPID implements Controller
   @Override
   public void loadProperties() {
     if (useSmartDashboardValues) {
-      double kp = SmartDashboard.getNumber("ShooterkP", 0.1);
-      double ki = SmartDashboard.getNumber("ShooterkI", 0.0);
+      double kp = SmartDashboard.getNumber("ShooterkP", 0.002);
+      double ki = SmartDashboard.getNumber("ShooterkI", 0.00002);
       double kd = SmartDashboard.getNumber("ShooterkD", 0.0);
       setPID(kp, ki, kd);
+      setMode(SmartDashboard.getBoolean("ShooterFeedforward", mMode == Mode.FEEDFORWARD)
+          ? Mode.FEEDFORWARD : Mode.BANG_BANG);
     } else {
       PropertySet mPropertySet = PropertySet.getInstance();
       double kp = mPropertySet.getDoubleValue("shooterKp", 0.008);
@@ -0,0 +1,131 @@
+package missdaisy.simulation;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import missdaisy.autonomous.AutonomousMode;
+import missdaisy.autonomous.AutonomousParser;
+import missdaisy.autonomous.State;
+import missdaisy.autonomous.WaitForTime;
+import missdaisy.fileio.PropertySet;
+import missdaisy.loops.LatencyHistogram;
+
+/**
+ * Times parsing an autonomous mode with the StateRegistry's factories against the reflection the
+ * parser used to use, and against making the states from a mode parsed ahead of time, like the
+ * robot does at the start of autonomous. Checks that all three make the same states.
+ *
+ * The mode is a typical one: reset the heading, drive over a defense, wait, turn, and aim and
+ * shoot. The parser prints a line for every state and parameter, which would swamp the time, so
+ * standard out is thrown away while timing, for both.
+ *
+ * Usage: AutonomousParserBenchmark [runs]
+ *
+ * @author jrussell
+ */
+public class AutonomousParserBenchmark {
+  private static final int kWarmup = 2000;
+  private static final String[][] kMode = {{"ResetHeading", "0.0"},
+      {"DriveOverDefense", "156.0", "1.0", "65.0"}, {"WaitForTime", "750"},
+      {"TurnToAngle", "15.0"}, {"AutoAimAndShoot", "15.0"}};
+
+  public static void main(String[] args) {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    PropertySet properties = PropertySet.getInstance();
+    for (int i = 0; i < kMode.length; i++) {
+      properties.addProperty("AutonomousState" + (i + 1), kMode[i][0]);
+      for (int k = 1; k < kMode[i].length; k++) {
+        properties.addProperty("AutonomousState" + (i + 1) + "Param" + k, kMode[i][k]);
+      }
+    }
+    properties.addProperty("AutonomousNumStates", Integer.toString(kMode.length));
+
+    AutonomousParser parser = new AutonomousParser();
+    ReflectionParser reflection = new ReflectionParser();
+    LatencyHistogram registryTimes = new LatencyHistogram();
+    LatencyHistogram reflectionTimes = new LatencyHistogram();
+    LatencyHistogram blueprintTimes = new LatencyHistogram();
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {}
+    }));
+    State[] fromRegistry = null;
+    State[] fromReflection = null;
+    State[] fromBlueprint = null;
+    AutonomousMode mode = parser.parseMode("Benchmark");
+    for (int i = 0; i < kWarmup + runs; i++) {
+      long start = System.nanoTime();
+      fromRegistry = parser.parseStates();
+      long middle = System.nanoTime();
+      fromReflection = reflection.parseStates();
+      long end = System.nanoTime();
+      fromBlueprint = mode.instantiate();
+      long last = System.nanoTime();
+      if (i >= kWarmup) {
+        registryTimes.record(middle - start);
+        reflectionTimes.record(end - middle);
+        blueprintTimes.record(last - end);
+      }
+    }
+    System.setOut(out);
+
+    boolean same = fromRegistry.length == fromReflection.length
+        && fromRegistry.length == fromBlueprint.length;
+    for (int i = 0; same && i < fromRegistry.length; i++) {
+      same = fromRegistry[i].getClass() == fromReflection[i].getClass()
+          && fromRegistry[i].getClass() == fromBlueprint[i].getClass();
+    }
+    System.out.println(String.format("Parsing a %d state mode, %d times, same states: %b",
+        kMode.length, runs, same));
+    print("Registry", registryTimes);
+    print("Reflection", reflectionTimes);
+    print("Blueprint", blueprintTimes);
+    System.out.println("Errors in the mode: " + mode.getErrors().length);
+  }
+
+  private static void print(String name, LatencyHistogram histogram) {
+    System.out.println(String.format("%-12s median %7.1f us, 99%% %7.1f us, worst %8.1f us", name,
+        histogram.getPercentile(0.5) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+        histogram.getMax() / 1000.0));
+  }
+
+  /**
+   * AutonomousParser.parseStates() as it was, finding each state's constructor by reflection.
+   */
+  private static class ReflectionParser {
+    private final PropertySet mProperties = PropertySet.getInstance();
+
+    public State[] parseStates() {
+      int lNumStates = mProperties.getIntValue("AutonomousNumStates", -1);
+      State[] lStates = new State[lNumStates];
+      for (int i = 0; i < lNumStates; i++) {
+        String lStateName =
+            mProperties.getStringValue("AutonomousState" + Integer.toString(i + 1), "");
+        try {
+          Class<?> currentState =
+              Class.forName(AutonomousParser.class.getPackage().getName() + "." + lStateName);
+          Constructor<?> stateConstructor = currentState.getConstructors()[0];
+          Object[] paramValues = new Object[stateConstructor.getParameterCount()];
+          Class<?>[] paramTypes = stateConstructor.getParameterTypes();
+          for (int k = 0; k < stateConstructor.getParameters().length; k++) {
+            if (paramTypes[k] == double.class) {
+              paramValues[k] = mProperties.getDoubleValue(
+                  "AutonomousState" + Integer.toString(i + 1) + "Param" + Integer.toString(k + 1),
+                  0.0);
+            } else if (paramTypes[k] == int.class) {
+              paramValues[k] = (int) mProperties.getDoubleValue(
+                  "AutonomousState" + Integer.toString(i + 1) + "Param" + Integer.toString(k + 1),
+                  0.0);
+            }
+          }
+          lStates[i] = (State) stateConstructor.newInstance(paramValues);
+        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException
+            | InvocationTargetException e) {
+          lStates[i] = new WaitForTime(0);
+        }
+      }
+      return lStates;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package missdaisy.simulation;
+
+import java.util.Random;
+import missdaisy.Constants;
+import missdaisy.autonomous.AutonomousParser;
+import missdaisy.autonomous.StateMachine;
+import missdaisy.fileio.PropertyReader;
+import missdaisy.hal.SimulatedMotor;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.controllers.AutoAimDriveController;
+import missdaisy.loops.controllers.Controller;
+import missdaisy.loops.controllers.DriveDistanceController;
+import missdaisy.loops.controllers.DriveOverDefenseController;
+import missdaisy.loops.controllers.DriveTurnController;
+import missdaisy.loops.controllers.ShooterSpeedController;
+import missdaisy.subsystems.DaisySubsystem;
+import missdaisy.subsystems.Drive;
+import missdaisy.subsystems.Intake;
+import missdaisy.subsystems.Shooter;
+
+/**
+ * Plays one autonomous mode against the simulated robot and field, with the conditions shuffled
+ * by a random seed: where the robot starts, how grippy the carpet is, how heavy the robot is, how
+ * much the gyro drifts, and how noisy and unreliable vision is.
+ * 
+ * The robot code is full of singletons, so a trial owns the whole JVM (or the class loader it was
+ * loaded by). The simulation is set up on the first trial and every subsystem and controller is
+ * reset before each one after that.
+ * 
+ * @author jrussell
+ */
+public class AutonomousTrial {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  // autonomousPeriodic runs every 20 ms, every fourth fast loop period
+  private static final int kStateMachineDivisor = 4;
+  private static final double kAutonomousLength = 15.0; // seconds
+  private static final double kGoalDistance = 450.0; // inches from the start line
+  private static final double kDefenseStart = 12.0; // inches
+  private static final double kDefenseLength = 48.0; // inches
+  private static final double kGoalRPM = 4000.0;
+  private static final double kMaxAimError = 3.0; // degrees
+  private static final double kMaxRPMError = 150.0;
+
+  private static SimulationLoop sim;
+  private static DrivetrainSimulator drivetrain;
+  private static FlywheelSimulator flywheel;
+  private static VisionSimulator vision;
+  private static SimulatedMotor conveyor;
+  private static DaisySubsystem[] subsystems;
+  private static Controller[] controllers;
+  private static double nominalMass;
+  private static double nominalFriction;
+  private static String loadedFile;
+
+  /**
+   * Runs one trial.
+   * 
+   * @param file The autonomous mode file
+   * @param position The starting position, as chosen on the driver station
+   * @param stealBall Whether to steal a ball first
+   * @param defenseHeight How high the defense in front of the robot is, in inches
+   * @param seed Decides the conditions of the trial
+   * @return Whether the trial succeeded (1.0 or 0.0), the time the mode finished, the time of the
+   *         shot, the aim error at the shot in degrees, and the shooter RPM at the shot. Times are
+   *         in seconds from the start of autonomous, and are NaN if it never happened.
+   */
+  public static double[] run(String file, int position, boolean stealBall, double defenseHeight,
+      long seed) {
+    if (sim == null) {
+      setUp();
+    }
+    if (!file.equals(loadedFile)) {
+      new PropertyReader().parseAutonomousFile(file);
+      loadedFile = file;
+    }
+
+    Random random = new Random(seed);
+    drivetrain.clearDefenses();
+    drivetrain.addDefense(kDefenseStart, kDefenseLength, defenseHeight);
+    drivetrain.setFriction(nominalFriction * (1.0 + 0.1 * (2.0 * random.nextDouble() - 1.0)));
+    drivetrain.setMass(nominalMass * (1.0 + 0.05 * (2.0 * random.nextDouble() - 1.0)));
+    drivetrain.setGyroDrift(0.03 * random.nextGaussian());
+    drivetrain.reset(3.0 * (2.0 * random.nextDouble() - 1.0),
+        3.0 * (2.0 * random.nextDouble() - 1.0), 3.0 * (2.0 * random.nextDouble() - 1.0));
+    flywheel.reset();
+    vision.setGoal(kGoalDistance, getGoalOffset(position));
+    vision.setSeed(random.nextLong());
+    vision.setNoise(0.05 + 0.15 * random.nextDouble(), 0.5, 4.0);
+    vision.reset();
+
+    for (int i = 0; i < subsystems.length; i++) {
+      subsystems[i].setOpenLoop();
+      subsystems[i].reset();
+    }
+    for (int i = 0; i < controllers.length; i++) {
+      controllers[i].reset();
+    }
+    Navigation navigation = Navigation.getInstance();
+    navigation.setPoseEstimator(new ComplementaryPoseEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+
+    StateMachine machine =
+        new StateMachine(new AutonomousParser().parseStates(position, stealBall));
+    double doneTime = Double.NaN;
+    double shotTime = Double.NaN;
+    double aimError = Double.NaN;
+    double rpm = Double.NaN;
+    int cycles = (int) (kAutonomousLength * 1.0e9 / kPeriodNanos);
+    for (int i = 0; i < cycles && Double.isNaN(doneTime); i++) {
+      if (i % kStateMachineDivisor == 0) {
+        machine.run();
+      }
+      sim.step();
+      double time = (i + 1) * kPeriodNanos / 1.0e9;
+      if (Double.isNaN(shotTime) && conveyor.getOutput() != 0.0) {
+        shotTime = time;
+        aimError = vision.getAimError();
+        rpm = flywheel.getRPM();
+      }
+      if (machine.getCurrentState().equals("Not Active")) {
+        doneTime = time;
+      }
+    }
+
+    boolean success = !Double.isNaN(doneTime) && !Double.isNaN(shotTime)
+        && Math.abs(aimError) < kMaxAimError && Math.abs(rpm - kGoalRPM) < kMaxRPMError;
+    return new double[] {success ? 1.0 : 0.0, doneTime, shotTime, aimError, rpm};
+  }
+
+  /**
+   * @return How far to the right of the robot's lane the goal is, in inches
+   */
+  private static double getGoalOffset(int position) {
+    switch (position) {
+      case 2:
+        return 64.0;
+      case 3:
+        return 21.0;
+      case 4:
+        return -21.0;
+      case 5:
+        return -64.0;
+      default:
+        return 0.0;
+    }
+  }
+
+  private static void setUp() {
+    sim = new SimulationLoop(kPeriodNanos);
+    drivetrain = new DrivetrainSimulator(sim.getHardware());
+    flywheel = new FlywheelSimulator(sim.getHardware());
+    vision = new VisionSimulator(sim.getHardware(), drivetrain);
+    sim.addPlant(drivetrain);
+    sim.addPlant(flywheel);
+    sim.addPlant(vision);
+    conveyor = sim.getHardware().getPWM(Constants.PWMs.CONVEYOR_MOTOR);
+    nominalMass = drivetrain.getMass();
+    nominalFriction = drivetrain.getFriction();
+    subsystems = new DaisySubsystem[] {Drive.getInstance(), Shooter.getInstance(),
+        Intake.getInstance()};
+    controllers = new Controller[] {DriveTurnController.getInstance(),
+        DriveDistanceController.getInstance(), DriveOverDefenseController.getInstance(),
+        AutoAimDriveController.getInstance(), ShooterSpeedController.getInstance()};
+  }
+}
@@ -0,0 +1,59 @@
+package missdaisy.simulation;
+
+/**
+ * A brushed DC motor, described by the numbers on its spec sheet at 12 volts.
+ * 
+ * @author jrussell
+ */
+public class DCMotor {
+  public static final DCMotor CIM = new DCMotor(2.42, 133.0, 5330.0, 2.7);
+  public static final DCMotor MINI_CIM = new DCMotor(1.41, 89.0, 5840.0, 3.0);
+  public static final DCMotor RS775_PRO = new DCMotor(0.71, 134.0, 18730.0, 0.7);
+
+  private static final double kNominalVoltage = 12.0;
+
+  private final double mResistance; // ohms
+  private final double mKt; // newton meters per amp
+  private final double mKv; // volts per radian per second
+  private final double mFreeCurrent; // amps
+
+  /**
+   * @param stallTorque Newton meters
+   * @param stallCurrent Amps
+   * @param freeSpeed RPM
+   * @param freeCurrent Amps
+   */
+  public DCMotor(double stallTorque, double stallCurrent, double freeSpeed, double freeCurrent) {
+    mResistance = kNominalVoltage / stallCurrent;
+    mKt = stallTorque / stallCurrent;
+    mKv = (kNominalVoltage - freeCurrent * mResistance) / (freeSpeed * 2.0 * Math.PI / 60.0);
+    mFreeCurrent = freeCurrent;
+  }
+
+  /**
+   * @param volts The voltage across the motor
+   * @param speed The motor's speed, in radians per second
+   * @return The current through the motor, in amps
+   */
+  public double getCurrent(double volts, double speed) {
+    return (volts - speed * mKv) / mResistance;
+  }
+
+  /**
+   * @param volts The voltage across the motor
+   * @param speed The motor's speed, in radians per second
+   * @return The torque the motor puts out, in newton meters, less its own friction
+   */
+  public double getTorque(double volts, double speed) {
+    double current = getCurrent(volts, speed);
+    double friction = Math.min(Math.abs(current), mFreeCurrent) * Math.signum(speed);
+    return (current - friction) * mKt;
+  }
+
+  /**
+   * @return The speed, in radians per second, the motor spins at with no load
+   */
+  public double getFreeSpeed(double volts) {
+    return (volts - mFreeCurrent * mResistance) / mKv;
+  }
+}
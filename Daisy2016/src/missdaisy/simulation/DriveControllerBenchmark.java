@@ -0,0 +1,183 @@
+package missdaisy.simulation;
+
+import java.util.Arrays;
+import missdaisy.Constants;
+import missdaisy.fileio.PropertySet;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.controllers.Controller;
+import missdaisy.loops.controllers.DriveDistanceController;
+import missdaisy.loops.controllers.DriveOverDefenseController;
+import missdaisy.loops.controllers.DriveStraightController;
+import missdaisy.loops.controllers.DriveTurnController;
+import missdaisy.subsystems.Drive;
+
+/**
+ * Runs each of the drive controllers against the drivetrain simulator and prints how well they
+ * did: rise time, overshoot, settling time, steady state error, and how long it took before the
+ * controller said it was on target. Run this after every gain change.
+ * 
+ * Gains come from the same properties (and SmartDashboard values) the robot uses. Every scenario
+ * is run several times to measure speed and to make sure the results repeat exactly.
+ * 
+ * Usage: DriveControllerBenchmark [repeats]
+ * 
+ * @author jrussell
+ */
+public class DriveControllerBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+
+  // The slowest subsystem runs every 8th cycle, so every trial starts on a multiple of 8 to see
+  // the same schedule
+  private static final int kScheduleLength = 8;
+
+  private static SimulationLoop sim;
+  private static DrivetrainSimulator drivetrain;
+  private static Drive drive;
+  private static Navigation navigation;
+  private static StepResponse response = new StepResponse(4000);
+  private static long steps = 0;
+
+  private enum Measure {
+    HEADING, DISTANCE, PATH_DISTANCE
+  }
+
+  public static void main(String[] args) {
+    int repeats = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    sim = new SimulationLoop(kPeriodNanos);
+    drivetrain = new DrivetrainSimulator(sim.getHardware());
+    sim.addPlant(drivetrain);
+    drive = Drive.getInstance();
+    navigation = Navigation.getInstance();
+
+    System.out.println(String.format("%-22s %8s %9s %8s %9s %8s %6s", "Scenario", "rise s",
+        "overshoot", "settle s", "ss error", "done s", "same"));
+    long start = System.nanoTime();
+    for (final double angle : new double[] {30.0, 90.0, 180.0}) {
+      final DriveTurnController turn = DriveTurnController.getInstance();
+      run("Turn " + (int) angle + " deg", repeats, Measure.HEADING, angle,
+          Constants.Properties.PID_DRIVE_ANGLE_TOLERANCE, 3.0, 0.0, new Runnable() {
+            public void run() {
+              turn.setGoal(angle);
+            }
+          }, turn);
+    }
+    for (final double distance : new double[] {24.0, 60.0, 120.0}) {
+      final DriveDistanceController controller = DriveDistanceController.getInstance();
+      run("Distance " + (int) distance + " in", repeats, Measure.DISTANCE, distance, 1.0, 4.0,
+          0.0, new Runnable() {
+            public void run() {
+              controller.setGoal(distance, 0.8);
+            }
+          }, controller);
+    }
+    PropertySet.getInstance().addProperty("distanceFollowProfile", "true");
+    DriveDistanceController.getInstance().loadProperties();
+    for (final double distance : new double[] {24.0, 60.0, 120.0}) {
+      final DriveDistanceController controller = DriveDistanceController.getInstance();
+      run("Profile " + (int) distance + " in", repeats, Measure.DISTANCE, distance, 1.0, 4.0,
+          0.0, new Runnable() {
+            public void run() {
+              controller.setGoal(distance, 0.8);
+            }
+          }, controller);
+    }
+    PropertySet.getInstance().addProperty("distanceFollowProfile", "false");
+    DriveDistanceController.getInstance().loadProperties();
+    drive.useAlphaFilter(true);
+    final DriveStraightController straight = DriveStraightController.getInstance();
+    run("Straight, 5% pull", repeats, Measure.HEADING, 0.0,
+        Constants.Properties.PID_DRIVE_ANGLE_TOLERANCE, 3.0, 0.05, new Runnable() {
+          public void run() {
+            straight.setGoal(0.6);
+          }
+        }, straight);
+    drivetrain.addDefense(24.0, 48.0, 5.0);
+    final DriveOverDefenseController overDefense = DriveOverDefenseController.getInstance();
+    run("Over defense, 84 in", repeats, Measure.PATH_DISTANCE, 84.0, 6.0, 5.0, 0.0,
+        new Runnable() {
+          public void run() {
+            overDefense.setGoal(120.0, 0.8, 84.0);
+          }
+        }, overDefense);
+    drivetrain.clearDefenses();
+
+    double seconds = (System.nanoTime() - start) / 1.0e9;
+    System.out.println(String.format("%d fast loop cycles (%.0f simulated seconds) in %.2f s, "
+        + "%.0f cycles per second", steps, steps * kPeriodNanos / 1.0e9, seconds,
+        steps / seconds));
+  }
+
+  /**
+   * Runs one scenario several times and prints a row of results.
+   * 
+   * @param target Where the measured value should end up
+   * @param tolerance How close to the target counts as settled
+   * @param duration How long to run each trial, in seconds
+   * @param imbalance How much weaker the left side of the drive is
+   * @param setGoal Gives the controller its goal
+   */
+  private static void run(String name, int repeats, Measure measure, double target,
+      double tolerance, double duration, double imbalance, Runnable setGoal,
+      Controller controller) {
+    double[] first = null;
+    boolean same = true;
+    for (int i = 0; i < repeats; i++) {
+      double[] result = trial(measure, target, tolerance, duration, imbalance, setGoal, controller);
+      if (first == null) {
+        first = result;
+      } else if (!Arrays.equals(first, result)) {
+        same = false;
+      }
+    }
+    System.out.println(String.format("%-22s %8.2f %9.2f %8.2f %9.2f %8.2f %6s", name, first[0],
+        first[1], first[2], first[3], first[4], same ? "yes" : "NO"));
+  }
+
+  private static double[] trial(Measure measure, double target, double tolerance,
+      double duration, double imbalance, Runnable setGoal, Controller controller) {
+    drive.setOpenLoop();
+    drive.reset();
+    drivetrain.reset();
+    drivetrain.setDriveImbalance(imbalance);
+    // a fresh estimator, so nothing it learned in the last trial carries over
+    navigation.setPoseEstimator(new ComplementaryPoseEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+    do {
+      sim.step();
+      steps++;
+    } while (steps % kScheduleLength != 0);
+
+    controller.reset();
+    setGoal.run();
+    drive.setCurrentController(controller);
+    response.reset(0.0, target, tolerance);
+    double doneTime = Double.NaN;
+    int cycles = (int) (duration * 1.0e9 / kPeriodNanos);
+    for (int i = 1; i <= cycles; i++) {
+      sim.step();
+      steps++;
+      double time = i * kPeriodNanos / 1.0e9;
+      response.record(time, measure(measure));
+      // onTarget() can be left over from the last goal until the controller has run once
+      if (Double.isNaN(doneTime) && i >= drive.getLoopDivisor() && controller.onTarget()) {
+        doneTime = time;
+      }
+    }
+    drive.setOpenLoop();
+    drive.reset();
+    return new double[] {response.getRiseTime(), response.getOvershoot(),
+        response.getSettlingTime(), response.getSteadyStateError(0.5), doneTime};
+  }
+
+  private static double measure(Measure measure) {
+    switch (measure) {
+      case HEADING:
+        return drivetrain.getHeadingInDegrees();
+      case DISTANCE:
+        return drivetrain.getXinInches();
+      default:
+        return drivetrain.getPathDistance();
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package missdaisy.simulation;
+
+import missdaisy.Constants;
+import missdaisy.hal.SimulatedEncoder;
+import missdaisy.hal.SimulatedGyro;
+import missdaisy.hal.SimulatedHardware;
+import missdaisy.hal.SimulatedMotor;
+
+/**
+ * A physics model of the drive base, for running the drive controllers without a robot.
+ * 
+ * Each side is a gearbox of CIMs driving a wheel, and the wheels push the chassis through a tire
+ * model that slips once the force gets past what friction can hold. The chassis has mass and a
+ * moment of inertia, skid steer turning is resisted by scrub, and driving up a defense fights
+ * gravity. The encoders measure how far the wheels turned, which is not quite how far the robot
+ * went when they slip.
+ * 
+ * Internally everything is in SI units. The sensors are given inches and degrees like the real
+ * ones. Heading increases clockwise.
+ * 
+ * @author jrussell
+ */
+public class DrivetrainSimulator implements Plant {
+  private static final double kInchesPerMeter = 39.37;
+  private static final double kGravity = 9.81;
+  // The physics gets unstable with a step any longer than this, in seconds
+  private static final double kMaxStep = 0.0005;
+  // Force per unit of slip between the wheel surface and the floor, N per m/s
+  private static final double kTireStiffness = 3000.0;
+  private static final int kMaxDefenses = 8;
+
+  private final SimulatedMotor mLeftMotor;
+  private final SimulatedMotor mRightMotor;
+  private final SimulatedEncoder mLeftEncoder;
+  private final SimulatedEncoder mRightEncoder;
+  private final SimulatedGyro mGyro;
+
+  // Robot parameters
+  private DCMotor mMotor = DCMotor.CIM;
+  private int mMotorsPerSide = 2;
+  private double mGearRatio = 10.71;
+  private double mWheelRadius = 0.0762; // 3 inches
+  private double mTrackWidth = 0.62;
+  private double mMass = 54.0; // kg, with battery and bumpers
+  private double mMomentOfInertia = 5.0; // kg m^2
+  private double mSideMass = 4.0; // wheels, gears and motor rotors, as seen at the wheel surface
+  private double mFriction = 1.1; // coefficient between the wheels and the carpet
+  private double mRollingResistance = 8.0; // N per m/s
+  private double mScrubTorque = 15.0; // N m, the most the carpet resists turning
+  private double mGearboxEfficiency = 0.85;
+  private double mLeftWeakness = 0.0; // fraction of force the left gearbox loses to the right
+  private double mGyroDrift = 0.0; // degrees per second
+  private double mGyroError; // degrees the gyro has drifted since the last reset
+
+  // Defenses, as distances along the path the robot drives, in meters
+  private final double[] mDefenseStart = new double[kMaxDefenses];
+  private final double[] mDefenseLength = new double[kMaxDefenses];
+  private final double[] mDefenseAngle = new double[kMaxDefenses];
+  private int mNumDefenses = 0;
+
+  // State
+  private double mX;
+  private double mY;
+  private double mHeading; // radians
+  private double mVelocity; // m/s
+  private double mTurnRate; // radians per second
+  private double mLeftWheelSpeed; // surface speed, m/s
+  private double mRightWheelSpeed;
+  private double mLeftWheelDistance; // meters the wheel surface has turned
+  private double mRightWheelDistance;
+  private double mPathDistance; // meters the robot has traveled, forward or back
+  private double mPitch; // radians
+  private double mBatteryVoltage = 12.5;
+  private double mBatteryCurrent;
+
+  public DrivetrainSimulator(SimulatedHardware hardware) {
+    mLeftMotor = hardware.getPWM(Constants.PWMs.DRIVE_LEFT_MOTOR);
+    mRightMotor = hardware.getPWM(Constants.PWMs.DRIVE_RIGHT_MOTOR);
+    mLeftEncoder = hardware.getSimulatedEncoder(Constants.DigitalInputs.DRIVE_LEFT_ENCODER_1,
+        Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
+    mRightEncoder = hardware.getSimulatedEncoder(Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_1,
+        Constants.Properties.DRIVE_DISTANCE_PER_PULSE);
+    mGyro = hardware.getSimulatedGyro();
+  }
+
+  /**
+   * Stops the robot and puts it back at the origin. The robot code should reset Navigation
+   * afterwards, the same way it does at the start of a match.
+   */
+  public void reset() {
+    reset(0.0, 0.0, 0.0);
+  }
+
+  /**
+   * Stops the robot and puts it somewhere on the field.
+   * 
+   * @param x The x coordinate, in inches
+   * @param y The y coordinate, in inches
+   * @param heading The heading, in degrees
+   */
+  public void reset(double x, double y, double heading) {
+    mX = x / kInchesPerMeter;
+    mY = y / kInchesPerMeter;
+    mHeading = Math.toRadians(heading);
+    mGyroError = 0.0;
+    mVelocity = 0.0;
+    mTurnRate = 0.0;
+    mLeftWheelSpeed = 0.0;
+    mRightWheelSpeed = 0.0;
+    mLeftWheelDistance = 0.0;
+    mRightWheelDistance = 0.0;
+    mPathDistance = 0.0;
+    mPitch = 0.0;
+    mBatteryCurrent = 0.0;
+    updateSensors();
+  }
+
+  /**
+   * Puts a defense in the robot's path: a ramp up to the given height and straight back down.
+   * 
+   * @param start How far the robot drives before it reaches the defense, in inches
+   * @param length How long the defense is, in inches
+   * @param height How high the top of the defense is, in inches
+   */
+  public void addDefense(double start, double length, double height) {
+    if (mNumDefenses >= kMaxDefenses) {
+      throw new IllegalStateException("Too many defenses");
+    }
+    mDefenseStart[mNumDefenses] = start / kInchesPerMeter;
+    mDefenseLength[mNumDefenses] = length / kInchesPerMeter;
+    mDefenseAngle[mNumDefenses] = Math.atan2(2.0 * height, length);
+    mNumDefenses++;
+  }
+
+  public void clearDefenses() {
+    mNumDefenses = 0;
+  }
+
+  public double getMass() {
+    return mMass;
+  }
+
+  public void setMass(double kilograms) {
+    mMass = kilograms;
+  }
+
+  public void setMomentOfInertia(double kilogramMetersSquared) {
+    mMomentOfInertia = kilogramMetersSquared;
+  }
+
+  public double getFriction() {
+    return mFriction;
+  }
+
+  public void setFriction(double coefficient) {
+    mFriction = coefficient;
+  }
+
+  public void setScrubTorque(double newtonMeters) {
+    mScrubTorque = newtonMeters;
+  }
+
+  public void setGearing(DCMotor motor, int motorsPerSide, double gearRatio) {
+    mMotor = motor;
+    mMotorsPerSide = motorsPerSide;
+    mGearRatio = gearRatio;
+  }
+
+  /**
+   * Makes the left side of the drive weaker than the right, like a tight gearbox does, so the
+   * robot pulls to one side when both sides are given the same output.
+   * 
+   * @param fraction How much of the left side's force is lost, e.g. 0.05 for 5%
+   */
+  public void setDriveImbalance(double fraction) {
+    mLeftWeakness = fraction;
+  }
+
+  /**
+   * @param degreesPerSecond How fast the gyro's heading drifts away from the truth
+   */
+  public void setGyroDrift(double degreesPerSecond) {
+    mGyroDrift = degreesPerSecond;
+  }
+
+  /**
+   * Knocks the robot along its heading, as if another robot ran into it. The wheels are dragged
+   * along through the tires over the next few steps.
+   * 
+   * @param inchesPerSecond How much the robot's speed changes, backwards if negative
+   */
+  public void bump(double inchesPerSecond) {
+    mVelocity += inchesPerSecond / kInchesPerMeter;
+  }
+
+  public void setBatteryVoltage(double volts) {
+    mBatteryVoltage = volts;
+  }
+
+  public double getBatteryCurrent() {
+    return mBatteryCurrent;
+  }
+
+  public void step(double dt) {
+    int steps = (int) Math.ceil(dt / kMaxStep);
+    double h = dt / steps;
+    // Both motors on each side are on one speed controller, and the right side is mounted
+    // backwards, so a negative output drives it forward
+    double leftVolts = mLeftMotor.getOutput() * mBatteryVoltage;
+    double rightVolts = -mRightMotor.getOutput() * mBatteryVoltage;
+    double current = 0.0;
+    for (int i = 0; i < steps; i++) {
+      double normalForce = mMass * kGravity * Math.cos(mPitch) / 2.0;
+      double maxTraction = mFriction * normalForce;
+
+      double leftGround = mVelocity + mTurnRate * mTrackWidth / 2.0;
+      double rightGround = mVelocity - mTurnRate * mTrackWidth / 2.0;
+      double leftTraction = clamp(kTireStiffness * (mLeftWheelSpeed - leftGround), maxTraction);
+      double rightTraction =
+          clamp(kTireStiffness * (mRightWheelSpeed - rightGround), maxTraction);
+
+      double leftMotorSpeed = mLeftWheelSpeed / mWheelRadius * mGearRatio;
+      double rightMotorSpeed = mRightWheelSpeed / mWheelRadius * mGearRatio;
+      double leftDrive = wheelForce(leftVolts, leftMotorSpeed) * (1.0 - mLeftWeakness);
+      double rightDrive = wheelForce(rightVolts, rightMotorSpeed);
+      mLeftWheelSpeed += (leftDrive - leftTraction) / mSideMass * h;
+      mRightWheelSpeed += (rightDrive - rightTraction) / mSideMass * h;
+
+      double force = leftTraction + rightTraction - mRollingResistance * mVelocity
+          - mMass * kGravity * Math.sin(mPitch);
+      double torque = (leftTraction - rightTraction) * mTrackWidth / 2.0
+          - clamp(mTurnRate * 200.0, mScrubTorque);
+      mVelocity += force / mMass * h;
+      mTurnRate += torque / mMomentOfInertia * h;
+
+      double distance = mVelocity * h;
+      mX += distance * Math.cos(mPitch) * Math.cos(mHeading);
+      mY += distance * Math.cos(mPitch) * Math.sin(mHeading);
+      mHeading += mTurnRate * h;
+      mPathDistance += Math.abs(distance);
+      mPitch = pitchAt(mPathDistance);
+      mLeftWheelDistance += mLeftWheelSpeed * h;
+      mRightWheelDistance += mRightWheelSpeed * h;
+
+      current += motorCurrent(leftVolts, leftMotorSpeed, mLeftMotor.getOutput())
+          + motorCurrent(rightVolts, rightMotorSpeed, mRightMotor.getOutput());
+    }
+    mBatteryCurrent = current / steps;
+    mGyroError += mGyroDrift * dt;
+    updateSensors();
+  }
+
+  /**
+   * @return The force, in newtons, that one side's motors put on the wheel surface
+   */
+  private double wheelForce(double volts, double motorSpeed) {
+    double torque = mMotor.getTorque(volts, motorSpeed) * mMotorsPerSide;
+    return torque * mGearRatio * mGearboxEfficiency / mWheelRadius;
+  }
+
+  /**
+   * The current one side draws from the battery. A speed controller only connects the motors to
+   * the battery for the on part of each PWM cycle, so the battery sees the motor current scaled by
+   * the duty cycle.
+   */
+  private double motorCurrent(double volts, double motorSpeed, double dutyCycle) {
+    return Math.abs(mMotor.getCurrent(volts, motorSpeed) * mMotorsPerSide * dutyCycle);
+  }
+
+  private double pitchAt(double pathDistance) {
+    for (int i = 0; i < mNumDefenses; i++) {
+      double into = pathDistance - mDefenseStart[i];
+      if (into >= 0.0 && into < mDefenseLength[i]) {
+        return into < mDefenseLength[i] / 2.0 ? mDefenseAngle[i] : -mDefenseAngle[i];
+      }
+    }
+    return 0.0;
+  }
+
+  private void updateSensors() {
+    mLeftEncoder.setState(mLeftWheelDistance * kInchesPerMeter,
+        mLeftWheelSpeed * kInchesPerMeter);
+    // the right encoder is mounted backwards too
+    mRightEncoder.setState(-mRightWheelDistance * kInchesPerMeter,
+        -mRightWheelSpeed * kInchesPerMeter);
+    mGyro.setState(Math.toDegrees(mHeading) + mGyroError, Math.toDegrees(mPitch),
+        Math.toDegrees(mTurnRate) + mGyroDrift);
+  }
+
+  private static double clamp(double value, double limit) {
+    return Math.max(-limit, Math.min(limit, value));
+  }
+
+  /**
+   * @return The robot's true x coordinate, in inches
+   */
+  public double getXinInches() {
+    return mX * kInchesPerMeter;
+  }
+
+  public double getYinInches() {
+    return mY * kInchesPerMeter;
+  }
+
+  /**
+   * @return The robot's true heading, in degrees, not wrapped
+   */
+  public double getHeadingInDegrees() {
+    return Math.toDegrees(mHeading);
+  }
+
+  public double getPitchInDegrees() {
+    return Math.toDegrees(mPitch);
+  }
+
+  /**
+   * @return The robot's true speed, in inches per second
+   */
+  public double getVelocity() {
+    return mVelocity * kInchesPerMeter;
+  }
+
+  /**
+   * @return How far the robot has driven, forwards or backwards, since the last reset, in inches
+   */
+  public double getPathDistance() {
+    return mPathDistance * kInchesPerMeter;
+  }
+}
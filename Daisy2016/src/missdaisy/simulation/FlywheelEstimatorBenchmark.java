@@ -0,0 +1,150 @@
+package missdaisy.simulation;
+
+import missdaisy.Constants;
+import missdaisy.hal.SimulatedCounter;
+import missdaisy.loops.controllers.ShooterSpeedController;
+import missdaisy.subsystems.Shooter;
+import missdaisy.utilities.MovingAverageFilter;
+
+/**
+ * Compares the shooter's RPM estimate from the banner sensor's edge times against the old one, a
+ * moving average of ten readings of the counter's period, with the true wheel speed from the
+ * flywheel simulator.
+ *
+ * The shooter speed controller holds the wheel at speed while a ball is fired every second. For
+ * each estimate it prints the RMS error while the wheel is holding speed, the RMS error over the
+ * whole run, how long after a ball is fired it takes for the estimate to get within the on target
+ * tolerance of the true speed and stay there for 50 ms, and how often the controller would have
+ * called the wheel on target when it was not.
+ *
+ * Usage: FlywheelEstimatorBenchmark [goal rpm]
+ *
+ * @author jrussell
+ */
+public class FlywheelEstimatorBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  private static final double kDuration = 10.0; // seconds per trial
+  private static final double kFirstShot = 3.0; // seconds
+  private static final double kShotPeriod = 1.0; // seconds
+  private static final double kLastShot = 9.0; // seconds
+  private static final double kSettledTime = 0.05; // seconds
+
+  public static void main(String[] args) {
+    double goal = args.length > 0 ? Double.parseDouble(args[0]) : 4000.0;
+    SimulationLoop sim = new SimulationLoop(kPeriodNanos);
+    FlywheelSimulator flywheel = new FlywheelSimulator(sim.getHardware());
+    sim.addPlant(flywheel);
+    SimulatedCounter counter =
+        sim.getHardware().getSimulatedCounter(Constants.DigitalInputs.SHOOTER_BANNER);
+    Shooter shooter = Shooter.getInstance();
+    ShooterSpeedController controller = ShooterSpeedController.getInstance();
+
+    System.out.println(String.format("%-34s %9s %10s %10s %9s %11s", "Estimate", "hold rms",
+        "total rms", "settle ms", "worst ms", "false on %"));
+    for (double markError : new double[] {0.0, 0.03}) {
+      String tape = markError == 0.0 ? "" : ", uneven tape";
+      flywheel.setMarkError(markError);
+      shooter.setOpenLoop();
+      shooter.reset();
+      flywheel.reset();
+      controller.reset();
+      controller.setGoal(goal);
+      shooter.setCurrentController(controller);
+
+      MovingAverageFilter average = new MovingAverageFilter(10);
+      Stats old = new Stats();
+      Stats edges = new Stats();
+      double tolerance = Constants.Properties.PID_SHOOTER_RPM_TOLERANCE;
+      double nextShot = kFirstShot;
+      int cycles = (int) (kDuration * 1.0e9 / kPeriodNanos);
+      for (int i = 1; i <= cycles; i++) {
+        sim.step();
+        double time = i * kPeriodNanos / 1.0e9;
+        // what Shooter.runInputFilters() used to do
+        double rpm = 60.0 / (counter.getPeriod() * 2.0);
+        if (rpm < 8000.0) {
+          average.setInput(rpm);
+          average.run();
+        }
+        double actual = flywheel.getRPM();
+        old.add(time, average.getAverage(), actual, goal, tolerance);
+        edges.add(time, shooter.getRPM(), actual, goal, tolerance);
+        if (time >= nextShot && nextShot <= kLastShot) {
+          flywheel.shoot();
+          old.shot(time);
+          edges.shot(time);
+          nextShot += kShotPeriod;
+        }
+      }
+      shooter.setOpenLoop();
+      shooter.setSpeed(0.0);
+      old.print("Average of 10 periods" + tape);
+      edges.print("Fit to edge times" + tape);
+    }
+  }
+
+  /**
+   * How far one estimate was from the true speed.
+   */
+  private static class Stats {
+    private double mHoldSquares;
+    private int mHoldSamples;
+    private double mTotalSquares;
+    private int mTotalSamples;
+    private int mFalseOnTarget;
+    private int mOffTarget;
+    private double mLastShot = Double.NaN;
+    private double mSettledSince = Double.NaN;
+    private double mSettleSum;
+    private double mSettleWorst;
+    private int mSettles;
+
+    void add(double time, double estimate, double actual, double goal, double tolerance) {
+      double error = estimate - actual;
+      if (time > 1.0) {
+        mTotalSquares += error * error;
+        mTotalSamples++;
+      }
+      boolean holding = Math.abs(actual - goal) < tolerance;
+      if (time > 1.0 && holding && Double.isNaN(mLastShot)) {
+        mHoldSquares += error * error;
+        mHoldSamples++;
+      }
+      if (time > 1.0 && !holding) {
+        mOffTarget++;
+        if (Math.abs(estimate - goal) < tolerance) {
+          mFalseOnTarget++;
+        }
+      }
+      if (!Double.isNaN(mLastShot)) {
+        if (Math.abs(error) >= tolerance) {
+          mSettledSince = Double.NaN;
+        } else if (Double.isNaN(mSettledSince)) {
+          mSettledSince = time;
+        } else if (time - mSettledSince >= kSettledTime) {
+          double settle = mSettledSince - mLastShot;
+          mSettleSum += settle;
+          mSettleWorst = Math.max(mSettleWorst, settle);
+          mSettles++;
+          mLastShot = Double.NaN;
+        }
+      }
+    }
+
+    void shot(double time) {
+      mLastShot = time;
+      mSettledSince = Double.NaN;
+    }
+
+    void print(String name) {
+      // if the estimate never settled after one of the shots, the worst case is never
+      String settle =
+          mSettles > 0 ? String.format("%.1f", 1000.0 * mSettleSum / mSettles) : "never";
+      String worst = mSettles > 0 && Double.isNaN(mLastShot)
+          ? String.format("%.1f", 1000.0 * mSettleWorst) : "never";
+      System.out.println(String.format("%-34s %9.1f %10.1f %10s %9s %11.1f", name,
+          Math.sqrt(mHoldSquares / mHoldSamples), Math.sqrt(mTotalSquares / mTotalSamples),
+          settle, worst, 100.0 * mFalseOnTarget / Math.max(1, mOffTarget)));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package missdaisy.simulation;
+
+import missdaisy.Constants;
+import missdaisy.hal.SimulatedCounter;
+import missdaisy.hal.SimulatedEdgeTimestamps;
+import missdaisy.hal.SimulatedHardware;
+import missdaisy.hal.SimulatedMotor;
+
+/**
+ * A physics model of the shooter wheel and the banner sensor that measures it.
+ *
+ * The motor drives the wheel through a gearbox, the wheel has inertia and a little bearing drag,
+ * and every ball fired takes some of the wheel's momentum with it. The banner sensor sees two
+ * pieces of tape per revolution. Like the real counter, the period it reports is the time between
+ * the last two edges, rounded to the FPGA's microsecond clock, and it only changes when an edge
+ * goes by. Each edge is also timestamped, on a clock that starts at the last reset. The tape can be
+ * put on unevenly, which makes the period alternate between two values.
+ *
+ * @author jrussell
+ */
+public class FlywheelSimulator implements Plant {
+  private static final int kCountsPerRev = 2;
+  private static final double kMaxStep = 0.0005; // seconds
+  private static final double kCounterResolution = 1.0e-6; // seconds
+  // The counter calls the wheel stopped if no edge comes for this long, in seconds
+  private static final double kMaxPeriod = 0.5;
+
+  private final SimulatedMotor mMotor;
+  private final SimulatedCounter mCounter;
+  private final SimulatedEdgeTimestamps mEdgeTimestamps;
+
+  // Shooter parameters
+  private DCMotor mDCMotor = DCMotor.RS775_PRO;
+  private double mGearRatio = 3.0; // motor turns per wheel turn
+  private double mInertia = 0.0025; // kg m^2, the wheel and everything spinning with it
+  private double mDrag = 0.0005; // N m per radian per second, bearings and air
+  // How much inertia a ball adds while it is being squeezed up to speed, in kg m^2
+  private double mBallInertia = 0.0008;
+  private double mMarkError = 0.0; // how far off the second piece of tape is, see setMarkError
+
+  // State
+  private double mSpeed; // wheel radians per second
+  private double mAngle; // wheel radians since the last reset
+  private double mTime; // seconds since the last reset
+  private double mNextEdge; // wheel angle of the next piece of tape
+  private int mEdges;
+  private double mLastEdgeTime;
+  private double mPeriod;
+  private int mBallsFired;
+  private double mBatteryVoltage = 12.5;
+  private double mBatteryCurrent;
+
+  public FlywheelSimulator(SimulatedHardware hardware) {
+    mMotor = hardware.getCAN(Constants.CAN.SHOOTER_TALONSRX_ID);
+    mCounter = hardware.getSimulatedCounter(Constants.DigitalInputs.SHOOTER_BANNER);
+    mEdgeTimestamps =
+        hardware.getSimulatedEdgeTimestamps(Constants.DigitalInputs.SHOOTER_BANNER);
+  }
+
+  /**
+   * Stops the wheel.
+   */
+  public void reset() {
+    mSpeed = 0.0;
+    mAngle = 0.0;
+    mTime = 0.0;
+    mEdges = 0;
+    mNextEdge = edgeAngle(1);
+    mLastEdgeTime = Double.NEGATIVE_INFINITY;
+    mPeriod = Double.POSITIVE_INFINITY;
+    mBallsFired = 0;
+    mBatteryCurrent = 0.0;
+    mCounter.setPeriod(mPeriod);
+    mEdgeTimestamps.clear();
+    mEdgeTimestamps.setTime(mTime);
+  }
+
+  public void setGearing(DCMotor motor, double gearRatio) {
+    mDCMotor = motor;
+    mGearRatio = gearRatio;
+  }
+
+  public void setInertia(double kilogramMetersSquared) {
+    mInertia = kilogramMetersSquared;
+  }
+
+  public void setBallInertia(double kilogramMetersSquared) {
+    mBallInertia = kilogramMetersSquared;
+  }
+
+  /**
+   * @param fraction How far the second piece of tape is from halfway around the wheel, as a
+   *        fraction of the spacing between them
+   */
+  public void setMarkError(double fraction) {
+    mMarkError = fraction;
+  }
+
+  public void setBatteryVoltage(double volts) {
+    mBatteryVoltage = volts;
+  }
+
+  public double getBatteryCurrent() {
+    return mBatteryCurrent;
+  }
+
+  /**
+   * Fires a ball. The ball leaves with part of the wheel's momentum, as if the wheel suddenly had
+   * to spin the ball up along with itself.
+   */
+  public void shoot() {
+    mSpeed *= mInertia / (mInertia + mBallInertia);
+    mBallsFired++;
+  }
+
+  public void step(double dt) {
+    // the motor is inverted, so a negative output spins the wheel forward
+    double output = -mMotor.getOutput();
+    double volts = output * mBatteryVoltage;
+    int substeps = (int) Math.ceil(dt / kMaxStep);
+    double h = dt / substeps;
+    double current = 0.0;
+    for (int i = 0; i < substeps; i++) {
+      double motorSpeed = mSpeed * mGearRatio;
+      double torque = mDCMotor.getTorque(volts, motorSpeed) * mGearRatio - mDrag * mSpeed;
+      current += mDCMotor.getCurrent(volts, motorSpeed) / substeps;
+      double lastAngle = mAngle;
+      mSpeed = Math.max(0.0, mSpeed + torque / mInertia * h);
+      mAngle += mSpeed * h;
+      mTime += h;
+      while (mAngle >= mNextEdge) {
+        // when, inside this substep, the tape went past the sensor
+        double edgeTime = mTime - h * (mAngle - mNextEdge) / (mAngle - lastAngle);
+        edgeTime = Math.floor(edgeTime / kCounterResolution) * kCounterResolution;
+        mPeriod = edgeTime - mLastEdgeTime;
+        mLastEdgeTime = edgeTime;
+        mEdgeTimestamps.addEdge(edgeTime);
+        mEdges++;
+        mNextEdge = edgeAngle(mEdges + 1);
+      }
+    }
+    // the controller only switches the battery in for part of each PWM cycle
+    mBatteryCurrent = Math.abs(output * current);
+    mMotor.setOutputCurrent(Math.abs(current));
+    mCounter.setPeriod(mTime - mLastEdgeTime > kMaxPeriod ? Double.POSITIVE_INFINITY : mPeriod);
+    mEdgeTimestamps.setTime(mTime);
+  }
+
+  /**
+   * @return The wheel angle, in radians, of the given edge. Odd edges are the second piece of tape.
+   */
+  private double edgeAngle(int edge) {
+    double spacing = 2.0 * Math.PI / kCountsPerRev;
+    return edge % 2 == 1 ? (edge + mMarkError) * spacing : edge * spacing;
+  }
+
+  /**
+   * @return The true speed of the wheel, in RPM
+   */
+  public double getRPM() {
+    return mSpeed * 60.0 / (2.0 * Math.PI);
+  }
+
+  public int getBallsFired() {
+    return mBallsFired;
+  }
+}
@@ -0,0 +1,180 @@
+package missdaisy.simulation;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs thousands of simulated autonomous trials for each mode and reports how often each one
+ * worked and how long it took, so we can pick modes at events from numbers instead of guesses.
+ * 
+ * Trials run in parallel on every core. Each worker thread loads its own copy of the robot code
+ * with a SandboxClassLoader, and runs its share of the trials there one after another. Trial
+ * number i of every mode uses the same seed, so the modes are compared under the same conditions.
+ * 
+ * Usage: MonteCarloRunner position trials file...
+ * 
+ * @author jrussell
+ */
+public class MonteCarloRunner {
+  // Trials per task. Big enough that splitting is cheap next to running them.
+  private static final int kTrialsPerTask = 4;
+  private static final int kHistogramBins = 15; // one second each
+
+  private static final ThreadLocal<Method> trialMethod = new ThreadLocal<Method>() {
+    @Override
+    protected Method initialValue() {
+      try {
+        Class<?> trial = Class.forName(AutonomousTrial.class.getName(), true,
+            new SandboxClassLoader());
+        return trial.getMethod("run", String.class, int.class, boolean.class, double.class,
+            long.class);
+      } catch (ClassNotFoundException | NoSuchMethodException e) {
+        throw new IllegalStateException("Could not load the robot code into a sandbox", e);
+      }
+    }
+  };
+
+  public static void main(String[] args) {
+    if (args.length < 3) {
+      System.err.println("Usage: MonteCarloRunner position trials file...");
+      return;
+    }
+    int position = Integer.parseInt(args[0]);
+    int trials = Integer.parseInt(args[1]);
+    ForkJoinPool pool = new ForkJoinPool();
+    PrintStream out = System.out;
+
+    out.println(String.format("Position %d, %d trials per mode, %d threads", position, trials,
+        pool.getParallelism()));
+    out.println(String.format("%-16s %8s %7s %7s %7s %7s  %s", "Mode", "success", "p10 s",
+        "p50 s", "p90 s", "max s", "finish time histogram, 0 to 15 s"));
+    for (int i = 2; i < args.length; i++) {
+      String file = args[i];
+      if (!new File(file).exists()) {
+        System.err.println("Could not find " + file);
+        continue;
+      }
+      String name = new File(file).getName().replace(".txt", "");
+      double[] finishTimes = new double[trials];
+      boolean[] successes = new boolean[trials];
+      // the robot code talks a lot, and printing would serialize the workers
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+      }));
+      long start = System.nanoTime();
+      try {
+        pool.invoke(new Trials(file, position, getDefenseHeight(name), 0, trials, successes,
+            finishTimes));
+      } finally {
+        System.setOut(out);
+      }
+      double seconds = (System.nanoTime() - start) / 1.0e9;
+      report(out, name, successes, finishTimes, seconds);
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * A range of trials, split in half until it is small enough to run.
+   */
+  private static class Trials extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final String mFile;
+    private final int mPosition;
+    private final double mDefenseHeight;
+    private final int mFrom;
+    private final int mTo;
+    private final boolean[] mSuccesses;
+    private final double[] mFinishTimes;
+
+    Trials(String file, int position, double defenseHeight, int from, int to,
+        boolean[] successes, double[] finishTimes) {
+      mFile = file;
+      mPosition = position;
+      mDefenseHeight = defenseHeight;
+      mFrom = from;
+      mTo = to;
+      mSuccesses = successes;
+      mFinishTimes = finishTimes;
+    }
+
+    @Override
+    protected void compute() {
+      if (mTo - mFrom > kTrialsPerTask) {
+        int middle = (mFrom + mTo) >>> 1;
+        invokeAll(
+            new Trials(mFile, mPosition, mDefenseHeight, mFrom, middle, mSuccesses, mFinishTimes),
+            new Trials(mFile, mPosition, mDefenseHeight, middle, mTo, mSuccesses, mFinishTimes));
+        return;
+      }
+      Method trial = trialMethod.get();
+      for (int i = mFrom; i < mTo; i++) {
+        try {
+          double[] result =
+              (double[]) trial.invoke(null, mFile, mPosition, false, mDefenseHeight, (long) i);
+          mSuccesses[i] = result[0] > 0.5;
+          mFinishTimes[i] = result[1];
+        } catch (IllegalAccessException | InvocationTargetException e) {
+          throw new IllegalStateException("Trial " + i + " failed", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Guesses the height of the defense a mode is meant for from its name, in inches.
+   */
+  private static double getDefenseHeight(String name) {
+    switch (name) {
+      case "Moat":
+        return 6.0;
+      case "RockWall":
+        return 8.0;
+      case "Rampparts":
+        return 5.0;
+      default:
+        return 4.0;
+    }
+  }
+
+  private static void report(PrintStream out, String name, boolean[] successes,
+      double[] finishTimes, double seconds) {
+    int count = 0;
+    double[] times = new double[successes.length];
+    int[] histogram = new int[kHistogramBins];
+    for (int i = 0; i < successes.length; i++) {
+      if (successes[i]) {
+        times[count++] = finishTimes[i];
+        histogram[Math.min(kHistogramBins - 1, (int) finishTimes[i])]++;
+      }
+    }
+    Arrays.sort(times, 0, count);
+    StringBuilder bins = new StringBuilder();
+    for (int i = 0; i < kHistogramBins; i++) {
+      bins.append(String.format("%5d", histogram[i]));
+    }
+    out.println(String.format("%-16s %7.1f%% %7.2f %7.2f %7.2f %7.2f %s", name,
+        100.0 * count / successes.length, percentile(times, count, 0.1),
+        percentile(times, count, 0.5), percentile(times, count, 0.9),
+        count > 0 ? times[count - 1] : Double.NaN, bins));
+    out.println(String.format("%-16s %d trials in %.1f s", "", successes.length, seconds));
+  }
+
+  private static double percentile(double[] sorted, int count, double percentile) {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    int rank = (int) Math.ceil(percentile * count);
+    return sorted[Math.max(0, Math.min(count, rank) - 1)];
+  }
+}
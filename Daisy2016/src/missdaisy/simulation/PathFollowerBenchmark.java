@@ -0,0 +1,146 @@
+package missdaisy.simulation;
+
+import missdaisy.Constants;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.LatencyHistogram;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.controllers.DrivePathController;
+import missdaisy.subsystems.Drive;
+import missdaisy.utilities.Path;
+import missdaisy.utilities.Trajectory;
+import missdaisy.utilities.Waypoint;
+
+/**
+ * Times how long it takes to generate a path, and drives it in the drivetrain simulator.
+ *
+ * For generation it prints the median, 99th percentile and worst time, both reusing one Path and
+ * with a new Path every time, the way the first preparePath() for a path goes. For the path it
+ * prints the fastest each wheel is asked to go, speed up and change its acceleration, and throws
+ * if any of them is over the drive's limits. For the drive it prints how far the robot got from
+ * where the path said it should be at each moment, how far it ended from the last waypoint, and
+ * when the controller said it was done.
+ *
+ * Usage: PathFollowerBenchmark [waypoints] [speed]
+ *
+ * @author jrussell
+ */
+public class PathFollowerBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  private static final int kWarmup = 200;
+  private static final int kRuns = 1000;
+  private static final double kDuration = 10.0; // seconds
+  // how far over a limit a wheel can be from floating point rounding alone
+  private static final double kRounding = 1.0e-9;
+  // a 5 waypoint path: out of the start, a dogleg over, and on toward the goal
+  private static final String kWaypoints = "0:0:0,60:0:0,120:48:45,180:72:0,260:72:0";
+
+  public static void main(String[] args) {
+    String waypoints = args.length > 0 ? args[0] : kWaypoints;
+    double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+    SimulationLoop sim = new SimulationLoop(kPeriodNanos);
+    DrivetrainSimulator drivetrain = new DrivetrainSimulator(sim.getHardware());
+    sim.addPlant(drivetrain);
+    Drive drive = Drive.getInstance();
+    double dt = Constants.Properties.FAST_LOOP_TIMER_PERIOD * drive.getLoopDivisor() / 1000.0;
+    Waypoint[] points = Waypoint.parse(waypoints);
+    Waypoint last = points[points.length - 1];
+
+    Path path = new Path();
+    LatencyHistogram reused = new LatencyHistogram();
+    LatencyHistogram fresh = new LatencyHistogram();
+    for (int i = 0; i < kWarmup + kRuns; i++) {
+      long start = System.nanoTime();
+      path.generate(points, speed * Constants.Properties.DRIVE_MAX_VELOCITY,
+          Constants.Properties.DRIVE_MAX_ACCELERATION, Constants.Properties.DRIVE_MAX_JERK, dt);
+      long middle = System.nanoTime();
+      new Path().generate(points, speed * Constants.Properties.DRIVE_MAX_VELOCITY,
+          Constants.Properties.DRIVE_MAX_ACCELERATION, Constants.Properties.DRIVE_MAX_JERK, dt);
+      long end = System.nanoTime();
+      if (i >= kWarmup) {
+        reused.record(middle - start);
+        fresh.record(end - middle);
+      }
+    }
+    System.out.println(String.format("%d waypoints, %.1f in long, %.2f s to drive", points.length,
+        path.getLength(), path.getNumSegments() * dt));
+    print("Generate, reusing a Path", reused);
+    print("Generate, new Path", fresh);
+    double maxVel = speed * Constants.Properties.DRIVE_MAX_VELOCITY;
+    checkLimits("Left wheel", path.getLeft(), maxVel);
+    checkLimits("Right wheel", path.getRight(), maxVel);
+    System.out.println();
+
+    Navigation navigation = Navigation.getInstance();
+    drive.setOpenLoop();
+    drive.reset();
+    drivetrain.reset();
+    navigation.setPoseEstimator(new ComplementaryPoseEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+    for (int i = 0; i < 8; i++) {
+      sim.step();
+    }
+    DrivePathController controller = DrivePathController.getInstance();
+    controller.setPath(waypoints, speed);
+    drive.setCurrentController(controller);
+    double squares = 0.0;
+    double worst = 0.0;
+    int samples = 0;
+    double doneTime = Double.NaN;
+    int cycles = (int) (kDuration * 1.0e9 / kPeriodNanos);
+    for (int i = 1; i <= cycles; i++) {
+      double time = i * kPeriodNanos / 1.0e9;
+      sim.step();
+      // where the middle of the robot should be, on the same timeline as the simulator
+      int segment = (int) (time / dt);
+      if (segment < path.getNumSegments()) {
+        double dx = path.getX(segment) - drivetrain.getXinInches();
+        double dy = path.getY(segment) - drivetrain.getYinInches();
+        double error = Math.sqrt(dx * dx + dy * dy);
+        squares += error * error;
+        worst = Math.max(worst, error);
+        samples++;
+      }
+      if (Double.isNaN(doneTime) && controller.onTarget()) {
+        doneTime = time;
+      }
+    }
+    drive.setOpenLoop();
+    drive.setSpeedTurn(0.0, 0.0);
+    System.out.println(String.format("Tracking error: rms %.2f in, worst %.2f in",
+        Math.sqrt(squares / samples), worst));
+    System.out.println(String.format("Ended %.2f in and %.2f deg from the last waypoint, "
+        + "done at %.2f s", Math.hypot(last.x - drivetrain.getXinInches(),
+            last.y - drivetrain.getYinInches()),
+        drivetrain.getHeadingInDegrees() - last.heading, doneTime));
+  }
+
+  private static void print(String name, LatencyHistogram histogram) {
+    System.out.println(String.format("%-26s median %.3f ms, 99%% %.3f ms, worst %.3f ms", name,
+        histogram.getPercentile(0.5) / 1.0e6, histogram.getPercentile(0.99) / 1.0e6,
+        histogram.getMax() / 1.0e6));
+  }
+
+  /**
+   * Prints the most a wheel is asked for, and throws if it is over the limits by more than
+   * rounding.
+   */
+  private static void checkLimits(String name, Trajectory wheel, double maxVel) {
+    double velocity = 0.0;
+    double acceleration = 0.0;
+    double jerk = 0.0;
+    for (int i = 0; i < wheel.getNumSegments(); i++) {
+      velocity = Math.max(velocity, Math.abs(wheel.getVelocity(i)));
+      acceleration = Math.max(acceleration, Math.abs(wheel.getAcceleration(i)));
+      jerk = Math.max(jerk, Math.abs(wheel.getJerk(i)));
+    }
+    System.out.println(String.format("%-26s max velocity %.1f, acceleration %.1f, jerk %.0f",
+        name, velocity, acceleration, jerk));
+    if (velocity > maxVel * (1.0 + kRounding)
+        || acceleration > Constants.Properties.DRIVE_MAX_ACCELERATION * (1.0 + kRounding)
+        || jerk > Constants.Properties.DRIVE_MAX_JERK * (1.0 + kRounding)) {
+      throw new IllegalStateException(String.format("%s is over the limits of %.1f, %.1f and "
+          + "%.0f", name, maxVel, Constants.Properties.DRIVE_MAX_ACCELERATION,
+          Constants.Properties.DRIVE_MAX_JERK));
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package missdaisy.simulation;
+
+/**
+ * A model of some mechanism on the robot. It reads the simulated actuators, works out how the
+ * mechanism moves, and writes the simulated sensors.
+ * 
+ * @author jrussell
+ */
+public interface Plant {
+  /**
+   * @param dt How much time to simulate, in seconds
+   */
+  public void step(double dt);
+
+  /**
+   * @return The current the mechanism is drawing from the battery, in amps
+   */
+  public double getBatteryCurrent();
+
+  /**
+   * @param volts The battery voltage to use for the next step
+   */
+  public void setBatteryVoltage(double volts);
+}
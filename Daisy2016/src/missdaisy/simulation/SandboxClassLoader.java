@@ -0,0 +1,57 @@
+package missdaisy.simulation;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Loads its own copy of the robot code, so that every sandbox gets its own set of singletons and
+ * several simulated robots can run side by side in one JVM.
+ * 
+ * Classes in the missdaisy package are loaded from the class path by this loader first. Everything
+ * else, including WPILib, comes from the parent and is shared.
+ * 
+ * @author jrussell
+ */
+public class SandboxClassLoader extends URLClassLoader {
+  private static final String kSandboxedPackage = "missdaisy.";
+
+  public SandboxClassLoader() {
+    super(getClassPath(), SandboxClassLoader.class.getClassLoader());
+  }
+
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    if (!name.startsWith(kSandboxedPackage)) {
+      return super.loadClass(name, resolve);
+    }
+    synchronized (getClassLoadingLock(name)) {
+      Class<?> loaded = findLoadedClass(name);
+      if (loaded == null) {
+        try {
+          loaded = findClass(name);
+        } catch (ClassNotFoundException e) {
+          return super.loadClass(name, resolve);
+        }
+      }
+      if (resolve) {
+        resolveClass(loaded);
+      }
+      return loaded;
+    }
+  }
+
+  private static URL[] getClassPath() {
+    String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+    URL[] urls = new URL[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      try {
+        urls[i] = new File(paths[i]).toURI().toURL();
+      } catch (MalformedURLException e) {
+        throw new IllegalArgumentException("Bad class path entry: " + paths[i], e);
+      }
+    }
+    return urls;
+  }
+}
@@ -0,0 +1,218 @@
+package missdaisy.simulation;
+
+import missdaisy.Constants;
+import missdaisy.loops.SynchronousPID;
+import missdaisy.loops.controllers.Controller;
+import missdaisy.loops.controllers.ShooterSpeedController;
+import missdaisy.subsystems.Shooter;
+
+/**
+ * Runs shooter speed controllers against the flywheel simulator and prints how fast each one can
+ * shoot: how long it takes to get up to speed, how long it takes to recover after each ball, how
+ * many balls it fires, and how far off the true wheel speed is at the moments the balls are fed.
+ *
+ * Balls are fed the way AutoAimAndShoot does it: once the controller has said it is on target in
+ * more than ten of its checks, which are 20 ms apart and do not have to be in a row. Besides the
+ * bang-bang controller the robot uses, and its learned feedforward mode, it tries a take-back-half
+ * controller and a fixed feedforward plus PID controller. Every controller is run again with the
+ * banner tape put on unevenly.
+ *
+ * Usage: ShooterControllerBenchmark [goal rpm]
+ *
+ * @author jrussell
+ */
+public class ShooterControllerBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  private static final long kCheckPeriod = 20L; // milliseconds between on target checks
+  private static final int kCheckDivisor =
+      (int) (kCheckPeriod / Constants.Properties.FAST_LOOP_TIMER_PERIOD);
+  private static final int kChecksBeforeFiring = 10;
+  private static final double kFeedTime = 0.25; // seconds from feeding one ball to the next
+  private static final double kDuration = 10.0; // seconds per trial
+  private static final int kMaxShots = 64;
+
+  private static SimulationLoop sim;
+  private static FlywheelSimulator flywheel;
+  private static Shooter shooter;
+
+  /**
+   * Take back half: integrates the error into the output, and every time the error changes sign
+   * drops the output halfway back to where it was at the last crossing.
+   */
+  private static class TakeBackHalfController implements Controller {
+    private final double mGain;
+    private double mGoal;
+    private double mOutput;
+    private double mTakeBackHalf;
+    private double mLastError;
+
+    TakeBackHalfController(double gain) {
+      mGain = gain;
+    }
+
+    void setGoal(double rpm) {
+      mGoal = rpm;
+    }
+
+    public void run() {
+      double error = mGoal - shooter.getRPM();
+      mOutput = Math.max(0.0, Math.min(1.0, mOutput + mGain * error));
+      if (Math.signum(error) != Math.signum(mLastError)) {
+        mOutput = 0.5 * (mOutput + mTakeBackHalf);
+        mTakeBackHalf = mOutput;
+      }
+      mLastError = error;
+      shooter.setSpeed(mOutput);
+    }
+
+    public void reset() {
+      mOutput = 0.0;
+      mTakeBackHalf = 0.0;
+      mLastError = 0.0;
+    }
+
+    public boolean onTarget() {
+      return Math.abs(mGoal - shooter.getRPM()) < Constants.Properties.PID_SHOOTER_RPM_TOLERANCE;
+    }
+
+    public void loadProperties() {}
+  }
+
+  /**
+   * Feedforward plus PID: the output that should hold the goal speed, corrected by a PID on the
+   * error.
+   */
+  private static class FeedforwardPIDController extends SynchronousPID implements Controller {
+    private final double mKf;
+
+    FeedforwardPIDController(double kf, double kp, double ki, double kd) {
+      super(kp, ki, kd);
+      mKf = kf;
+      setOutputRange(-1.0, 1.0);
+    }
+
+    void setGoal(double rpm) {
+      setSetpoint(rpm);
+    }
+
+    public void run() {
+      double output = mKf * getSetpoint() + calculate(shooter.getRPM());
+      shooter.setSpeed(Math.max(0.0, Math.min(1.0, output)));
+    }
+
+    public boolean onTarget() {
+      return Math.abs(getSetpoint() - shooter.getRPM())
+          < Constants.Properties.PID_SHOOTER_RPM_TOLERANCE;
+    }
+
+    public void loadProperties() {}
+  }
+
+  public static void main(String[] args) {
+    final double goal = args.length > 0 ? Double.parseDouble(args[0]) : 4000.0;
+    sim = new SimulationLoop(kPeriodNanos);
+    flywheel = new FlywheelSimulator(sim.getHardware());
+    sim.addPlant(flywheel);
+    shooter = Shooter.getInstance();
+
+    final ShooterSpeedController bangBang = ShooterSpeedController.getInstance();
+    final TakeBackHalfController takeBackHalf = new TakeBackHalfController(2.0e-5);
+    final FeedforwardPIDController feedforward =
+        new FeedforwardPIDController(1.0 / 6000.0, 0.002, 0.00002, 0.0);
+
+    System.out.println(String.format("%-32s %9s %10s %6s %11s %10s", "Controller", "spin up s",
+        "recovery s", "shots", "rpm error", "rpm stdev"));
+    for (double markError : new double[] {0.0, 0.03}) {
+      String tape = markError == 0.0 ? "" : ", uneven tape";
+      flywheel.setMarkError(markError);
+      run("Bang-bang" + tape, goal, bangBang, new Runnable() {
+        public void run() {
+          bangBang.setMode(ShooterSpeedController.Mode.BANG_BANG);
+          bangBang.setGoal(goal);
+        }
+      });
+      // the first run learns the feedforward from scratch, the next one starts with it learned
+      run("Learned feedforward" + tape, goal, bangBang, new Runnable() {
+        public void run() {
+          bangBang.setMode(ShooterSpeedController.Mode.FEEDFORWARD);
+          bangBang.setGoal(goal);
+        }
+      });
+      run("Take back half" + tape, goal, takeBackHalf, new Runnable() {
+        public void run() {
+          takeBackHalf.setGoal(goal);
+        }
+      });
+      run("Feedforward + PID" + tape, goal, feedforward, new Runnable() {
+        public void run() {
+          feedforward.setGoal(goal);
+        }
+      });
+    }
+  }
+
+  /**
+   * Spins up from a stop and keeps shooting for the length of a trial, then prints a row.
+   *
+   * @param setGoal Gives the controller its goal
+   */
+  private static void run(String name, double goal, Controller controller, Runnable setGoal) {
+    shooter.setOpenLoop();
+    shooter.reset();
+    flywheel.reset();
+    controller.reset();
+    setGoal.run();
+    shooter.setCurrentController(controller);
+
+    double tolerance = Constants.Properties.PID_SHOOTER_RPM_TOLERANCE;
+    double[] shotErrors = new double[kMaxShots];
+    double spinUpTime = Double.NaN;
+    double recoveryTime = 0.0;
+    int recoveries = 0;
+    double lastShotTime = Double.NEGATIVE_INFINITY;
+    boolean recovering = false;
+    int shots = 0;
+    int checks = 0;
+    int cycles = (int) (kDuration * 1.0e9 / kPeriodNanos);
+    for (int i = 1; i <= cycles; i++) {
+      sim.step();
+      double time = i * kPeriodNanos / 1.0e9;
+      boolean atSpeed = Math.abs(flywheel.getRPM() - goal) < tolerance;
+      if (Double.isNaN(spinUpTime) && atSpeed) {
+        spinUpTime = time;
+      }
+      if (recovering && atSpeed) {
+        recoveryTime += time - lastShotTime;
+        recoveries++;
+        recovering = false;
+      }
+      if (i % kCheckDivisor != 0 || time - lastShotTime < kFeedTime) {
+        continue;
+      }
+      if (controller.onTarget()) {
+        checks++;
+      }
+      if (checks > kChecksBeforeFiring && shots < kMaxShots) {
+        shotErrors[shots++] = flywheel.getRPM() - goal;
+        flywheel.shoot();
+        lastShotTime = time;
+        recovering = true;
+        checks = 0;
+      }
+    }
+    shooter.setOpenLoop();
+    shooter.setSpeed(0.0);
+
+    double mean = 0.0;
+    for (int i = 0; i < shots; i++) {
+      mean += shotErrors[i] / shots;
+    }
+    double variance = 0.0;
+    for (int i = 0; i < shots; i++) {
+      variance += (shotErrors[i] - mean) * (shotErrors[i] - mean) / shots;
+    }
+    System.out.println(String.format("%-32s %9.2f %10.2f %6d %11.1f %10.1f", name, spinUpTime,
+        recoveries > 0 ? recoveryTime / recoveries : Double.NaN, shots, mean,
+        Math.sqrt(variance)));
+  }
+}
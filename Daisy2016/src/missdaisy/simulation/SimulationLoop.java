@@ -0,0 +1,100 @@
+package missdaisy.simulation;
+
+import missdaisy.hal.Hardware;
+import missdaisy.hal.SimulatedClock;
+import missdaisy.hal.SimulatedHardware;
+import missdaisy.loops.FastLoopTimer;
+
+/**
+ * Runs the robot code against simulated mechanisms, one fast loop period at a time, as fast as the
+ * CPU allows.
+ * 
+ * Creating one installs simulated hardware, so it must be done before any subsystem is created.
+ * Every step moves each plant forward by one period (with the battery sagging under their combined
+ * load), advances the clock, and then runs the fast loop once.
+ * 
+ * @author jrussell
+ */
+public class SimulationLoop {
+  private static final int kMaxPlants = 8;
+
+  private final SimulatedHardware mHardware;
+  private final SimulatedClock mClock;
+  private final long mPeriodNanos;
+  private final Plant[] mPlants = new Plant[kMaxPlants];
+  private int mNumPlants = 0;
+  private FastLoopTimer mFastLoop;
+  private double mBatteryOpenCircuitVoltage = 12.7;
+  private double mBatteryResistance = 0.025; // ohms, battery plus wiring
+  private double mBatteryVoltage = mBatteryOpenCircuitVoltage;
+
+  /**
+   * @param periodNanos How much time each step simulates, normally the fast loop's base period
+   */
+  public SimulationLoop(long periodNanos) {
+    mHardware = new SimulatedHardware();
+    Hardware.setFactory(mHardware);
+    mClock = mHardware.getClock();
+    mPeriodNanos = periodNanos;
+  }
+
+  public SimulatedHardware getHardware() {
+    return mHardware;
+  }
+
+  public void addPlant(Plant plant) {
+    if (mNumPlants >= kMaxPlants) {
+      throw new IllegalStateException("Too many plants in the simulation");
+    }
+    mPlants[mNumPlants++] = plant;
+  }
+
+  public void setBattery(double openCircuitVoltage, double resistance) {
+    mBatteryOpenCircuitVoltage = openCircuitVoltage;
+    mBatteryResistance = resistance;
+  }
+
+  /**
+   * @return The battery voltage during the last step
+   */
+  public double getBatteryVoltage() {
+    return mBatteryVoltage;
+  }
+
+  /**
+   * @return The simulated time, in seconds
+   */
+  public double getTime() {
+    return mClock.nanoTime() / 1.0e9;
+  }
+
+  /**
+   * Simulates one period.
+   */
+  public void step() {
+    stepWithoutLoop();
+    if (mFastLoop == null) {
+      // created lazily so the subsystems see the simulated hardware
+      mFastLoop = FastLoopTimer.getInstance();
+    }
+    mFastLoop.run();
+  }
+
+  /**
+   * Simulates one period in which the fast loop never got to run, as if the thread was held up.
+   * The motors keep whatever outputs they were last given.
+   */
+  public void stepWithoutLoop() {
+    double dt = mPeriodNanos / 1.0e9;
+    double current = 0.0;
+    for (int i = 0; i < mNumPlants; i++) {
+      current += mPlants[i].getBatteryCurrent();
+    }
+    mBatteryVoltage = Math.max(0.0, mBatteryOpenCircuitVoltage - current * mBatteryResistance);
+    for (int i = 0; i < mNumPlants; i++) {
+      mPlants[i].setBatteryVoltage(mBatteryVoltage);
+      mPlants[i].step(dt);
+    }
+    mClock.advance(mPeriodNanos);
+  }
+}
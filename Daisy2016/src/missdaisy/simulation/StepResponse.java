@@ -0,0 +1,114 @@
+package missdaisy.simulation;
+
+/**
+ * Records how a controlled value moves from where it started to its target, and measures the
+ * usual figures of merit: rise time, overshoot, settling time and steady state error.
+ * 
+ * @author jrussell
+ */
+public class StepResponse {
+  private final double[] mTimes;
+  private final double[] mValues;
+  private int mCount;
+  private double mStart;
+  private double mTarget;
+  private double mTolerance;
+
+  /**
+   * @param capacity The most samples one response can hold
+   */
+  public StepResponse(int capacity) {
+    mTimes = new double[capacity];
+    mValues = new double[capacity];
+  }
+
+  /**
+   * Starts a new response.
+   * 
+   * @param start Where the value starts
+   * @param target Where the controller is trying to take it
+   * @param tolerance How close to the target counts as settled
+   */
+  public void reset(double start, double target, double tolerance) {
+    mStart = start;
+    mTarget = target;
+    mTolerance = tolerance;
+    mCount = 0;
+  }
+
+  /**
+   * @param time Seconds since the step started
+   * @param value The controlled value
+   */
+  public void record(double time, double value) {
+    if (mCount < mTimes.length) {
+      mTimes[mCount] = time;
+      mValues[mCount] = value;
+      mCount++;
+    }
+  }
+
+  /**
+   * @return The time, in seconds, to first get 90% of the way to the target, or NaN if it never did
+   */
+  public double getRiseTime() {
+    double threshold = mStart + 0.9 * (mTarget - mStart);
+    double direction = Math.signum(mTarget - mStart);
+    for (int i = 0; i < mCount; i++) {
+      if ((mValues[i] - threshold) * direction >= 0.0) {
+        return mTimes[i];
+      }
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * @return How far past the target the value went, in the value's units (0 if it never did)
+   */
+  public double getOvershoot() {
+    double direction = mTarget >= mStart ? 1.0 : -1.0;
+    double overshoot = 0.0;
+    for (int i = 0; i < mCount; i++) {
+      overshoot = Math.max(overshoot, (mValues[i] - mTarget) * direction);
+    }
+    return overshoot;
+  }
+
+  /**
+   * @return The time, in seconds, after which the value stayed within the tolerance of the
+   *         target, or NaN if it was still outside at the end
+   */
+  public double getSettlingTime() {
+    if (mCount == 0 || Math.abs(mValues[mCount - 1] - mTarget) > mTolerance) {
+      return Double.NaN;
+    }
+    for (int i = mCount - 1; i >= 0; i--) {
+      if (Math.abs(mValues[i] - mTarget) > mTolerance) {
+        return mTimes[i];
+      }
+    }
+    return 0.0;
+  }
+
+  /**
+   * @param window How long at the end of the response to average over, in seconds
+   * @return The average distance from the target over the end of the response
+   */
+  public double getSteadyStateError(double window) {
+    if (mCount == 0) {
+      return Double.NaN;
+    }
+    double end = mTimes[mCount - 1];
+    double sum = 0.0;
+    int samples = 0;
+    for (int i = mCount - 1; i >= 0 && mTimes[i] >= end - window; i--) {
+      sum += mValues[i] - mTarget;
+      samples++;
+    }
+    return sum / samples;
+  }
+
+  public double getFinalValue() {
+    return mCount == 0 ? Double.NaN : mValues[mCount - 1];
+  }
+}
@@ -0,0 +1,146 @@
+package missdaisy.simulation;
+
+import missdaisy.utilities.Trajectory;
+
+/**
+ * Checks the trajectory generator against the one it replaced, and times them both.
+ *
+ * The old generator summed the last numTapsF2 values of the first filter again for every segment.
+ * It is copied here, without its 500 segment limit, so the two can be compared on profiles of any
+ * length. The running sum adds and takes away the same values in a different order, so some
+ * segments can differ in the last few bits. For each profile this prints how many segments came
+ * out exactly the same, and the biggest difference in position and velocity.
+ *
+ * Usage: TrajectoryBenchmark
+ *
+ * @author jrussell
+ */
+public class TrajectoryBenchmark {
+  private static final double kDt = 0.01; // seconds
+  private static final int kWarmup = 2000;
+  private static final int kRuns = 2000;
+
+  // distance (in), max velocity (in/s), max acceleration (in/s^2), max jerk (in/s^3)
+  private static final double[][] kProfiles = {
+      {24.0, 120.0, 250.0, 1000.0},
+      {120.0, 120.0, 250.0, 1000.0},
+      {200.0, 60.0, 100.0, 400.0},
+      {600.0, 60.0, 60.0, 100.0},
+      {2000.0, 60.0, 30.0, 15.0}};
+
+  public static void main(String[] args) {
+    Trajectory trajectory = new Trajectory();
+    ReferenceTrajectory reference = new ReferenceTrajectory();
+
+    System.out.println(String.format("%-28s %8s %10s %12s %12s %10s %10s", "Profile", "segments",
+        "identical", "max pos err", "max vel err", "old us", "new us"));
+    for (double[] p : kProfiles) {
+      trajectory.generate(p[0], p[1], p[2], p[3], kDt);
+      reference.generate(p[0], p[1], p[2], p[3], kDt);
+      int n = trajectory.getNumSegments();
+      if (n != reference.mNumSegments) {
+        System.out.println("Segment counts differ: " + n + " vs " + reference.mNumSegments);
+        continue;
+      }
+      int identical = 0;
+      double positionError = 0.0;
+      double velocityError = 0.0;
+      for (int i = 0; i < n; i++) {
+        double position = trajectory.getPosition(i);
+        double velocity = trajectory.getVelocity(i);
+        if (position == reference.mPosition[i] && velocity == reference.mVelocity[i]
+            && trajectory.getAcceleration(i) == reference.mAcceleration[i]
+            && trajectory.getJerk(i) == reference.mJerk[i]) {
+          identical++;
+        }
+        positionError = Math.max(positionError, Math.abs(position - reference.mPosition[i]));
+        velocityError = Math.max(velocityError, Math.abs(velocity - reference.mVelocity[i]));
+      }
+
+      for (int i = 0; i < kWarmup; i++) {
+        reference.generate(p[0], p[1], p[2], p[3], kDt);
+        trajectory.generate(p[0], p[1], p[2], p[3], kDt);
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < kRuns; i++) {
+        reference.generate(p[0], p[1], p[2], p[3], kDt);
+      }
+      double oldMicros = (System.nanoTime() - start) / 1000.0 / kRuns;
+      start = System.nanoTime();
+      for (int i = 0; i < kRuns; i++) {
+        trajectory.generate(p[0], p[1], p[2], p[3], kDt);
+      }
+      double newMicros = (System.nanoTime() - start) / 1000.0 / kRuns;
+
+      String name = String.format("%.0f in, %.0f/%.0f/%.0f", p[0], p[1], p[2], p[3]);
+      System.out.println(String.format("%-28s %8d %10d %12.3g %12.3g %10.1f %10.1f", name, n,
+          identical, positionError, velocityError, oldMicros, newMicros));
+    }
+  }
+
+  /**
+   * The generator as it was, with a new array of segments for each profile.
+   */
+  private static class ReferenceTrajectory {
+    int mNumSegments;
+    double[] mPosition;
+    double[] mVelocity;
+    double[] mAcceleration;
+    double[] mJerk;
+    double[] mF1;
+
+    void generate(double aDistance, double aMaxVel, double aMaxAcc, double aMaxJerk,
+        double aDtSeconds) {
+      double adjustedMaxVel = Math.min(aMaxVel, (-aMaxAcc * aMaxAcc + Math.sqrt(
+          aMaxAcc * aMaxAcc * aMaxAcc * aMaxAcc + 4 * aMaxJerk * aMaxJerk * aMaxAcc * aDistance))
+          / (2 * aMaxJerk));
+
+      double timeAtFullSpeedS = aDistance / adjustedMaxVel;
+
+      double numTapsF1 = Math.ceil((adjustedMaxVel / aMaxAcc) / aDtSeconds);
+      double numTapsF2 = Math.ceil((aMaxAcc / aMaxJerk) / aDtSeconds);
+      double numImpulses = timeAtFullSpeedS / aDtSeconds;
+
+      mNumSegments = (int) (Math.ceil(numTapsF1 + numTapsF2 + numImpulses));
+      if (mPosition == null || mPosition.length < mNumSegments) {
+        mPosition = new double[mNumSegments];
+        mVelocity = new double[mNumSegments];
+        mAcceleration = new double[mNumSegments];
+        mJerk = new double[mNumSegments];
+        mF1 = new double[mNumSegments];
+      }
+      double f1 = 0;
+      double lastVel = 0;
+      double lastPos = 0;
+      double lastAcc = 0;
+      for (int i = 0; i < mNumSegments; ++i) {
+        double input = (i < ((int) Math.ceil(numImpulses)) ? 1.0 : -1.0);
+
+        if (i == 0 && numImpulses - Math.floor(numImpulses) > 0) {
+          input = numImpulses - Math.floor(numImpulses);
+        }
+
+        f1 = Math.max(0.0, Math.min(numTapsF1, f1 + input));
+        mF1[i] = f1;
+        double f2 = 0;
+        for (int j = 0; j < numTapsF2; ++j) {
+          if (i - j < 0) {
+            break;
+          }
+
+          f2 += mF1[i - j];
+        }
+        f2 = f2 / numTapsF1;
+
+        mVelocity[i] = f2 / numTapsF2 * adjustedMaxVel;
+        mPosition[i] = (lastVel + mVelocity[i]) / 2.0 * aDtSeconds + lastPos;
+        mAcceleration[i] = (mVelocity[i] - lastVel) / aDtSeconds;
+        mJerk[i] = (mAcceleration[i] - lastAcc) / aDtSeconds;
+
+        lastVel = mVelocity[i];
+        lastPos = mPosition[i];
+        lastAcc = mAcceleration[i];
+      }
+    }
+  }
+}
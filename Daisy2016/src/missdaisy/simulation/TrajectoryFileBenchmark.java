@@ -0,0 +1,77 @@
+package missdaisy.simulation;
+
+import java.io.File;
+import java.io.IOException;
+import missdaisy.Constants;
+import missdaisy.loops.LatencyHistogram;
+import missdaisy.utilities.Trajectory;
+import missdaisy.utilities.TrajectoryFile;
+
+/**
+ * Compares generating a trajectory with mapping in one that was saved to a file, and checks that
+ * the mapped one matches segment for segment.
+ *
+ * For each distance it writes the trajectory to a file in a temporary directory, and prints the
+ * median and worst time to generate it and to map it, the file's size, and the biggest difference
+ * between the generated and mapped segments, which should be zero.
+ *
+ * Usage: TrajectoryFileBenchmark [runs]
+ *
+ * @author jrussell
+ */
+public class TrajectoryFileBenchmark {
+  private static final int kWarmup = 200;
+  private static final double kMaxVel = Constants.Properties.DRIVE_MAX_VELOCITY;
+  private static final double kMaxAcc = Constants.Properties.DRIVE_MAX_ACCELERATION;
+  private static final double kMaxJerk = Constants.Properties.DRIVE_MAX_JERK;
+  private static final double kDt = 0.01;
+
+  public static void main(String[] args) throws IOException {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    File directory = new File(System.getProperty("java.io.tmpdir"), "trajectories");
+    directory.mkdirs();
+
+    System.out.println(String.format("%-10s %9s %12s %12s %12s %12s %10s", "Distance", "segments",
+        "generate ms", "worst ms", "map ms", "worst ms", "max diff"));
+    for (double distance : new double[] {24.0, 120.0, 600.0, 3000.0}) {
+      Trajectory generated = new Trajectory();
+      generated.generate(distance, kMaxVel, kMaxAcc, kMaxJerk, kDt);
+      File file = new File(directory,
+          TrajectoryFile.getFileName(distance, kMaxVel, kMaxAcc, kMaxJerk, kDt));
+      TrajectoryFile.write(generated, kMaxVel, kMaxAcc, kMaxJerk, file);
+
+      LatencyHistogram generate = new LatencyHistogram();
+      LatencyHistogram map = new LatencyHistogram();
+      Trajectory mapped = null;
+      for (int i = 0; i < kWarmup + runs; i++) {
+        long start = System.nanoTime();
+        new Trajectory().generate(distance, kMaxVel, kMaxAcc, kMaxJerk, kDt);
+        long middle = System.nanoTime();
+        mapped = TrajectoryFile.map(file);
+        long end = System.nanoTime();
+        if (i >= kWarmup) {
+          generate.record(middle - start);
+          map.record(end - middle);
+        }
+      }
+
+      double difference = 0.0;
+      for (int i = 0; i <= generated.getNumSegments(); i++) {
+        difference = Math.max(difference,
+            Math.abs(generated.getPosition(i) - mapped.getPosition(i)));
+        difference = Math.max(difference,
+            Math.abs(generated.getVelocity(i) - mapped.getVelocity(i)));
+        difference = Math.max(difference,
+            Math.abs(generated.getAcceleration(i) - mapped.getAcceleration(i)));
+        difference = Math.max(difference, Math.abs(generated.getJerk(i) - mapped.getJerk(i)));
+      }
+      System.out.println(String.format("%-10.0f %9d %12.3f %12.3f %12.3f %12.3f %10.1g",
+          distance, generated.getNumSegments(), generate.getPercentile(0.5) / 1.0e6,
+          generate.getMax() / 1.0e6, map.getPercentile(0.5) / 1.0e6, map.getMax() / 1.0e6,
+          difference));
+      System.out.println(String.format("%-10s %d bytes, matches its limits: %b", "", file.length(),
+          TrajectoryFile.matches(mapped, distance, kMaxVel, kMaxAcc, kMaxJerk, kDt)));
+      file.delete();
+    }
+  }
+}
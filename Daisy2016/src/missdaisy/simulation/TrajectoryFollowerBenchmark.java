@@ -0,0 +1,232 @@
+package missdaisy.simulation;
+
+import java.util.Random;
+import missdaisy.Constants;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.controllers.Controller;
+import missdaisy.subsystems.Drive;
+import missdaisy.utilities.Trajectory;
+import missdaisy.utilities.TrajectoryCache;
+import missdaisy.utilities.TrajectoryFollower;
+
+/**
+ * Drives a trajectory in the drivetrain simulator while the fast loop misses some of its periods,
+ * and compares the follower that moves on one segment per call with the one that samples the
+ * trajectory by time.
+ *
+ * For each schedule it prints the RMS and worst difference between where the robot is and where
+ * the trajectory says it should be at that moment, when the follower said the move was over
+ * compared to how long the trajectory is, and where the robot ended up.
+ *
+ * Usage: TrajectoryFollowerBenchmark [distance]
+ *
+ * @author jrussell
+ */
+public class TrajectoryFollowerBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  private static final double kDuration = 5.0; // seconds per trial
+  private static final double kKp = 0.05;
+  private static final double kKv = 1.0 / Constants.Properties.DRIVE_MAX_VELOCITY;
+  private static final double kSpeed = 0.8;
+
+  private static SimulationLoop sim;
+  private static DrivetrainSimulator drivetrain;
+  private static Drive drive;
+  private static Navigation navigation;
+
+  private enum Schedule {
+    STEADY("every period"), DROPS("20% of periods dropped"), STALLS("60 ms stall every 0.5 s");
+
+    private final String mName;
+
+    Schedule(String name) {
+      mName = name;
+    }
+  }
+
+  public static void main(String[] args) {
+    double distance = args.length > 0 ? Double.parseDouble(args[0]) : 120.0;
+    sim = new SimulationLoop(kPeriodNanos);
+    drivetrain = new DrivetrainSimulator(sim.getHardware());
+    sim.addPlant(drivetrain);
+    drive = Drive.getInstance();
+    navigation = Navigation.getInstance();
+    double dt = Constants.Properties.FAST_LOOP_TIMER_PERIOD * drive.getLoopDivisor() / 1000.0;
+    double maxVelocity = kSpeed * Constants.Properties.DRIVE_MAX_VELOCITY;
+    Trajectory trajectory = TrajectoryCache.getInstance().get(distance, maxVelocity,
+        Constants.Properties.DRIVE_MAX_ACCELERATION, Constants.Properties.DRIVE_MAX_JERK, dt);
+
+    System.out.println(String.format("%-26s %-10s %9s %9s %8s %9s %8s", "Schedule", "Follower",
+        "rms err", "max err", "done s", "profile s", "final"));
+    for (Schedule schedule : Schedule.values()) {
+      trial(schedule, new FollowerController(new SegmentFollower(), trajectory), trajectory);
+      trial(schedule, new FollowerController(new TimeFollower(), trajectory), trajectory);
+    }
+  }
+
+  private static void trial(Schedule schedule, FollowerController controller,
+      Trajectory trajectory) {
+    drive.setOpenLoop();
+    drive.reset();
+    drive.useAlphaFilter(false);
+    drivetrain.reset();
+    navigation.setPoseEstimator(new ComplementaryPoseEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+    navigation.resetEncoders();
+    for (int i = 0; i < 8; i++) {
+      sim.step();
+    }
+
+    Random random = new Random(42);
+    controller.reset();
+    drive.setCurrentController(controller);
+    double squares = 0.0;
+    int samples = 0;
+    double worst = 0.0;
+    double doneTime = Double.NaN;
+    double profileTime = trajectory.getNumSegments() * trajectory.getDt();
+    int cycles = (int) (kDuration * 1.0e9 / kPeriodNanos);
+    for (int i = 1; i <= cycles; i++) {
+      double time = i * kPeriodNanos / 1.0e9;
+      boolean skip;
+      switch (schedule) {
+        case DROPS:
+          skip = random.nextDouble() < 0.2;
+          break;
+        case STALLS:
+          skip = time % 0.5 < 0.06;
+          break;
+        default:
+          skip = false;
+      }
+      if (skip) {
+        sim.stepWithoutLoop();
+      } else {
+        sim.step();
+      }
+      if (time <= profileTime) {
+        // where the robot should be, on the same timeline as the simulator
+        double error = trajectory.getPosition((int) (time / trajectory.getDt()))
+            - drivetrain.getXinInches();
+        squares += error * error;
+        samples++;
+        worst = Math.max(worst, Math.abs(error));
+      }
+      if (Double.isNaN(doneTime) && controller.isFinished()) {
+        doneTime = time;
+      }
+    }
+    drive.setOpenLoop();
+    drive.setSpeedTurn(0.0, 0.0);
+    drive.useAlphaFilter(true);
+    System.out.println(String.format("%-26s %-10s %9.2f %9.2f %8.2f %9.2f %8.2f", schedule.mName,
+        controller.mFollower.getName(), Math.sqrt(squares / samples), worst, doneTime,
+        profileTime, drivetrain.getXinInches()));
+  }
+
+  /**
+   * The part of a follower the benchmark needs.
+   */
+  private interface Follower {
+    void start(Trajectory trajectory);
+
+    double calculate(double distance);
+
+    boolean isFinished();
+
+    String getName();
+  }
+
+  private static class TimeFollower implements Follower {
+    private final TrajectoryFollower mFollower = new TrajectoryFollower();
+
+    TimeFollower() {
+      mFollower.configure(kKp, 0.0, 0.0, kKv, 0.0);
+    }
+
+    public void start(Trajectory trajectory) {
+      mFollower.setTrajectory(trajectory);
+    }
+
+    public double calculate(double distance) {
+      return mFollower.calculate(distance);
+    }
+
+    public boolean isFinished() {
+      return mFollower.isFinishedTrajectory();
+    }
+
+    public String getName() {
+      return "time";
+    }
+  }
+
+  /**
+   * The follower as it was, one segment per call.
+   */
+  private static class SegmentFollower implements Follower {
+    private Trajectory mProfile;
+    private int mCurrentSegment;
+    private double mErrorSum;
+
+    public void start(Trajectory trajectory) {
+      mProfile = trajectory;
+      mCurrentSegment = 0;
+      mErrorSum = 0.0;
+    }
+
+    public double calculate(double distance) {
+      if (mCurrentSegment < mProfile.getNumSegments()) {
+        double velocity = mProfile.getVelocity(mCurrentSegment);
+        double error = mProfile.getPosition(mCurrentSegment) - distance;
+        mCurrentSegment++;
+        return kKp * error + kKv * velocity;
+      } else {
+        double error = mProfile.getGoalDistance() - distance;
+        mErrorSum += error;
+        return kKp * error;
+      }
+    }
+
+    public boolean isFinished() {
+      return mCurrentSegment >= mProfile.getNumSegments();
+    }
+
+    public String getName() {
+      return "segment";
+    }
+  }
+
+  /**
+   * Drives straight, following a trajectory like DriveDistanceController does.
+   */
+  private static class FollowerController implements Controller {
+    private final Follower mFollower;
+    private final Trajectory mTrajectory;
+
+    FollowerController(Follower follower, Trajectory trajectory) {
+      mFollower = follower;
+      mTrajectory = trajectory;
+    }
+
+    public void run() {
+      double speed = mFollower.calculate(navigation.getAverageEncoderDistance());
+      drive.setSpeedTurn(Math.max(-1.0, Math.min(1.0, speed)), 0.0);
+    }
+
+    public void reset() {
+      mFollower.start(mTrajectory);
+    }
+
+    public boolean isFinished() {
+      return mFollower.isFinished();
+    }
+
+    public boolean onTarget() {
+      return false;
+    }
+
+    public void loadProperties() {}
+  }
+}
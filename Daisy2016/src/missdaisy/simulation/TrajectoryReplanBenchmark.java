@@ -0,0 +1,126 @@
+package missdaisy.simulation;
+
+import java.util.Random;
+import missdaisy.Constants;
+import missdaisy.fileio.PropertySet;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.LatencyHistogram;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.controllers.DriveDistanceController;
+import missdaisy.subsystems.Drive;
+import missdaisy.utilities.Trajectory;
+
+/**
+ * Shows that a trajectory can be replanned from a moving start inside one drive loop period, and
+ * what replanning does for a move that gets knocked off of its trajectory.
+ *
+ * First it times Trajectory.generateFrom() on random starting states and distances, and prints
+ * the median, 99th percentile and worst time against the drive loop's period. Then it drives the
+ * drive distance controller's trajectory in the drivetrain simulator, knocks the robot back or
+ * forward partway through, and prints how far it overshot, how many times it replanned, when it
+ * was on target and where it stopped, with and without replanning. Replanning is off on the robot
+ * unless this shows it helping.
+ *
+ * Usage: TrajectoryReplanBenchmark [replans to time]
+ *
+ * @author jrussell
+ */
+public class TrajectoryReplanBenchmark {
+  private static final long kPeriodNanos = Constants.Properties.FAST_LOOP_TIMER_PERIOD * 1000000L;
+  private static final int kWarmup = 20000;
+  private static final double kDuration = 6.0; // seconds per trial
+  private static final double kDistance = 120.0; // inches
+  private static final double kBumpTime = 0.8; // seconds
+  private static final double kReplanError = 6.0; // inches, when replanning is turned on
+  private static final double kMaxReplanSeconds = 15.0; // the room DriveDistanceController has
+
+  public static void main(String[] args) {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    SimulationLoop sim = new SimulationLoop(kPeriodNanos);
+    DrivetrainSimulator drivetrain = new DrivetrainSimulator(sim.getHardware());
+    sim.addPlant(drivetrain);
+    Drive drive = Drive.getInstance();
+    double dt = Constants.Properties.FAST_LOOP_TIMER_PERIOD * drive.getLoopDivisor() / 1000.0;
+
+    // generateFrom() never allocates, so give it the same room the controller does
+    Trajectory trajectory = new Trajectory((int) Math.ceil(kMaxReplanSeconds / dt) + 1);
+    Random random = new Random(42);
+    LatencyHistogram histogram = new LatencyHistogram();
+    int tooLong = 0;
+    for (int i = 0; i < kWarmup + runs; i++) {
+      double distance = 1.0 + 299.0 * random.nextDouble();
+      double velocity = -50.0 + 200.0 * random.nextDouble();
+      double acceleration = -150.0 + 300.0 * random.nextDouble();
+      long start = System.nanoTime();
+      boolean fit = trajectory.generateFrom(distance, velocity, acceleration,
+          Constants.Properties.DRIVE_MAX_VELOCITY, Constants.Properties.DRIVE_MAX_ACCELERATION,
+          Constants.Properties.DRIVE_MAX_JERK, dt);
+      long elapsed = System.nanoTime() - start;
+      if (i >= kWarmup) {
+        histogram.record(elapsed);
+        if (!fit) {
+          tooLong++;
+        }
+      }
+    }
+    System.out.println(String.format("Replan time over %d random starts: median %.1f us, "
+        + "99%% %.1f us, worst %.1f us, against a %.0f ms loop, %d too long to fit", runs,
+        histogram.getPercentile(0.5) / 1000.0, histogram.getPercentile(0.99) / 1000.0,
+        histogram.getMax() / 1000.0, dt * 1000.0, tooLong));
+    System.out.println();
+
+    System.out.println(String.format("%-28s %-14s %9s %8s %8s %8s", "Bump", "Replanning",
+        "overshoot", "replans", "done s", "final"));
+    for (double bump : new double[] {0.0, -120.0, -60.0, 60.0}) {
+      for (boolean replan : new boolean[] {false, true}) {
+        trial(sim, drivetrain, drive, bump, replan);
+      }
+    }
+    PropertySet.getInstance().addProperty("distanceFollowProfile", "false");
+    DriveDistanceController.getInstance().loadProperties();
+  }
+
+  private static void trial(SimulationLoop sim, DrivetrainSimulator drivetrain, Drive drive,
+      double bump, boolean replan) {
+    PropertySet.getInstance().addProperty("distanceFollowProfile", "true");
+    PropertySet.getInstance().addProperty("distanceReplanError",
+        replan ? Double.toString(kReplanError) : "0");
+    DriveDistanceController controller = DriveDistanceController.getInstance();
+    controller.loadProperties();
+
+    drive.setOpenLoop();
+    drive.reset();
+    drivetrain.reset();
+    Navigation navigation = Navigation.getInstance();
+    navigation.setPoseEstimator(new ComplementaryPoseEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+    for (int i = 0; i < 8; i++) {
+      sim.step();
+    }
+    controller.reset();
+    controller.setGoal(kDistance, 0.8);
+    drive.setCurrentController(controller);
+    double farthest = 0.0;
+    double doneTime = Double.NaN;
+    int cycles = (int) (kDuration * 1.0e9 / kPeriodNanos);
+    int bumpCycle = (int) (kBumpTime * 1.0e9 / kPeriodNanos);
+    for (int i = 1; i <= cycles; i++) {
+      double time = i * kPeriodNanos / 1.0e9;
+      if (i == bumpCycle) {
+        drivetrain.bump(bump);
+      }
+      sim.step();
+      farthest = Math.max(farthest, drivetrain.getXinInches());
+      if (Double.isNaN(doneTime) && i >= drive.getLoopDivisor() && controller.onTarget()) {
+        doneTime = time;
+      }
+    }
+    drive.setOpenLoop();
+    drive.setSpeedTurn(0.0, 0.0);
+    drive.useAlphaFilter(true);
+    System.out.println(String.format("%-28s %-14s %9.2f %8d %8.2f %8.2f",
+        bump == 0.0 ? "none" : String.format("%+.0f in/s at %.1f s", bump, kBumpTime),
+        replan ? String.format("past %.0f in", kReplanError) : "off", farthest - kDistance,
+        controller.getReplanCount(), doneTime, drivetrain.getXinInches()));
+  }
+}
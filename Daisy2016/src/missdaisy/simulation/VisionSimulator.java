@@ -0,0 +1,146 @@
+package missdaisy.simulation;
+
+import java.util.Random;
+import missdaisy.hal.SimulatedClock;
+import missdaisy.hal.SimulatedDashboard;
+import missdaisy.hal.SimulatedHardware;
+import missdaisy.loops.Navigation;
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * Stands in for the laptop vision program: watches the goal from wherever the drivetrain simulator
+ * says the robot is, and publishes what it sees a little late, the way the real one does.
+ * 
+ * Frames come at a fixed rate. Each one can be dropped, and the angle and range it reports are
+ * noisy. The goal is only seen inside the camera's field of view and range.
+ * 
+ * @author jrussell
+ */
+public class VisionSimulator implements Plant {
+  private static final double kFramePeriod = 0.1; // seconds
+  private static final double kLatency = 0.08; // seconds from capture to publish
+  private static final double kHalfFieldOfView = 30.0; // degrees
+  private static final double kMaxRange = 400.0; // inches
+
+  private final DrivetrainSimulator mDrivetrain;
+  private final SimulatedDashboard mDashboard;
+  private final SimulatedClock mClock;
+  private final Random mRandom = new Random();
+  private double mGoalX = 330.0;
+  private double mGoalY = 0.0;
+  private double mDropoutProbability = 0.0;
+  private double mAzimuthNoise = 0.0; // degrees, standard deviation
+  private double mRangeNoise = 0.0; // inches, standard deviation
+
+  // The frame that has been captured but not published yet
+  private boolean mPending;
+  private boolean mPendingFound;
+  private double mPendingTime;
+  private double mPendingHeading;
+  private double mPendingOffset;
+  private double mPendingRange;
+  private double mNextFrameTime;
+
+  public VisionSimulator(SimulatedHardware hardware, DrivetrainSimulator drivetrain) {
+    mDrivetrain = drivetrain;
+    mDashboard = hardware.getDashboard();
+    mClock = hardware.getClock();
+  }
+
+  /**
+   * Forgets any frame in flight and clears the published values.
+   */
+  public void reset() {
+    mPending = false;
+    mNextFrameTime = time();
+    mDashboard.clear();
+  }
+
+  /**
+   * @param x The goal's x coordinate in the drivetrain simulator's frame, in inches
+   * @param y The goal's y coordinate, in inches
+   */
+  public void setGoal(double x, double y) {
+    mGoalX = x;
+    mGoalY = y;
+  }
+
+  /**
+   * @param dropoutProbability The chance that any one frame misses the goal
+   * @param azimuthNoise The standard deviation of the reported angle, in degrees
+   * @param rangeNoise The standard deviation of the reported range, in inches
+   */
+  public void setNoise(double dropoutProbability, double azimuthNoise, double rangeNoise) {
+    mDropoutProbability = dropoutProbability;
+    mAzimuthNoise = azimuthNoise;
+    mRangeNoise = rangeNoise;
+  }
+
+  public void setSeed(long seed) {
+    mRandom.setSeed(seed);
+  }
+
+  public void setBatteryVoltage(double volts) {}
+
+  public double getBatteryCurrent() {
+    return 0.0;
+  }
+
+  /**
+   * @return The true angle from the robot's heading to the goal, in degrees
+   */
+  public double getAimError() {
+    return DaisyMath.boundAngleNeg180to180Degrees(bearing() - mDrivetrain.getHeadingInDegrees());
+  }
+
+  /**
+   * @return The true distance to the goal, in inches
+   */
+  public double getRange() {
+    return Math.hypot(mGoalX - mDrivetrain.getXinInches(), mGoalY - mDrivetrain.getYinInches());
+  }
+
+  public void step(double dt) {
+    double now = time();
+    if (mPending && now >= mPendingTime + kLatency) {
+      publish();
+    }
+    if (now >= mNextFrameTime) {
+      mNextFrameTime += kFramePeriod;
+      capture(now);
+    }
+  }
+
+  private void capture(double now) {
+    double offset = getAimError();
+    double range = getRange();
+    mPending = true;
+    mPendingTime = now;
+    mPendingHeading = Navigation.getInstance().getHeadingInDegrees();
+    mPendingFound = Math.abs(offset) < kHalfFieldOfView && range < kMaxRange
+        && mRandom.nextDouble() >= mDropoutProbability;
+    mPendingOffset = offset + mRandom.nextGaussian() * mAzimuthNoise;
+    mPendingRange = range + mRandom.nextGaussian() * mRangeNoise;
+  }
+
+  private void publish() {
+    mPending = false;
+    mDashboard.putBoolean("found", mPendingFound);
+    if (mPendingFound) {
+      mDashboard.putNumber("azimuthOffset", mPendingOffset);
+      mDashboard.putNumber("azimuth",
+          DaisyMath.boundAngle0to360Degrees(mPendingHeading + mPendingOffset));
+      mDashboard.putNumber("range", mPendingRange);
+      mDashboard.putNumber("captureTimestamp", mPendingTime);
+    }
+  }
+
+  private double bearing() {
+    return Math.toDegrees(Math.atan2(mGoalY - mDrivetrain.getYinInches(),
+        mGoalX - mDrivetrain.getXinInches()));
+  }
+
+  private double time() {
+    return mClock.nanoTime() / 1.0e9;
+  }
+}
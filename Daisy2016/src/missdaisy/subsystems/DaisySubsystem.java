@@ -1,6 +1,5 @@
 package missdaisy.subsystems;
 
-import edu.wpi.first.wpilibj.command.Subsystem;
 import missdaisy.fileio.PropertySet;
 import missdaisy.loops.controllers.Controller;
 
@@ -12,14 +11,10 @@ import missdaisy.loops.controllers.Controller;
  * 
  * @author Jared341
  */
-public abstract class DaisySubsystem extends Subsystem {
+public abstract class DaisySubsystem {
   protected Controller mCurrentController;
   protected PropertySet mPropertySet = PropertySet.getInstance();
 
-  public void initDefaultCommand() {
-
-  }
-
   public synchronized Controller getCurrentController() {
     return mCurrentController;
   }
@@ -53,4 +48,22 @@ public abstract class DaisySubsystem extends Subsystem {
   public synchronized void loadProperties() {
 
   }
+
+  /**
+   * How many fast loop periods pass between runs of this subsystem's filters and controller. Must
+   * be a power of two, so that every subsystem's rate is a harmonic of the others.
+   * 
+   * @return The loop divisor. The default runs the subsystem every other fast loop period.
+   */
+  public int getLoopDivisor() {
+    return 2;
+  }
+
+  /**
+   * Which fast loop period, from 0 to getLoopDivisor() - 1, this subsystem runs on. Slow
+   * subsystems should use this to stay off of the periods that the drive runs on.
+   */
+  public int getLoopPhase() {
+    return 0;
+  }
 }
@@ -2,11 +2,13 @@ package missdaisy.subsystems;
 
 import missdaisy.Constants;
 import missdaisy.fileio.PropertySet;
+import missdaisy.hal.DigitalSensor;
+import missdaisy.hal.Hardware;
+import missdaisy.hal.HardwareFactory;
+import missdaisy.hal.MotorOutput;
 import missdaisy.loops.Navigation;
 import missdaisy.loops.controllers.DriveTurnController;
 import missdaisy.utilities.AlphaFilter;
-import edu.wpi.first.wpilibj.DigitalInput;
-import edu.wpi.first.wpilibj.Talon;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
@@ -15,12 +17,18 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
  * @author Josh Sizer
  */
 public final class Drive extends DaisySubsystem {
+  /**
+   * How many fast loop periods pass between runs of the drive. Its trajectories are generated
+   * with this time step, so tools that make them offline need it without a Drive.
+   */
+  public static final int LOOP_DIVISOR = 2;
+
   private static Drive driveInstance = null;
-  private Talon mLeftDriveMotor;
-  private Talon mRightDriveMotor;
+  private MotorOutput mLeftDriveMotor;
+  private MotorOutput mRightDriveMotor;
   private AlphaFilter mAlphaFilter;
-  private DigitalInput mDefenseSensor;
-  private DigitalInput mDriveRailSensor;
+  private DigitalSensor mDefenseSensor;
+  private DigitalSensor mDriveRailSensor;
   private boolean mUseAlphaFilter = true;
 
   /**
@@ -36,13 +44,13 @@ public final class Drive extends DaisySubsystem {
   }
 
   private Drive() {
-    mLeftDriveMotor = new Talon(Constants.PWMs.DRIVE_LEFT_MOTOR);
-    mRightDriveMotor = new Talon(Constants.PWMs.DRIVE_RIGHT_MOTOR);
+    HardwareFactory hardware = Hardware.getFactory();
+    mLeftDriveMotor = hardware.getTalon(Constants.PWMs.DRIVE_LEFT_MOTOR, false);
     // either the left or the right drive will be backwards
-    mRightDriveMotor.setInverted(true);
+    mRightDriveMotor = hardware.getTalon(Constants.PWMs.DRIVE_RIGHT_MOTOR, true);
     mAlphaFilter = new AlphaFilter(Constants.Properties.DRIVE_ALPHA_FILTER_GAIN_INTAKE_UP);
-    mDefenseSensor = new DigitalInput(Constants.DigitalInputs.DEFENSE_BANNER);
-    mDriveRailSensor = new DigitalInput(Constants.DigitalInputs.DRIVE_RAIL_LIMIT);
+    mDefenseSensor = hardware.getDigitalInput(Constants.DigitalInputs.DEFENSE_BANNER);
+    mDriveRailSensor = hardware.getDigitalInput(Constants.DigitalInputs.DRIVE_RAIL_LIMIT);
     loadProperties();
   }
 
@@ -120,12 +128,17 @@ public final class Drive extends DaisySubsystem {
    */
   public synchronized void reset() {
     set(0.0, 0.0);
+    mAlphaFilter.reset();
   }
 
   public void loadProperties() {
     // Nothing to load!
   }
 
+  public int getLoopDivisor() {
+    return LOOP_DIVISOR;
+  }
+
   /**
    * Logs this subsystem's specific properties to smartdashboard. 
    */
@@ -1,9 +1,10 @@
 package missdaisy.subsystems;
 
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.Victor;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import missdaisy.Constants;
+import missdaisy.hal.Hardware;
+import missdaisy.hal.MotorOutput;
+import missdaisy.hal.SolenoidOutput;
 
 /**
  * The hanger, the subsystem that enables the robot to hang in the end game
@@ -13,8 +14,8 @@ import missdaisy.Constants;
  */
 public final class Hanger extends DaisySubsystem {
   private static Hanger hangerInstance = null;
-  private Victor mHangerMotor;
-  private Solenoid mHangerPiston;
+  private MotorOutput mHangerMotor;
+  private SolenoidOutput mHangerPiston;
 
   /**
    * Gets the instance of the hanger. Used in order to never have more than one hanger object, ever.
@@ -28,8 +29,8 @@ public final class Hanger extends DaisySubsystem {
   }
 
   private Hanger() {
-    mHangerMotor = new Victor(Constants.PWMs.HANER_MOTOR);
-    mHangerPiston = new Solenoid(Constants.Solenoids.HANGER);
+    mHangerMotor = Hardware.getFactory().getVictor(Constants.PWMs.HANER_MOTOR, false);
+    mHangerPiston = Hardware.getFactory().getSolenoid(Constants.Solenoids.HANGER);
   }
 
   public void setSpeed(double motorSpeed) {
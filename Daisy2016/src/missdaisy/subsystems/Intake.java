@@ -1,11 +1,11 @@
 package missdaisy.subsystems;
 
-import edu.wpi.first.wpilibj.DigitalInput;
-import edu.wpi.first.wpilibj.DoubleSolenoid;
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.Victor;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import missdaisy.Constants;
+import missdaisy.hal.DigitalSensor;
+import missdaisy.hal.Hardware;
+import missdaisy.hal.MotorOutput;
+import missdaisy.hal.SolenoidOutput;
 
 /**
  * The intake of the robot which acquires boulders from the ground
@@ -16,10 +16,11 @@ import missdaisy.Constants;
 public final class Intake extends DaisySubsystem {
   private static Intake intakeInstance = null;
   private static Popper mPopper;
-  private Victor mIntakeMotor;
-  private Victor mConveyorMotor;
-  private DoubleSolenoid mIntakePiston;
-  private DigitalInput mBallSensor;
+  private MotorOutput mIntakeMotor;
+  private MotorOutput mConveyorMotor;
+  // double solenoids: true is forward, false is reverse
+  private SolenoidOutput mIntakePiston;
+  private DigitalSensor mBallSensor;
 
   /**
    * Gets the instance of the intake. Used in order to never have more than one intake object, ever.
@@ -34,34 +35,32 @@ public final class Intake extends DaisySubsystem {
 
   private Intake() {
     mPopper = new Popper();
-    mIntakeMotor = new Victor(Constants.PWMs.INTAKE_MOTOR);
-    mIntakeMotor.setInverted(false);
-    mIntakePiston = new DoubleSolenoid(Constants.Solenoids.INTAKE_DOUBLE_1,
+    mIntakeMotor = Hardware.getFactory().getVictor(Constants.PWMs.INTAKE_MOTOR, false);
+    mIntakePiston = Hardware.getFactory().getDoubleSolenoid(Constants.Solenoids.INTAKE_DOUBLE_1,
         Constants.Solenoids.INTAKE_DOUBLE_2);
-    mConveyorMotor = new Victor(Constants.PWMs.CONVEYOR_MOTOR);
-    mConveyorMotor.setInverted(true);
-    mBallSensor = new DigitalInput(Constants.DigitalInputs.CONVEYOR_BANNER);
+    mConveyorMotor = Hardware.getFactory().getVictor(Constants.PWMs.CONVEYOR_MOTOR, true);
+    mBallSensor = Hardware.getFactory().getDigitalInput(Constants.DigitalInputs.CONVEYOR_BANNER);
   }
 
   // because the Popper can be thought of its own little subsystem,
   // but it is not worth making its own class for it
   private final class Popper {
     // a double solenoid will retain it's state even after the robot is disabled
-    DoubleSolenoid mPopperPiston = null;
+    SolenoidOutput mPopperPiston = null;
     private boolean isDeployed = false;
 
     private Popper() {
-      mPopperPiston = new DoubleSolenoid(Constants.Solenoids.POPPER_DOUBLE_1,
+      mPopperPiston = Hardware.getFactory().getDoubleSolenoid(Constants.Solenoids.POPPER_DOUBLE_1,
           Constants.Solenoids.POPPER_DOUBLE_2);
     }
 
     private void deploy() {
-      mPopperPiston.set(DoubleSolenoid.Value.kForward);
+      mPopperPiston.set(true);
       isDeployed = true;
     }
 
     private void retract() {
-      mPopperPiston.set(DoubleSolenoid.Value.kReverse);
+      mPopperPiston.set(false);
       isDeployed = false;
     }
 
@@ -87,14 +86,14 @@ public final class Intake extends DaisySubsystem {
    * Puts the intake to the floor
    */
   public void deploy() {
-    mIntakePiston.set(DoubleSolenoid.Value.kReverse);
+    mIntakePiston.set(false);
   }
 
   /**
    * Pulls the intake off the floor
    */
   public void retract() {
-    mIntakePiston.set(DoubleSolenoid.Value.kForward);
+    mIntakePiston.set(true);
   }
 
   /**
@@ -129,9 +128,9 @@ public final class Intake extends DaisySubsystem {
   public void logToDashboard() {
     SmartDashboard.putBoolean("ConveyorSeesBall", mBallSensor.get());
 
-    if (mIntakePiston.get() == DoubleSolenoid.Value.kForward)
+    if (mIntakePiston.get())
       SmartDashboard.putString("IntakePosition", "Deployed");
-    else if (mIntakePiston.get() == DoubleSolenoid.Value.kReverse)
+    else
       SmartDashboard.putString("IntakePosition", "Retracted");
   }
 
@@ -140,4 +139,16 @@ public final class Intake extends DaisySubsystem {
     setConveyorSpeed(0.0);
     retract();
   }
+
+  /**
+   * Nothing on the intake needs to be fast, so it only runs every 8th period, on a period where
+   * the drive does not run.
+   */
+  public int getLoopDivisor() {
+    return 8;
+  }
+
+  public int getLoopPhase() {
+    return 1;
+  }
 }
@@ -1,12 +1,13 @@
 package missdaisy.subsystems;
 
 import missdaisy.Constants;
+import missdaisy.hal.EdgeTimestampInput;
+import missdaisy.hal.Hardware;
+import missdaisy.hal.MotorOutput;
+import missdaisy.hal.ServoOutput;
+import missdaisy.hal.SolenoidOutput;
 import missdaisy.loops.controllers.ShooterSpeedController;
-import missdaisy.utilities.MovingAverageFilter;
-import edu.wpi.first.wpilibj.CANTalon;
-import edu.wpi.first.wpilibj.Counter;
-import edu.wpi.first.wpilibj.Servo;
-import edu.wpi.first.wpilibj.Solenoid;
+import missdaisy.utilities.FlywheelVelocityEstimator;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
@@ -20,12 +21,13 @@ public final class Shooter extends DaisySubsystem {
   private Hood mHood = null;
   private Barrier mBarrier = null;
   private Intake mIntake;
-  private CANTalon mWheelMotor;
-  private Solenoid mBallLight;
-  private Solenoid mStatusLight;
-  private Solenoid mVisionLight;
-  private Counter mWheelCounter;
-  private MovingAverageFilter mCounterFilter;
+  private MotorOutput mWheelMotor;
+  private SolenoidOutput mBallLight;
+  private SolenoidOutput mStatusLight;
+  private SolenoidOutput mVisionLight;
+  private EdgeTimestampInput mWheelEdges;
+  private FlywheelVelocityEstimator mWheelSpeed;
+  private final double[] mEdgeTimes = new double[64];
   private int kCountsPerRev = 2;
   private int blinkCounter = 0;
   private static final boolean BATTER_POSITION = true;
@@ -47,22 +49,24 @@ public final class Shooter extends DaisySubsystem {
     mHood = new Hood();
     mBarrier = new Barrier();
     mIntake = Intake.getInstance();
-    mWheelMotor = new CANTalon(Constants.CAN.SHOOTER_TALONSRX_ID);
-    mWheelMotor.setInverted(true);
-    mWheelCounter = new Counter(Constants.DigitalInputs.SHOOTER_BANNER);
-    mBallLight = new Solenoid(Constants.Solenoids.BALL_LIGHT);
-    mStatusLight = new Solenoid(Constants.Solenoids.STATUS);
-    // mVisionLight = new Solenoid(Constants.Solenoids.VISION);
-    mCounterFilter = new MovingAverageFilter(10);
+    mWheelMotor = Hardware.getFactory().getCANTalon(Constants.CAN.SHOOTER_TALONSRX_ID, true);
+    mWheelEdges =
+        Hardware.getFactory().getEdgeTimestamps(Constants.DigitalInputs.SHOOTER_BANNER);
+    mBallLight = Hardware.getFactory().getSolenoid(Constants.Solenoids.BALL_LIGHT);
+    mStatusLight = Hardware.getFactory().getSolenoid(Constants.Solenoids.STATUS);
+    // mVisionLight = Hardware.getFactory().getSolenoid(Constants.Solenoids.VISION);
+    mWheelSpeed = new FlywheelVelocityEstimator(kCountsPerRev,
+        Constants.Properties.SHOOTER_SPEED_WINDOW, Constants.Properties.SHOOTER_MAX_RPM,
+        Constants.Properties.SHOOTER_BANNER_JITTER, Constants.Properties.PID_SHOOTER_RPM_TOLERANCE);
   }
 
   // because the Hood can be thought of its own little subsystem,
   // but it is not worth making its own class for it
   private final class Hood {
-    Solenoid mHoodPiston = null;
+    SolenoidOutput mHoodPiston = null;
 
     private Hood() {
-      mHoodPiston = new Solenoid(Constants.Solenoids.HOOD);
+      mHoodPiston = Hardware.getFactory().getSolenoid(Constants.Solenoids.HOOD);
     }
 
     private void setBatterPosition() {
@@ -85,12 +89,12 @@ public final class Shooter extends DaisySubsystem {
    *
    */
   private final class Barrier {
-    Servo mLeftServo = null;
-    Servo mRightServo = null;
+    ServoOutput mLeftServo = null;
+    ServoOutput mRightServo = null;
 
     private Barrier() {
-      mLeftServo = new Servo(Constants.SERVOs.BARRIER_LEFT);
-      mRightServo = new Servo(Constants.SERVOs.BARRIER_RIGHT);
+      mLeftServo = Hardware.getFactory().getServo(Constants.SERVOs.BARRIER_LEFT);
+      mRightServo = Hardware.getFactory().getServo(Constants.SERVOs.BARRIER_RIGHT);
     }
 
     private void deployBarrier() {
@@ -200,30 +204,38 @@ public final class Shooter extends DaisySubsystem {
 
 
   /**
-   * Gets the average shooter RPM
+   * Gets the shooter RPM
    * 
-   * @return the shooter's average RPM
+   * @return the shooter's RPM, right now
    */
   public double getRPM() {
-    return mCounterFilter.getAverage();
+    return mWheelSpeed.getRPM();
   }
 
   /**
-   * Finds the average RPM of the shooter based on a specific sample size
+   * @return How fast the shooter RPM is changing, in RPM per second
    */
-  public void runInputFilters() {
-    // 1 rev 60 sec 60
-    // ---------------- * ------ = ----- rpm
+  public double getRPMAcceleration() {
+    return mWheelSpeed.getAcceleration();
+  }
 
-    // period (#sec/rev) 1 min period
+  /**
+   * @return How much the shooter RPM can be trusted, from 0.0 (not at all) to 1.0
+   */
+  public double getRPMConfidence() {
+    return mWheelSpeed.getConfidence();
+  }
 
-    // multiply period by 2 because one period is half a revolution
-    double rpm = 60.0 / (mWheelCounter.getPeriod() * (double) kCountsPerRev);
-    if (rpm < 8000.0) {
-      // This check ensures that wild spurious readings are rejected
-      mCounterFilter.setInput(rpm);
-      mCounterFilter.run();
+  /**
+   * Estimates the RPM of the shooter from the times the tape on the wheel went past the banner
+   * sensor since the last time this was run
+   */
+  public void runInputFilters() {
+    int edges = mWheelEdges.readEdges(mEdgeTimes);
+    for (int i = 0; i < edges; i++) {
+      mWheelSpeed.addEdge(mEdgeTimes[i]);
     }
+    mWheelSpeed.update(mWheelEdges.getTime());
   }
 
   public double getCurrent() {
@@ -233,20 +245,34 @@ public final class Shooter extends DaisySubsystem {
 
 
   /**
-   * Turns the shooter off and resets the moving average filter
+   * Turns the shooter off and resets the RPM estimate
    */
   public synchronized void reset() {
     setSpeed(0.0);
     mHood.setOuterworksPosition();
-    mCounterFilter.reset();
+    mWheelSpeed.reset();
   }
 
   public synchronized void loadProperties() {
 
   }
 
+  /**
+   * Runs every 10 ms, the rate ShooterSpeedController's sample count windows were tuned at. The
+   * RPM estimate works from the banner sensor's edge times, so it does not need to run any faster.
+   * It runs on the periods the drive does not, to even out the load.
+   */
+  public int getLoopDivisor() {
+    return 2;
+  }
+
+  public int getLoopPhase() {
+    return 1;
+  }
+
   public void logToDashboard() {
     SmartDashboard.putNumber("ShooterRPM", getRPM());
+    SmartDashboard.putNumber("ShooterRPMConfidence", getRPMConfidence());
     SmartDashboard.putBoolean("ShooterRPMOnTarget",
         ShooterSpeedController.getInstance().onTarget());
     SmartDashboard.putString("ShooterHoodPosition",
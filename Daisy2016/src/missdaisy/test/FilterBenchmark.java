@@ -0,0 +1,329 @@
+package missdaisy.test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+import missdaisy.utilities.FilterChain;
+import missdaisy.utilities.MedianFilter;
+import missdaisy.utilities.MovingAverageFilter;
+import missdaisy.utilities.RateLimitFilter;
+
+/**
+ * Checks that the filters give the same answers as the simple versions they replaced, and
+ * measures how fast they are at a range of window sizes.
+ * 
+ * Usage: FilterBenchmark [samples per window size]
+ * 
+ * @author jrussell
+ */
+public class FilterBenchmark {
+  private static final int[] kWindowSizes = {5, 11, 25, 51, 101, 251, 501};
+
+  /**
+   * The median filter as it used to be: copy the window and sort it every sample.
+   */
+  private static class SortingMedianFilter {
+    private final double[] vals;
+    private final int rank;
+    private int ptr = 0;
+
+    SortingMedianFilter(int nSamples, double percentile) {
+      vals = new double[nSamples];
+      rank = Math.min((int) (percentile * nSamples), nSamples - 1);
+    }
+
+    void setInput(double val) {
+      vals[ptr] = val;
+      ptr = (ptr + 1) % vals.length;
+    }
+
+    double run() {
+      double[] sorted = Arrays.copyOf(vals, vals.length);
+      Arrays.sort(sorted);
+      return sorted[rank];
+    }
+  }
+
+  /**
+   * The moving average filter as it used to be: add up the whole window every sample.
+   */
+  private static class SummingAverageFilter {
+    private final double[] vals;
+    private int ptr = 0;
+
+    SummingAverageFilter(int nSamples) {
+      vals = new double[nSamples];
+    }
+
+    void setInput(double val) {
+      vals[ptr] = val;
+      ptr = (ptr + 1) % vals.length;
+    }
+
+    double run() {
+      double average = 0.0;
+      for (int i = 0; i < vals.length; i++) {
+        average += vals[i];
+      }
+      return average / vals.length;
+    }
+
+    /**
+     * @return The sum and the sum of squares of the window, added up with no rounding at all
+     */
+    BigDecimal[] exactSums() {
+      BigDecimal sum = BigDecimal.ZERO;
+      BigDecimal sumOfSquares = BigDecimal.ZERO;
+      for (int i = 0; i < vals.length; i++) {
+        BigDecimal val = new BigDecimal(vals[i]);
+        sum = sum.add(val);
+        sumOfSquares = sumOfSquares.add(val.multiply(val));
+      }
+      return new BigDecimal[] {sum, sumOfSquares};
+    }
+  }
+
+  public static void main(String[] args) {
+    int samples = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    double[] input = makeInput(samples);
+    double[] mixed = makeMixedInput(samples);
+
+    System.out.println("Median filter, ns per sample");
+    System.out.println(String.format("%8s %12s %12s %8s %6s", "window", "sorting", "heaps",
+        "speedup", "same"));
+    for (int i = 0; i < kWindowSizes.length; i++) {
+      int n = kWindowSizes[i];
+      boolean same = true;
+      for (double percentile : new double[] {0.0, 0.1, 0.5, 0.9, 1.0}) {
+        same &= sameMedians(input, n, percentile);
+      }
+      double sorting = timeSortingMedian(input, n);
+      double heaps = timeMedian(input, n);
+      System.out.println(String.format("%8d %12.1f %12.1f %7.1fx %6s", n, sorting, heaps,
+          sorting / heaps, same ? "yes" : "NO"));
+    }
+
+    System.out.println();
+    System.out.println("Moving average filter, ns per sample, and the largest differences from "
+        + "adding up the whole window exactly, for the signal and for one that swings around zero");
+    System.out.println(String.format("%8s %12s %12s %8s %12s %12s %12s %12s", "window",
+        "summing", "running", "speedup", "mean diff", "var diff", "mixed mean", "mixed var"));
+    for (int i = 0; i < kWindowSizes.length; i++) {
+      int n = kWindowSizes[i];
+      double[] differences = averageDifferences(input, n);
+      double[] mixedDifferences = averageDifferences(mixed, n);
+      double summing = timeSummingAverage(input, n);
+      double running = timeAverage(input, n);
+      System.out.println(String.format("%8d %12.1f %12.1f %7.1fx %12.2e %12.2e %12.2e %12.2e",
+          n, summing, running, summing / running, differences[0], differences[1],
+          mixedDifferences[0], mixedDifferences[1]));
+    }
+
+    System.out.println();
+    System.out.println("Median 5, moving average 10, rate limit 50 per sample, ns per sample");
+    System.out.println(String.format("%12s %12s %12s %12s %6s", "by hand", "chain", "batch",
+        "chain/hand", "same"));
+    double[] byHand = new double[input.length];
+    double[] chained = new double[input.length];
+    double[] batch = new double[input.length];
+    double handTime = Double.MAX_VALUE;
+    double chainTime = Double.MAX_VALUE;
+    double batchTime = Double.MAX_VALUE;
+    // the first passes warm up the JIT, and the best pass of each is kept, so that a pause in
+    // one of them does not decide the comparison
+    for (int pass = 0; pass < 5; pass++) {
+      MedianFilter median = new MedianFilter(5);
+      MovingAverageFilter average = new MovingAverageFilter(10);
+      RateLimitFilter rateLimit = new RateLimitFilter(50.0);
+      long start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        median.setInput(input[i]);
+        average.setInput(median.run());
+        rateLimit.setDesired(average.run());
+        byHand[i] = rateLimit.run();
+      }
+      handTime = Math.min(handTime, (System.nanoTime() - start) / (double) input.length);
+
+      FilterChain chain = makeChain();
+      start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        chained[i] = chain.filter(input[i]);
+      }
+      chainTime = Math.min(chainTime, (System.nanoTime() - start) / (double) input.length);
+
+      chain = makeChain();
+      start = System.nanoTime();
+      chain.process(input, batch);
+      batchTime = Math.min(batchTime, (System.nanoTime() - start) / (double) input.length);
+    }
+    boolean same = Arrays.equals(byHand, chained) && Arrays.equals(byHand, batch);
+    System.out.println(String.format("%12.1f %12.1f %12.1f %11.2fx %6s", handTime, chainTime,
+        batchTime, chainTime / handTime, same ? "yes" : "NO"));
+  }
+
+  private static FilterChain makeChain() {
+    return FilterChain.of(new MedianFilter(5), new MovingAverageFilter(10),
+        new RateLimitFilter(50.0));
+  }
+
+  /**
+   * Compares the running filter with adding up the window exactly, and throws if the average is
+   * more than a couple of units in the last place off, or the variance more than rounding its
+   * mean of squares can explain. Compensated summation keeps both that close forever, so a
+   * running sum that drifts fails.
+   * 
+   * @return The largest difference in the average, and in the variance
+   */
+  private static double[] averageDifferences(double[] input, int n) {
+    SummingAverageFilter expected = new SummingAverageFilter(n);
+    MovingAverageFilter actual = new MovingAverageFilter(n);
+    double[] differences = new double[2];
+    for (int i = 0; i < input.length; i++) {
+      expected.setInput(input[i]);
+      actual.setInput(input[i]);
+      if (i % 10 != 0) {
+        continue;
+      }
+      BigDecimal[] sums = expected.exactSums();
+      double mean = sums[0].doubleValue() / n;
+      double meanOfSquares = sums[1].doubleValue() / n;
+      double variance = Math.max(0.0, meanOfSquares - mean * mean);
+      double meanDifference = Math.abs(actual.run() - mean);
+      double varianceDifference = Math.abs(actual.getVariance() - variance);
+      if (meanDifference > 2.0 * Math.ulp(mean)
+          || varianceDifference > 4.0 * Math.ulp(meanOfSquares)) {
+        throw new IllegalStateException(String.format("Moving average %d drifted at sample %d: "
+            + "mean off by %.3g, variance off by %.3g", n, i, meanDifference,
+            varianceDifference));
+      }
+      differences[0] = Math.max(differences[0], meanDifference);
+      differences[1] = Math.max(differences[1], varianceDifference);
+    }
+    return differences;
+  }
+
+  private static double timeSummingAverage(double[] input, int n) {
+    SummingAverageFilter filter = new SummingAverageFilter(n);
+    double sink = 0.0;
+    long start = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        filter.setInput(input[i]);
+        sink += filter.run();
+      }
+    }
+    return finish(start, input.length, sink);
+  }
+
+  private static double timeAverage(double[] input, int n) {
+    MovingAverageFilter filter = new MovingAverageFilter(n);
+    double sink = 0.0;
+    long start = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        filter.setInput(input[i]);
+        sink += filter.run();
+      }
+    }
+    return finish(start, input.length, sink);
+  }
+
+  /**
+   * A noisy signal with steps, spikes and runs of repeated values, since ties are where a heap is
+   * most likely to go wrong.
+   */
+  private static double[] makeInput(int samples) {
+    Random random = new Random(341);
+    double[] input = new double[samples];
+    for (int i = 0; i < samples; i++) {
+      double value = ((i / 500) % 2 == 0 ? 4000.0 : 3000.0) + random.nextGaussian() * 50.0;
+      if (random.nextDouble() < 0.01) {
+        value = 1.0e6 * random.nextDouble();
+      }
+      if (random.nextDouble() < 0.2) {
+        value = Math.rint(value / 100.0) * 100.0;
+      }
+      input[i] = value;
+    }
+    return input;
+  }
+
+  /**
+   * Big values of both signs that mostly cancel, so the window's sum is small next to the values
+   * going in and out of it. This is where a running sum loses the most to rounding.
+   */
+  private static double[] makeMixedInput(int samples) {
+    Random random = new Random(342);
+    double[] input = new double[samples];
+    for (int i = 0; i < samples; i++) {
+      double value = random.nextGaussian() * 1000.0;
+      if (random.nextDouble() < 0.05) {
+        value = 1.0e6 * (2.0 * random.nextDouble() - 1.0);
+      }
+      input[i] = random.nextBoolean() ? value : -value;
+      if (i % 2 == 1) {
+        // cancel most of the last one
+        input[i] = -input[i - 1] + random.nextGaussian() * 1.0e-3;
+      }
+    }
+    return input;
+  }
+
+  private static boolean sameMedians(double[] input, int n, double percentile) {
+    SortingMedianFilter expected = new SortingMedianFilter(n, percentile);
+    MedianFilter actual = new MedianFilter(n, percentile);
+    // not too many, the sorting version is slow with big windows
+    int samples = Math.min(input.length, 20000);
+    for (int i = 0; i < samples; i++) {
+      expected.setInput(input[i]);
+      actual.setInput(input[i]);
+      if (expected.run() != actual.run()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static double timeSortingMedian(double[] input, int n) {
+    SortingMedianFilter filter = new SortingMedianFilter(n, 0.5);
+    double sink = 0.0;
+    // the first pass warms up the JIT
+    long start = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        filter.setInput(input[i]);
+        sink += filter.run();
+      }
+    }
+    return finish(start, input.length, sink);
+  }
+
+  private static double timeMedian(double[] input, int n) {
+    MedianFilter filter = new MedianFilter(n);
+    double sink = 0.0;
+    long start = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      start = System.nanoTime();
+      for (int i = 0; i < input.length; i++) {
+        filter.setInput(input[i]);
+        sink += filter.run();
+      }
+    }
+    return finish(start, input.length, sink);
+  }
+
+  /**
+   * @param sink Everything the filter returned, so the JIT can not skip running it
+   * @return Nanoseconds per sample
+   */
+  private static double finish(long start, int samples, double sink) {
+    double nanos = (System.nanoTime() - start) / (double) samples;
+    if (sink == 0.12345) {
+      System.out.println();
+    }
+    return nanos;
+  }
+}
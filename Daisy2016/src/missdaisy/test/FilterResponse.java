@@ -0,0 +1,111 @@
+package missdaisy.test;
+
+import missdaisy.utilities.BiquadFilter;
+
+/**
+ * Checks that the IIR filter designs do what they say. Runs sine waves through each filter,
+ * measures how much they come out attenuated, and compares that with the design and with the
+ * response worked out from the filter's coefficients.
+ * 
+ * Usage: FilterResponse
+ * 
+ * @author jrussell
+ */
+public class FilterResponse {
+  private static final double kSampleRate = 100.0; // Navigation runs at 100 Hz
+  private static final double kTolerance = 0.01; // gain, out of 1.0
+
+  private static int failures = 0;
+
+  public static void main(String[] args) {
+    System.out.println(String.format("%-36s %8s %10s %10s %10s %6s", "Filter", "Hz", "expected",
+        "measured", "computed", "ok"));
+
+    for (int order = 1; order <= 4; order++) {
+      String name = "Butterworth order " + order + ", 5 Hz";
+      BiquadFilter filter = BiquadFilter.butterworthLowPass(order, 5.0, kSampleRate);
+      check(name, filter, 0.0, 1.0);
+      check(name, filter, 5.0, Math.sqrt(0.5));
+      // well below the cutoff a Butterworth filter is flat
+      check(name, filter, 1.0, 1.0 / Math.sqrt(1.0 + Math.pow(0.2, 2 * order)));
+    }
+    for (int order = 1; order <= 4; order++) {
+      String name = "Critically damped order " + order + ", 5 Hz";
+      BiquadFilter filter = BiquadFilter.criticallyDampedLowPass(order, 5.0, kSampleRate);
+      check(name, filter, 0.0, 1.0);
+      check(name, filter, 5.0, Math.sqrt(0.5));
+      checkNoOvershoot(name, filter);
+    }
+    BiquadFilter notch = BiquadFilter.notch(20.0, 2.0, kSampleRate);
+    check("Notch 20 Hz, Q 2", notch, 20.0, 0.0);
+    check("Notch 20 Hz, Q 2", notch, 0.0, 1.0);
+    // the edges of the notch, center / Q apart on the prewarped axis, are 3 dB down
+    double k = Math.tan(Math.PI * 20.0 / kSampleRate);
+    double middle = k * Math.sqrt(1.0 + 1.0 / 16.0);
+    check("Notch 20 Hz, Q 2", notch, unwarp(middle - k / 4.0), Math.sqrt(0.5));
+    check("Notch 20 Hz, Q 2", notch, unwarp(middle + k / 4.0), Math.sqrt(0.5));
+
+    System.out.println(failures == 0 ? "All filters match their designs"
+        : failures + " checks FAILED");
+  }
+
+  /**
+   * Runs a sine wave through the filter until it settles, and compares its amplitude on the way
+   * out with what it should be.
+   */
+  private static void check(String name, BiquadFilter filter, double frequency,
+      double expected) {
+    filter.reset();
+    int settle = (int) (20.0 * kSampleRate);
+    int measure = (int) (10.0 * kSampleRate);
+    double peak = 0.0;
+    for (int i = 0; i < settle + measure; i++) {
+      // a cosine, so 0 Hz is a steady 1.0 rather than nothing at all
+      double output = filter.filter(Math.cos(2.0 * Math.PI * frequency * i / kSampleRate));
+      if (i >= settle) {
+        peak = Math.max(peak, Math.abs(output));
+      }
+    }
+    double computed = filter.getGain(frequency, kSampleRate);
+    // sampling a sine can miss its peak, so the measurement is only as good as the samples
+    boolean ok = Math.abs(peak - expected) < kTolerance + expected * missedPeak(frequency)
+        && Math.abs(computed - expected) < kTolerance;
+    if (!ok) {
+      failures++;
+    }
+    System.out.println(String.format("%-36s %8.2f %10.4f %10.4f %10.4f %6s", name, frequency,
+        expected, peak, computed, ok ? "yes" : "NO"));
+  }
+
+  /**
+   * Makes sure a step goes through without overshooting.
+   */
+  private static void checkNoOvershoot(String name, BiquadFilter filter) {
+    filter.reset();
+    double max = 0.0;
+    for (int i = 0; i < 10.0 * kSampleRate; i++) {
+      max = Math.max(max, filter.filter(1.0));
+    }
+    boolean ok = max <= 1.0 + 1.0e-9;
+    if (!ok) {
+      failures++;
+    }
+    System.out.println(String.format("%-36s %8s %10.4f %10.4f %10s %6s", name, "step", 1.0, max,
+        "", ok ? "yes" : "NO"));
+  }
+
+  /**
+   * @return The frequency, in Hz, that a prewarped frequency came from
+   */
+  private static double unwarp(double warped) {
+    return Math.atan(warped) * kSampleRate / Math.PI;
+  }
+
+  /**
+   * @return The most that sampling can shave off the peak of a sine at the frequency, as a
+   *         fraction of its amplitude
+   */
+  private static double missedPeak(double frequency) {
+    return 1.0 - Math.cos(Math.PI * frequency / kSampleRate);
+  }
+}
@@ -0,0 +1,126 @@
+package missdaisy.test;
+
+import java.util.Random;
+import missdaisy.Constants;
+import missdaisy.loops.ComplementaryPoseEstimator;
+import missdaisy.loops.EulerPoseEstimator;
+import missdaisy.loops.PoseEstimator;
+import missdaisy.utilities.DaisyMath;
+
+/**
+ * Compares the accuracy of the pose estimators on simulated autonomous runs.
+ * 
+ * Each run sits still for a few seconds (like the robot does before autonomous starts), drives
+ * over a defense, and makes a few turns. The true position is integrated finely, and the sensors
+ * the estimators see are made from it the way the real ones would be: the encoders are quantized
+ * and slip a little differently on each side, and the gyro drifts and is noisy.
+ * 
+ * Usage: OdometryBenchmark [runs]
+ * 
+ * @author jrussell
+ */
+public class OdometryBenchmark {
+  private static final double kPeriod = 0.01;
+  private static final int kSubSteps = 10;
+  private static final double kTrackWidth = Constants.Properties.DRIVE_TRACK_WIDTH;
+  private static final double kCountsPerInch = 1.0 / Constants.Properties.DRIVE_DISTANCE_PER_PULSE;
+
+  // left speed, right speed (in/s), pitch (degrees), duration (s)
+  private static final double[][] kPath = {
+      {0.0, 0.0, 0.0, 3.0},
+      {60.0, 60.0, 0.0, 1.0},
+      {60.0, 60.0, 15.0, 0.6},
+      {60.0, 60.0, -15.0, 0.6},
+      {60.0, 60.0, 0.0, 1.0},
+      {40.0, -40.0, 0.0, 0.8},
+      {80.0, 50.0, 0.0, 2.0},
+      {-30.0, 30.0, 0.0, 1.5},
+      {0.0, 0.0, 0.0, 1.0}};
+
+  public static void main(String[] args) {
+    int runs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    String[] names = {"Euler", "Complementary"};
+    double[] positionError = new double[names.length];
+    double[] maxPositionError = new double[names.length];
+    double[] headingError = new double[names.length];
+
+    for (int run = 0; run < runs; run++) {
+      PoseEstimator[] estimators = {new EulerPoseEstimator(), new ComplementaryPoseEstimator()};
+      double[] result = new double[3];
+      for (int i = 0; i < estimators.length; i++) {
+        simulate(new Random(run), estimators[i], result);
+        positionError[i] += result[0];
+        maxPositionError[i] = Math.max(maxPositionError[i], result[0]);
+        headingError[i] += result[1];
+      }
+    }
+
+    System.out.println("Final error after " + runs + " simulated runs");
+    System.out.println(String.format("%-15s %12s %12s %14s", "Estimator", "mean in", "max in",
+        "mean heading"));
+    for (int i = 0; i < names.length; i++) {
+      System.out.println(String.format("%-15s %12.2f %12.2f %14.2f", names[i],
+          positionError[i] / runs, maxPositionError[i], headingError[i] / runs));
+    }
+  }
+
+  /**
+   * Drives the path once and feeds the sensor readings to the estimator.
+   * 
+   * @param result Filled in with the final position error (inches) and heading error (degrees)
+   */
+  private static void simulate(Random random, PoseEstimator estimator, double[] result) {
+    double gyroBias = (random.nextDouble() - 0.5) * 0.6; // degrees per second
+    double leftSlip = 1.0 + random.nextGaussian() * 0.01;
+    double rightSlip = 1.0 + random.nextGaussian() * 0.01;
+
+    double x = 0.0;
+    double y = 0.0;
+    double heading = 0.0;
+    double left = 0.0;
+    double right = 0.0;
+    double gyro = 0.0;
+    double lastLeftCounts = 0.0;
+    double lastRightCounts = 0.0;
+    double lastGyro = 0.0;
+    estimator.reset(0.0, 0.0, 0.0);
+
+    double dt = kPeriod / kSubSteps;
+    for (int segment = 0; segment < kPath.length; segment++) {
+      double leftSpeed = kPath[segment][0];
+      double rightSpeed = kPath[segment][1];
+      double pitch = kPath[segment][2];
+      int cycles = (int) Math.round(kPath[segment][3] / kPeriod);
+      for (int cycle = 0; cycle < cycles; cycle++) {
+        for (int step = 0; step < kSubSteps; step++) {
+          // the wheels travel along the slope, the robot only moves the horizontal part of it
+          double leftStep = leftSpeed * dt;
+          double rightStep = rightSpeed * dt;
+          double turn = (leftStep - rightStep) / kTrackWidth;
+          double distance = (leftStep + rightStep) / 2.0 * Math.cos(Math.toRadians(pitch));
+          x += distance * Math.cos(heading + turn / 2.0);
+          y += distance * Math.sin(heading + turn / 2.0);
+          heading += turn;
+          left += leftStep * leftSlip;
+          right += rightStep * rightSlip;
+          gyro += Math.toDegrees(turn) + gyroBias * dt;
+        }
+        double leftCounts = Math.floor(left * kCountsPerInch) / kCountsPerInch;
+        double rightCounts = Math.floor(right * kCountsPerInch) / kCountsPerInch;
+        double gyroReading = DaisyMath.boundAngle0to360Degrees(
+            Math.round((gyro + random.nextGaussian() * 0.02) * 100.0) / 100.0);
+        double gyroRate = DaisyMath.getDifferenceInAngleDegrees(lastGyro, gyroReading) / kPeriod;
+        estimator.update(leftCounts - lastLeftCounts, rightCounts - lastRightCounts, gyroReading,
+            gyroRate, pitch, kPeriod);
+        lastLeftCounts = leftCounts;
+        lastRightCounts = rightCounts;
+        lastGyro = gyroReading;
+      }
+    }
+
+    result[0] = DaisyMath.getDistance(x, y, estimator.getXinInches(), estimator.getYinInches());
+    result[1] = Math.abs(DaisyMath.getDifferenceInAngleDegrees(
+        DaisyMath.boundAngle0to360Degrees(Math.toDegrees(heading)),
+        estimator.getHeadingInDegrees()));
+  }
+}
@@ -0,0 +1,196 @@
+package missdaisy.test;
+
+import missdaisy.Constants;
+import missdaisy.hal.Hardware;
+import missdaisy.hal.SimulatedClock;
+import missdaisy.hal.SimulatedEncoder;
+import missdaisy.hal.SimulatedHardware;
+import missdaisy.loops.Navigation;
+import missdaisy.loops.Pose;
+import missdaisy.loops.PoseEstimator;
+
+/**
+ * Hammers Navigation's pose snapshots from several reader threads while one thread publishes new
+ * ones as fast as it can, and checks that every snapshot a reader sees came from a single cycle.
+ *
+ * The publisher runs the real Navigation.run() on simulated hardware. In cycle k the encoders
+ * read k and 2k pulses, the encoder rates are k and -2k, the clock is k periods past its start,
+ * and a stand-in estimator reports x = k, y = 2k and a heading of k degrees. So a reader can work
+ * out k from any one value in a snapshot and check all of the others against it. Each reader also
+ * checks that the cycles it sees never go backwards.
+ *
+ * For comparison it counts how often reading x and y through Navigation's separate getters gets
+ * them from different cycles, which is why controllers should take one getPose() and read from
+ * that.
+ *
+ * Usage: PoseStressTest [readers] [seconds]
+ *
+ * @author jrussell
+ */
+public class PoseStressTest {
+  private static final double kDistancePerPulse = Constants.Properties.DRIVE_DISTANCE_PER_PULSE;
+  private static final long kPeriodNanos = 10000000L;
+
+  private static volatile boolean running = true;
+
+  /**
+   * Counts its updates, and reports them as its position, so the position says which cycle it is.
+   */
+  private static class CountingEstimator implements PoseEstimator {
+    private long mUpdates = 0;
+
+    public void reset(double x, double y, double heading) {
+      mUpdates = 0;
+    }
+
+    public void update(double leftDelta, double rightDelta, double gyroHeading, double gyroRate,
+        double pitch, double dt) {
+      mUpdates++;
+    }
+
+    public double getXinInches() {
+      return mUpdates;
+    }
+
+    public double getYinInches() {
+      return 2.0 * mUpdates;
+    }
+
+    public double getHeadingInDegrees() {
+      return mUpdates % 360;
+    }
+  }
+
+  private static class Reader extends Thread {
+    private final Navigation mNavigation;
+    private long mReads = 0;
+    private long mInconsistent = 0;
+    private long mBackwards = 0;
+    private long mTornGetters = 0;
+    private String mFirstProblem = null;
+
+    Reader(Navigation navigation, int number) {
+      super("PoseReader" + number);
+      mNavigation = navigation;
+    }
+
+    public void run() {
+      long lastCycle = 0;
+      while (running) {
+        Pose pose = mNavigation.getPose();
+        long cycle = Math.round(pose.getLeftEncoderDistance() / kDistancePerPulse);
+        String problem = check(pose, cycle);
+        if (problem != null) {
+          mInconsistent++;
+          if (mFirstProblem == null) {
+            mFirstProblem = problem;
+          }
+        }
+        if (cycle < lastCycle) {
+          mBackwards++;
+        }
+        lastCycle = cycle;
+
+        // the same two values, one getter at a time
+        double x = mNavigation.getXinInches();
+        double y = mNavigation.getYinInches();
+        if (y != 2.0 * x) {
+          mTornGetters++;
+        }
+        mReads++;
+      }
+    }
+  }
+
+  /**
+   * @return What is wrong with the snapshot, or null if everything in it is from the cycle
+   */
+  private static String check(Pose pose, long cycle) {
+    double timestampCycle = (pose.getTimestamp() - 1.0) * 1.0e9 / kPeriodNanos;
+    if (cycle == 0) {
+      // the snapshot resetRobotPosition() published, before the first cycle
+      return pose.getXinInches() == 0.0 && pose.getRightEncoderDistance() == 0.0 ? null
+          : "reset snapshot has x " + pose.getXinInches();
+    }
+    if (pose.getXinInches() != cycle || pose.getYinInches() != 2.0 * cycle
+        || pose.getHeadingInDegrees() != cycle % 360
+        || pose.getRightEncoderDistance() != (2 * cycle) * kDistancePerPulse
+        || pose.getLeftEncoderRate() != cycle || pose.getRightEncoderRate() != -2.0 * cycle
+        || Math.abs(timestampCycle - cycle) > 1.0e-3) {
+      return String.format("cycle %d: x %.0f, y %.0f, heading %.0f, right %.1f pulses, "
+          + "rates %.0f %.0f, timestamp at cycle %.3f", cycle, pose.getXinInches(),
+          pose.getYinInches(), pose.getHeadingInDegrees(),
+          pose.getRightEncoderDistance() / kDistancePerPulse, pose.getLeftEncoderRate(),
+          pose.getRightEncoderRate(), timestampCycle);
+    }
+    return null;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    int numReaders = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3.0;
+
+    SimulatedHardware hardware = new SimulatedHardware();
+    Hardware.setFactory(hardware);
+    SimulatedClock clock = hardware.getClock();
+    SimulatedEncoder left = hardware.getSimulatedEncoder(
+        Constants.DigitalInputs.DRIVE_LEFT_ENCODER_1, kDistancePerPulse);
+    SimulatedEncoder right = hardware.getSimulatedEncoder(
+        Constants.DigitalInputs.DRIVE_RIGHT_ENCODER_1, kDistancePerPulse);
+    Navigation navigation = Navigation.getInstance();
+    navigation.setPoseEstimator(new CountingEstimator());
+    navigation.resetRobotPosition(0.0, 0.0, 0.0, 0.0);
+    double start = clock.nanoTime() / 1.0e9;
+    if (start != 1.0) {
+      // check() counts periods from one second, where the simulated clock starts
+      throw new IllegalStateException("The simulated clock started at " + start);
+    }
+
+    Reader[] readers = new Reader[numReaders];
+    for (int i = 0; i < numReaders; i++) {
+      readers[i] = new Reader(navigation, i);
+      readers[i].start();
+    }
+
+    long cycles = 0;
+    long end = System.nanoTime() + (long) (seconds * 1.0e9);
+    while (System.nanoTime() < end) {
+      cycles++;
+      // half a pulse over, so the encoder rounds down to exactly the pulse count
+      left.setState((cycles + 0.5) * kDistancePerPulse, cycles);
+      // the right side is mounted backwards, Navigation flips it
+      right.setState(-(2 * cycles - 0.5) * kDistancePerPulse, -2.0 * cycles);
+      clock.advance(kPeriodNanos);
+      navigation.run();
+    }
+    running = false;
+
+    long reads = 0;
+    long inconsistent = 0;
+    long backwards = 0;
+    long torn = 0;
+    String firstProblem = null;
+    for (Reader reader : readers) {
+      reader.join();
+      reads += reader.mReads;
+      inconsistent += reader.mInconsistent;
+      backwards += reader.mBackwards;
+      torn += reader.mTornGetters;
+      if (firstProblem == null) {
+        firstProblem = reader.mFirstProblem;
+      }
+    }
+
+    System.out.println(String.format("%d readers, %d cycles published in %.1f s, %d snapshots "
+        + "read", numReaders, cycles, seconds, reads));
+    System.out.println(String.format("Snapshots mixing cycles: %d, going backwards: %d",
+        inconsistent, backwards));
+    System.out.println(String.format("x and y from separate getters in different cycles: %d "
+        + "(%.2f%%)", torn, 100.0 * torn / Math.max(reads, 1)));
+    if (inconsistent > 0 || backwards > 0) {
+      throw new IllegalStateException("Pose snapshots were not consistent, first: "
+          + firstProblem);
+    }
+    System.out.println("Every snapshot came from a single cycle");
+  }
+}
@@ -11,7 +11,7 @@ import missdaisy.Constants;
  * 
  * @author Adam N.
  */
-public class AlphaFilter implements Filter {
+public class AlphaFilter implements DoubleFilter {
   private double mAlpha;
   private double mFilteredSpeed;
 
@@ -35,6 +35,10 @@ public class AlphaFilter implements Filter {
     return mFilteredSpeed;
   }
 
+  public double filter(double input) {
+    return calculate(input);
+  }
+
   /**
    * set the alpha gain.
    * @param alpha The alpha gain
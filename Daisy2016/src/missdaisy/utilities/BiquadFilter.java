@@ -0,0 +1,188 @@
+package missdaisy.utilities;
+
+/**
+ * An IIR filter made of second order sections ("biquads") run one after another.
+ * 
+ * Use the static methods to design one from a cutoff frequency and the rate the filter will be
+ * run at. The designs go through the bilinear transform with the cutoff prewarped, so the cutoff
+ * lands where it was asked for, even close to the Nyquist frequency.
+ * 
+ * Each section is run in transposed direct form II, which needs two numbers of state and five
+ * multiplies per section per sample, and never allocates.
+ * 
+ * @author jrussell
+ */
+public class BiquadFilter implements DoubleFilter {
+  // Coefficients, one of each per section, with a0 normalized to 1
+  private final double[] mB0;
+  private final double[] mB1;
+  private final double[] mB2;
+  private final double[] mA1;
+  private final double[] mA2;
+  // State
+  private final double[] mZ1;
+  private final double[] mZ2;
+
+  /**
+   * Makes a filter from raw coefficients, one row per section: {b0, b1, b2, a1, a2}, for
+   * H(z) = (b0 + b1 z^-1 + b2 z^-2) / (1 + a1 z^-1 + a2 z^-2).
+   */
+  public BiquadFilter(double[][] sections) {
+    int n = sections.length;
+    mB0 = new double[n];
+    mB1 = new double[n];
+    mB2 = new double[n];
+    mA1 = new double[n];
+    mA2 = new double[n];
+    mZ1 = new double[n];
+    mZ2 = new double[n];
+    for (int i = 0; i < n; i++) {
+      mB0[i] = sections[i][0];
+      mB1[i] = sections[i][1];
+      mB2[i] = sections[i][2];
+      mA1[i] = sections[i][3];
+      mA2[i] = sections[i][4];
+    }
+  }
+
+  /**
+   * A Butterworth low pass filter: as flat as possible below the cutoff, and 3 dB down at it.
+   * 
+   * @param order How many poles. Each pair of poles is one section, and the roll off past the
+   *        cutoff is 6 dB per octave per pole.
+   * @param cutoff The cutoff frequency, in Hz
+   * @param sampleRate How often filter() will be called, in Hz
+   */
+  public static BiquadFilter butterworthLowPass(int order, double cutoff, double sampleRate) {
+    double k = prewarp(cutoff, sampleRate);
+    double[][] sections = new double[(order + 1) / 2][];
+    for (int i = 0; i < order / 2; i++) {
+      // the poles of a Butterworth filter are evenly spaced around a circle, with one on the
+      // real axis if there is an odd number of them
+      double angle = order % 2 == 0 ? Math.PI * (2 * i + 1) / (2.0 * order)
+          : Math.PI * (i + 1) / order;
+      double q = 1.0 / (2.0 * Math.cos(angle));
+      sections[i] = lowPassSection(k, q);
+    }
+    if (order % 2 == 1) {
+      sections[order / 2] = firstOrderLowPassSection(k);
+    }
+    return new BiquadFilter(sections);
+  }
+
+  /**
+   * A critically damped low pass filter: all of its poles are real, so it never overshoots a
+   * step. It rolls off more gently than a Butterworth filter, but is still 3 dB down at the
+   * cutoff.
+   * 
+   * @param order How many poles
+   * @param cutoff The cutoff frequency of the whole filter, in Hz
+   * @param sampleRate How often filter() will be called, in Hz
+   */
+  public static BiquadFilter criticallyDampedLowPass(int order, double cutoff,
+      double sampleRate) {
+    // n identical poles are 3 dB down together where each one is 3/n dB down
+    double k = prewarp(cutoff, sampleRate) / Math.sqrt(Math.pow(2.0, 1.0 / order) - 1.0);
+    double[][] sections = new double[(order + 1) / 2][];
+    for (int i = 0; i < order / 2; i++) {
+      sections[i] = lowPassSection(k, 0.5);
+    }
+    if (order % 2 == 1) {
+      sections[order / 2] = firstOrderLowPassSection(k);
+    }
+    return new BiquadFilter(sections);
+  }
+
+  /**
+   * A notch filter, to take out one frequency, like a vibration from a motor, and leave the rest.
+   * 
+   * @param center The frequency to remove, in Hz
+   * @param q How narrow the notch is: the center frequency divided by the width of the notch
+   *        where it is 3 dB down. Like the cutoffs, the width is measured on the prewarped
+   *        frequency axis, so it is a little narrower in Hz close to the Nyquist frequency.
+   * @param sampleRate How often filter() will be called, in Hz
+   */
+  public static BiquadFilter notch(double center, double q, double sampleRate) {
+    double k = prewarp(center, sampleRate);
+    double k2 = k * k;
+    double a0 = 1.0 + k / q + k2;
+    return new BiquadFilter(new double[][] {{(1.0 + k2) / a0, 2.0 * (k2 - 1.0) / a0,
+        (1.0 + k2) / a0, 2.0 * (k2 - 1.0) / a0, (1.0 - k / q + k2) / a0}});
+  }
+
+  /**
+   * The analog frequency that the bilinear transform maps onto the wanted digital one, as tan of
+   * half the digital frequency in radians per sample.
+   */
+  private static double prewarp(double frequency, double sampleRate) {
+    return Math.tan(Math.PI * frequency / sampleRate);
+  }
+
+  private static double[] lowPassSection(double k, double q) {
+    double k2 = k * k;
+    double a0 = 1.0 + k / q + k2;
+    return new double[] {k2 / a0, 2.0 * k2 / a0, k2 / a0, 2.0 * (k2 - 1.0) / a0,
+        (1.0 - k / q + k2) / a0};
+  }
+
+  private static double[] firstOrderLowPassSection(double k) {
+    double a0 = 1.0 + k;
+    return new double[] {k / a0, k / a0, 0.0, (k - 1.0) / a0, 0.0};
+  }
+
+  public double filter(double input) {
+    double value = input;
+    for (int i = 0; i < mB0.length; i++) {
+      double output = mB0[i] * value + mZ1[i];
+      mZ1[i] = mB1[i] * value - mA1[i] * output + mZ2[i];
+      mZ2[i] = mB2[i] * value - mA2[i] * output;
+      value = output;
+    }
+    return value;
+  }
+
+  /**
+   * Clears the filter's memory, as if it had only ever seen zeros.
+   */
+  public void reset() {
+    reset(0.0);
+  }
+
+  /**
+   * Settles the filter, as if it had been seeing the same value forever. Use this to start
+   * filtering a signal that is nowhere near zero without a long transient.
+   */
+  public void reset(double value) {
+    double input = value;
+    for (int i = 0; i < mB0.length; i++) {
+      double gain = (mB0[i] + mB1[i] + mB2[i]) / (1.0 + mA1[i] + mA2[i]);
+      double output = gain * input;
+      mZ2[i] = mB2[i] * input - mA2[i] * output;
+      mZ1[i] = mB1[i] * input - mA1[i] * output + mZ2[i];
+      input = output;
+    }
+  }
+
+  /**
+   * @param frequency A frequency, in Hz
+   * @param sampleRate The rate the filter is run at, in Hz
+   * @return How much the filter multiplies the amplitude of a sine wave at the frequency by
+   */
+  public double getGain(double frequency, double sampleRate) {
+    double w = 2.0 * Math.PI * frequency / sampleRate;
+    double cos1 = Math.cos(w);
+    double sin1 = Math.sin(w);
+    double cos2 = Math.cos(2.0 * w);
+    double sin2 = Math.sin(2.0 * w);
+    double gain = 1.0;
+    for (int i = 0; i < mB0.length; i++) {
+      // evaluate each section at z = e^jw
+      double numReal = mB0[i] + mB1[i] * cos1 + mB2[i] * cos2;
+      double numImag = -mB1[i] * sin1 - mB2[i] * sin2;
+      double denReal = 1.0 + mA1[i] * cos1 + mA2[i] * cos2;
+      double denImag = -mA1[i] * sin1 - mA2[i] * sin2;
+      gain *= Math.hypot(numReal, numImag) / Math.hypot(denReal, denImag);
+    }
+    return gain;
+  }
+}
@@ -95,7 +95,7 @@ public class DaisyMath {
     while (angle >= Math.PI) {
       angle -= 2.0 * Math.PI;
     }
-    while (angle < Math.PI) {
+    while (angle < -Math.PI) {
       angle += 2.0 * Math.PI;
     }
     return angle;
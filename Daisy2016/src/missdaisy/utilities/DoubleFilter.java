@@ -0,0 +1,18 @@
+package missdaisy.utilities;
+
+/**
+ * A filter that takes one measurement at a time and gives back one filtered value for each.
+ * 
+ * Filters that share this contract can be strung together with a FilterChain.
+ * 
+ * @author jrussell
+ */
+public interface DoubleFilter extends Filter {
+  /**
+   * Feeds the filter a measurement.
+   * 
+   * @param input The newest measurement
+   * @return The filtered value, including the newest measurement
+   */
+  public double filter(double input);
+}
@@ -0,0 +1,166 @@
+package missdaisy.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Runs a measurement through several filters in a row, e.g. a median filter to throw out spikes,
+ * then a moving average, then a rate limit.
+ *
+ * Make one with of(). The stages are fixed when the chain is made, and each chain of up to four
+ * stages is its own class that keeps each stage in its own field and calls them one after another,
+ * the same as calling each filter by hand. Looping over an array of stages would call them all
+ * from one place, which the JIT can not inline once it has seen a few kinds of filter there, and
+ * that made a chain three times slower than wiring it by hand. Longer chains are chains of chains.
+ * A chain never allocates, and is a DoubleFilter itself, so chains can be nested.
+ *
+ * @author jrussell
+ */
+public abstract class FilterChain implements DoubleFilter {
+  private FilterChain() {}
+
+  /**
+   * @param stages The filters, in the order a measurement goes through them. There must be at
+   *        least one.
+   */
+  public static FilterChain of(DoubleFilter... stages) {
+    switch (stages.length) {
+      case 0:
+        throw new IllegalArgumentException("A filter chain needs at least one stage");
+      case 1:
+        return new OneStage(stages[0]);
+      case 2:
+        return new TwoStages(stages[0], stages[1]);
+      case 3:
+        return new ThreeStages(stages[0], stages[1], stages[2]);
+      case 4:
+        return new FourStages(stages[0], stages[1], stages[2], stages[3]);
+      default:
+        return new FourStages(stages[0], stages[1], stages[2],
+            of(Arrays.copyOfRange(stages, 3, stages.length)));
+    }
+  }
+
+  /**
+   * Filters a whole recording at once, e.g. to try out a chain on a match log.
+   *
+   * @param in The measurements, oldest first
+   * @param out Where the filtered values go. May be the same array as in.
+   */
+  public void process(double[] in, double[] out) {
+    if (out.length < in.length) {
+      throw new IllegalArgumentException("Output is shorter than the input");
+    }
+    filterAll(in, out);
+  }
+
+  /**
+   * The loop for process(), in each kind of chain so the stage calls in it are that chain's own.
+   */
+  abstract void filterAll(double[] in, double[] out);
+
+  private static final class OneStage extends FilterChain {
+    private final DoubleFilter mFirst;
+
+    OneStage(DoubleFilter first) {
+      mFirst = first;
+    }
+
+    public double filter(double input) {
+      return mFirst.filter(input);
+    }
+
+    void filterAll(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = mFirst.filter(in[i]);
+      }
+    }
+
+    public void reset() {
+      mFirst.reset();
+    }
+  }
+
+  private static final class TwoStages extends FilterChain {
+    private final DoubleFilter mFirst;
+    private final DoubleFilter mSecond;
+
+    TwoStages(DoubleFilter first, DoubleFilter second) {
+      mFirst = first;
+      mSecond = second;
+    }
+
+    public double filter(double input) {
+      return mSecond.filter(mFirst.filter(input));
+    }
+
+    void filterAll(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = mSecond.filter(mFirst.filter(in[i]));
+      }
+    }
+
+    public void reset() {
+      mFirst.reset();
+      mSecond.reset();
+    }
+  }
+
+  private static final class ThreeStages extends FilterChain {
+    private final DoubleFilter mFirst;
+    private final DoubleFilter mSecond;
+    private final DoubleFilter mThird;
+
+    ThreeStages(DoubleFilter first, DoubleFilter second, DoubleFilter third) {
+      mFirst = first;
+      mSecond = second;
+      mThird = third;
+    }
+
+    public double filter(double input) {
+      return mThird.filter(mSecond.filter(mFirst.filter(input)));
+    }
+
+    void filterAll(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = mThird.filter(mSecond.filter(mFirst.filter(in[i])));
+      }
+    }
+
+    public void reset() {
+      mFirst.reset();
+      mSecond.reset();
+      mThird.reset();
+    }
+  }
+
+  private static final class FourStages extends FilterChain {
+    private final DoubleFilter mFirst;
+    private final DoubleFilter mSecond;
+    private final DoubleFilter mThird;
+    private final DoubleFilter mFourth;
+
+    FourStages(DoubleFilter first, DoubleFilter second, DoubleFilter third, DoubleFilter fourth) {
+      mFirst = first;
+      mSecond = second;
+      mThird = third;
+      mFourth = fourth;
+    }
+
+    public double filter(double input) {
+      return mFourth.filter(mThird.filter(mSecond.filter(mFirst.filter(input))));
+    }
+
+    void filterAll(double[] in, double[] out) {
+      for (int i = 0; i < in.length; i++) {
+        out[i] = mFourth.filter(mThird.filter(mSecond.filter(mFirst.filter(in[i]))));
+      }
+    }
+
+    public void reset() {
+      mFirst.reset();
+      mSecond.reset();
+      mThird.reset();
+      mFourth.reset();
+    }
+  }
+}
@@ -0,0 +1,396 @@
+package missdaisy.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the speed of a wheel from the times that marks on it go past a sensor.
+ *
+ * Instead of dividing by the time between the last two edges and averaging, which lags by half the
+ * averaging window, this fits the wheel's angle against time to a parabola over the edges in a
+ * short sliding window, by least squares. The fit gives both the speed and the acceleration, and
+ * is evaluated at the current time rather than the middle of the window, so the estimate does not
+ * lag the wheel.
+ *
+ * Noise is handled in a few ways:
+ *
+ * - Edges that come impossibly soon after the last one are treated as sensor glitches and thrown
+ * away before they can throw the edge count off.
+ *
+ * - Edges that fit badly compared to the rest (by the median absolute deviation, or the expected
+ * sensor jitter, whichever is bigger) are left out of the fit.
+ *
+ * - If the newest edges all miss the fit in the same direction, the wheel's speed has changed
+ * suddenly, like when a ball is fired, and the edges from before the change are dropped.
+ *
+ * - Marks that are not evenly spaced around the wheel are learned from how much of each
+ * revolution the gap before each one takes up, and corrected for.
+ *
+ * - Between edges, the wheel can not be going any faster than one mark spacing in the time since
+ * the last edge, which caps the estimate right away when the wheel slows down.
+ *
+ * - If no edge comes for long enough to call the wheel stopped, every edge is forgotten, so
+ * neither the fit nor the mark spacing ever spans the stop.
+ *
+ * The confidence is 1.0 when the estimate's standard error is zero, 0.5 when it is the
+ * given tolerance, and 0.0 when there are not enough edges to say anything.
+ *
+ * @author jrussell
+ */
+public class FlywheelVelocityEstimator {
+  private static final int kMaxEdges = 32;
+  private static final int kMinQuadraticEdges = 4;
+  private static final int kMaxRejections = 2;
+  private static final double kRejectThreshold = 4.0; // standard deviations
+  private static final double kMADToStandardDeviation = 1.4826;
+  private static final double kMarkLearningRate = 0.02;
+  // Give up on the wheel and call it stopped if no edge comes for this long, in seconds
+  private static final double kMaxPeriod = 0.5;
+
+  private final int mCountsPerRev;
+  private final double mSpacing; // radians between marks
+  private final double mWindow;
+  private final double mMinPeriod;
+  private final double mJitter;
+  private final double mTolerance;
+
+  // Edges, oldest first, in a ring buffer, along with which mark each one was
+  private final double[] mTimes = new double[kMaxEdges];
+  private final int[] mMarks = new int[kMaxEdges];
+  private int mStart = 0;
+  private int mCount = 0;
+  private long mTotalEdges = 0;
+  private final double[] mGaps; // radians from the mark before each mark to it
+  private final double[] mMarkOffsets; // radians each mark is ahead of where it should be
+
+  // Scratch space for the fit
+  private final double[] mTau = new double[kMaxEdges];
+  private final double[] mAngle = new double[kMaxEdges];
+  private final double[] mResidual = new double[kMaxEdges];
+  private final boolean[] mRejected = new boolean[kMaxEdges];
+  private final double[] mSorted = new double[kMaxEdges];
+  private final double[] mBasis = new double[3];
+  private final double[][] mNormal = new double[3][4];
+  private final double[][] mSystem = new double[3][4];
+  private final double[] mSolution = new double[3];
+  private final double[] mCoefficients = new double[3];
+
+  // Outputs
+  private double mSpeed; // radians per second
+  private double mAcceleration; // radians per second per second
+  private double mConfidence;
+
+  /**
+   * @param countsPerRev How many marks are on the wheel
+   * @param window How far back to look for edges to fit, in seconds
+   * @param maxRPM The wheel can never go faster than this, so edges closer together are glitches
+   * @param jitter The standard deviation of the sensor's timing error, in seconds
+   * @param tolerance The standard error, in RPM, that halves the confidence
+   */
+  public FlywheelVelocityEstimator(int countsPerRev, double window, double maxRPM, double jitter,
+      double tolerance) {
+    mCountsPerRev = countsPerRev;
+    mSpacing = 2.0 * Math.PI / countsPerRev;
+    mWindow = window;
+    mMinPeriod = 60.0 / (maxRPM * countsPerRev);
+    mJitter = jitter;
+    mTolerance = tolerance;
+    mGaps = new double[countsPerRev];
+    mMarkOffsets = new double[countsPerRev];
+    reset();
+  }
+
+  /**
+   * Forgets every edge, and the learned mark spacing.
+   */
+  public void reset() {
+    mStart = 0;
+    mCount = 0;
+    mTotalEdges = 0;
+    for (int i = 0; i < mCountsPerRev; i++) {
+      mGaps[i] = mSpacing;
+      mMarkOffsets[i] = 0.0;
+    }
+    mSpeed = 0.0;
+    mAcceleration = 0.0;
+    mConfidence = 0.0;
+  }
+
+  /**
+   * @param time When a mark went past the sensor, in seconds. Edges must be added in order.
+   */
+  public void addEdge(double time) {
+    if (mCount > 0 && time - mTimes[index(mCount - 1)] < mMinPeriod) {
+      return;
+    }
+    if (mCount > 0 && time - mTimes[index(mCount - 1)] > kMaxPeriod) {
+      // the wheel stopped, and nothing from before that says anything about it now
+      mCount = 0;
+    }
+    if (mCount == kMaxEdges) {
+      mStart = (mStart + 1) % kMaxEdges;
+      mCount--;
+    }
+    int i = index(mCount++);
+    mTimes[i] = time;
+    mMarks[i] = (int) (mTotalEdges++ % mCountsPerRev);
+    if (mCount > mCountsPerRev) {
+      learnMarkOffsets();
+    }
+  }
+
+  /**
+   * Updates the estimate with the edges added so far.
+   *
+   * @param now The current time, on the same clock as the edges
+   */
+  public void update(double now) {
+    // drop edges that have fallen out of the window, but keep enough for the best fit we can do
+    while (mCount > kMinQuadraticEdges && now - mTimes[mStart] > mWindow) {
+      mStart = (mStart + 1) % kMaxEdges;
+      mCount--;
+    }
+    double sinceLastEdge = mCount > 0 ? now - mTimes[index(mCount - 1)] : Double.MAX_VALUE;
+    if (sinceLastEdge > kMaxPeriod) {
+      // so the fit when it spins up again only uses edges from after it stopped
+      mCount = 0;
+    }
+    if (mCount < 2) {
+      mSpeed = 0.0;
+      mAcceleration = 0.0;
+      mConfidence = 0.0;
+      return;
+    }
+
+    for (int i = 0; i < mCount; i++) {
+      int j = index(i);
+      mTau[i] = mTimes[j] - now;
+      mAngle[i] = i * mSpacing + mMarkOffsets[mMarks[j]];
+      mRejected[i] = false;
+    }
+    // a sudden change in speed shows up as the newest edges both missing a fit to the ones before
+    // them, on the same side
+    if (mCount >= kMinQuadraticEdges) {
+      mRejected[mCount - 1] = true;
+      mRejected[mCount - 2] = true;
+      fit();
+      double threshold = kRejectThreshold * noise();
+      mRejected[mCount - 1] = false;
+      mRejected[mCount - 2] = false;
+      if (Math.abs(mResidual[mCount - 1]) > threshold
+          && Math.abs(mResidual[mCount - 2]) > threshold
+          && Math.signum(mResidual[mCount - 1]) == Math.signum(mResidual[mCount - 2])) {
+        // the edge just before them went by while the speed was changing, so it goes too
+        int drop = mCount - 2;
+        mStart = (mStart + drop) % kMaxEdges;
+        mCount -= drop;
+        for (int i = 0; i < mCount; i++) {
+          mTau[i] = mTau[i + drop];
+          mAngle[i] = mAngle[i + drop] - drop * mSpacing;
+        }
+      }
+    }
+
+    double variance = fit();
+    if (mCount > kMinQuadraticEdges) {
+      double threshold = kRejectThreshold * noise();
+      for (int k = 0; k < kMaxRejections; k++) {
+        int worst = -1;
+        for (int i = 0; i < mCount; i++) {
+          if (!mRejected[i]
+              && (worst < 0 || Math.abs(mResidual[i]) > Math.abs(mResidual[worst]))) {
+            worst = i;
+          }
+        }
+        if (Math.abs(mResidual[worst]) <= threshold) {
+          break;
+        }
+        mRejected[worst] = true;
+        variance = fit();
+      }
+    }
+
+    mSpeed = mCoefficients[1];
+    mAcceleration = 2.0 * mCoefficients[2];
+    // the wheel has not reached the next mark yet, so it can not have been going faster than this
+    double maxSpeed = mGaps[(mMarks[index(mCount - 1)] + 1) % mCountsPerRev] / sinceLastEdge;
+    if (mSpeed > maxSpeed) {
+      mSpeed = maxSpeed;
+      mAcceleration = Math.min(0.0, mAcceleration);
+    }
+    double standardError = Math.sqrt(variance) * 60.0 / (2.0 * Math.PI);
+    mConfidence = 1.0 / (1.0 + (standardError / mTolerance) * (standardError / mTolerance));
+  }
+
+  /**
+   * @return The speed of the wheel right now, in RPM
+   */
+  public double getRPM() {
+    return mSpeed * 60.0 / (2.0 * Math.PI);
+  }
+
+  /**
+   * @return The acceleration of the wheel, in RPM per second
+   */
+  public double getAcceleration() {
+    return mAcceleration * 60.0 / (2.0 * Math.PI);
+  }
+
+  /**
+   * @return How much to trust getRPM(), from 0.0 to 1.0
+   */
+  public double getConfidence() {
+    return mConfidence;
+  }
+
+  private int index(int i) {
+    return (mStart + i) % kMaxEdges;
+  }
+
+  /**
+   * @return The expected standard deviation of the angle of an edge, in radians
+   */
+  private double noise() {
+    int n = 0;
+    for (int i = 0; i < mCount; i++) {
+      if (!mRejected[i]) {
+        mSorted[n++] = Math.abs(mResidual[i]);
+      }
+    }
+    Arrays.sort(mSorted, 0, n);
+    double mad = n % 2 == 1 ? mSorted[n / 2] : 0.5 * (mSorted[n / 2 - 1] + mSorted[n / 2]);
+    return Math.max(kMADToStandardDeviation * mad, Math.abs(mCoefficients[1]) * mJitter);
+  }
+
+  /**
+   * Fits angle = c0 + c1 tau + c2 tau^2 to the edges that have not been rejected, or a line if
+   * there are too few of them for a parabola, and fills in the residuals of every edge.
+   *
+   * @return The variance of the speed estimate, in radians squared per second squared
+   */
+  private double fit() {
+    int used = 0;
+    for (int i = 0; i < mCount; i++) {
+      if (!mRejected[i]) {
+        used++;
+      }
+    }
+    int terms = used >= kMinQuadraticEdges ? 3 : 2;
+    for (int r = 0; r < 3; r++) {
+      for (int c = 0; c < 4; c++) {
+        mNormal[r][c] = 0.0;
+      }
+    }
+    for (int i = 0; i < mCount; i++) {
+      if (mRejected[i]) {
+        continue;
+      }
+      double t = mTau[i];
+      mBasis[0] = 1.0;
+      mBasis[1] = t;
+      mBasis[2] = t * t;
+      for (int r = 0; r < terms; r++) {
+        for (int c = 0; c < terms; c++) {
+          mNormal[r][c] += mBasis[r] * mBasis[c];
+        }
+        mNormal[r][3] += mBasis[r] * mAngle[i];
+      }
+    }
+
+    // the covariance of the speed term is the middle of the inverse of the normal matrix, so
+    // solve for that column first, then for the coefficients
+    double speedCovariance = solve(terms, true)[1];
+    solve(terms, false);
+    mCoefficients[0] = mSolution[0];
+    mCoefficients[1] = mSolution[1];
+    mCoefficients[2] = terms == 3 ? mSolution[2] : 0.0;
+
+    double sumOfSquares = 0.0;
+    for (int i = 0; i < mCount; i++) {
+      double t = mTau[i];
+      mResidual[i] =
+          mAngle[i] - (mCoefficients[0] + mCoefficients[1] * t + mCoefficients[2] * t * t);
+      if (!mRejected[i]) {
+        sumOfSquares += mResidual[i] * mResidual[i];
+      }
+    }
+    // with no spare edges, fall back on the expected jitter to say how good the fit is
+    double jitter = mCoefficients[1] * mJitter;
+    double variance =
+        used > terms ? Math.max(sumOfSquares / (used - terms), jitter * jitter) : jitter * jitter;
+    return Math.max(0.0, speedCovariance) * variance;
+  }
+
+  /**
+   * Solves the normal equations by Gaussian elimination with partial pivoting.
+   *
+   * @param terms How many terms are in the fit
+   * @param speedColumn True to solve for the speed column of the inverse instead of the fit
+   * @return The solution
+   */
+  private double[] solve(int terms, boolean speedColumn) {
+    double[][] a = mSystem;
+    for (int r = 0; r < terms; r++) {
+      for (int c = 0; c < terms; c++) {
+        a[r][c] = mNormal[r][c];
+      }
+      a[r][terms] = speedColumn ? (r == 1 ? 1.0 : 0.0) : mNormal[r][3];
+    }
+    for (int col = 0; col < terms; col++) {
+      int pivot = col;
+      for (int r = col + 1; r < terms; r++) {
+        if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) {
+          pivot = r;
+        }
+      }
+      double[] row = a[col];
+      a[col] = a[pivot];
+      a[pivot] = row;
+      for (int r = col + 1; r < terms; r++) {
+        double factor = a[r][col] / a[col][col];
+        for (int c = col; c <= terms; c++) {
+          a[r][c] -= factor * a[col][c];
+        }
+      }
+    }
+    for (int r = terms - 1; r >= 0; r--) {
+      double sum = a[r][terms];
+      for (int c = r + 1; c < terms; c++) {
+        sum -= a[r][c] * mSolution[c];
+      }
+      mSolution[r] = sum / a[r][r];
+    }
+    return mSolution;
+  }
+
+  /**
+   * Nudges the gap before the newest mark toward the fraction of the last revolution that it took
+   * up, and works out where each mark is from the gaps.
+   */
+  private void learnMarkOffsets() {
+    double newest = mTimes[index(mCount - 1)];
+    double revolution = newest - mTimes[index(mCount - 1 - mCountsPerRev)];
+    double gap = 2.0 * Math.PI * (newest - mTimes[index(mCount - 2)]) / revolution;
+    int mark = mMarks[index(mCount - 1)];
+    mGaps[mark] += kMarkLearningRate * (gap - mGaps[mark]);
+
+    // the gaps always add up to a full revolution, and only the spacing between the marks matters,
+    // so keep the marks centered on where they should be
+    double total = 0.0;
+    for (int m = 0; m < mCountsPerRev; m++) {
+      total += mGaps[m];
+    }
+    double angle = 0.0;
+    double mean = 0.0;
+    for (int m = 0; m < mCountsPerRev; m++) {
+      mGaps[m] *= 2.0 * Math.PI / total;
+      if (m > 0) {
+        angle += mGaps[m];
+      }
+      mMarkOffsets[m] = angle - m * mSpacing;
+      mean += mMarkOffsets[m] / mCountsPerRev;
+    }
+    for (int m = 0; m < mCountsPerRev; m++) {
+      mMarkOffsets[m] -= mean;
+    }
+  }
+}
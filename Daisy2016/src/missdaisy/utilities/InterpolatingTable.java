@@ -0,0 +1,164 @@
+package missdaisy.utilities;
+
+import java.util.Arrays;
+
+/**
+ * A lookup table that interpolates between the points it was given, like range to shooter RPM.
+ *
+ * The points are kept sorted in arrays of primitives, so a lookup is a binary search and a little
+ * arithmetic, and never allocates. Between points, the table can draw straight lines, or a
+ * monotone cubic (Fritsch-Carlson) that is smooth through the points but never overshoots them,
+ * so it will not make up a bump the data does not have. Outside the points, it holds the value of
+ * the nearest end.
+ *
+ * The same file is used by the robot and by DaisyCV, so it should not depend on anything else.
+ *
+ * @author jrussell
+ */
+public class InterpolatingTable {
+  public enum Interpolation {
+    LINEAR, MONOTONE_CUBIC
+  }
+
+  private final double[] mKeys;
+  private final double[] mValues;
+  // the slope of the curve at each point, for MONOTONE_CUBIC
+  private final double[] mTangents;
+  private final Interpolation mInterpolation;
+
+  /**
+   * @param keys The keys, in any order. There must be at least one, and no two the same.
+   * @param values The value for each key
+   */
+  public InterpolatingTable(double[] keys, double[] values, Interpolation interpolation) {
+    if (keys.length == 0 || keys.length != values.length) {
+      throw new IllegalArgumentException("Need the same number of keys and values, at least one");
+    }
+    int n = keys.length;
+    mKeys = Arrays.copyOf(keys, n);
+    mValues = Arrays.copyOf(values, n);
+    // insertion sort, since tables are small and often already in order
+    for (int i = 1; i < n; i++) {
+      double key = mKeys[i];
+      double value = mValues[i];
+      int j = i - 1;
+      while (j >= 0 && mKeys[j] > key) {
+        mKeys[j + 1] = mKeys[j];
+        mValues[j + 1] = mValues[j];
+        j--;
+      }
+      mKeys[j + 1] = key;
+      mValues[j + 1] = value;
+    }
+    for (int i = 1; i < n; i++) {
+      if (mKeys[i] == mKeys[i - 1]) {
+        throw new IllegalArgumentException("Duplicate key " + mKeys[i]);
+      }
+    }
+    mInterpolation = interpolation;
+    mTangents = interpolation == Interpolation.MONOTONE_CUBIC ? monotoneTangents() : null;
+  }
+
+  /**
+   * Parses a table written as comma separated key:value pairs, like "141:6250,150:6375", which
+   * fits in one token of a properties file.
+   *
+   * @throws IllegalArgumentException If the table can not be parsed
+   */
+  public static InterpolatingTable parse(String table, Interpolation interpolation) {
+    String[] pairs = table.trim().split(",");
+    double[] keys = new double[pairs.length];
+    double[] values = new double[pairs.length];
+    for (int i = 0; i < pairs.length; i++) {
+      String[] pair = pairs[i].split(":");
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("Expected key:value, got \"" + pairs[i] + "\"");
+      }
+      keys[i] = Double.parseDouble(pair[0].trim());
+      values[i] = Double.parseDouble(pair[1].trim());
+    }
+    return new InterpolatingTable(keys, values, interpolation);
+  }
+
+  /**
+   * @return The interpolated value for the key, or the value at the nearest end if the key is
+   *         outside the table. A NaN key gets the value at the first point.
+   */
+  public double get(double key) {
+    int n = mKeys.length;
+    // written this way round so NaN, which compares false to everything, stops here too
+    if (!(key > mKeys[0])) {
+      return mValues[0];
+    }
+    if (key >= mKeys[n - 1]) {
+      return mValues[n - 1];
+    }
+    int i = Arrays.binarySearch(mKeys, key);
+    if (i >= 0) {
+      return mValues[i];
+    }
+    // the key is between these two points
+    int high = -i - 1;
+    int low = high - 1;
+    double h = mKeys[high] - mKeys[low];
+    double t = (key - mKeys[low]) / h;
+    if (mInterpolation == Interpolation.LINEAR) {
+      return mValues[low] + t * (mValues[high] - mValues[low]);
+    }
+    // cubic Hermite basis
+    double t2 = t * t;
+    double t3 = t2 * t;
+    return (2.0 * t3 - 3.0 * t2 + 1.0) * mValues[low] + (t3 - 2.0 * t2 + t) * h * mTangents[low]
+        + (-2.0 * t3 + 3.0 * t2) * mValues[high] + (t3 - t2) * h * mTangents[high];
+  }
+
+  public int size() {
+    return mKeys.length;
+  }
+
+  public double getMinKey() {
+    return mKeys[0];
+  }
+
+  public double getMaxKey() {
+    return mKeys[mKeys.length - 1];
+  }
+
+  /**
+   * Fritsch-Carlson: start from the average of the slopes on either side of each point, then
+   * shrink any that would let the curve overshoot.
+   */
+  private double[] monotoneTangents() {
+    int n = mKeys.length;
+    double[] tangents = new double[n];
+    if (n < 2) {
+      return tangents;
+    }
+    double[] secants = new double[n - 1];
+    for (int i = 0; i < n - 1; i++) {
+      secants[i] = (mValues[i + 1] - mValues[i]) / (mKeys[i + 1] - mKeys[i]);
+    }
+    tangents[0] = secants[0];
+    tangents[n - 1] = secants[n - 2];
+    for (int i = 1; i < n - 1; i++) {
+      // flat at peaks and valleys
+      tangents[i] = secants[i - 1] * secants[i] <= 0.0 ? 0.0 : 0.5 * (secants[i - 1] + secants[i]);
+    }
+    for (int i = 0; i < n - 1; i++) {
+      if (secants[i] == 0.0) {
+        tangents[i] = 0.0;
+        tangents[i + 1] = 0.0;
+        continue;
+      }
+      double a = tangents[i] / secants[i];
+      double b = tangents[i + 1] / secants[i];
+      double length = a * a + b * b;
+      if (length > 9.0) {
+        double scale = 3.0 / Math.sqrt(length);
+        tangents[i] = scale * a * secants[i];
+        tangents[i + 1] = scale * b * secants[i];
+      }
+    }
+    return tangents;
+  }
+}
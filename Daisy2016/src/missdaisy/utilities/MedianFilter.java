@@ -1,36 +1,89 @@
 package missdaisy.utilities;
 
-import java.util.Arrays;
-
 /**
  * A median filter. See: http://en.wikipedia.org/wiki/Median_filter
  * 
  * This is a nonlinear low pass filter that smooths out a noisy measurement by taking the median of
- * the last N measurements.
+ * the last N measurements. It can also pick some other percentile of them instead.
+ * 
+ * The window is kept split into two heaps: a max-heap of the smallest values, whose top is the
+ * answer, and a min-heap of the rest. Each new measurement overwrites the oldest one in place and
+ * is sifted back into order, so setInput() is O(log N), run() is O(1), and nothing is allocated.
+ * The window starts out full of zeros.
  * 
  * @author Jared341
  */
-public class MedianFilter implements Filter {
+public class MedianFilter implements DoubleFilter {
   private final double[] vals;
+  // Heaps of indexes into vals
+  private final int[] lower;
+  private final int[] upper;
+  // Where each value is: i for lower[i], or -(i + 1) for upper[i]
+  private final int[] heapIndex;
   private int ptr = 0;
   private double median = 0.0;
 
   public MedianFilter(int nSamples) {
+    this(nSamples, 0.5);
+  }
+
+  /**
+   * @param nSamples The number of measurements to look at
+   * @param percentile Which of the sorted measurements to pick, from 0.0 (the smallest) to 1.0
+   *        (the largest). 0.5 picks the median.
+   */
+  public MedianFilter(int nSamples, double percentile) {
+    if (nSamples < 1) {
+      throw new IllegalArgumentException("A median filter needs at least one sample");
+    }
+    if (percentile < 0.0 || percentile > 1.0) {
+      throw new IllegalArgumentException("Percentile must be between 0.0 and 1.0");
+    }
+    int rank = Math.min((int) (percentile * nSamples), nSamples - 1);
     vals = new double[nSamples];
+    lower = new int[rank + 1];
+    upper = new int[nSamples - rank - 1];
+    heapIndex = new int[nSamples];
+    reset();
   }
 
   public void reset() {
     for (int i = 0; i < vals.length; i++) {
       vals[i] = 0.0;
     }
+    // every value is equal, so any arrangement is a valid pair of heaps
+    for (int i = 0; i < lower.length; i++) {
+      lower[i] = i;
+      heapIndex[i] = i;
+    }
+    for (int i = 0; i < upper.length; i++) {
+      upper[i] = lower.length + i;
+      heapIndex[lower.length + i] = -(i + 1);
+    }
     ptr = 0;
     median = 0.0;
   }
 
   public void setInput(double val) {
     vals[ptr] = val;
-    ++ptr;
+    int index = heapIndex[ptr];
+    if (index >= 0) {
+      siftUpLower(siftDownLower(index));
+    } else {
+      siftUpUpper(siftDownUpper(-index - 1));
+    }
+    // only one value moved, so at most one pair needs to trade heaps
+    if (upper.length > 0 && vals[lower[0]] > vals[upper[0]]) {
+      int top = lower[0];
+      lower[0] = upper[0];
+      upper[0] = top;
+      heapIndex[lower[0]] = 0;
+      heapIndex[upper[0]] = -1;
+      siftDownLower(0);
+      siftDownUpper(0);
+    }
 
+    ++ptr;
     if (ptr >= vals.length) {
       ptr = 0;
     }
@@ -41,14 +94,83 @@ public class MedianFilter implements Filter {
   }
 
   public double run() {
-    median = 0.0;
+    median = vals[lower[0]];
+    return median;
+  }
 
-    double[] sorted = Arrays.copyOf(vals, vals.length);
-    Arrays.sort(sorted);
+  public double filter(double input) {
+    setInput(input);
+    return run();
+  }
 
-    median = sorted[vals.length / 2];
+  private int siftUpLower(int i) {
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (vals[lower[parent]] >= vals[lower[i]]) {
+        break;
+      }
+      swap(lower, i, parent, false);
+      i = parent;
+    }
+    return i;
+  }
 
-    return median;
+  private int siftDownLower(int i) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= lower.length) {
+        return i;
+      }
+      if (child + 1 < lower.length && vals[lower[child + 1]] > vals[lower[child]]) {
+        child++;
+      }
+      if (vals[lower[i]] >= vals[lower[child]]) {
+        return i;
+      }
+      swap(lower, i, child, false);
+      i = child;
+    }
   }
 
+  private int siftUpUpper(int i) {
+    while (i > 0) {
+      int parent = (i - 1) >> 1;
+      if (vals[upper[parent]] <= vals[upper[i]]) {
+        break;
+      }
+      swap(upper, i, parent, true);
+      i = parent;
+    }
+    return i;
+  }
+
+  private int siftDownUpper(int i) {
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= upper.length) {
+        return i;
+      }
+      if (child + 1 < upper.length && vals[upper[child + 1]] < vals[upper[child]]) {
+        child++;
+      }
+      if (vals[upper[i]] <= vals[upper[child]]) {
+        return i;
+      }
+      swap(upper, i, child, true);
+      i = child;
+    }
+  }
+
+  /**
+   * Swaps two entries of a heap and keeps heapIndex up to date.
+   *
+   * @param isUpper True if the heap is the upper one
+   */
+  private void swap(int[] heap, int a, int b, boolean isUpper) {
+    int slot = heap[a];
+    heap[a] = heap[b];
+    heap[b] = slot;
+    heapIndex[heap[a]] = isUpper ? -(a + 1) : a;
+    heapIndex[heap[b]] = isUpper ? -(b + 1) : b;
+  }
 }
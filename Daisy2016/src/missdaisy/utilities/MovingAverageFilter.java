@@ -5,12 +5,21 @@ package missdaisy.utilities;
  * 
  * This is a low pass filter that smooths out a noisy signal by averaging the last N measurements.
  * 
+ * A running sum is kept, so each measurement costs the same no matter how big the window is. The
+ * sum uses Neumaier's compensated summation, so the rounding error from adding values in and
+ * taking them back out does not build up over a long match. A running sum of squares comes along
+ * with it, which gives the variance of the window for free.
+ * 
  * @author Jared341
  */
-public class MovingAverageFilter implements Filter {
+public class MovingAverageFilter implements DoubleFilter {
   private final double[] vals;
   private int ptr = 0;
   private double average = 0.0;
+  private double sum = 0.0;
+  private double sumCompensation = 0.0;
+  private double sumOfSquares = 0.0;
+  private double sumOfSquaresCompensation = 0.0;
 
   public MovingAverageFilter(int nSamples) {
     vals = new double[nSamples];
@@ -22,15 +31,39 @@ public class MovingAverageFilter implements Filter {
     }
     ptr = 0;
     average = 0.0;
+    sum = 0.0;
+    sumCompensation = 0.0;
+    sumOfSquares = 0.0;
+    sumOfSquaresCompensation = 0.0;
   }
 
   public void setInput(double val) {
+    double old = vals[ptr];
     vals[ptr] = val;
     ++ptr;
 
     if (ptr >= vals.length) {
       ptr = 0;
     }
+
+    // Neumaier summation: keep the low bits that each addition rounds off
+    double t = sum + val;
+    sumCompensation += Math.abs(sum) >= Math.abs(val) ? (sum - t) + val : (val - t) + sum;
+    sum = t;
+    t = sum - old;
+    sumCompensation += Math.abs(sum) >= Math.abs(old) ? (sum - t) - old : (-old - t) + sum;
+    sum = t;
+
+    double square = val * val;
+    double oldSquare = old * old;
+    t = sumOfSquares + square;
+    sumOfSquaresCompensation += sumOfSquares >= square ? (sumOfSquares - t) + square
+        : (square - t) + sumOfSquares;
+    sumOfSquares = t;
+    t = sumOfSquares - oldSquare;
+    sumOfSquaresCompensation += sumOfSquares >= oldSquare ? (sumOfSquares - t) - oldSquare
+        : (-oldSquare - t) + sumOfSquares;
+    sumOfSquares = t;
   }
 
   public double getAverage() {
@@ -38,12 +71,25 @@ public class MovingAverageFilter implements Filter {
   }
 
   public double run() {
-    average = 0.0;
-    for (int i = 0; i < vals.length; i++) {
-      average += vals[i];
-    }
-    average /= (double) vals.length;
+    average = (sum + sumCompensation) / (double) vals.length;
     return average;
   }
 
+  public double filter(double input) {
+    setInput(input);
+    return run();
+  }
+
+  /**
+   * @return The variance of the measurements in the window, which starts out full of zeros
+   */
+  public double getVariance() {
+    double mean = (sum + sumCompensation) / (double) vals.length;
+    double meanOfSquares = (sumOfSquares + sumOfSquaresCompensation) / (double) vals.length;
+    return Math.max(0.0, meanOfSquares - mean * mean);
+  }
+
+  public double getStandardDeviation() {
+    return Math.sqrt(getVariance());
+  }
 }
@@ -0,0 +1,415 @@
+package missdaisy.utilities;
+
+import missdaisy.Constants;
+
+/**
+ * A smooth path through a list of waypoints, split into a trajectory for each side of the drive.
+ *
+ * The waypoints are joined with quintic Hermite splines (see Spline), and the path is sampled
+ * every half inch or so along its length. At each sample, the curvature sets how fast the robot
+ * can go there so that the outside wheels stay under the top speed, and forward and backward
+ * passes limit how fast that speed can change. Taking the speed at each sample as the time goes
+ * by gives the speed of the middle of the robot over time.
+ *
+ * The left and right wheels go faster and slower than the middle as the path curves, and
+ * following the two trajectories steers the robot along the path. The middle's speed is run
+ * through a box filter as long as it takes to go from full acceleration to full deceleration at
+ * the jerk limit, the same way the second filter of Trajectory rounds off its corners, and the
+ * curvature is averaged over the same stretch of path before the speed is split into the wheels'
+ * speeds. That keeps the wheels' jerk under the limit even where two splines meet and the
+ * curvature starts changing at a different rate. The speed limit is lowered ahead of and behind
+ * every curve by as far as the robot can go in that time, so the filter can not carry it into a
+ * curve too fast. The heading the robot should have is kept for each segment too, to correct with
+ * the gyro.
+ *
+ * Like Trajectory, the arrays are kept and only grown when a longer path needs them, so
+ * generating paths over and over while disabled does not keep allocating them.
+ *
+ * @author jrussell
+ */
+public class Path {
+  private static final int kInitialCapacity = 1000;
+  // the longest step between samples along the path, in inches
+  private static final double kMaxStep = 0.5;
+
+  private final double mTrackWidth;
+  private final Trajectory mLeft = new Trajectory();
+  private final Trajectory mRight = new Trajectory();
+  private double mLength;
+  private double mDt;
+  private int mNumSegments;
+
+  // sampled along the path, every mStep inches
+  private double mStep;
+  private double[] mCurvature = new double[kInitialCapacity];
+  private double[] mPathHeading = new double[kInitialCapacity];
+  private double[] mPathX = new double[kInitialCapacity];
+  private double[] mPathY = new double[kInitialCapacity];
+  private double[] mLimit = new double[kInitialCapacity];
+  private double[] mAccel = new double[kInitialCapacity];
+  private double[] mSpeed = new double[kInitialCapacity];
+
+  // sampled every dt
+  private double[] mRawSpeed = new double[kInitialCapacity];
+  // the speed of the middle of the robot times the curvature, which is how fast it turns
+  private double[] mRawTurning = new double[kInitialCapacity];
+  private double[] mHeading = new double[kInitialCapacity];
+  private double[] mX = new double[kInitialCapacity];
+  private double[] mY = new double[kInitialCapacity];
+  // the position, velocity and acceleration of the left and right wheels at the last segment
+  private final double[] mLast = new double[6];
+
+  public Path() {
+    this(Constants.Properties.DRIVE_TRACK_WIDTH);
+  }
+
+  /**
+   * @param trackWidth The effective distance between the left and right wheels, in inches
+   */
+  public Path(double trackWidth) {
+    mTrackWidth = trackWidth;
+  }
+
+  /**
+   * Fits splines through the waypoints and generates the trajectories to follow them.
+   *
+   * @param aWaypoints At least two waypoints, starting where the robot is
+   * @throws IllegalArgumentException If there are fewer than two waypoints, or they all sit in
+   *         the same place
+   */
+  public void generate(Waypoint[] aWaypoints, double aMaxVel, double aMaxAcc, double aMaxJerk,
+      double aDtSeconds) {
+    if (aWaypoints.length < 2) {
+      throw new IllegalArgumentException("A path needs at least two waypoints");
+    }
+    Spline[] splines = new Spline[aWaypoints.length - 1];
+    mLength = 0.0;
+    for (int i = 0; i < splines.length; i++) {
+      splines[i] = new Spline(aWaypoints[i], aWaypoints[i + 1]);
+      mLength += splines[i].getLength();
+    }
+    if (mLength <= 0.0) {
+      throw new IllegalArgumentException("A path has to go somewhere");
+    }
+    int samples = sample(splines);
+    // long enough to go from full acceleration to full deceleration
+    double filterTime = 2.0 * aMaxAcc / aMaxJerk;
+    limitSpeed(samples, aMaxVel, aMaxAcc, aMaxVel * filterTime);
+    int steps = timeSpeed(samples, aMaxAcc, aDtSeconds);
+    splitWheels(steps, Math.max(1, (int) Math.ceil(filterTime / aDtSeconds)), aDtSeconds);
+    mDt = aDtSeconds;
+  }
+
+  /**
+   * Samples the curvature, heading and position along the splines.
+   *
+   * @return The number of samples
+   */
+  private int sample(Spline[] splines) {
+    int samples = Math.max(3, (int) Math.ceil(mLength / kMaxStep) + 1);
+    if (samples > mCurvature.length) {
+      int capacity = Math.max(samples, 2 * mCurvature.length);
+      mCurvature = new double[capacity];
+      mPathHeading = new double[capacity];
+      mPathX = new double[capacity];
+      mPathY = new double[capacity];
+      mLimit = new double[capacity];
+      mAccel = new double[capacity];
+      mSpeed = new double[capacity];
+    }
+    mStep = mLength / (samples - 1);
+    int spline = 0;
+    double start = 0.0; // how far along the path the current spline starts
+    double lastHeading = 0.0;
+    for (int i = 0; i < samples; i++) {
+      double distance = i * mStep;
+      while (spline < splines.length - 1 && distance > start + splines[spline].getLength()) {
+        start += splines[spline].getLength();
+        spline++;
+      }
+      double t = splines[spline].getT(distance - start);
+      double heading = splines[spline].getHeading(t);
+      // keep the heading continuous, rather than jumping by a full turn
+      if (i > 0) {
+        heading = lastHeading + DaisyMath.getDifferenceInAngleRadians(lastHeading, heading);
+      }
+      lastHeading = heading;
+      mCurvature[i] = splines[spline].getCurvature(t);
+      mPathHeading[i] = heading;
+      mPathX[i] = splines[spline].getX(t);
+      mPathY[i] = splines[spline].getY(t);
+    }
+    return samples;
+  }
+
+  /**
+   * Works out the fastest the middle of the robot can go at each sample, and how fast it can
+   * speed up or slow down there, and then the speed at each sample starting and ending stopped.
+   *
+   * In a curve the outside wheel goes faster than the middle, so the middle has to go slower. And
+   * as the curvature changes, the wheels speed up and slow down against each other even when the
+   * middle holds its speed, by the square of the speed, so the speed is held down far enough that
+   * this takes no more than half of the acceleration limit, and the middle gets what is left.
+   *
+   * @param margin How far ahead and behind a curve to slow down for it, in inches
+   */
+  private void limitSpeed(int samples, double maxVel, double maxAcc, double margin) {
+    double halfWidth = mTrackWidth / 2.0;
+    for (int i = 0; i < samples; i++) {
+      double turning = curvatureSlope(i, samples) * halfWidth;
+      mSpeed[i] = maxVel / (1.0 + Math.abs(mCurvature[i]) * halfWidth);
+      if (turning > 0.0) {
+        mSpeed[i] = Math.min(mSpeed[i], Math.sqrt(maxAcc / 2.0 / turning));
+      }
+    }
+    int window = (int) Math.ceil(margin / mStep);
+    erode(mSpeed, mLimit, samples, window);
+    for (int i = 0; i < samples; i++) {
+      double turning = curvatureSlope(i, samples) * halfWidth;
+      mSpeed[i] = (maxAcc - mLimit[i] * mLimit[i] * turning)
+          / (1.0 + Math.abs(mCurvature[i]) * halfWidth);
+    }
+    erode(mSpeed, mAccel, samples, window);
+
+    mSpeed[0] = 0.0;
+    for (int i = 1; i < samples; i++) {
+      mSpeed[i] = Math.min(mLimit[i],
+          Math.sqrt(mSpeed[i - 1] * mSpeed[i - 1] + 2.0 * mAccel[i] * mStep));
+    }
+    mSpeed[samples - 1] = 0.0;
+    for (int i = samples - 2; i >= 0; i--) {
+      mSpeed[i] = Math.min(mSpeed[i],
+          Math.sqrt(mSpeed[i + 1] * mSpeed[i + 1] + 2.0 * mAccel[i] * mStep));
+    }
+  }
+
+  /**
+   * @return How fast the curvature changes at a sample, in radians per inch per inch, taking the
+   *         steeper side so a sudden change is not averaged away
+   */
+  private double curvatureSlope(int i, int samples) {
+    double before = i > 0 ? Math.abs(mCurvature[i] - mCurvature[i - 1]) : 0.0;
+    double after = i < samples - 1 ? Math.abs(mCurvature[i + 1] - mCurvature[i]) : 0.0;
+    return Math.max(before, after) / mStep;
+  }
+
+  /**
+   * Sets each output sample to the smallest input within window samples of it, so a limit
+   * applies for a little way before and after where it is needed.
+   */
+  private static void erode(double[] in, double[] out, int samples, int window) {
+    for (int i = 0; i < samples; i++) {
+      double smallest = in[i];
+      for (int j = Math.max(0, i - window); j <= Math.min(samples - 1, i + window); j++) {
+        smallest = Math.min(smallest, in[j]);
+      }
+      out[i] = smallest;
+    }
+  }
+
+  /**
+   * Follows the speed along the path through time, with the acceleration constant between
+   * samples, and takes the speed every dt.
+   *
+   * Two samples in a row can both be stopped, like at a cusp where the curvature blows up, and
+   * the robot would never get from one to the other. Such a step is crossed the fastest way that
+   * starts and ends stopped at the acceleration limit there instead: speeding up for half of it
+   * and slowing down for the other half. Steps that are only slow are left alone, since the speed
+   * there is what keeps the wheels under their limits through a sharp turn.
+   *
+   * @return The number of steps
+   */
+  private int timeSpeed(int samples, double maxAcc, double dt) {
+    int steps = 0;
+    double time = 0.0; // when the robot gets to sample i
+    int i = 0;
+    while (i < samples - 1) {
+      double acceleration = mAccel[i] > 0.0 ? mAccel[i] : maxAcc;
+      boolean stopped = mSpeed[i] + mSpeed[i + 1] <= 0.0;
+      double next = time + (stopped ? 2.0 * Math.sqrt(mStep / acceleration)
+          : 2.0 * mStep / (mSpeed[i] + mSpeed[i + 1]));
+      double now = steps * dt;
+      if (now >= next) {
+        time = next;
+        i++;
+        continue;
+      }
+      if (steps >= mRawSpeed.length) {
+        double[] grown = new double[2 * mRawSpeed.length];
+        System.arraycopy(mRawSpeed, 0, grown, 0, steps);
+        mRawSpeed = grown;
+      }
+      double fraction = (now - time) / (next - time);
+      if (stopped) {
+        mRawSpeed[steps] =
+            Math.sqrt(acceleration * mStep) * (1.0 - Math.abs(2.0 * fraction - 1.0));
+      } else {
+        mRawSpeed[steps] = mSpeed[i] + (mSpeed[i + 1] - mSpeed[i]) * fraction;
+      }
+      steps++;
+    }
+    return steps;
+  }
+
+  /**
+   * Smooths the speed of the middle of the robot, and the curvature it meets along the way, then
+   * splits them into the speeds of the wheels and fills in the trajectories of the wheels.
+   *
+   * The speed goes through a box filter as long as it takes to change the acceleration by twice
+   * its limit at the jerk limit. The curvature is averaged over the same steps, but weighted by
+   * how far the robot goes in each one, so it is the curvature of the stretch of path the
+   * smoothed speed covers: the steering turns the robot by as much as the path turns over that
+   * stretch, and stays lined up with where the robot is along it. Weighting by distance also keeps
+   * a sharp turn that is taken at a crawl from being multiplied by the faster speeds around it,
+   * which would push the wheels over their limits, and it turns the sudden change in how fast the
+   * curvature changes, where two splines meet, into a ramp.
+   *
+   * @param width How many steps the box filter averages over
+   */
+  private void splitWheels(int steps, int width, double dt) {
+    mNumSegments = steps + width;
+    if (mNumSegments > mHeading.length) {
+      int capacity = Math.max(mNumSegments, 2 * mHeading.length);
+      mHeading = new double[capacity];
+      mX = new double[capacity];
+      mY = new double[capacity];
+    }
+    if (steps > mRawTurning.length) {
+      mRawTurning = new double[Math.max(steps, 2 * mRawTurning.length)];
+    }
+    // taking the speed every dt can leave the robot a hair past the end of the path, so shrink
+    // the speeds to end exactly at the end. If it comes up short instead, by a few thousandths of
+    // an inch, leave it, since stretching them would push the wheels over their limits.
+    double sum = 0.0;
+    for (int i = 0; i < steps; i++) {
+      sum += mRawSpeed[i];
+    }
+    double scale = sum * dt > mLength ? mLength / (sum * dt) : 1.0;
+
+    double lastSpeed = 0.0;
+    double position = 0.0;
+    for (int i = 0; i < steps; i++) {
+      double speed = mRawSpeed[i] * scale;
+      mRawSpeed[i] = speed;
+      position = Math.min(mLength, position + (lastSpeed + speed) / 2.0 * dt);
+      lastSpeed = speed;
+      mRawTurning[i] = speed * lookUp(mCurvature, position);
+    }
+
+    mLeft.setSize(mNumSegments, dt, 0.0);
+    mRight.setSize(mNumSegments, dt, 0.0);
+    double halfWidth = mTrackWidth / 2.0;
+    double speedSum = 0.0;
+    double turningSum = 0.0;
+    double curvature = 0.0;
+    lastSpeed = 0.0;
+    position = 0.0;
+    for (int i = 0; i < mLast.length; i++) {
+      mLast[i] = 0.0;
+    }
+    for (int i = 0; i < mNumSegments; i++) {
+      if (i < steps) {
+        speedSum += mRawSpeed[i];
+        turningSum += mRawTurning[i];
+      }
+      if (i >= width && i - width < steps) {
+        speedSum -= mRawSpeed[i - width];
+        turningSum -= mRawTurning[i - width];
+      }
+      double speed = speedSum / width;
+      // while the robot is stopped, keep the last curvature, it does not matter which
+      if (speedSum > 0.0) {
+        curvature = turningSum / speedSum;
+      }
+      setWheel(mLeft, i, speed * (1.0 + curvature * halfWidth), mLast, 0, dt);
+      setWheel(mRight, i, speed * (1.0 - curvature * halfWidth), mLast, 3, dt);
+
+      // where the middle of the robot is along the path
+      position = Math.min(mLength, position + (lastSpeed + speed) / 2.0 * dt);
+      lastSpeed = speed;
+      mHeading[i] = Math.toDegrees(lookUp(mPathHeading, position));
+      mX[i] = lookUp(mPathX, position);
+      mY[i] = lookUp(mPathY, position);
+    }
+    mLeft.setSize(mNumSegments, dt, mLast[0]);
+    mRight.setSize(mNumSegments, dt, mLast[3]);
+  }
+
+  /**
+   * @return A value sampled along the path, interpolated at a distance along it
+   */
+  private double lookUp(double[] values, double position) {
+    double index = Math.min(position / mStep, mLength / mStep);
+    int sample = Math.min((int) index, (int) Math.round(mLength / mStep) - 1);
+    return interpolate(values, sample, index - sample);
+  }
+
+  private static double interpolate(double[] values, int i, double fraction) {
+    return values[i] + (values[i + 1] - values[i]) * fraction;
+  }
+
+  /**
+   * Integrates a wheel's velocity into its trajectory.
+   *
+   * @param last The wheel's last position, velocity and acceleration, starting at first
+   */
+  private static void setWheel(Trajectory wheel, int i, double velocity, double[] last,
+      int first, double dt) {
+    double position = last[first] + (last[first + 1] + velocity) / 2.0 * dt;
+    double acceleration = (velocity - last[first + 1]) / dt;
+    double jerk = (acceleration - last[first + 2]) / dt;
+    wheel.setSegment(i, position, velocity, acceleration, jerk);
+    last[first] = position;
+    last[first + 1] = velocity;
+    last[first + 2] = acceleration;
+  }
+
+  /**
+   * @return The trajectory for the left side of the drive
+   */
+  public Trajectory getLeft() {
+    return mLeft;
+  }
+
+  /**
+   * @return The trajectory for the right side of the drive
+   */
+  public Trajectory getRight() {
+    return mRight;
+  }
+
+  /**
+   * @return The length of the path through the middle of the robot, in inches
+   */
+  public double getLength() {
+    return mLength;
+  }
+
+  public int getNumSegments() {
+    return mNumSegments;
+  }
+
+  public double getDt() {
+    return mDt;
+  }
+
+  /**
+   * @return The heading the robot should have at a segment, in degrees. It is not wrapped, so a
+   *         path that turns all the way around ends at 360, not 0. Past the end, it holds the last
+   *         heading.
+   */
+  public double getHeading(int aSegment) {
+    return mHeading[Math.min(aSegment, mNumSegments - 1)];
+  }
+
+  /**
+   * @return Where the middle of the robot should be at a segment, in inches
+   */
+  public double getX(int aSegment) {
+    return mX[Math.min(aSegment, mNumSegments - 1)];
+  }
+
+  public double getY(int aSegment) {
+    return mY[Math.min(aSegment, mNumSegments - 1)];
+  }
+}
@@ -8,7 +8,7 @@ package missdaisy.utilities;
  * 
  * @author Jared341
  */
-public class RateLimitFilter implements Filter {
+public class RateLimitFilter implements DoubleFilter {
   private double maxRate = 1.0; // Per LOOP
   private double lastVal = 0.0;
   private double desired = 0.0;
@@ -46,4 +46,9 @@ public class RateLimitFilter implements Filter {
     return lastVal;
   }
 
+  public double filter(double input) {
+    setDesired(input);
+    return run();
+  }
+
 }
@@ -0,0 +1,157 @@
+package missdaisy.utilities;
+
+/**
+ * A quintic Hermite spline from one waypoint to the next.
+ *
+ * The spline leaves the first waypoint and arrives at the second pointed along their headings,
+ * with no sideways acceleration at either end. That makes the curvature zero at every waypoint,
+ * so splines joined end to end have continuous curvature, and the wheel speeds never have to
+ * jump where one spline meets the next.
+ *
+ * The spline is a polynomial in a parameter t from 0 to 1, which is not how far along it is. The
+ * arc length is integrated once, with Gauss-Legendre quadrature over a table of short intervals,
+ * and a distance is turned back into t with the table and a couple of Newton steps.
+ *
+ * @author jrussell
+ */
+public class Spline {
+  // how long the end tangents are, compared to the straight line between the waypoints
+  private static final double kTangentScale = 1.2;
+  private static final int kIntervals = 64;
+  private static final int kNewtonSteps = 2;
+  // 3 point Gauss-Legendre quadrature on [-1, 1]
+  private static final double[] kNodes = {-Math.sqrt(0.6), 0.0, Math.sqrt(0.6)};
+  private static final double[] kWeights = {5.0 / 9.0, 8.0 / 9.0, 5.0 / 9.0};
+
+  // x(t) = mX[0] + mX[1] t + ... + mX[5] t^5, and the same for y
+  private final double[] mX = new double[6];
+  private final double[] mY = new double[6];
+  // the arc length from t = 0 to t = i / kIntervals
+  private final double[] mArcLength = new double[kIntervals + 1];
+
+  public Spline(Waypoint start, Waypoint end) {
+    double tangent = kTangentScale * DaisyMath.getDistance(start.x, start.y, end.x, end.y);
+    double startHeading = Math.toRadians(start.heading);
+    double endHeading = Math.toRadians(end.heading);
+    fit(mX, start.x, tangent * Math.cos(startHeading), end.x, tangent * Math.cos(endHeading));
+    fit(mY, start.y, tangent * Math.sin(startHeading), end.y, tangent * Math.sin(endHeading));
+    for (int i = 0; i < kIntervals; i++) {
+      mArcLength[i + 1] =
+          mArcLength[i] + integrate((double) i / kIntervals, (double) (i + 1) / kIntervals);
+    }
+  }
+
+  /**
+   * Fills in the coefficients of the quintic with these end points and first derivatives, and
+   * zero second derivatives.
+   */
+  private static void fit(double[] c, double p0, double v0, double p1, double v1) {
+    c[0] = p0;
+    c[1] = v0;
+    c[2] = 0.0;
+    c[3] = -10.0 * p0 - 6.0 * v0 - 4.0 * v1 + 10.0 * p1;
+    c[4] = 15.0 * p0 + 8.0 * v0 + 7.0 * v1 - 15.0 * p1;
+    c[5] = -6.0 * p0 - 3.0 * v0 - 3.0 * v1 + 6.0 * p1;
+  }
+
+  private static double value(double[] c, double t) {
+    return c[0] + t * (c[1] + t * (c[2] + t * (c[3] + t * (c[4] + t * c[5]))));
+  }
+
+  private static double derivative(double[] c, double t) {
+    return c[1] + t * (2.0 * c[2] + t * (3.0 * c[3] + t * (4.0 * c[4] + t * 5.0 * c[5])));
+  }
+
+  private static double secondDerivative(double[] c, double t) {
+    return 2.0 * c[2] + t * (6.0 * c[3] + t * (12.0 * c[4] + t * 20.0 * c[5]));
+  }
+
+  /**
+   * @return How fast the spline moves along, in inches per unit of t
+   */
+  private double getSpeed(double t) {
+    double dx = derivative(mX, t);
+    double dy = derivative(mY, t);
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * @return The arc length from t0 to t1
+   */
+  private double integrate(double t0, double t1) {
+    double half = (t1 - t0) / 2.0;
+    double middle = (t0 + t1) / 2.0;
+    double sum = 0.0;
+    for (int i = 0; i < kNodes.length; i++) {
+      sum += kWeights[i] * getSpeed(middle + half * kNodes[i]);
+    }
+    return sum * half;
+  }
+
+  /**
+   * @return The length of the spline, in inches
+   */
+  public double getLength() {
+    return mArcLength[kIntervals];
+  }
+
+  /**
+   * @return The t that is this far along the spline
+   */
+  public double getT(double distance) {
+    if (distance <= 0.0) {
+      return 0.0;
+    }
+    if (distance >= getLength()) {
+      return 1.0;
+    }
+    int low = 0;
+    int high = kIntervals;
+    while (high - low > 1) {
+      int middle = (low + high) >>> 1;
+      if (mArcLength[middle] <= distance) {
+        low = middle;
+      } else {
+        high = middle;
+      }
+    }
+    double t0 = (double) low / kIntervals;
+    double t = t0 + (distance - mArcLength[low]) / (mArcLength[high] - mArcLength[low])
+        / kIntervals;
+    for (int i = 0; i < kNewtonSteps; i++) {
+      double speed = getSpeed(t);
+      if (speed > 0.0) {
+        t -= (mArcLength[low] + integrate(t0, t) - distance) / speed;
+      }
+    }
+    return Math.max(0.0, Math.min(1.0, t));
+  }
+
+  public double getX(double t) {
+    return value(mX, t);
+  }
+
+  public double getY(double t) {
+    return value(mY, t);
+  }
+
+  /**
+   * @return The direction the spline is going, in radians, increasing clockwise
+   */
+  public double getHeading(double t) {
+    return Math.atan2(derivative(mY, t), derivative(mX, t));
+  }
+
+  /**
+   * @return How fast the heading changes with distance, in radians per inch, positive clockwise
+   */
+  public double getCurvature(double t) {
+    double dx = derivative(mX, t);
+    double dy = derivative(mY, t);
+    double speed = Math.sqrt(dx * dx + dy * dy);
+    if (speed == 0.0) {
+      return 0.0;
+    }
+    return (dx * secondDerivative(mY, t) - dy * secondDerivative(mX, t)) / (speed * speed * speed);
+  }
+}
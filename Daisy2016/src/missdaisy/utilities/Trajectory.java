@@ -1,48 +1,69 @@
 package missdaisy.utilities;
 
+import java.util.Arrays;
+
 /**
  * A trapezoidal motion profile with smooth acceleration.
- * 
+ *
+ * The profile is made by running a train of impulses through two box filters: the first turns
+ * them into a trapezoid of velocity, and the second rounds off its corners so the acceleration is
+ * a trapezoid too. Both filters are kept as running sums, so generating n segments is O(n) no
+ * matter how long the filters are.
+ *
+ * The filters can only start from rest, so generateFrom() plans a move that starts already moving,
+ * for replanning partway through a move. It works out the profile directly as seven phases of
+ * constant jerk: change to a cruise speed, cruise, and slow to a stop at the goal. When the move is
+ * too short to reach the top speed, the cruise speed is found by bisection.
+ *
+ * The segments are stored as one array per quantity, which generate() grows as needed, so there
+ * is no limit on the length of a profile and looking up a segment never allocates. generateFrom()
+ * runs in the control loop, so it only uses the room already there. A trajectory can be
+ * generated over and over, except once it has been handed out by the TrajectoryCache, which
+ * freezes it so that everyone holding it sees the same profile. A trajectory generated offline
+ * and saved with TrajectoryFile is read straight out of the file instead of these arrays.
+ *
  * @author Jared341
  */
 public class Trajectory {
-  private Trajectory.Segment[] mSegments;
+  private static final int kInitialCapacity = 500;
+  private static final int kPhases = 7;
+  private static final int kCruisePhase = 3;
+  private static final int kBisections = 50;
+
+  private double[] mPosition;
+  private double[] mVelocity;
+  private double[] mAcceleration;
+  private double[] mJerk;
+  private double[] mF1;
   private int mNumSegments;
   private double mDt;
   private double mGoalDistance;
+  private boolean mFrozen = false;
+  // the constant jerk phases used by generateFrom()
+  private final double[] mPhaseJerk = new double[kPhases];
+  private final double[] mPhaseTime = new double[kPhases];
 
-  public class Segment {
-    protected Segment() {
-
-    }
-
-    public double position;
-    public double velocity;
-    public double acceleration;
-    public double jerk;
-    protected double f1;
-  }
-
-  private static Trajectory mInstance = null;
-
-  public static Trajectory getInstance() {
-    if (mInstance == null) {
-      mInstance = new Trajectory();
-    }
-    return mInstance;
+  public Trajectory() {
+    this(kInitialCapacity);
   }
 
-  private Trajectory() {
+  /**
+   * @param aCapacity How many segments to make room for to start with. generateFrom() never makes
+   *        more room than this.
+   */
+  public Trajectory(int aCapacity) {
     mNumSegments = 0;
-    mSegments = new Segment[500];
-
-    for (int i = 0; i < mSegments.length; i++) {
-      mSegments[i] = new Segment();
-    }
+    allocate(aCapacity);
   }
 
+  /**
+   * @throws IllegalStateException If the trajectory has been frozen
+   */
   public void generate(double aDistance, double aMaxVel, double aMaxAcc, double aMaxJerk,
       double aDtSeconds) {
+    if (mFrozen) {
+      throw new IllegalStateException("A frozen trajectory can not be generated again");
+    }
     // quadratic formula
     double adjustedMaxVel = Math.min(aMaxVel,
         (-aMaxAcc * aMaxAcc + Math.sqrt(
@@ -56,16 +77,19 @@ public class Trajectory {
     double numImpulses = timeAtFullSpeedS / aDtSeconds;
 
     mNumSegments = (int) (Math.ceil(numTapsF1 + numTapsF2 + numImpulses));
-    if (mNumSegments > 500) {
-      System.err.println("More than 500 segments in trajectory!");
-      mNumSegments = 500;
+    if (mNumSegments > mPosition.length) {
+      allocate(Math.max(mNumSegments, 2 * mPosition.length));
     }
+    int tapsF2 = (int) numTapsF2;
+    int lastImpulse = (int) Math.ceil(numImpulses);
     double f1 = 0;
+    // the sum of the last tapsF2 values of f1
+    double f2Sum = 0;
     double lastVel = 0;
     double lastPos = 0;
     double lastAcc = 0;
     for (int i = 0; i < mNumSegments; ++i) {
-      double input = (i < ((int) Math.ceil(numImpulses)) ? 1.0 : -1.0);
+      double input = (i < lastImpulse ? 1.0 : -1.0);
 
       // Segment 0 is a special case
       if (i == 0 && numImpulses - Math.floor(numImpulses) > 0) {
@@ -73,29 +97,225 @@ public class Trajectory {
       }
 
       f1 = Math.max(0.0, Math.min(numTapsF1, f1 + input));
-      mSegments[i].f1 = f1;
-      double f2 = 0;
-      for (int j = 0; j < numTapsF2; ++j) {
-        if (i - j < 0) {
-          break;
+      mF1[i] = f1;
+      f2Sum += f1;
+      if (i >= tapsF2) {
+        f2Sum -= mF1[i - tapsF2];
+      }
+      double f2 = f2Sum / numTapsF1;
+
+      double velocity = f2 / numTapsF2 * adjustedMaxVel;
+      double position = (lastVel + velocity) / 2.0 * aDtSeconds + lastPos;
+      double acceleration = (velocity - lastVel) / aDtSeconds;
+      mVelocity[i] = velocity;
+      mPosition[i] = position;
+      mAcceleration[i] = acceleration;
+      mJerk[i] = (acceleration - lastAcc) / aDtSeconds;
+
+      lastVel = velocity;
+      lastPos = position;
+      lastAcc = acceleration;
+    }
+
+    mDt = aDtSeconds;
+    mGoalDistance = aDistance;
+  }
+
+  /**
+   * Generates a profile that starts out already moving and ends stopped at the goal. If the goal
+   * is too close to stop at from the starting speed, the profile stops as soon as it can, past the
+   * goal, and it is up to the follower to come back.
+   *
+   * This is meant to be called from a control loop, so it never allocates, and its work is bounded
+   * by the bisection and the room the trajectory already has.
+   *
+   * @param aDistance How far it is to the goal
+   * @param aStartVel The velocity at the start, toward the goal
+   * @param aStartAcc The acceleration at the start, toward the goal
+   * @return False, leaving the trajectory as it was, if the profile needs more segments than there
+   *         is room for
+   * @throws IllegalStateException If the trajectory has been frozen
+   */
+  public boolean generateFrom(double aDistance, double aStartVel, double aStartAcc,
+      double aMaxVel, double aMaxAcc, double aMaxJerk, double aDtSeconds) {
+    if (mFrozen) {
+      throw new IllegalStateException("A frozen trajectory can not be generated again");
+    }
+    double startAcc = Math.max(-aMaxAcc, Math.min(aMaxAcc, aStartAcc));
+    // bisect for the cruise speed that makes the move come out the right length
+    double cruiseVel = aMaxVel;
+    double length = planPhases(aStartVel, startAcc, aMaxVel, aMaxAcc, aMaxJerk);
+    if (length > aDistance) {
+      double low = 0.0;
+      double high = aMaxVel;
+      for (int i = 0; i < kBisections; i++) {
+        cruiseVel = 0.5 * (low + high);
+        if (planPhases(aStartVel, startAcc, cruiseVel, aMaxAcc, aMaxJerk) > aDistance) {
+          high = cruiseVel;
+        } else {
+          low = cruiseVel;
         }
+      }
+      cruiseVel = low;
+      length = planPhases(aStartVel, startAcc, cruiseVel, aMaxAcc, aMaxJerk);
+    }
+    if (cruiseVel > 0.0 && length < aDistance) {
+      mPhaseTime[kCruisePhase] = (aDistance - length) / cruiseVel;
+    }
 
-        f2 += mSegments[i - j].f1;
+    double totalTime = 0.0;
+    for (int i = 0; i < kPhases; i++) {
+      totalTime += mPhaseTime[i];
+    }
+    double numSegments = Math.max(1.0, Math.ceil(totalTime / aDtSeconds));
+    if (numSegments > mPosition.length) {
+      return false;
+    }
+    mNumSegments = (int) numSegments;
+    // walk through the phases, keeping the state at the start of the current one
+    int phase = 0;
+    double phaseStart = 0.0;
+    double position = 0.0;
+    double velocity = aStartVel;
+    double acceleration = startAcc;
+    for (int i = 0; i < mNumSegments; i++) {
+      double time = Math.min((i + 1) * aDtSeconds, totalTime);
+      while (phase < kPhases - 1 && time > phaseStart + mPhaseTime[phase]) {
+        double t = mPhaseTime[phase];
+        double jerk = mPhaseJerk[phase];
+        position += velocity * t + acceleration * t * t / 2.0 + jerk * t * t * t / 6.0;
+        velocity += acceleration * t + jerk * t * t / 2.0;
+        acceleration += jerk * t;
+        phaseStart += t;
+        phase++;
       }
-      f2 = f2 / numTapsF1;
+      double t = Math.min(time - phaseStart, mPhaseTime[phase]);
+      double jerk = mPhaseJerk[phase];
+      mPosition[i] = position + velocity * t + acceleration * t * t / 2.0 + jerk * t * t * t / 6.0;
+      mVelocity[i] = velocity + acceleration * t + jerk * t * t / 2.0;
+      mAcceleration[i] = acceleration + jerk * t;
+      mJerk[i] = jerk;
+      mF1[i] = 0.0;
+    }
 
-      mSegments[i].velocity = f2 / numTapsF2 * adjustedMaxVel;
-      mSegments[i].position = (lastVel + mSegments[i].velocity) / 2.0 * aDtSeconds + lastPos;
-      mSegments[i].acceleration = (mSegments[i].velocity - lastVel) / aDtSeconds;
-      mSegments[i].jerk = (mSegments[i].acceleration - lastAcc) / aDtSeconds;
+    mDt = aDtSeconds;
+    mGoalDistance = aDistance;
+    return true;
+  }
 
-      lastVel = mSegments[i].velocity;
-      lastPos = mSegments[i].position;
-      lastAcc = mSegments[i].acceleration;
+  /**
+   * Fills in the phases for a move that changes to the cruise velocity and then stops, with no
+   * time spent cruising.
+   *
+   * @return How far the move goes
+   */
+  private double planPhases(double startVel, double startAcc, double cruiseVel, double maxAcc,
+      double maxJerk) {
+    changeVelocity(startVel, startAcc, cruiseVel, maxAcc, maxJerk, 0);
+    mPhaseJerk[kCruisePhase] = 0.0;
+    mPhaseTime[kCruisePhase] = 0.0;
+    changeVelocity(cruiseVel, 0.0, 0.0, maxAcc, maxJerk, kCruisePhase + 1);
+    double position = 0.0;
+    double velocity = startVel;
+    double acceleration = startAcc;
+    for (int i = 0; i < kPhases; i++) {
+      double t = mPhaseTime[i];
+      double jerk = mPhaseJerk[i];
+      position += velocity * t + acceleration * t * t / 2.0 + jerk * t * t * t / 6.0;
+      velocity += acceleration * t + jerk * t * t / 2.0;
+      acceleration += jerk * t;
     }
+    return position;
+  }
+
+  /**
+   * Fills in three phases that take the velocity from v0, with acceleration a0, to v1 with no
+   * acceleration, as fast as the limits allow: ramp the acceleration to a peak, hold it there if
+   * the peak would be over the limit, and ramp it back to zero.
+   */
+  private void changeVelocity(double v0, double a0, double v1, double maxAcc, double maxJerk,
+      int first) {
+    // where the velocity would end up if the acceleration was ramped straight back to zero
+    double coast = v0 + a0 * Math.abs(a0) / (2.0 * maxJerk);
+    double direction = v1 >= coast ? 1.0 : -1.0;
+    double change = v1 - v0;
+    double peakSquared = direction * maxJerk * change + a0 * a0 / 2.0;
+    double peak = direction * Math.sqrt(Math.max(0.0, peakSquared));
+    double hold = 0.0;
+    if (Math.abs(peak) > maxAcc) {
+      peak = direction * maxAcc;
+      hold = (change - (2.0 * peak * peak - a0 * a0) / (2.0 * direction * maxJerk)) / peak;
+    }
+    mPhaseJerk[first] = direction * maxJerk;
+    mPhaseTime[first] = Math.max(0.0, direction * (peak - a0) / maxJerk);
+    mPhaseJerk[first + 1] = 0.0;
+    mPhaseTime[first + 1] = Math.max(0.0, hold);
+    mPhaseJerk[first + 2] = -direction * maxJerk;
+    mPhaseTime[first + 2] = Math.abs(peak) / maxJerk;
+  }
 
+  /**
+   * Makes room for a profile that is filled in one segment at a time with setSegment(), like the
+   * wheel trajectories of a Path.
+   *
+   * @throws IllegalStateException If the trajectory has been frozen
+   */
+  void setSize(int aNumSegments, double aDtSeconds, double aGoalDistance) {
+    if (mFrozen) {
+      throw new IllegalStateException("A frozen trajectory can not be generated again");
+    }
+    if (aNumSegments > mPosition.length) {
+      allocate(Math.max(aNumSegments, 2 * mPosition.length));
+    }
+    mNumSegments = aNumSegments;
     mDt = aDtSeconds;
-    mGoalDistance = aDistance;
+    mGoalDistance = aGoalDistance;
+  }
+
+  void setSegment(int aSegment, double aPosition, double aVelocity, double aAcceleration,
+      double aJerk) {
+    mPosition[aSegment] = aPosition;
+    mVelocity[aSegment] = aVelocity;
+    mAcceleration[aSegment] = aAcceleration;
+    mJerk[aSegment] = aJerk;
+    mF1[aSegment] = 0.0;
+  }
+
+  /**
+   * Makes the arrays at least this long. Anything already in them is dropped, since generate()
+   * writes every segment it uses.
+   */
+  private void allocate(int capacity) {
+    mPosition = new double[capacity];
+    mVelocity = new double[capacity];
+    mAcceleration = new double[capacity];
+    mJerk = new double[capacity];
+    mF1 = new double[capacity];
+  }
+
+  /**
+   * Trims the arrays to the segments in use and stops generate() from changing them again.
+   */
+  void freeze() {
+    if (mPosition.length > mNumSegments) {
+      mPosition = Arrays.copyOf(mPosition, mNumSegments);
+      mVelocity = Arrays.copyOf(mVelocity, mNumSegments);
+      mAcceleration = Arrays.copyOf(mAcceleration, mNumSegments);
+      mJerk = Arrays.copyOf(mJerk, mNumSegments);
+      mF1 = Arrays.copyOf(mF1, mNumSegments);
+    }
+    mFrozen = true;
+  }
+
+  public boolean isFrozen() {
+    return mFrozen;
+  }
+
+  /**
+   * @return About how much memory the segments take up, in bytes
+   */
+  public long getSizeInBytes() {
+    return 5L * 8L * mPosition.length;
   }
 
   public int getNumSegments() {
@@ -110,27 +330,50 @@ public class Trajectory {
     return mGoalDistance;
   }
 
-  public Trajectory.Segment getSegment(int aCount) {
-    if (aCount >= mNumSegments) {
-      return new Trajectory.Segment();
-    } else {
-      return mSegments[aCount];
+  /**
+   * @return The position at a segment. Past the end, the profile stays where it finished.
+   */
+  public double getPosition(int aSegment) {
+    if (aSegment >= mNumSegments) {
+      return mNumSegments > 0 ? mPosition[mNumSegments - 1] : 0.0;
     }
+    return mPosition[aSegment];
+  }
+
+  /**
+   * @return The velocity at a segment, or 0 past the end
+   */
+  public double getVelocity(int aSegment) {
+    return aSegment < mNumSegments ? mVelocity[aSegment] : 0.0;
+  }
+
+  /**
+   * @return The acceleration at a segment, or 0 past the end
+   */
+  public double getAcceleration(int aSegment) {
+    return aSegment < mNumSegments ? mAcceleration[aSegment] : 0.0;
+  }
+
+  /**
+   * @return The jerk at a segment, or 0 past the end
+   */
+  public double getJerk(int aSegment) {
+    return aSegment < mNumSegments ? mJerk[aSegment] : 0.0;
   }
 
   public String toString() {
-    String str = "Segment\tTime\tF1\tVel\tPos\tAcc\tJerk\n";
+    StringBuilder str = new StringBuilder("Segment\tTime\tF1\tVel\tPos\tAcc\tJerk\n");
     for (int i = 0; i < getNumSegments(); ++i) {
-      str += i + "\t";
-      str += (double) i * mDt + "\t";
-      str += mSegments[i].f1 + "\t";
-      str += mSegments[i].velocity + "\t";
-      str += mSegments[i].position + "\t";
-      str += mSegments[i].acceleration + "\t";
-      str += mSegments[i].jerk;
-      str += "\n";
+      str.append(i).append("\t");
+      str.append((double) i * getDt()).append("\t");
+      str.append(i < mF1.length ? mF1[i] : 0.0).append("\t");
+      str.append(getVelocity(i)).append("\t");
+      str.append(getPosition(i)).append("\t");
+      str.append(getAcceleration(i)).append("\t");
+      str.append(getJerk(i));
+      str.append("\n");
     }
 
-    return str;
+    return str.toString();
   }
 }
@@ -0,0 +1,214 @@
+package missdaisy.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import missdaisy.Constants;
+
+/**
+ * Keeps the trajectories that have been generated, so that a move can start without waiting to
+ * generate its profile.
+ *
+ * Trajectories are looked up by everything that goes into generating them. The ones handed out
+ * are frozen, so any number of controllers can hold the same one. Call get() for every move an
+ * autonomous mode will make while the robot is disabled, and the moves themselves will only ever
+ * hit the cache.
+ *
+ * Once the trajectories take up more than the memory limit, the ones used least recently are
+ * dropped. One that is still being followed stays valid, since the cache only lets go of it.
+ *
+ * Before generating a trajectory, the cache looks in its directory for a file of it made offline
+ * (see TrajectoryFile), and maps that in instead if it was made with the same limits.
+ *
+ * @author jrussell
+ */
+public class TrajectoryCache {
+  private static TrajectoryCache mInstance = null;
+
+  // in access order, so the eldest entry is the least recently used
+  private final LinkedHashMap<Key, Trajectory> mTrajectories =
+      new LinkedHashMap<Key, Trajectory>(16, 0.75f, true);
+  private final long mMaxBytes;
+  private final File mDirectory;
+  private long mBytes = 0;
+  private int mHits = 0;
+  private int mMisses = 0;
+  private int mEvictions = 0;
+  private int mFileLoads = 0;
+
+  public static TrajectoryCache getInstance() {
+    if (mInstance == null) {
+      mInstance = new TrajectoryCache(Constants.Properties.TRAJECTORY_CACHE_BYTES,
+          new File(Constants.Properties.TRAJECTORY_FILE_PATH));
+    }
+    return mInstance;
+  }
+
+  /**
+   * @param maxBytes How much memory the cached segments may take up
+   */
+  public TrajectoryCache(long maxBytes) {
+    this(maxBytes, null);
+  }
+
+  /**
+   * @param maxBytes How much memory the cached segments may take up
+   * @param directory Where to look for trajectory files, or null to always generate them
+   */
+  public TrajectoryCache(long maxBytes, File directory) {
+    mMaxBytes = maxBytes;
+    mDirectory = directory;
+  }
+
+  /**
+   * Gets the trajectory with these limits, generating it if it is not in the cache. The arguments
+   * are the same as Trajectory.generate().
+   *
+   * @return A frozen trajectory
+   */
+  public synchronized Trajectory get(double distance, double maxVel, double maxAcc,
+      double maxJerk, double dtSeconds) {
+    Key key = new Key(distance, maxVel, maxAcc, maxJerk, dtSeconds);
+    Trajectory trajectory = mTrajectories.get(key);
+    if (trajectory != null) {
+      mHits++;
+      return trajectory;
+    }
+    mMisses++;
+    trajectory = load(distance, maxVel, maxAcc, maxJerk, dtSeconds);
+    if (trajectory == null) {
+      trajectory = new Trajectory();
+      trajectory.generate(distance, maxVel, maxAcc, maxJerk, dtSeconds);
+      trajectory.freeze();
+    }
+    mTrajectories.put(key, trajectory);
+    mBytes += trajectory.getSizeInBytes();
+    evict();
+    return trajectory;
+  }
+
+  /**
+   * @return The trajectory mapped from its file, or null if there is no file for it or the file
+   *         can not be used
+   */
+  private Trajectory load(double distance, double maxVel, double maxAcc, double maxJerk,
+      double dtSeconds) {
+    if (mDirectory == null) {
+      return null;
+    }
+    String name = TrajectoryFile.getFileName(distance, maxVel, maxAcc, maxJerk, dtSeconds);
+    File file = new File(mDirectory, name);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      Trajectory trajectory = TrajectoryFile.map(file);
+      if (!TrajectoryFile.matches(trajectory, distance, maxVel, maxAcc, maxJerk, dtSeconds)) {
+        System.err.println(file + " was made with other limits, generating it instead");
+        return null;
+      }
+      mFileLoads++;
+      return trajectory;
+    } catch (IOException e) {
+      System.err.println("Could not load " + file + ", generating it instead: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Drops the least recently used trajectories until the rest fit, but always keeps the newest.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Key, Trajectory>> it = mTrajectories.entrySet().iterator();
+    while (mBytes > mMaxBytes && mTrajectories.size() > 1) {
+      mBytes -= it.next().getValue().getSizeInBytes();
+      it.remove();
+      mEvictions++;
+    }
+  }
+
+  public synchronized void clear() {
+    mTrajectories.clear();
+    mBytes = 0;
+  }
+
+  public synchronized int size() {
+    return mTrajectories.size();
+  }
+
+  public synchronized long getSizeInBytes() {
+    return mBytes;
+  }
+
+  public synchronized int getHits() {
+    return mHits;
+  }
+
+  public synchronized int getMisses() {
+    return mMisses;
+  }
+
+  public synchronized int getEvictions() {
+    return mEvictions;
+  }
+
+  /**
+   * @return How many of the trajectories were mapped from files instead of generated
+   */
+  public synchronized int getFileLoads() {
+    return mFileLoads;
+  }
+
+  public synchronized void logToDashboard() {
+    SmartDashboard.putNumber("TrajectoryCacheHits", mHits);
+    SmartDashboard.putNumber("TrajectoryCacheMisses", mMisses);
+    SmartDashboard.putNumber("TrajectoryCacheSize", mTrajectories.size());
+    SmartDashboard.putNumber("TrajectoryCacheFileLoads", mFileLoads);
+  }
+
+  /**
+   * Everything that goes into generating a trajectory.
+   */
+  private static final class Key {
+    private final double mDistance;
+    private final double mMaxVel;
+    private final double mMaxAcc;
+    private final double mMaxJerk;
+    private final double mDt;
+
+    Key(double distance, double maxVel, double maxAcc, double maxJerk, double dt) {
+      mDistance = distance;
+      mMaxVel = maxVel;
+      mMaxAcc = maxAcc;
+      mMaxJerk = maxJerk;
+      mDt = dt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      // compare bits, like Double.equals(), so NaN finds itself
+      return Double.doubleToLongBits(mDistance) == Double.doubleToLongBits(other.mDistance)
+          && Double.doubleToLongBits(mMaxVel) == Double.doubleToLongBits(other.mMaxVel)
+          && Double.doubleToLongBits(mMaxAcc) == Double.doubleToLongBits(other.mMaxAcc)
+          && Double.doubleToLongBits(mMaxJerk) == Double.doubleToLongBits(other.mMaxJerk)
+          && Double.doubleToLongBits(mDt) == Double.doubleToLongBits(other.mDt);
+    }
+
+    @Override
+    public int hashCode() {
+      long hash = Double.doubleToLongBits(mDistance);
+      hash = 31 * hash + Double.doubleToLongBits(mMaxVel);
+      hash = 31 * hash + Double.doubleToLongBits(mMaxAcc);
+      hash = 31 * hash + Double.doubleToLongBits(mMaxJerk);
+      hash = 31 * hash + Double.doubleToLongBits(mDt);
+      return (int) (hash ^ (hash >>> 32));
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package missdaisy.utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Saves trajectories to files, so they can be generated offline, and maps them back in on the
+ * robot.
+ *
+ * A file is a header and then the segments, all big endian:
+ *
+ * <pre>
+ * int    magic, "DTRJ"
+ * int    version, 1
+ * int    number of segments
+ * int    doubles per segment, 4
+ * double dt, in seconds
+ * double goal distance
+ * double max velocity, max acceleration and max jerk it was generated with
+ * double position, velocity, acceleration and jerk for each segment
+ * </pre>
+ *
+ * A mapped trajectory reads each segment straight out of the file as it is asked for, so loading
+ * one does not read the file or copy it onto the heap, and the operating system pages it in as
+ * the trajectory is followed. The limits in the header let the robot tell a file that was
+ * generated with other limits than it would use, and generate it fresh instead.
+ *
+ * @author jrussell
+ */
+public class TrajectoryFile {
+  private static final int kMagic = 0x4454524A; // "DTRJ"
+  private static final int kVersion = 1;
+  private static final int kDoublesPerSegment = 4;
+  private static final int kHeaderBytes = 4 * 4 + 5 * 8;
+
+  /**
+   * @return The name of the file for the trajectory with these limits, the same arguments as
+   *         Trajectory.generate()
+   */
+  public static String getFileName(double distance, double maxVel, double maxAcc, double maxJerk,
+      double dtSeconds) {
+    return "drive_" + distance + "_" + maxVel + "_" + maxAcc + "_" + maxJerk + "_" + dtSeconds
+        + ".traj";
+  }
+
+  /**
+   * Writes a trajectory and the limits it was generated with.
+   */
+  public static void write(Trajectory trajectory, double maxVel, double maxAcc, double maxJerk,
+      File file) throws IOException {
+    DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(kMagic);
+      out.writeInt(kVersion);
+      out.writeInt(trajectory.getNumSegments());
+      out.writeInt(kDoublesPerSegment);
+      out.writeDouble(trajectory.getDt());
+      out.writeDouble(trajectory.getGoalDistance());
+      out.writeDouble(maxVel);
+      out.writeDouble(maxAcc);
+      out.writeDouble(maxJerk);
+      for (int i = 0; i < trajectory.getNumSegments(); i++) {
+        out.writeDouble(trajectory.getPosition(i));
+        out.writeDouble(trajectory.getVelocity(i));
+        out.writeDouble(trajectory.getAcceleration(i));
+        out.writeDouble(trajectory.getJerk(i));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Maps a trajectory file into memory.
+   *
+   * @return A frozen trajectory that reads its segments from the file
+   * @throws IOException If the file can not be read, or is not a trajectory file this version
+   *         understands
+   */
+  public static Trajectory map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long size = channel.size();
+      if (size < kHeaderBytes) {
+        throw new IOException(file + " is too short to be a trajectory file");
+      }
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      if (buffer.getInt(0) != kMagic) {
+        throw new IOException(file + " is not a trajectory file");
+      }
+      if (buffer.getInt(4) != kVersion || buffer.getInt(12) != kDoublesPerSegment) {
+        throw new IOException(file + " is version " + buffer.getInt(4) + ", expected "
+            + kVersion);
+      }
+      int numSegments = buffer.getInt(8);
+      if (numSegments < 0
+          || size != kHeaderBytes + (long) numSegments * kDoublesPerSegment * 8) {
+        throw new IOException(file + " should hold " + numSegments + " segments, but is "
+            + size + " bytes long");
+      }
+      return new MappedTrajectory(buffer, numSegments);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * @return True if the trajectory was mapped from a file generated with these limits
+   */
+  public static boolean matches(Trajectory trajectory, double distance, double maxVel,
+      double maxAcc, double maxJerk, double dtSeconds) {
+    if (!(trajectory instanceof MappedTrajectory)) {
+      return false;
+    }
+    MappedTrajectory mapped = (MappedTrajectory) trajectory;
+    return mapped.getGoalDistance() == distance && mapped.getDt() == dtSeconds
+        && mapped.mMaxVel == maxVel && mapped.mMaxAcc == maxAcc && mapped.mMaxJerk == maxJerk;
+  }
+
+  /**
+   * A trajectory whose segments are in a mapped file rather than on the heap.
+   */
+  private static final class MappedTrajectory extends Trajectory {
+    private final DoubleBuffer mSegments;
+    private final int mNumSegments;
+    private final double mDt;
+    private final double mGoalDistance;
+    private final double mMaxVel;
+    private final double mMaxAcc;
+    private final double mMaxJerk;
+
+    MappedTrajectory(MappedByteBuffer buffer, int numSegments) {
+      super(0);
+      freeze();
+      mNumSegments = numSegments;
+      mDt = buffer.getDouble(16);
+      mGoalDistance = buffer.getDouble(24);
+      mMaxVel = buffer.getDouble(32);
+      mMaxAcc = buffer.getDouble(40);
+      mMaxJerk = buffer.getDouble(48);
+      buffer.position(kHeaderBytes);
+      mSegments = buffer.slice().asDoubleBuffer();
+    }
+
+    /**
+     * The segments are not on the heap, so the cache does not count them.
+     */
+    @Override
+    public long getSizeInBytes() {
+      return 0L;
+    }
+
+    @Override
+    public int getNumSegments() {
+      return mNumSegments;
+    }
+
+    @Override
+    public double getDt() {
+      return mDt;
+    }
+
+    @Override
+    public double getGoalDistance() {
+      return mGoalDistance;
+    }
+
+    @Override
+    public double getPosition(int aSegment) {
+      if (aSegment >= mNumSegments) {
+        return mNumSegments > 0 ? mSegments.get((mNumSegments - 1) * kDoublesPerSegment) : 0.0;
+      }
+      return mSegments.get(aSegment * kDoublesPerSegment);
+    }
+
+    @Override
+    public double getVelocity(int aSegment) {
+      return aSegment < mNumSegments ? mSegments.get(aSegment * kDoublesPerSegment + 1) : 0.0;
+    }
+
+    @Override
+    public double getAcceleration(int aSegment) {
+      return aSegment < mNumSegments ? mSegments.get(aSegment * kDoublesPerSegment + 2) : 0.0;
+    }
+
+    @Override
+    public double getJerk(int aSegment) {
+      return aSegment < mNumSegments ? mSegments.get(aSegment * kDoublesPerSegment + 3) : 0.0;
+    }
+  }
+}
@@ -1,13 +1,22 @@
 package missdaisy.utilities;
 
-import missdaisy.utilities.Trajectory.Segment;
+import missdaisy.hal.Clock;
+import missdaisy.hal.Hardware;
 
 /**
  * A PID controller with velocity and acceleration feedforward to follow a smooth trajectory.
- * 
+ *
+ * The trajectory is sampled at the time that has passed since the first call to calculate(),
+ * interpolating between segments, rather than one segment per call. A loop that runs late, or
+ * skips a period, or runs twice in a row, still follows the profile at the right speed.
+ *
+ * While following, it keeps the worst tracking error seen in each segment, so a move can be
+ * looked at afterwards to see where it fell behind.
+ *
  * @author Jared341
  */
 public class TrajectoryFollower {
+  private final Clock mClock;
   private double mKp;
   private double mKi;
   private double mKd;
@@ -16,11 +25,27 @@ public class TrajectoryFollower {
   private double mLastError;
   private double mErrorSum;
   private double mDistance;
-  private int mCurrentSegment;
+  private long mStartNanos;
+  private long mLastNanos;
+  private boolean mStarted;
+  private boolean mFinished;
   private Trajectory mProfile;
 
+  // Tracking error
+  private double[] mSegmentError = new double[0];
+  private double mErrorSquares;
+  private int mErrorSamples;
+  private double mMaxError;
+
   public TrajectoryFollower() {
+    this(Hardware.getClock());
+  }
 
+  /**
+   * @param clock Where to read the time from
+   */
+  public TrajectoryFollower(Clock clock) {
+    mClock = clock;
   }
 
   public void configure(double kp, double ki, double kd, double kv, double ka) {
@@ -31,35 +56,78 @@ public class TrajectoryFollower {
     mKa = ka;
   }
 
+  /**
+   * Starts the trajectory over. Time starts at the next call to calculate().
+   */
   public void reset() {
     mLastError = 0.0;
-    mCurrentSegment = 0;
     mErrorSum = 0.0;
     mDistance = 0.0;
+    mStarted = false;
+    mFinished = false;
+    for (int i = 0; i < mSegmentError.length; i++) {
+      mSegmentError[i] = Double.NaN;
+    }
+    mErrorSquares = 0.0;
+    mErrorSamples = 0;
+    mMaxError = 0.0;
   }
 
   public void setTrajectory(Trajectory profile) {
     mProfile = profile;
+    reserve(profile.getNumSegments());
+    reset();
+  }
+
+  /**
+   * Makes room to keep the tracking error of trajectories this long, so that setting one in the
+   * middle of a move does not allocate.
+   */
+  public void reserve(int numSegments) {
+    if (mSegmentError.length < numSegments) {
+      mSegmentError = new double[numSegments];
+    }
   }
 
   public double calculate(double distance) {
-    // System.out.println(mCurrentSegment + " " + mProfile.getNumSegments());
+    long now = mClock.nanoTime();
+    if (!mStarted) {
+      mStartNanos = now;
+      mLastNanos = now;
+      mStarted = true;
+    }
     mDistance = distance;
-    if (mCurrentSegment < mProfile.getNumSegments()) {
-      Segment segment = mProfile.getSegment(mCurrentSegment);
-      double error = segment.position - distance;
-
-      double output =
-          mKp * error + mKd * ((error - mLastError) / mProfile.getDt() - segment.velocity)
-              + mKv * segment.velocity + mKa * segment.acceleration;
+    int numSegments = mProfile.getNumSegments();
+    double dt = mProfile.getDt();
+    // which segment we should be at, with the first call on segment 0
+    double index = (now - mStartNanos) / 1.0e9 / dt;
+    if (index < numSegments) {
+      int segment = (int) index;
+      // the last segment has nothing after it to move toward, so it holds its own values
+      int next = Math.min(segment + 1, numSegments - 1);
+      double fraction = index - segment;
+      double position = interpolate(mProfile.getPosition(segment), mProfile.getPosition(next),
+          fraction);
+      double velocity = interpolate(mProfile.getVelocity(segment), mProfile.getVelocity(next),
+          fraction);
+      double acceleration = interpolate(mProfile.getAcceleration(segment),
+          mProfile.getAcceleration(next), fraction);
+      double error = position - distance;
+      recordError(segment, error);
+
+      // the derivative is over the time that really passed, which is not always dt
+      double elapsed = (now - mLastNanos) / 1.0e9;
+      double errorRate = elapsed > 0.0 ? (error - mLastError) / elapsed : 0.0;
+      double output = mKp * error + mKd * (errorRate - velocity) + mKv * velocity
+          + mKa * acceleration;
 
       mLastError = error;
-
-      mCurrentSegment++;
+      mLastNanos = now;
 
       return output;
     } else {
-      // System.out.println("Switching to PID");
+      mFinished = true;
+      mLastNanos = now;
       double error = mProfile.getGoalDistance() - distance;
       mErrorSum += error;
 
@@ -67,12 +135,22 @@ public class TrajectoryFollower {
     }
   }
 
-  public boolean isFinishedTrajectory() {
-    if (mCurrentSegment >= mProfile.getNumSegments()) {
-      return true;
-    } else {
-      return false;
+  private static double interpolate(double a, double b, double fraction) {
+    return a + (b - a) * fraction;
+  }
+
+  private void recordError(int segment, double error) {
+    double magnitude = Math.abs(error);
+    if (Double.isNaN(mSegmentError[segment]) || magnitude > mSegmentError[segment]) {
+      mSegmentError[segment] = magnitude;
     }
+    mErrorSquares += error * error;
+    mErrorSamples++;
+    mMaxError = Math.max(mMaxError, magnitude);
+  }
+
+  public boolean isFinishedTrajectory() {
+    return mFinished;
   }
 
   public boolean onTarget(double threshold) {
@@ -83,4 +161,46 @@ public class TrajectoryFollower {
     }
   }
 
+  /**
+   * @return The segment the last call to calculate() was in, going by the time since the first
+   */
+  public int getSegment() {
+    if (!mStarted) {
+      return 0;
+    }
+    return (int) ((mLastNanos - mStartNanos) / 1.0e9 / mProfile.getDt());
+  }
+
+  /**
+   * @return How far behind the trajectory the last call to calculate() was, or 0 once the
+   *         trajectory is finished
+   */
+  public double getError() {
+    return mFinished ? 0.0 : mLastError;
+  }
+
+  /**
+   * @return The worst tracking error while the follower was in a segment, or NaN if the loop
+   *         never ran during it
+   */
+  public double getTrackingError(int segment) {
+    if (segment < 0 || segment >= mProfile.getNumSegments()) {
+      return Double.NaN;
+    }
+    return mSegmentError[segment];
+  }
+
+  /**
+   * @return The root mean square tracking error over the trajectory so far
+   */
+  public double getRMSTrackingError() {
+    return mErrorSamples > 0 ? Math.sqrt(mErrorSquares / mErrorSamples) : 0.0;
+  }
+
+  /**
+   * @return The worst tracking error over the trajectory so far
+   */
+  public double getMaxTrackingError() {
+    return mMaxError;
+  }
 }
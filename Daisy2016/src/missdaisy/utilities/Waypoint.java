@@ -0,0 +1,43 @@
+package missdaisy.utilities;
+
+/**
+ * A point a path goes through, and the heading the robot should have there. Uses the same frame
+ * as Navigation: x and y in inches, and the heading in degrees, increasing clockwise.
+ *
+ * @author jrussell
+ */
+public class Waypoint {
+  public final double x;
+  public final double y;
+  public final double heading;
+
+  public Waypoint(double x, double y, double heading) {
+    this.x = x;
+    this.y = y;
+    this.heading = heading;
+  }
+
+  /**
+   * Parses waypoints written as comma separated x:y:heading triples, like "0:0:0,60:24:30", which
+   * fits in one token of a properties file.
+   *
+   * @throws IllegalArgumentException If the waypoints can not be parsed
+   */
+  public static Waypoint[] parse(String waypoints) {
+    String[] points = waypoints.trim().split(",");
+    Waypoint[] parsed = new Waypoint[points.length];
+    for (int i = 0; i < points.length; i++) {
+      String[] fields = points[i].split(":");
+      if (fields.length != 3) {
+        throw new IllegalArgumentException("Expected x:y:heading, got \"" + points[i] + "\"");
+      }
+      parsed[i] = new Waypoint(Double.parseDouble(fields[0].trim()),
+          Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim()));
+    }
+    return parsed;
+  }
+
+  public String toString() {
+    return x + ":" + y + ":" + heading;
+  }
+}
@@ -2,7 +2,6 @@ package missdaisy;
 
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 import org.bytedeco.javacpp.opencv_core;
 import org.bytedeco.javacpp.opencv_core.CvSize;
 import org.bytedeco.javacpp.opencv_core.IplConvKernel;
@@ -13,6 +12,7 @@ import org.bytedeco.javacv.CanvasFrame;
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 import edu.wpi.first.wpijavacv.*;
 import fileio.PropertySet;
+import missdaisy.utilities.InterpolatingTable;
 
 /* HOW TO GET THIS COMPILING IN NETBEANS:
 
@@ -45,6 +45,8 @@ public class DaisyCV {
 	private static final int kMinWidth = 20;
 	private static final int kMaxWidth = 200;
 	private static final double kRangeOffset = 0.0;
+	// range in inches to shooter RPM, as range:rpm pairs
+	private static final String kDefaultRangeTable = "141:6250,150:6375";
 	private static final int kHoleClosingIterations = 2;
 
 	private static final double kShooterOffsetDeg = 1.0;
@@ -63,8 +65,10 @@ public class DaisyCV {
 	private double pSaturationUpperBound = 255;
 	private double pValueLowerBound = 182; 
 	private double pValueUpperBound = 255;
+	// how long, in seconds, it takes a frame to get from the camera to processImage()
+	private double pCameraLatency = 0.0;
 																
-	private TreeMap<Double, Double> rangeTable;
+	private InterpolatingTable rangeTable;
 
 	private boolean m_debugMode = false;
 
@@ -99,10 +103,21 @@ public class DaisyCV {
 		pSaturationUpperBound = properties.getDoubleValue("SaturationUpperBound", pSaturationUpperBound);
 		pValueLowerBound = properties.getDoubleValue("ValueLowerBound", pValueLowerBound);
 		pValueUpperBound = properties.getDoubleValue("ValueUpperBound", pValueUpperBound);
-
-		rangeTable = new TreeMap<Double, Double>();
-		rangeTable.put(150.0, 6375.0 + kRangeOffset);
-		rangeTable.put(141.0, 6250.0 + kRangeOffset);
+		pCameraLatency = properties.getDoubleValue("CameraLatency", pCameraLatency);
+
+		// "linear" or "cubic". The table is only read here, at start up, so DaisyCV has to be
+		// restarted to pick up a change to it.
+		InterpolatingTable.Interpolation interpolation =
+				properties.getStringValue("RangeInterpolation", "linear").equals("cubic")
+						? InterpolatingTable.Interpolation.MONOTONE_CUBIC
+						: InterpolatingTable.Interpolation.LINEAR;
+		try {
+			rangeTable = InterpolatingTable.parse(
+					properties.getStringValue("RangeTable", kDefaultRangeTable), interpolation);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Bad RangeTable, using the default: " + e.getMessage());
+			rangeTable = InterpolatingTable.parse(kDefaultRangeTable, interpolation);
+		}
 		
 		DaisyExtensions.init();
 		if (!m_debugMode) {
@@ -113,30 +128,19 @@ public class DaisyCV {
 	}
 
 	public double getRPMsForRange(double range) {
-		double lowKey = -1.0;
-		double lowVal = -1.0;
-		for (double key : rangeTable.keySet()) {
-			if (range < key) {
-				double highVal = rangeTable.get(key);
-				if (lowKey > 0.0) {
-					double m = (range - lowKey) / (key - lowKey);
-					return lowVal + m * (highVal - lowVal);
-				} else
-					return highVal;
-			}
-			lowKey = key;
-			lowVal = rangeTable.get(key);
-		}
-
-		return 4000 + kRangeOffset;
+		return rangeTable.get(range) + kRangeOffset;
 	}
 
 	public WPIImage processImage(WPIColorImage rawImage) {
 		double heading = 0.0;
+		double headingTimestamp = -1.0;
 
-		// Get the current heading of the robot first
+		// Get the current heading of the robot first, and when the robot measured it
 		if (!m_debugMode) {
-			try { heading = SmartDashboard.getNumber("heading", 0.0); }
+			try {
+				heading = SmartDashboard.getNumber("heading", 0.0);
+				headingTimestamp = SmartDashboard.getNumber("headingTimestamp", -1.0);
+			}
 			catch (NoSuchElementException | IllegalArgumentException e) { }
 		}
 
@@ -257,7 +261,8 @@ public class DaisyCV {
 			double y = square.getY();
 			y = -((2 * (y / size.height())) - 1);
 
-			double azimuth = this.boundAngle0to360Degrees(x * kHorizontalFOVDeg / 2.0 + heading - kShooterOffsetDeg);
+			double azimuthOffset = x * kHorizontalFOVDeg / 2.0 - kShooterOffsetDeg;
+			double azimuth = this.boundAngle0to360Degrees(azimuthOffset + heading);
 			double range = (kTargetHeightIn - kCameraHeightIn)
 					/ Math.tan((y * kVerticalFOVDeg / 2.0 + kCameraPitchDeg) * Math.PI / 180.0);
 			double rpms = getRPMsForRange(range);
@@ -265,6 +270,10 @@ public class DaisyCV {
 			if (!m_debugMode) {
 				SmartDashboard.putBoolean("found", true);
 				SmartDashboard.putNumber("azimuth", azimuth);
+				// lets the robot add the offset to the heading it had when the frame was captured
+				SmartDashboard.putNumber("azimuthOffset", azimuthOffset);
+				SmartDashboard.putNumber("captureTimestamp",
+						headingTimestamp < 0.0 ? -1.0 : headingTimestamp - pCameraLatency);
 				SmartDashboard.putNumber("rpms", rpms);
 				SmartDashboard.putNumber("range", range);
 				//readyToShoot = SmartDashboard.getBoolean("ReadyToShoot", false);
@@ -6,7 +6,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 import org.bytedeco.javacpp.opencv_core;
 import org.bytedeco.javacpp.opencv_core.CvSize;
 import org.bytedeco.javacpp.opencv_core.IplConvKernel;
@@ -16,8 +15,11 @@ import edu.wpi.first.smartdashboard.robot.Robot;
 import edu.wpi.first.smartdashboard.camera.WPICameraExtension;
 import edu.wpi.first.smartdashboard.properties.Property;
 import edu.wpi.first.wpijavacv.*;
+import edu.wpi.first.smartdashboard.properties.BooleanProperty;
 import edu.wpi.first.smartdashboard.properties.DoubleProperty;
 import edu.wpi.first.smartdashboard.properties.IntegerProperty;
+import edu.wpi.first.smartdashboard.properties.StringProperty;
+import missdaisy.utilities.InterpolatingTable;
 
 /* HOW TO GET THIS COMPILING IN NETBEANS:
 
@@ -52,6 +54,8 @@ public class DaisyCV extends WPICameraExtension {
 	private static final int kMaxWidth = 200;
 	private static final double kRangeRPMOffset = 0.0;
 	private static final double kRangeOffset = 10.0;
+	// range in inches to shooter RPM, as range:rpm pairs
+	private static final String kDefaultRangeTable = "141:6250,150:6375";
 	private static final int kHoleClosingIterations = 2;
 
 	//private static double pShooterOffsetDeg = 1.0;
@@ -71,8 +75,12 @@ public class DaisyCV extends WPICameraExtension {
 	private IntegerProperty pValueLowerBound = new IntegerProperty(this, "Value low", 180); 
 	private IntegerProperty pValueUpperBound = new IntegerProperty(this, "Value high", 255);
 	private DoubleProperty pShooterOffsetDeg = new DoubleProperty(this, "Horizontal Offset Degrees", 0.0);
+	// how long it takes a frame to get from the camera to processImage()
+	private DoubleProperty pCameraLatency = new DoubleProperty(this, "Camera Latency Seconds", 0.0);
+	private StringProperty pRangeTable = new StringProperty(this, "Range to RPM Table", kDefaultRangeTable);
+	private BooleanProperty pSmoothRangeTable = new BooleanProperty(this, "Smooth Range to RPM Table", false);
 																
-	private TreeMap<Double, Double> rangeTable;
+	private InterpolatingTable rangeTable;
 
 	private boolean m_debugMode = false;
 
@@ -99,39 +107,39 @@ public class DaisyCV extends WPICameraExtension {
 		m_debugMode = debug;
 		morphKernel = IplConvKernel.create(3, 3, 1, 1, opencv_imgproc.CV_SHAPE_RECT, null);
 		
-		rangeTable = new TreeMap<Double, Double>();
-		rangeTable.put(150.0, 6375.0 + kRangeRPMOffset);
-		rangeTable.put(141.0, 6250.0 + kRangeRPMOffset);
+		loadRangeTable();
 		
 		DaisyExtensions.init();
 	}
 
 	public double getRPMsForRange(double range) {
-		double lowKey = -1.0;
-		double lowVal = -1.0;
-		for (double key : rangeTable.keySet()) {
-			if (range < key) {
-				double highVal = rangeTable.get(key);
-				if (lowKey > 0.0) {
-					double m = (range - lowKey) / (key - lowKey);
-					return lowVal + m * (highVal - lowVal);
-				} else
-					return highVal;
-			}
-			lowKey = key;
-			lowVal = rangeTable.get(key);
-		}
+		return rangeTable.get(range) + kRangeRPMOffset;
+	}
 
-		return 4000 + kRangeRPMOffset;
+	// parsed only when the properties change, not every frame
+	private void loadRangeTable() {
+		InterpolatingTable.Interpolation interpolation = pSmoothRangeTable.getValue()
+				? InterpolatingTable.Interpolation.MONOTONE_CUBIC
+				: InterpolatingTable.Interpolation.LINEAR;
+		try {
+			rangeTable = InterpolatingTable.parse(pRangeTable.getValue(), interpolation);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Bad range table, using the default: " + e.getMessage());
+			rangeTable = InterpolatingTable.parse(kDefaultRangeTable, interpolation);
+		}
 	}
 	
 	@Override
 	public WPIImage processImage(WPIColorImage rawImage) {
 		double heading = 0.0;
+		double headingTimestamp = -1.0;
 
-		// Get the current heading of the robot first
+		// Get the current heading of the robot first, and when the robot measured it
 		if (!m_debugMode) {
-			try { heading = Robot.getTable().getNumber("heading", 0.0); }
+			try {
+				heading = Robot.getTable().getNumber("heading", 0.0);
+				headingTimestamp = Robot.getTable().getNumber("headingTimestamp", -1.0);
+			}
 			catch (NoSuchElementException | IllegalArgumentException e) { }
 		}
 
@@ -254,7 +262,8 @@ public class DaisyCV extends WPICameraExtension {
 			double y = square.getY();
 			y = -((2 * (y / size.height())) - 1);
 
-			double azimuth = this.boundAngle0to360Degrees(x * kHorizontalFOVDeg / 2.0 + heading - pShooterOffsetDeg.getValue());
+			double azimuthOffset = x * kHorizontalFOVDeg / 2.0 - pShooterOffsetDeg.getValue();
+			double azimuth = this.boundAngle0to360Degrees(azimuthOffset + heading);
 			double range = ((kTargetHeightIn - kCameraHeightIn)
 					/ Math.tan((y * kVerticalFOVDeg / 2.0 + kCameraPitchDeg) * Math.PI / 180.0) - kRangeOffset);
 			double rpms = getRPMsForRange(range);
@@ -262,6 +271,10 @@ public class DaisyCV extends WPICameraExtension {
 			if (!m_debugMode) {
 				Robot.getTable().putBoolean("found", true);
 				Robot.getTable().putNumber("azimuth", azimuth);
+				// lets the robot add the offset to the heading it had when the frame was captured
+				Robot.getTable().putNumber("azimuthOffset", azimuthOffset);
+				Robot.getTable().putNumber("captureTimestamp",
+						headingTimestamp < 0.0 ? -1.0 : headingTimestamp - pCameraLatency.getValue());
 				Robot.getTable().putNumber("rpms", rpms);
 				Robot.getTable().putNumber("range", range);
 			} else {
@@ -315,6 +328,9 @@ public class DaisyCV extends WPICameraExtension {
 	@Override
 	public void propertyChanged(Property arg0) {
 		super.propertyChanged(arg0);
+		if (arg0 == pRangeTable || arg0 == pSmoothRangeTable) {
+			loadRangeTable();
+		}
 	}
 
 	@Override